@@ -3,13 +3,18 @@ package glassfish.security.auth.jdbc.login;
 import com.sun.appserv.security.AppservPasswordLoginModule;
 import com.sun.enterprise.util.i18n.StringManagerBase;
 import glassfish.security.auth.jdbc.realm.JDBCRealmExtended;
-import java.util.Arrays;
-import java.util.logging.Logger;
 import javax.security.auth.login.LoginException;
 
 /**
  * The JDBCLoginModuleExtended implements a JDBC Login module for Glassfish.
  * <p>
+ * The login outcomes are published to the realm audit log by {@link JDBCRealmExtended#authenticate(String, String)},
+ * the messages are formatted and logged off the login thread.
+ * <p>
+ * The groups of a login are queried with its credentials and cannot be deferred to the first role check: GlassFish
+ * maps the roles from the group principals {@link #commit()} adds to the subject, built from the array given to
+ * <code>commitUserAuthentication</code>, and the subject principals cannot be resolved on demand.
+ * <p>
  * @author RienderieN
  * @version 1.0.0
  * @see JDBCRealmExtended
@@ -47,11 +52,6 @@ public class JDBCLoginModuleExtended extends AppservPasswordLoginModule
             throw new LoginException( msg );
         }
 
-        msg = jdbclmeSm.getString( "jdbclm.authenticateuser.loginsucc.info.log",
-                getUsername(), Arrays.toString( grpList ),
-                JDBCLoginModuleExtended.class.getName() + ".authenticateUser()" );
-        Logger.getLogger( JDBCLoginModuleExtended.class.getName() ).info( msg );
-
         commitUserAuthentication( grpList );
     }
 }
@@ -0,0 +1,327 @@
+package glassfish.security.auth.jdbc.realm;
+
+import com.sun.appserv.security.AppservRealm;
+import com.sun.enterprise.security.auth.realm.BadRealmException;
+import com.sun.enterprise.security.auth.realm.InvalidOperationException;
+import com.sun.enterprise.security.auth.realm.NoSuchRealmException;
+import com.sun.enterprise.security.auth.realm.NoSuchUserException;
+import com.sun.enterprise.util.i18n.StringManagerBase;
+import glassfish.security.auth.jdbc.core.JDBCAuthenticator;
+import glassfish.security.auth.jdbc.core.exceptions.AuthenticatorException;
+import glassfish.security.auth.jdbc.login.JDBCLoginModuleExtended;
+import glassfish.security.auth.jdbc.util.audit.AuditLog;
+import glassfish.security.auth.jdbc.util.dao.ISecurityStorage;
+import glassfish.security.auth.jdbc.util.factory.PasswordTypeFactory;
+import glassfish.security.auth.jdbc.util.factory.passwordtypes.IPasswordType;
+import glassfish.security.auth.jdbc.util.validation.CredentialsValidator;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.Enumeration;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import org.jvnet.hk2.annotations.Service;
+
+/**
+ * Glassfish realm supporting JDBC authentication, a GlassFish adapter over the {@link JDBCAuthenticator} engine
+ * of the <code>jdbc-realm-core</code> module.
+ * <p>
+ * This realm includes several encryption algorithms:
+ * <ul>
+ * <li> <code>None</code>: user password isn't encrypted (a plaintext password).
+ * <li> <code>Bcrypt</code>: user password encrypted with {@link <a href="http://www.mindrot.org/projects/jBCrypt/">jBCrypt</a>}.
+ * <li> <code>Hmac</code>: user password encrypted with a {@link javax.crypto.Mac} keyed by a secret pepper loaded from a keystore.
+ * <li> <code>SHA-256</code>, <code>SHA-1</code> or <code>MD5</code>: user password encrypted with {@link MessageDigest}.
+ * </ul>
+ * <p>
+ * The JDBC Realm needs the following properties in its configuration:
+ * <p>
+ * <ul>
+ * <li><b>Mandatory properties:</b>
+ * <ul>
+ * <li> <code>jaas-context</code>: JAAS context name used to access LoginModule for authentication (for example <i>jdbcRealmExtended</i>).
+ * <li> <code>datasource-jndi</code>: datasource jndi name, or a comma separated list of datasource jndi names.
+ * <li> <code>db-user</code>: datasource user name (if the datasource user name was define into the datasource jndi configuration then this
+ * property isn't mandatory).
+ * <li> <code>db-password</code>: datasource password (if the datasource password was define into the datasource jndi configuration then this
+ * property isn't mandatory).
+ * <li> <code>user-table</code>: table name containing user name and password.
+ * <li> <code>user-name-column</code>: column name corresponding to user name in user-table.
+ * <li> <code>password-column</code>: column name corresponding to password in user-table.
+ * <li> <code>group-table</code>: table name containing group name.
+ * <li> <code>group-name-column</code>: column name corresponding to group in group-table.
+ * <li><code>group-table-user-name-column</code>: column name corresponding to user name in group-table
+ * (this property isn't mandatory if the <code>group-table</code> property is equals to the <code>user-table</code> property).
+ * </ul>
+ * <p>
+ * <li><b>Optional properties:</b>
+ * <ul>
+ * <li> <code>digest-algorithm</code>: algorithm used to encrypt user password(values: <code>None</code>, <code>Bcrypt</code>,
+ * <code>Hmac</code>, <code>SHA-256</code>, <code>SHA-1</code> or <code>MD5</code>), or <code>outer(inner)</code> for the legacy
+ * hashes wrapped by <code>PasswordRehasher</code> (for example <code>Bcrypt(SHA-1)</code>).
+ * <li> <code>password-salt</code>: plaintext password salt.
+ * <li> <code>user-salt-column</code>: column name corresponding to a plaintext per-user salt in user-table.
+ * <li> <code>user-password-type-column</code>: column name corresponding to a per-user <code>digest-algorithm</code> in user-table
+ * (the realm <code>digest-algorithm</code> is used if the column value is <code>null</code>).
+ * <li> <code>group-fetch-size</code>: number of group rows fetched per round trip by the user groups query (by default <code>100</code>).
+ * <li> <code>username-normalization</code>: normalization applied to the user name before it is bound to the queries
+ * (values: <code>none</code>, <code>lowercase</code>, <code>nfkc</code> or <code>nfkc-lowercase</code>).
+ * <li> <code>user-name-normalized-column</code>: column name corresponding to the normalized user name in user-table.
+ * <li> <code>user-password-query</code>: custom query to find the password according to a user name
+ * (one parameter, the user name, and the password[, salt][, password type] columns), validated at the realm initialization.
+ * <li> <code>user-groups-query</code>: custom query to find the group names according to a user name
+ * (one parameter, the user name, and the group name column), validated at the realm initialization.
+ * <li> <code>group-parent-table</code>: table name containing the nested groups (a row by child group and parent group).
+ * <li> <code>group-parent-column</code>: column name corresponding to the parent group in group-parent-table.
+ * <li> <code>group-parent-child-column</code>: column name corresponding to the child group in group-parent-table
+ * (by default the <code>group-name-column</code> property).
+ * <li> <code>group-hierarchy-refresh</code>: number of seconds the nested groups are cached before being reloaded (by default <code>300</code>).
+ * <li> <code>datasource-routing</code>: routing of the connections between the datasources (<code>round-robin</code>,
+ * <code>least-latency</code> or <code>failover</code>, by default <code>round-robin</code>).
+ * <li> <code>circuit-breaker-threshold</code>: number of consecutive connection failures opening a datasource circuit breaker (by default <code>5</code>).
+ * <li> <code>circuit-breaker-delay</code>: number of seconds a datasource circuit breaker stays open (by default <code>30</code>).
+ * <li> <code>cache-ttl</code>: number of seconds a user is served from the cache without querying the database (by default <code>0</code>).
+ * <li> <code>cache-max-staleness</code>: maximum age in seconds of a cached user served while the database is unreachable
+ * (by default <code>0</code>, degraded mode disabled).
+ * <li> <code>cache-max-size</code>: maximum number of cached users (by default <code>10000</code>).
+ * <li> <code>cache-type</code>: <code>heap</code> (by default) or <code>off-heap</code>.
+ * <li> <code>cache-slot-size</code>: size in bytes of an off-heap cached user (by default <code>256</code>).
+ * <li> <code>cache-snapshot-file</code>: local file the cached users are persisted to and restored from at the initialization.
+ * It holds the cached password hashes and salts, so it is created readable by its owner only.
+ * <li> <code>cache-snapshot-interval</code>: number of seconds between two snapshots (by default <code>300</code>).
+ * <li> <code>cache-snapshot-reconcile-rate</code>: maximum number of restored users reloaded per second (by default <code>50</code>).
+ * <li> <code>invalidation-bus</code>: bus sharing the cache evictions (see {@link #invalidate(String)}) with the other
+ * instances of the cluster, <code>multicast</code> or an <code>IInvalidationBus</code> class name.
+ * <li> <code>invalidation-multicast-group</code>: multicast group address of the <code>multicast</code> bus.
+ * <li> <code>invalidation-multicast-port</code>: multicast port (by default <code>45588</code>).
+ * <li> <code>invalidation-multicast-ttl</code>: time to live of the multicast datagrams (by default <code>1</code>).
+ * <li> <code>connection-acquire-timeout</code>: number of milliseconds a login may wait for a connection (by default <code>0</code>, unbounded).
+ * <li> <code>connection-max-pending</code>: maximum number of logins waiting for a connection at once (by default <code>8</code>).
+ * <li> <code>login-read-only-transaction</code>: <code>true</code> to read the credentials and the groups of a login
+ * in a read-only transaction on their shared connection (by default <code>false</code>).
+ * <li> <code>storage-decorators</code>: comma separated list of decorators stacked over the storage, the first one
+ * wrapping the storage: <code>caching</code>, <code>coalescing</code>, <code>metrics</code> or the class name of a
+ * <code>SecurityStorageDecorator</code> (by default none).
+ * <li> <code>storage-cache-ttl</code>: number of seconds a user is cached by the <code>caching</code> decorator (by default <code>60</code>).
+ * <li> <code>storage-cache-max-size</code>: maximum number of users cached by the <code>caching</code> decorator (by default <code>10000</code>).
+ * <li> <code>warmup-iterations</code>: number of synthetic password checks run at the initialization, after the datasource
+ * is resolved, the queries prepared and the password type self-checked (by default <code>0</code>, no warm-up).
+ * <li> <code>username-max-length</code>: maximum length of a user name, a longer one is rejected before any query
+ * (by default <code>255</code>).
+ * <li> <code>username-allowed-characters</code>: regular expression matching an allowed character of a user name
+ * (for example <code>[\p{L}\p{N}._@-]</code>, by default all the characters are allowed).
+ * <li> <code>password-max-length</code>: maximum length of a password, a longer one is rejected before it is hashed
+ * (by default <code>1024</code>).
+ * <li> <code>audit-buffer-size</code>: number of login outcomes queued for the audit log before they are dropped
+ * (by default <code>4096</code>).
+ * <li> <code>audit-drop-policy</code>: policy applied when the audit log queue is full, <code>drop</code> (by default,
+ * the outcome is dropped and counted) or <code>block</code> (the login waits).
+ * <li> <code>audit-file</code>: file the login outcomes are written to, a JSON object per line.
+ * <li> <code>audit-file-max-size</code>: size in bytes of the audit file before it is rotated (by default <code>10485760</code>).
+ * <li> <code>audit-file-max-count</code>: number of rotated audit files kept (by default <code>5</code>).
+ * <li> <code>bcrypt-log-rounds</code>: {@link <a href="http://www.mindrot.org/projects/jBCrypt/">jBCrypt</a>} log rounds.
+ * <li> <code>hmac-algorithm</code>: {@link javax.crypto.Mac} algorithm (by default <code>HmacSHA256</code>).
+ * <li> <code>hmac-keystore</code>: keystore file containing the secret key (pepper) of the <code>Hmac</code> password type.
+ * <li> <code>hmac-keystore-type</code>: keystore type (by default <code>JCEKS</code>).
+ * <li> <code>hmac-keystore-password</code>: keystore password (also used as key password).
+ * <li> <code>hmac-key-alias</code>: alias of the secret key into the keystore.
+ * <li> <code>encoding</code>: encoding type (values: <code>hex</code> or <code>base64</code>).
+ * <li> <code>charset</code>: {@link Charset} name.
+ * </ul>
+ * </ul>
+ * <p>
+ * <b>WARNING:</b> <br/>
+ * If the <code>digest-algorithm</code> is equals to <code>None</code> value, user password isn't encrypted.<br/>
+ * If the <code>digest-algorithm</code> property isn't defined, the <code>digest-algorithm</code> property will correspond
+ * to the <code>default-digest-algorithm</code> property defined into the Glassfish security config (by default it's <code>SHA-256</code>).</br>
+ * If the <code>default-digest-algorithm</code> property isn't defined, the <code>digest-algorithm</code> property will correspond to <code>SHA-256</code>.
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ * @see JDBCLoginModuleExtended
+ * @see JDBCAuthenticator
+ * @see PasswordTypeFactory
+ */
+@Service( name = "JdbcRealmExtended" )
+public class JDBCRealmExtended extends AppservRealm
+{
+
+    /**
+     * Descriptive string of the authentication type of this realm.
+     */
+    final static String AUTH_TYPE = "jdbc realm extended";
+
+    // The authentication engines of the initialized realms, by realm name: GlassFish replaces a reconfigured realm
+    // with a new instance without notifying the previous one, whose engine is closed by the new one
+    private final static ConcurrentMap<String, JDBCAuthenticator> AUTHENTICATORS = new ConcurrentHashMap<>();
+
+    // The authentication engine, null until the realm is initialized
+    private JDBCAuthenticator authenticator;
+
+    private final StringManagerBase jdbcreSm = StringManagerBase.getStringManager( JDBCRealmExtended.class.getSimpleName(),
+            JDBCRealmExtended.class.getClassLoader() );
+
+    public JDBCRealmExtended()
+    {
+    }
+
+    /**
+     * @param passwordType    A {@link IPasswordType}.
+     * @param securityStorage A {@link ISecurityStorage}.
+     */
+    public JDBCRealmExtended( IPasswordType passwordType, ISecurityStorage securityStorage )
+    {
+        this( passwordType, securityStorage, null );
+    }
+
+    /**
+     * @param passwordType         A {@link IPasswordType}.
+     * @param securityStorage      A {@link ISecurityStorage}.
+     * @param credentialsValidator A {@link CredentialsValidator}.
+     *                             May be <code>null</code>.
+     */
+    public JDBCRealmExtended( IPasswordType passwordType, ISecurityStorage securityStorage, CredentialsValidator credentialsValidator )
+    {
+        this.authenticator = new JDBCAuthenticator( null, passwordType, securityStorage, credentialsValidator );
+    }
+
+    @Override
+    protected void init( Properties props )
+            throws BadRealmException, NoSuchRealmException
+    {
+        super.init( props );
+
+        final String jaasCtx = props.getProperty( AppservRealm.JAAS_CONTEXT_PARAM );
+
+        String msg = null;
+        if ( jaasCtx == null || jaasCtx.trim().isEmpty() ) {
+            msg = log( Level.SEVERE, "jdbcrealm.init.missingprop.exception",
+                    AppservRealm.JAAS_CONTEXT_PARAM, JDBCRealmExtended.class.getName() + ".init" );
+            throw new BadRealmException( msg );
+        }
+        this.setProperty( AppservRealm.JAAS_CONTEXT_PARAM, jaasCtx );
+
+        try {
+            authenticator = new JDBCAuthenticator( getName(), props );
+        } catch ( AuthenticatorException ex ) {
+            throw new BadRealmException( ex );
+        }
+
+        final JDBCAuthenticator replaced = AUTHENTICATORS.put( getName(), authenticator );
+        if ( replaced != null && replaced != authenticator ) {
+            replaced.close();
+        }
+    }
+
+    /**
+     * Close the authentication engine of the realm, see {@link JDBCAuthenticator#close()}.
+     * The engine of a replaced realm is closed by the realm replacing it.
+     */
+    public void close()
+    {
+        if ( authenticator != null ) {
+            AUTHENTICATORS.remove( getName(), authenticator );
+            authenticator.close();
+        }
+    }
+
+    /**
+     * Warm up the realm, see {@link JDBCAuthenticator#warmUp(int)}.
+     * <p>
+     * @param iterations The number of synthetic password checks.
+     * @throws BadRealmException If the queries cannot be prepared or if the password type rejects its own encryption.
+     */
+    public void warmUp( final int iterations )
+            throws BadRealmException
+    {
+        try {
+            authenticator.warmUp( iterations );
+        } catch ( AuthenticatorException ex ) {
+            throw new BadRealmException( ex );
+        }
+    }
+
+    @Override
+    public String getAuthType()
+    {
+        return JDBCRealmExtended.AUTH_TYPE;
+    }
+
+    @Override
+    public Enumeration<String> getGroupNames( final String username )
+            throws InvalidOperationException, NoSuchUserException
+    {
+        return authenticator.findGroupSet( username ).enumeration();
+
+    }
+
+    /**
+     * Anthenticate a user with a username and password and return groups belonging,
+     * see {@link JDBCAuthenticator#authenticate(String, String)}.
+     * <p>
+     * @param username A username.
+     * @param password A user plaintext password.
+     * @return A string array of groups belonging to a username,
+     *         If the user isn't authenticate it return an empty string array.
+     */
+    public String[] authenticate( final String username, final String password )
+    {
+        return authenticator.authenticate( username, password );
+    }
+
+    /**
+     * Return the queue of the login outcomes, drained asynchronously to the audit appender.
+     * <p>
+     * @return The realm {@link AuditLog}, <code>null</code> if the realm isn't initialized.
+     */
+    public AuditLog getAuditLog()
+    {
+        return authenticator != null ? authenticator.getAuditLog() : null;
+    }
+
+    /**
+     * @return The authentication engine of the realm, <code>null</code> if the realm isn't initialized.
+     */
+    public JDBCAuthenticator getAuthenticator()
+    {
+        return authenticator;
+    }
+
+    /**
+     * Evict a user from the cache of all the instances of the cluster,
+     * to be called after its password or its groups changed.
+     * <p>
+     * @param username A username.
+     */
+    public void invalidate( final String username )
+    {
+        authenticator.invalidate( username );
+    }
+
+    /**
+     * Evict all the users from the cache of all the instances of the cluster.
+     */
+    public void invalidateAll()
+    {
+        authenticator.invalidateAll();
+    }
+
+    /**
+     * Returns a localized string.
+     * <p>
+     * @param level    A logging level.
+     * @param key      A name of a resource bundle to fetch.
+     * @param messVals A set of arguments to provide to the resource bundle.
+     * @return A formatted localized string.
+     */
+    private String log( final Level level, final String key, Object... messVals )
+    {
+        String message = jdbcreSm.getString( key, messVals );
+        if ( _logger.isLoggable( level ) ) {
+            _logger.log( level, message );
+        }
+        return message;
+    }
+
+}
@@ -0,0 +1,134 @@
+package glassfish.security.auth.jdbc.login;
+
+import glassfish.security.auth.jdbc.realm.JDBCRealmExtended;
+import glassfish.security.auth.jdbc.util.dao.ISecurityStorage;
+import glassfish.security.auth.jdbc.util.dao.SecurityStorage;
+import glassfish.security.auth.jdbc.util.dao.UserCredentials;
+import glassfish.security.auth.jdbc.util.factory.passwordtypes.ISaltedPasswordType;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.security.auth.Subject;
+import javax.security.auth.login.LoginException;
+import org.easymock.EasyMock;
+import org.glassfish.security.common.Group;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author RienderieN
+ */
+public class JDBCLoginModuleExtendedTest
+{
+
+    // A session without resources
+    private static final ISecurityStorage.Session NO_SESSION = new ISecurityStorage.Session()
+    {
+        @Override
+        public void close()
+        {
+        }
+    };
+
+    private ISaltedPasswordType passwordTypeMocked;
+    private SecurityStorage securityStorageMocked;
+
+    /*
+     * A login module of a realm, the callbacks GlassFish runs before authenticateUser being skipped.
+     */
+    private static class RealmLoginModule extends JDBCLoginModuleExtended
+    {
+
+        RealmLoginModule( final JDBCRealmExtended realm, final String username, final String password )
+        {
+            _subject = new Subject();
+            _currentRealm = realm;
+            _username = username;
+            _passwd = password.toCharArray();
+        }
+
+        Subject authenticate()
+                throws LoginException
+        {
+            authenticateUser();
+            return commit() ? _subject : null;
+        }
+    }
+
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        passwordTypeMocked = EasyMock.createMock( ISaltedPasswordType.class );
+        securityStorageMocked = EasyMock.createMock( SecurityStorage.class );
+    }
+
+    /*
+     * Return the names of the group principals of a subject.
+     */
+    private static List<String> groupNames( final Subject subject )
+    {
+        final List<String> names = new ArrayList<>();
+        for ( Principal principal : subject.getPrincipals( Group.class ) ) {
+            names.add( principal.getName() );
+        }
+        return names;
+    }
+
+    @Test
+    public void should_commit_group_principals()
+            throws LoginException
+    {
+        final String[] user = { "ME", "mepasse" };
+        final String[] groups = { "ME_GROUP", "THEM_GROUP" };
+
+        EasyMock.expect( securityStorageMocked.openSession() ).andReturn( NO_SESSION );
+        EasyMock.expect( securityStorageMocked.findCredentials( user[0] ) ).andReturn( new UserCredentials( user[1] + "encrypted", "salt" ) );
+        EasyMock.expect( securityStorageMocked.findGroupNames( user[0] ) ).andReturn( groups );
+        EasyMock.expect( passwordTypeMocked.checkPassword( user[1], user[1] + "encrypted", "salt" ) ).andReturn( Boolean.TRUE );
+        EasyMock.replay( securityStorageMocked );
+        EasyMock.replay( passwordTypeMocked );
+
+        final Subject subject = new RealmLoginModule( new JDBCRealmExtended( passwordTypeMocked, securityStorageMocked ), user[0], user[1] ).authenticate();
+
+        Assert.assertNotNull( "Should commit the subject of ME", subject );
+        Assert.assertTrue( "Should commit the group principals of ME", groupNames( subject ).containsAll( Arrays.asList( groups ) ) );
+        EasyMock.verify( securityStorageMocked );
+        EasyMock.verify( passwordTypeMocked );
+    }
+
+    @Test( expected = LoginException.class )
+    public void should_reject_login_without_group()
+            throws LoginException
+    {
+        final String[] user = { "ME", "mepasse" };
+
+        EasyMock.expect( securityStorageMocked.openSession() ).andReturn( NO_SESSION );
+        EasyMock.expect( securityStorageMocked.findCredentials( user[0] ) ).andReturn( new UserCredentials( user[1] + "encrypted", "salt" ) );
+        EasyMock.expect( securityStorageMocked.findGroupNames( user[0] ) ).andReturn( new String[ 0 ] );
+        EasyMock.expect( passwordTypeMocked.checkPassword( user[1], user[1] + "encrypted", "salt" ) ).andReturn( Boolean.TRUE );
+        EasyMock.replay( securityStorageMocked );
+        EasyMock.replay( passwordTypeMocked );
+
+        new RealmLoginModule( new JDBCRealmExtended( passwordTypeMocked, securityStorageMocked ), user[0], user[1] ).authenticate();
+    }
+
+    @Test( expected = LoginException.class )
+    public void should_reject_login_bad_password()
+            throws LoginException
+    {
+        final String[] user = { "ME", "mepasse" };
+
+        EasyMock.expect( securityStorageMocked.openSession() ).andReturn( NO_SESSION );
+        EasyMock.expect( securityStorageMocked.findCredentials( user[0] ) ).andReturn( new UserCredentials( user[1] + "encrypted", "salt" ) );
+        EasyMock.expect( passwordTypeMocked.checkPassword( "badpasse", user[1] + "encrypted", "salt" ) ).andReturn( Boolean.FALSE );
+        EasyMock.replay( securityStorageMocked );
+        EasyMock.replay( passwordTypeMocked );
+
+        new RealmLoginModule( new JDBCRealmExtended( passwordTypeMocked, securityStorageMocked ), user[0], "badpasse" ).authenticate();
+    }
+
+}
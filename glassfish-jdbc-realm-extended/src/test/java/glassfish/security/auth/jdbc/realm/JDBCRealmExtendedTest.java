@@ -0,0 +1,209 @@
+package glassfish.security.auth.jdbc.realm;
+
+import com.sun.appserv.security.AppservRealm;
+import com.sun.enterprise.security.auth.realm.BadRealmException;
+import com.sun.enterprise.security.auth.realm.InvalidOperationException;
+import com.sun.enterprise.security.auth.realm.NoSuchUserException;
+import glassfish.security.auth.jdbc.core.JDBCAuthenticator;
+import glassfish.security.auth.jdbc.util.audit.AuditEvent;
+import glassfish.security.auth.jdbc.util.dao.GroupNameTable;
+import glassfish.security.auth.jdbc.util.dao.ISecurityStorage;
+import glassfish.security.auth.jdbc.util.dao.SecurityStorage;
+import glassfish.security.auth.jdbc.util.dao.UserCredentials;
+import glassfish.security.auth.jdbc.util.dao.exceptions.SecurityStorageException;
+import glassfish.security.auth.jdbc.util.factory.PasswordTypeFactory;
+import glassfish.security.auth.jdbc.util.factory.passwordtypes.ISaltedPasswordType;
+import glassfish.security.auth.jdbc.util.metrics.SecurityMetrics;
+import glassfish.security.auth.jdbc.util.validation.CredentialsValidator;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author RienderieN
+ */
+public class JDBCRealmExtendedTest
+{
+
+    // A session without resources
+    private static final ISecurityStorage.Session NO_SESSION = new ISecurityStorage.Session()
+    {
+        @Override
+        public void close()
+        {
+        }
+    };
+
+    private ISaltedPasswordType passwordTypeMocked;
+    private SecurityStorage securityStorageMocked;
+
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        passwordTypeMocked = EasyMock.createMock( ISaltedPasswordType.class );
+        securityStorageMocked = EasyMock.createMock( SecurityStorage.class );
+    }
+
+    @Test
+    public void should_authenticate_user()
+    {
+        final String[] user = { "ME", "mepasse" };
+        final String[] userGroups = { "ME_GROUP", "AN_OTHER_GROUP" };
+
+        EasyMock.reset( securityStorageMocked );
+        EasyMock.reset( passwordTypeMocked );
+        EasyMock.expect( securityStorageMocked.openSession() ).andReturn( NO_SESSION );
+        EasyMock.expect( securityStorageMocked.findCredentials( user[0] ) ).andReturn( new UserCredentials( user[1] + "encrypted", "salt" ) );
+        EasyMock.expect( securityStorageMocked.findGroupNames( user[0] ) ).andReturn( userGroups );
+        EasyMock.expect( passwordTypeMocked.checkPassword( user[1], user[1] + "encrypted", "salt" ) ).andReturn( Boolean.TRUE );
+        EasyMock.replay( securityStorageMocked );
+        EasyMock.replay( passwordTypeMocked );
+
+        JDBCRealmExtended jdbcre = new JDBCRealmExtended( passwordTypeMocked, securityStorageMocked );
+        List<String> groupsFound = Arrays.asList( jdbcre.authenticate( user[0], user[1] ) );
+        Assert.assertTrue( "Should authenticate the user ME and return the groups to which it belongs", groupsFound.containsAll( Arrays.asList( userGroups ) ) );
+    }
+
+    @Test
+    public void should_check_dummy_password_for_unknown_user()
+    {
+        final String[] user = { "NOBODY", "nobodypasse" };
+
+        EasyMock.reset( securityStorageMocked );
+        EasyMock.reset( passwordTypeMocked );
+        EasyMock.expect( securityStorageMocked.openSession() ).andReturn( NO_SESSION );
+        EasyMock.expect( securityStorageMocked.findCredentials( user[0] ) ).andReturn( null );
+        EasyMock.expect( passwordTypeMocked.encryptPassword( EasyMock.anyObject( String.class ) ) ).andReturn( "dummyencrypted" );
+        EasyMock.expect( passwordTypeMocked.checkPassword( user[1], "dummyencrypted" ) ).andReturn( Boolean.FALSE );
+        EasyMock.replay( securityStorageMocked );
+        EasyMock.replay( passwordTypeMocked );
+
+        JDBCRealmExtended jdbcre = new JDBCRealmExtended( passwordTypeMocked, securityStorageMocked );
+        Assert.assertNull( "Shouldn't authenticate an unknown user", jdbcre.authenticate( user[0], user[1] ) );
+        EasyMock.verify( passwordTypeMocked );
+    }
+
+    @Test
+    public void should_getGroupNames()
+            throws InvalidOperationException, NoSuchUserException
+    {
+        final String username = "ME";
+        final String[] groups = { "ME_GROUP", "THEM_GROUP" };
+
+        EasyMock.reset( securityStorageMocked );
+        EasyMock.reset( passwordTypeMocked );
+        EasyMock.expect( securityStorageMocked.findGroupSet( username ) ).andReturn( new GroupNameTable().encode( groups ) );
+        EasyMock.replay( securityStorageMocked );
+
+        JDBCRealmExtended jdbcre = new JDBCRealmExtended( passwordTypeMocked, securityStorageMocked );
+        ArrayList<String> groupsFound = Collections.list( jdbcre.getGroupNames( username ) );
+
+        Assert.assertTrue( "Should get ME's group names", Arrays.asList( groups ).containsAll( groupsFound ) );
+
+    }
+
+    @Test
+    public void should_reject_malformed_credentials_before_storage()
+    {
+        final SecurityMetrics metrics = new SecurityMetrics();
+        final CredentialsValidator validator = new CredentialsValidator( 16, "[A-Za-z0-9._@-]", 64, metrics );
+
+        EasyMock.reset( securityStorageMocked );
+        EasyMock.reset( passwordTypeMocked );
+        EasyMock.replay( securityStorageMocked );
+        EasyMock.replay( passwordTypeMocked );
+
+        JDBCRealmExtended jdbcre = new JDBCRealmExtended( passwordTypeMocked, securityStorageMocked, validator );
+        Assert.assertNull( "Should reject a too long user name", jdbcre.authenticate( "ME_WITH_A_VERY_LONG_NAME", "mepasse" ) );
+        Assert.assertNull( "Should reject a forbidden character", jdbcre.authenticate( "ME' OR '1'='1", "mepasse" ) );
+        Assert.assertNull( "Should reject a too long password", jdbcre.authenticate( "ME", new String( new char[ 65 ] ) ) );
+        Assert.assertEquals( "Should count the rejected user names", 2, metrics.getRejectedUsernames() );
+        Assert.assertEquals( "Should count the rejected passwords", 1, metrics.getRejectedPasswords() );
+        // neither the database nor the hasher is reached
+        EasyMock.verify( securityStorageMocked );
+        EasyMock.verify( passwordTypeMocked );
+    }
+
+    @Test
+    public void should_warm_up_queries_and_password_checks()
+            throws BadRealmException, SecurityStorageException
+    {
+        EasyMock.reset( securityStorageMocked );
+        EasyMock.reset( passwordTypeMocked );
+        securityStorageMocked.validateQueries();
+        EasyMock.expectLastCall();
+        EasyMock.expect( passwordTypeMocked.encryptPassword( EasyMock.anyObject( String.class ) ) ).andReturn( "selfcheckencrypted" );
+        EasyMock.expect( passwordTypeMocked.checkPassword( EasyMock.anyObject( String.class ), EasyMock.eq( "selfcheckencrypted" ) ) )
+                .andReturn( Boolean.TRUE ).times( 1 + 10 );
+        // the unknown user check reuses the self-check encrypted password
+        EasyMock.expect( securityStorageMocked.openSession() ).andReturn( NO_SESSION );
+        EasyMock.expect( securityStorageMocked.findCredentials( "NOBODY" ) ).andReturn( null );
+        EasyMock.expect( passwordTypeMocked.checkPassword( "nobodypasse", "selfcheckencrypted" ) ).andReturn( Boolean.FALSE );
+        EasyMock.replay( securityStorageMocked );
+        EasyMock.replay( passwordTypeMocked );
+
+        JDBCRealmExtended jdbcre = new JDBCRealmExtended( passwordTypeMocked, securityStorageMocked );
+        jdbcre.warmUp( 10 );
+        Assert.assertNull( "Shouldn't authenticate an unknown user", jdbcre.authenticate( "NOBODY", "nobodypasse" ) );
+        EasyMock.verify( securityStorageMocked );
+        EasyMock.verify( passwordTypeMocked );
+    }
+
+    @Test( expected = BadRealmException.class )
+    public void should_throw_BadRealmException_password_type_self_check()
+            throws BadRealmException, SecurityStorageException
+    {
+        EasyMock.reset( securityStorageMocked );
+        EasyMock.reset( passwordTypeMocked );
+        securityStorageMocked.validateQueries();
+        EasyMock.expectLastCall();
+        EasyMock.expect( passwordTypeMocked.encryptPassword( EasyMock.anyObject( String.class ) ) ).andReturn( "selfcheckencrypted" );
+        EasyMock.expect( passwordTypeMocked.checkPassword( EasyMock.anyObject( String.class ), EasyMock.eq( "selfcheckencrypted" ) ) )
+                .andReturn( Boolean.FALSE );
+        EasyMock.replay( securityStorageMocked );
+        EasyMock.replay( passwordTypeMocked );
+
+        new JDBCRealmExtended( passwordTypeMocked, securityStorageMocked ).warmUp( 10 );
+    }
+
+    @Test
+    public void should_close_replaced_realm()
+            throws Exception
+    {
+        Properties props = new Properties();
+        props.setProperty( AppservRealm.JAAS_CONTEXT_PARAM, "jdbcRealmExtended" );
+        props.setProperty( PasswordTypeFactory.PROPERTY.DIGEST_ALGORITHM.toString(), "sha-256" );
+        props.setProperty( SecurityStorage.PROPERTY.DATASOURCE_JNDI.toString(), "java:/comp/env/jdbc/unreachableDatasource" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_TABLE.toString(), "USERS" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_NAME_COLUMN.toString(), "USERNAME" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_PASSWORD_COLUMN.toString(), "PASSWORD" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_TABLE.toString(), "GROUPS" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_NAME_COLUMN.toString(), "NAME" );
+        File audit = File.createTempFile( "jdbcrealm", ".audit" );
+        audit.deleteOnExit();
+        props.setProperty( JDBCAuthenticator.AUDIT_FILE_PARAM, audit.getPath() );
+
+        JDBCRealmExtended realm = new JDBCRealmExtended();
+        realm.init( props );
+        Assert.assertTrue( "Should queue the login outcomes",
+                realm.getAuditLog().publish( AuditEvent.OUTCOME.FAILURE, "jdbcRealm", "SuperMan", null, 0 ) );
+
+        // GlassFish replaces a reconfigured realm with a new instance
+        JDBCRealmExtended replacing = new JDBCRealmExtended();
+        replacing.init( props );
+        Assert.assertFalse( "Should close the replaced realm",
+                realm.getAuditLog().publish( AuditEvent.OUTCOME.FAILURE, "jdbcRealm", "SuperMan", null, 0 ) );
+        Assert.assertTrue( "Shouldn't close the replacing realm",
+                replacing.getAuditLog().publish( AuditEvent.OUTCOME.FAILURE, "jdbcRealm", "SuperMan", null, 0 ) );
+        replacing.close();
+    }
+}
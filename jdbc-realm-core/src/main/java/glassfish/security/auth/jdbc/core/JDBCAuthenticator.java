@@ -0,0 +1,580 @@
+package glassfish.security.auth.jdbc.core;
+
+import glassfish.security.auth.jdbc.core.exceptions.AuthenticatorException;
+import glassfish.security.auth.jdbc.util.audit.AuditEvent;
+import glassfish.security.auth.jdbc.util.audit.AuditLog;
+import glassfish.security.auth.jdbc.util.audit.CompositeAuditAppender;
+import glassfish.security.auth.jdbc.util.audit.FileAuditAppender;
+import glassfish.security.auth.jdbc.util.audit.IAuditAppender;
+import glassfish.security.auth.jdbc.util.audit.LoggerAuditAppender;
+import glassfish.security.auth.jdbc.util.dao.GroupSet;
+import glassfish.security.auth.jdbc.util.dao.ISecurityStorage;
+import glassfish.security.auth.jdbc.util.dao.SecurityStorage;
+import glassfish.security.auth.jdbc.util.dao.UserCredentials;
+import glassfish.security.auth.jdbc.util.dao.decorators.CachingSecurityStorage;
+import glassfish.security.auth.jdbc.util.dao.decorators.CoalescingSecurityStorage;
+import glassfish.security.auth.jdbc.util.dao.decorators.MetricsSecurityStorage;
+import glassfish.security.auth.jdbc.util.dao.exceptions.SecurityStorageException;
+import glassfish.security.auth.jdbc.util.factory.PasswordTypeFactory;
+import glassfish.security.auth.jdbc.util.factory.exceptions.PasswordTypeException;
+import glassfish.security.auth.jdbc.util.factory.passwordtypes.IPasswordType;
+import glassfish.security.auth.jdbc.util.factory.passwordtypes.ISaltedPasswordType;
+import glassfish.security.auth.jdbc.util.factory.passwordtypes.SaltedPasswordAdapter;
+import glassfish.security.auth.jdbc.util.i18n.StringManager;
+import glassfish.security.auth.jdbc.util.validation.CredentialsValidator;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * JDBCAuthenticator class is the authentication engine of the realm: it checks the credentials against the
+ * {@link ISecurityStorage}, resolves the per-user password types and publishes the login outcomes to the
+ * {@link AuditLog}. It has no application server dependency, so it runs in a plain JVM (a JMH fork, an other server)
+ * with the same properties as the GlassFish realm.
+ * <p>
+ * Besides the {@link SecurityStorage} and {@link PasswordTypeFactory} properties, it reads the
+ * <code>storage-decorators</code>, <code>storage-cache-*</code>, <code>warmup-iterations</code>, <code>username-*</code>,
+ * <code>password-max-length</code> and <code>audit-*</code> properties described by the realm.
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ * @see SecurityStorage
+ * @see PasswordTypeFactory
+ */
+public class JDBCAuthenticator
+{
+
+    /**
+     * The property of the decorators stacked over the storage (value: {@value }).
+     */
+    public final static String STORAGE_DECORATORS_PARAM = "storage-decorators";
+
+    /**
+     * The decorator caching the users in memory (value: {@value }).
+     */
+    public final static String STORAGE_DECORATOR_CACHING = "caching";
+
+    /**
+     * The decorator sharing the concurrent lookups of a same user (value: {@value }).
+     */
+    public final static String STORAGE_DECORATOR_COALESCING = "coalescing";
+
+    /**
+     * The decorator counting and timing the lookups (value: {@value }).
+     */
+    public final static String STORAGE_DECORATOR_METRICS = "metrics";
+
+    /**
+     * The property of the number of synthetic password checks of the warm-up (value: {@value }).
+     */
+    public final static String WARMUP_ITERATIONS_PARAM = "warmup-iterations";
+
+    /**
+     * The property of the maximum length of a user name (value: {@value }).
+     */
+    public final static String USERNAME_MAX_LENGTH_PARAM = "username-max-length";
+
+    /**
+     * The property of the allowed characters of a user name (value: {@value }).
+     */
+    public final static String USERNAME_ALLOWED_CHARACTERS_PARAM = "username-allowed-characters";
+
+    /**
+     * The property of the maximum length of a password (value: {@value }).
+     */
+    public final static String PASSWORD_MAX_LENGTH_PARAM = "password-max-length";
+
+    /**
+     * The property of the number of login outcomes queued for the audit log (value: {@value }).
+     */
+    public final static String AUDIT_BUFFER_SIZE_PARAM = "audit-buffer-size";
+
+    /**
+     * The property of the policy applied when the audit log queue is full (value: {@value }).
+     */
+    public final static String AUDIT_DROP_POLICY_PARAM = "audit-drop-policy";
+
+    /**
+     * The property of the audit file (value: {@value }).
+     */
+    public final static String AUDIT_FILE_PARAM = "audit-file";
+
+    /**
+     * The property of the audit file maximum size in bytes (value: {@value }).
+     */
+    public final static String AUDIT_FILE_MAX_SIZE_PARAM = "audit-file-max-size";
+
+    /**
+     * The property of the number of rotated audit files kept (value: {@value }).
+     */
+    public final static String AUDIT_FILE_MAX_COUNT_PARAM = "audit-file-max-count";
+
+    /**
+     * The logger of the login outcomes, named after the GlassFish login module (value: {@value }).
+     */
+    public final static String AUDIT_LOGGER_NAME = "glassfish.security.auth.jdbc.login.JDBCLoginModuleExtended";
+
+    // Cached for a digest-algorithm value which cannot be created, so that it's created and logged once
+    private final static Object UNRESOLVED_PASSWORD_TYPE = new Object();
+
+    // The realm name recorded by the audit log, may be null
+    private final String name;
+    private ISaltedPasswordType passwordType;
+    private ISecurityStorage securityStorage;
+    // The realm properties used to create the per-user password types
+    private Properties passwordTypeProperties;
+    // The per-user password types already created, or UNRESOLVED_PASSWORD_TYPE, by digest-algorithm value
+    private final ConcurrentMap<String, Object> passwordTypes = new ConcurrentHashMap<>();
+    // The dummy encrypted password checked when a user doesn't exist
+    private volatile String dummyPassword;
+    // The login outcomes queue, null if the authenticator isn't created from properties
+    private AuditLog auditLog;
+    // The malformed credentials filter, null if the credentials aren't validated
+    private CredentialsValidator credentialsValidator;
+
+    private final StringManager jdbcauthSm = StringManager.getStringManager( JDBCAuthenticator.class.getSimpleName(),
+            JDBCAuthenticator.class.getClassLoader() );
+
+    /**
+     * @param name                 The realm name recorded by the audit log.
+     *                             May be <code>null</code>.
+     * @param passwordType         A {@link IPasswordType}.
+     * @param securityStorage      A {@link ISecurityStorage}.
+     * @param credentialsValidator A {@link CredentialsValidator}.
+     *                             May be <code>null</code>.
+     */
+    public JDBCAuthenticator( final String name, final IPasswordType passwordType, final ISecurityStorage securityStorage,
+            final CredentialsValidator credentialsValidator )
+    {
+        this.name = name;
+        this.passwordType = SaltedPasswordAdapter.of( passwordType );
+        this.securityStorage = securityStorage;
+        this.credentialsValidator = credentialsValidator;
+    }
+
+    /**
+     * Create the password type, the storage and its decorators, the credentials validator and the audit log
+     * from the realm properties, then warm up if the warmup-iterations property is defined.
+     * <p>
+     * @param name  The realm name recorded by the audit log.
+     *              May be <code>null</code>.
+     * @param props The realm properties.
+     * @throws AuthenticatorException If a property is invalid, if the queries cannot be prepared or if the password
+     *                                type rejects its own encryption.
+     */
+    public JDBCAuthenticator( final String name, final Properties props )
+            throws AuthenticatorException
+    {
+        this.name = name;
+        try {
+            passwordTypeProperties = props;
+            passwordType = PasswordTypeFactory.getInstance().createPasswordType( props );
+        } catch ( IllegalArgumentException | PasswordTypeException ex ) {
+            throw new AuthenticatorException( ex );
+        }
+
+        // a custom query is validated now rather than at the first login
+        final boolean customQueries = props.getProperty( SecurityStorage.PROPERTY.USER_PASSWORD_QUERY.toString() ) != null
+                || props.getProperty( SecurityStorage.PROPERTY.USER_GROUPS_QUERY.toString() ) != null;
+        final SecurityStorage storage;
+        try {
+            storage = new SecurityStorage( props );
+        } catch ( SecurityStorageException ex ) {
+            throw new AuthenticatorException( ex );
+        }
+
+        // the storage threads and its invalidation bus are released if the initialization fails
+        try {
+            securityStorage = decorateSecurityStorage( storage, props );
+            if ( customQueries ) {
+                securityStorage.validateQueries();
+            }
+
+            final String allowedCharacters = props.getProperty( USERNAME_ALLOWED_CHARACTERS_PARAM );
+            try {
+                credentialsValidator = new CredentialsValidator(
+                        ( int ) parseLong( props, USERNAME_MAX_LENGTH_PARAM, CredentialsValidator.DEFAULT_USERNAME_MAX_LENGTH, 1, Integer.MAX_VALUE ),
+                        allowedCharacters,
+                        ( int ) parseLong( props, PASSWORD_MAX_LENGTH_PARAM, CredentialsValidator.DEFAULT_PASSWORD_MAX_LENGTH, 1, Integer.MAX_VALUE ),
+                        securityStorage.getMetrics() );
+            } catch ( IllegalArgumentException ex ) {
+                final String msg = log( Level.SEVERE, "jdbcauthenticator.init.invalidprop.exception",
+                        USERNAME_ALLOWED_CHARACTERS_PARAM, allowedCharacters, JDBCAuthenticator.class.getName() + ".init" );
+                throw new AuthenticatorException( msg );
+            }
+
+            final int warmupIterations = ( int ) parseLong( props, WARMUP_ITERATIONS_PARAM, 0, 0, 1000000 );
+            auditLog = createAuditLog( props );
+
+            if ( warmupIterations > 0 ) {
+                warmUp( warmupIterations );
+            }
+            // warm start from the cache snapshot, if any, and join the cluster invalidation bus (evicting from the decorators too)
+            securityStorage.start( securityStorage );
+        } catch ( SecurityStorageException ex ) {
+            release( storage );
+            throw new AuthenticatorException( ex );
+        } catch ( AuthenticatorException | RuntimeException ex ) {
+            release( storage );
+            throw ex;
+        }
+    }
+
+    /**
+     * Warm up the authenticator so the first login doesn't pay the JNDI lookup, the driver loading, the statement
+     * preparation and the JIT compilation of the password check, and report a misconfiguration at the deployment:
+     * the datasource is resolved and the queries are prepared, the password type is checked against its own
+     * encryption, then the password check is run iterations times.
+     * <p>
+     * @param iterations The number of synthetic password checks.
+     * @throws AuthenticatorException If the queries cannot be prepared or if the password type rejects its own encryption.
+     */
+    public void warmUp( final int iterations )
+            throws AuthenticatorException
+    {
+        final long start = System.nanoTime();
+        try {
+            securityStorage.validateQueries();
+        } catch ( SecurityStorageException ex ) {
+            throw new AuthenticatorException( ex );
+        }
+        final long queriesTime = System.nanoTime() - start;
+
+        // the self-check encryption becomes the dummy password of the unknown users
+        final String secret = UUID.randomUUID().toString();
+        final String encrypted = passwordType.encryptPassword( secret );
+        if ( encrypted == null || !passwordType.checkPassword( secret, encrypted ) ) {
+            final String msg = log( Level.SEVERE, "jdbcauthenticator.warmup.selfcheck.exception",
+                    passwordType.getClass().getSimpleName(), JDBCAuthenticator.class.getName() + ".warmUp" );
+            throw new AuthenticatorException( msg );
+        }
+        dummyPassword = encrypted;
+
+        final long hashStart = System.nanoTime();
+        for ( int i = 0; i < iterations; i++ ) {
+            passwordType.checkPassword( secret + i, encrypted );
+        }
+        final long hashTime = System.nanoTime() - hashStart;
+
+        log( Level.INFO, "jdbcauthenticator.warmup.info", TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start ),
+                TimeUnit.NANOSECONDS.toMillis( queriesTime ), iterations, TimeUnit.NANOSECONDS.toMillis( hashTime ),
+                iterations > 0 ? TimeUnit.NANOSECONDS.toMicros( hashTime / iterations ) : 0, JDBCAuthenticator.class.getName() + ".warmUp" );
+    }
+
+    /**
+     * Anthenticate a user with a username and password and return groups belonging.
+     * <p>
+     * Malformed credentials (see {@link CredentialsValidator}) are rejected before any query or hashing.
+     * If the user doesn't exist, the password is checked against a dummy encrypted password
+     * so that every login costs the same time whether the user exists or not.
+     * The outcome and its latency are published to the audit log.
+     * <p>
+     * @param username A username.
+     * @param password A user plaintext password.
+     * @return A string array of groups belonging to a username,
+     *         If the user isn't authenticate it return an empty string array.
+     */
+    public String[] authenticate( final String username, final String password )
+    {
+        final long start = System.nanoTime();
+        String[] groups = null;
+        if ( credentialsValidator == null || credentialsValidator.validate( username, password ) ) {
+            // the credentials and the groups of the login share a connection
+            final ISecurityStorage.Session session = securityStorage.openSession();
+            try {
+                groups = checkPassword( username, password ) ? securityStorage.findGroupNames( username ) : null;
+            } finally {
+                session.close();
+            }
+        }
+        if ( auditLog != null && auditLog.isEnabled() ) {
+            auditLog.publish( groups != null && groups.length > 0 ? AuditEvent.OUTCOME.SUCCESS : AuditEvent.OUTCOME.FAILURE,
+                    name, username, groups, System.nanoTime() - start );
+        }
+        return groups;
+    }
+
+    /**
+     * Find the groups of a user.
+     * <p>
+     * @param username A username.
+     * @return The set of groups belonging to the user.
+     */
+    public GroupSet findGroupSet( final String username )
+    {
+        return securityStorage.findGroupSet( username );
+    }
+
+    /**
+     * Return the queue of the login outcomes, drained asynchronously to the audit appender.
+     * <p>
+     * @return The {@link AuditLog}, <code>null</code> if the authenticator isn't created from properties.
+     */
+    public AuditLog getAuditLog()
+    {
+        return auditLog;
+    }
+
+    /**
+     * @return The storage of the users and groups, with its decorators.
+     */
+    public ISecurityStorage getSecurityStorage()
+    {
+        return securityStorage;
+    }
+
+    /**
+     * Evict a user from the cache of all the instances of the cluster,
+     * to be called after its password or its groups changed.
+     * <p>
+     * @param username A username.
+     */
+    public void invalidate( final String username )
+    {
+        securityStorage.invalidate( username );
+    }
+
+    /**
+     * Evict all the users from the cache of all the instances of the cluster.
+     */
+    public void invalidateAll()
+    {
+        securityStorage.invalidateAll();
+    }
+
+    /**
+     * Release the background resources of the authenticator once it isn't used anymore (the realm is replaced or
+     * undeployed): append the queued login outcomes and close the audit log, then close the storage, its invalidation
+     * bus, its background refreshes and its cache snapshots.
+     */
+    public void close()
+    {
+        if ( auditLog != null ) {
+            auditLog.close();
+        }
+        securityStorage.close();
+    }
+
+    /**
+     * Release the audit log and the storage of a failed initialization.
+     * <p>
+     * @param storage The storage, the decorators may not be created yet.
+     */
+    private void release( final SecurityStorage storage )
+    {
+        if ( auditLog != null ) {
+            auditLog.close();
+        }
+        storage.close();
+    }
+
+    /**
+     * Check the password of a user.
+     * <p>
+     * @param username A username.
+     * @param password A user plaintext password.
+     * @return <code>true</code> if the user is authenticated, <code>false</code> otherwise.
+     */
+    private boolean checkPassword( final String username, final String password )
+    {
+        final UserCredentials credentials = securityStorage.findCredentials( username );
+        final ISaltedPasswordType userPasswordType = credentials != null ? resolvePasswordType( credentials.getPasswordType() ) : null;
+        if ( userPasswordType == null || credentials.getPassword() == null ) {
+            passwordType.checkPassword( password, getDummyPassword() );
+            return false;
+        }
+        return userPasswordType.checkPassword( password, credentials.getPassword(), credentials.getSalt() );
+    }
+
+    /**
+     * Create the audit log of the login outcomes: logged, and written to the audit-file property if defined.
+     * <p>
+     * @param props The realm properties.
+     * @return The audit log.
+     * @throws AuthenticatorException If an audit property is invalid or if the audit file cannot be opened.
+     */
+    private AuditLog createAuditLog( final Properties props )
+            throws AuthenticatorException
+    {
+        final int bufferSize = ( int ) parseLong( props, AUDIT_BUFFER_SIZE_PARAM, AuditLog.DEFAULT_BUFFER_SIZE, 1, 1 << 30 );
+        final AuditLog.DROP_POLICY dropPolicy;
+        try {
+            dropPolicy = AuditLog.DROP_POLICY.fromName( props.getProperty( AUDIT_DROP_POLICY_PARAM ) );
+        } catch ( IllegalArgumentException ex ) {
+            final String msg = log( Level.SEVERE, "jdbcauthenticator.init.invalidprop.exception",
+                    AUDIT_DROP_POLICY_PARAM, props.getProperty( AUDIT_DROP_POLICY_PARAM ), JDBCAuthenticator.class.getName() + ".createAuditLog" );
+            throw new AuthenticatorException( msg );
+        }
+
+        IAuditAppender appender = new LoggerAuditAppender( Logger.getLogger( AUDIT_LOGGER_NAME ) );
+        final String auditFile = props.getProperty( AUDIT_FILE_PARAM );
+        if ( auditFile != null && !auditFile.trim().isEmpty() ) {
+            final long maxSize = parseLong( props, AUDIT_FILE_MAX_SIZE_PARAM, FileAuditAppender.DEFAULT_MAX_SIZE, 1, Long.MAX_VALUE );
+            final int maxCount = ( int ) parseLong( props, AUDIT_FILE_MAX_COUNT_PARAM, FileAuditAppender.DEFAULT_MAX_COUNT, 1, 1000 );
+            try {
+                appender = new CompositeAuditAppender( appender, new FileAuditAppender( new File( auditFile.trim() ), maxSize, maxCount ) );
+            } catch ( IOException ex ) {
+                final String msg = log( Level.SEVERE, "jdbcauthenticator.init.auditfile.exception",
+                        auditFile, ex.getMessage(), JDBCAuthenticator.class.getName() + ".createAuditLog" );
+                throw new AuthenticatorException( msg );
+            }
+        }
+        return new AuditLog( appender, bufferSize, dropPolicy );
+    }
+
+    /**
+     * Stack the decorators of the storage-decorators property over the storage.
+     * <p>
+     * @param storage The storage.
+     * @param props   The realm properties.
+     * @return The outermost decorator, or the storage if the property isn't defined.
+     * @throws AuthenticatorException If a decorator is unknown or cannot be created.
+     */
+    private ISecurityStorage decorateSecurityStorage( final ISecurityStorage storage, final Properties props )
+            throws AuthenticatorException
+    {
+        final String decorators = props.getProperty( STORAGE_DECORATORS_PARAM );
+        if ( decorators == null || decorators.trim().isEmpty() ) {
+            return storage;
+        }
+
+        ISecurityStorage decorated = storage;
+        for ( String decorator : decorators.split( "," ) ) {
+            final String decoratorName = decorator.trim();
+            try {
+                if ( STORAGE_DECORATOR_CACHING.equalsIgnoreCase( decoratorName ) ) {
+                    decorated = new CachingSecurityStorage( decorated, props );
+                } else if ( STORAGE_DECORATOR_COALESCING.equalsIgnoreCase( decoratorName ) ) {
+                    decorated = new CoalescingSecurityStorage( decorated, props );
+                } else if ( STORAGE_DECORATOR_METRICS.equalsIgnoreCase( decoratorName ) ) {
+                    decorated = new MetricsSecurityStorage( decorated, props );
+                } else if ( !decoratorName.isEmpty() ) {
+                    decorated = ( ISecurityStorage ) Class.forName( decoratorName, true, JDBCAuthenticator.class.getClassLoader() )
+                            .getConstructor( ISecurityStorage.class, Properties.class ).newInstance( decorated, props );
+                }
+            } catch ( IllegalArgumentException | ClassCastException | ReflectiveOperationException ex ) {
+                final Throwable cause = ex instanceof InvocationTargetException ? ex.getCause() : ex;
+                final String msg = log( Level.SEVERE, "jdbcauthenticator.init.invalidprop.exception",
+                        STORAGE_DECORATORS_PARAM, decoratorName + " (" + cause + ")", JDBCAuthenticator.class.getName() + ".decorateSecurityStorage" );
+                throw new AuthenticatorException( msg );
+            }
+        }
+        return decorated;
+    }
+
+    /**
+     * Parse an optional number property.
+     * <p>
+     * @param props        The realm properties.
+     * @param property     A property name.
+     * @param defaultValue The value returned if the property isn't defined.
+     * @param minValue     The minimum value.
+     * @param maxValue     The maximum value.
+     * @return The property value.
+     * @throws AuthenticatorException If the property value isn't a number between minValue and maxValue.
+     */
+    private long parseLong( final Properties props, final String property, final long defaultValue, final long minValue,
+            final long maxValue )
+            throws AuthenticatorException
+    {
+        final String value = props.getProperty( property );
+        if ( value == null || value.trim().isEmpty() ) {
+            return defaultValue;
+        }
+        try {
+            final long longValue = Long.parseLong( value.trim() );
+            if ( longValue >= minValue && longValue <= maxValue ) {
+                return longValue;
+            }
+        } catch ( NumberFormatException ex ) {
+            // thrown below
+        }
+        final String msg = log( Level.SEVERE, "jdbcauthenticator.init.invalidprop.exception",
+                property, value, JDBCAuthenticator.class.getName() + ".parseLong" );
+        throw new AuthenticatorException( msg );
+    }
+
+    /**
+     * Return a dummy encrypted password (created once with the realm password type)
+     * checked when a user doesn't exist.
+     * <p>
+     * @return A dummy encrypted password.
+     */
+    private String getDummyPassword()
+    {
+        if ( dummyPassword == null ) {
+            dummyPassword = passwordType.encryptPassword( UUID.randomUUID().toString() );
+        }
+        return dummyPassword;
+    }
+
+    /**
+     * Return the {@link IPasswordType} corresponding to a per-user password type.
+     * The per-user password types are created once with the realm properties and reused,
+     * a password type which cannot be created is logged once and its users are checked against the dummy encrypted
+     * password, so they cost the same time as the other rejected logins.
+     * <p>
+     * @param type A <code>digest-algorithm</code> value.
+     *             May be <code>null</code>.
+     * @return The realm password type if the type argument is null or empty,
+     *         the corresponding password type otherwise,
+     *         <code>null</code> if the password type cannot be created.
+     */
+    private ISaltedPasswordType resolvePasswordType( final String type )
+    {
+        if ( type == null || type.trim().isEmpty() || passwordTypeProperties == null ) {
+            return passwordType;
+        }
+
+        final String key = type.trim().toLowerCase();
+        Object userPasswordType = passwordTypes.get( key );
+        if ( userPasswordType == null ) {
+            final Properties props = new Properties();
+            props.putAll( passwordTypeProperties );
+            props.setProperty( PasswordTypeFactory.PROPERTY.DIGEST_ALGORITHM.toString(), key );
+            boolean resolved = true;
+            try {
+                userPasswordType = PasswordTypeFactory.getInstance().createPasswordType( props );
+            } catch ( PasswordTypeException ex ) {
+                userPasswordType = UNRESOLVED_PASSWORD_TYPE;
+                resolved = false;
+            }
+            final Object previous = passwordTypes.putIfAbsent( key, userPasswordType );
+            if ( previous != null ) {
+                userPasswordType = previous;
+            } else if ( !resolved ) {
+                log( Level.SEVERE, "jdbcauthenticator.resolvepasswordtype.exception",
+                        type, JDBCAuthenticator.class.getName() + ".resolvePasswordType" );
+            }
+        }
+        if ( userPasswordType == UNRESOLVED_PASSWORD_TYPE ) {
+            return null;
+        }
+        return ( ISaltedPasswordType ) userPasswordType;
+    }
+
+    /**
+     * Returns a localized string.
+     * <p>
+     * @param level    A logging level.
+     * @param key      A name of a resource bundle to fetch.
+     * @param messVals A set of arguments to provide to the resource bundle.
+     * @return A formatted localized string.
+     */
+    private String log( final Level level, final String key, Object... messVals )
+    {
+        String message = jdbcauthSm.getString( key, messVals );
+        if ( Logger.getLogger( JDBCAuthenticator.class.getName() ).isLoggable( level ) ) {
+            Logger.getLogger( JDBCAuthenticator.class.getName() ).log( level, message );
+        }
+        return message;
+    }
+
+}
@@ -0,0 +1,32 @@
+package glassfish.security.auth.jdbc.core.exceptions;
+
+/**
+ * AuthenticatorException class is threw by JDBCAuthenticator class when its properties are invalid.
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ */
+public class AuthenticatorException extends Exception
+{
+
+    public AuthenticatorException()
+    {
+        super();
+    }
+
+    public AuthenticatorException( String message )
+    {
+        super( message );
+    }
+
+    public AuthenticatorException( String message, Throwable cause )
+    {
+        super( message, cause );
+    }
+
+    public AuthenticatorException( Throwable cause )
+    {
+        super( cause );
+    }
+
+}
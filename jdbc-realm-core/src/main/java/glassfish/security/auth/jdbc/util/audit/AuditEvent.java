@@ -0,0 +1,124 @@
+package glassfish.security.auth.jdbc.util.audit;
+
+/**
+ * AuditEvent class is a login outcome of the {@link AuditLog} ring buffer.
+ * <p>
+ * The events are preallocated by the ring buffer and reused: an appender must not keep a reference to an event
+ * after {@link IAuditAppender#append(AuditEvent)} returns.
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ */
+public final class AuditEvent
+{
+
+    /**
+     * Login outcomes enumeration
+     */
+    public static enum OUTCOME
+    {
+
+        SUCCESS,
+        FAILURE;
+    }
+
+    // The ring buffer sequence of the published event, set last by the producer
+    private volatile long sequence = -1;
+    private OUTCOME outcome;
+    private String realm;
+    private String username;
+    private String[] groups;
+    private long timestamp;
+    private long latency;
+
+    AuditEvent()
+    {
+    }
+
+    void set( final OUTCOME outcome, final String realm, final String username, final String[] groups, final long timestamp,
+            final long latency )
+    {
+        this.outcome = outcome;
+        this.realm = realm;
+        this.username = username;
+        this.groups = groups;
+        this.timestamp = timestamp;
+        this.latency = latency;
+    }
+
+    void publish( final long sequence )
+    {
+        this.sequence = sequence;
+    }
+
+    long getSequence()
+    {
+        return sequence;
+    }
+
+    void clear()
+    {
+        realm = null;
+        username = null;
+        groups = null;
+    }
+
+    /**
+     * @return The login outcome.
+     */
+    public OUTCOME getOutcome()
+    {
+        return outcome;
+    }
+
+    /**
+     * @return The realm name.
+     *         May be <code>null</code>.
+     */
+    public String getRealm()
+    {
+        return realm;
+    }
+
+    /**
+     * @return The user name.
+     */
+    public String getUsername()
+    {
+        return username;
+    }
+
+    /**
+     * @return The user groups of a successful login.
+     *         May be <code>null</code>.
+     */
+    public String[] getGroups()
+    {
+        return groups;
+    }
+
+    /**
+     * @return The login time in milliseconds.
+     */
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+
+    /**
+     * @return The login duration in nanoseconds.
+     */
+    public long getLatency()
+    {
+        return latency;
+    }
+
+    /**
+     * @return The number of user groups of a successful login, 0 otherwise.
+     */
+    public int getGroupCount()
+    {
+        return groups != null ? groups.length : 0;
+    }
+
+}
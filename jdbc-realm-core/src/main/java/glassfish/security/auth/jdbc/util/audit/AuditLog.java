@@ -0,0 +1,281 @@
+package glassfish.security.auth.jdbc.util.audit;
+
+import glassfish.security.auth.jdbc.util.i18n.StringManager;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * AuditLog class hands the login outcomes over to an {@link IAuditAppender} without slowing down the logins.
+ * <p>
+ * The events are preallocated in a ring buffer. A login only claims a slot with a compare-and-set and fills it with
+ * references it already holds (no message formatting, no allocation); a single daemon thread drains the published
+ * events in batches, appends them and flushes the appender once per batch, and parks while the ring buffer is empty
+ * until a login publishes an event. When the ring buffer is full the event is
+ * dropped and counted rather than blocking the login (unless the {@link DROP_POLICY#BLOCK} policy is chosen). The appender enablement (a log level for example) is sampled by
+ * the consumer thread, so a disabled audit costs a volatile read.
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ * @see IAuditAppender
+ */
+public class AuditLog
+{
+
+    /**
+     * The policies applied when the ring buffer is full.
+     */
+    public static enum DROP_POLICY
+    {
+
+        /**
+         * The event is dropped and counted, the login isn't slowed down.
+         */
+        DROP( "drop" ),
+        /**
+         * The login waits for a free slot, no event is lost.
+         */
+        BLOCK( "block" );
+
+        private String name;
+
+        DROP_POLICY( String name )
+        {
+            this.name = name;
+        }
+
+        /**
+         * @param name A drop policy name (case insensitive).
+         *             May be <code>null</code>.
+         * @return The drop policy, {@link #DROP} if the name argument is null or empty.
+         * @throws IllegalArgumentException If the name doesn't correspond to a drop policy.
+         */
+        public static DROP_POLICY fromName( final String name )
+        {
+            if ( name == null || name.trim().isEmpty() ) {
+                return DROP;
+            }
+            for ( DROP_POLICY policy : values() ) {
+                if ( policy.name.equalsIgnoreCase( name.trim() ) ) {
+                    return policy;
+                }
+            }
+            throw new IllegalArgumentException( "Unknown audit drop policy " + name );
+        }
+
+        @Override
+        public String toString()
+        {
+            return name;
+        }
+    }
+
+    /**
+     * The default number of events of the ring buffer (value: {@value }).
+     */
+    public final static int DEFAULT_BUFFER_SIZE = 4096;
+
+    /**
+     * The maximum number of events appended between two flushes (value: {@value }).
+     */
+    public final static int MAX_BATCH_SIZE = 256;
+
+    // The consumer thread parks while the ring buffer is empty, woken by the producers or to sample the appender enablement
+    private final static long IDLE_NANOS = TimeUnit.SECONDS.toNanos( 1 );
+    // The producer pause while the ring buffer is full with the block policy
+    private final static long FULL_NANOS = TimeUnit.MICROSECONDS.toNanos( 50 );
+
+    private final AuditEvent[] events;
+    private final int mask;
+    private final IAuditAppender appender;
+    private final DROP_POLICY dropPolicy;
+    // The next sequence claimed by the producers
+    private final AtomicLong claimed = new AtomicLong();
+    // The next sequence drained by the consumer, written by the consumer thread only
+    private volatile long consumed;
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean enabled;
+    private volatile boolean closed;
+    // The consumer thread is parked (or about to) and must be unparked by the next published event
+    private volatile boolean idle;
+    private final Thread consumer;
+
+    private final StringManager auditSm = StringManager.getStringManager( AuditLog.class.getSimpleName(),
+            AuditLog.class.getClassLoader() );
+
+    /**
+     * @param appender   The appender of the events.
+     * @param bufferSize The number of events of the ring buffer (rounded up to a power of two).
+     */
+    public AuditLog( final IAuditAppender appender, final int bufferSize )
+    {
+        this( appender, bufferSize, DROP_POLICY.DROP );
+    }
+
+    /**
+     * @param appender   The appender of the events.
+     * @param bufferSize The number of events of the ring buffer (rounded up to a power of two).
+     * @param dropPolicy The policy applied when the ring buffer is full.
+     */
+    public AuditLog( final IAuditAppender appender, final int bufferSize, final DROP_POLICY dropPolicy )
+    {
+        if ( bufferSize < 1 || bufferSize > 1 << 30 ) {
+            throw new IllegalArgumentException( "bufferSize argument must be between 1 and 2^30" );
+        }
+        final int size = Integer.highestOneBit( bufferSize ) == bufferSize ? bufferSize : Integer.highestOneBit( bufferSize ) << 1;
+        this.events = new AuditEvent[ size ];
+        for ( int i = 0; i < size; i++ ) {
+            events[i] = new AuditEvent();
+        }
+        this.mask = size - 1;
+        this.appender = appender;
+        this.dropPolicy = dropPolicy;
+        this.enabled = appender.isEnabled();
+
+        consumer = new Thread( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                drain();
+            }
+        }, AuditLog.class.getSimpleName() );
+        consumer.setDaemon( true );
+        consumer.start();
+    }
+
+    /**
+     * @return <code>true</code> if the published events are appended.
+     */
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Publish a login outcome, without blocking.
+     * <p>
+     * @param outcome  The login outcome.
+     * @param realm    The realm name.
+     * @param username The user name.
+     * @param groups   The user groups of a successful login, the array must not be modified afterwards.
+     *                 May be <code>null</code>.
+     * @param latency  The login duration in nanoseconds.
+     * @return <code>true</code> if the event is queued, <code>false</code> if the audit is disabled or if the
+     *         ring buffer is full (with the drop policy).
+     */
+    public boolean publish( final AuditEvent.OUTCOME outcome, final String realm, final String username, final String[] groups,
+            final long latency )
+    {
+        if ( !enabled || closed ) {
+            return false;
+        }
+        long sequence;
+        while ( true ) {
+            sequence = claimed.get();
+            if ( sequence - consumed < events.length ) {
+                if ( claimed.compareAndSet( sequence, sequence + 1 ) ) {
+                    break;
+                }
+            } else if ( dropPolicy == DROP_POLICY.DROP || closed ) {
+                dropped.incrementAndGet();
+                return false;
+            } else {
+                LockSupport.parkNanos( this, FULL_NANOS );
+            }
+        }
+
+        final AuditEvent event = events[( int ) sequence & mask];
+        event.set( outcome, realm, username, groups, System.currentTimeMillis(), latency );
+        event.publish( sequence );
+        if ( idle ) {
+            LockSupport.unpark( consumer );
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of events dropped because the ring buffer was full (or because the audit log was closed
+     *         while a login was waiting with the block policy).
+     */
+    public long getDropped()
+    {
+        return dropped.get();
+    }
+
+    /**
+     * Append the events already published, then stop the consumer thread and close the appender.
+     */
+    public void close()
+    {
+        closed = true;
+        LockSupport.unpark( consumer );
+        try {
+            consumer.join( TimeUnit.SECONDS.toMillis( 5 ) );
+        } catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Drain the ring buffer until the audit log is closed.
+     */
+    private void drain()
+    {
+        long next = consumed;
+        while ( true ) {
+            int batch = 0;
+            AuditEvent event = events[( int ) next & mask];
+            while ( batch < MAX_BATCH_SIZE && event.getSequence() == next ) {
+                try {
+                    appender.append( event );
+                } catch ( RuntimeException ex ) {
+                    log( Level.WARNING, "auditlog.append.exception", ex, AuditLog.class.getName() + ".drain" );
+                }
+                event.clear();
+                consumed = ++next;
+                batch++;
+                event = events[( int ) next & mask];
+            }
+
+            if ( batch > 0 ) {
+                try {
+                    appender.flush();
+                } catch ( RuntimeException ex ) {
+                    log( Level.WARNING, "auditlog.append.exception", ex, AuditLog.class.getName() + ".drain" );
+                }
+            } else if ( closed ) {
+                break;
+            } else {
+                enabled = appender.isEnabled();
+                idle = true;
+                // checked again after idle is set, a producer missing the flag has published before this check
+                if ( event.getSequence() != next && !closed ) {
+                    LockSupport.parkNanos( this, IDLE_NANOS );
+                }
+                idle = false;
+            }
+        }
+        appender.close();
+    }
+
+    /**
+     * Returns a localized string.
+     * <p>
+     * @param level    A logging level.
+     * @param key      A name of a resource bundle to fetch.
+     * @param messVals A set of arguments to provide to the resource bundle.
+     * @return A formatted localized string.
+     */
+    private String log( final Level level, final String key, Object... messVals )
+    {
+        String message = auditSm.getString( key, messVals );
+        if ( Logger.getLogger( AuditLog.class.getName() ).isLoggable( level ) ) {
+            Logger.getLogger( AuditLog.class.getName() ).log( level, message );
+        }
+        return message;
+    }
+
+}
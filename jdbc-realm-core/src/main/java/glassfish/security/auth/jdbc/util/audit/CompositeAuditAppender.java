@@ -0,0 +1,79 @@
+package glassfish.security.auth.jdbc.util.audit;
+
+/**
+ * CompositeAuditAppender class hands the audit events over to several appenders, the enabled ones only.
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ */
+public class CompositeAuditAppender
+        implements IAuditAppender
+{
+
+    private final IAuditAppender[] appenders;
+
+    /**
+     * @param appenders The appenders of the events.
+     */
+    public CompositeAuditAppender( final IAuditAppender... appenders )
+    {
+        this.appenders = appenders.clone();
+    }
+
+    @Override
+    public boolean isEnabled()
+    {
+        for ( IAuditAppender appender : appenders ) {
+            if ( appender.isEnabled() ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void append( final AuditEvent event )
+    {
+        RuntimeException failure = null;
+        for ( IAuditAppender appender : appenders ) {
+            try {
+                appender.append( event );
+            } catch ( RuntimeException ex ) {
+                // the other appenders still get the event
+                failure = ex;
+            }
+        }
+        if ( failure != null ) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public void flush()
+    {
+        RuntimeException failure = null;
+        for ( IAuditAppender appender : appenders ) {
+            try {
+                appender.flush();
+            } catch ( RuntimeException ex ) {
+                failure = ex;
+            }
+        }
+        if ( failure != null ) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        for ( IAuditAppender appender : appenders ) {
+            try {
+                appender.close();
+            } catch ( RuntimeException ex ) {
+                // the other appenders are closed anyway
+            }
+        }
+    }
+
+}
@@ -0,0 +1,230 @@
+package glassfish.security.auth.jdbc.util.audit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * FileAuditAppender class writes the audit events to a file, a JSON object per line, for example:
+ * <pre>
+ * {"time":1500000000000,"realm":"jdbcRealm","user":"Bowser","outcome":"SUCCESS","latencyMicros":1250,"groups":2}
+ * </pre>
+ * The lines of a batch are encoded into a direct buffer and written with a {@link FileChannel}, then the file is
+ * forced to the disk once per batch (group commit): the more logins, the larger the batches and the cheaper the
+ * durability of each event. The file is rotated before a line exceeds its maximum size, the rotated files are suffixed
+ * with <code>.1</code> (the newest) to <code>.maxCount</code> (the oldest).
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ */
+public class FileAuditAppender
+        implements IAuditAppender
+{
+
+    /**
+     * The default maximum size of the file in bytes (value: {@value }).
+     */
+    public final static long DEFAULT_MAX_SIZE = 10L * 1024 * 1024;
+
+    /**
+     * The default number of rotated files kept (value: {@value }).
+     */
+    public final static int DEFAULT_MAX_COUNT = 5;
+
+    private final static Charset UTF_8 = Charset.forName( "UTF-8" );
+    private final static int BUFFER_SIZE = 64 * 1024;
+    private final static char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final File file;
+    private final long maxSize;
+    private final int maxCount;
+    private final StringBuilder line = new StringBuilder( 256 );
+    private final CharsetEncoder encoder = UTF_8.newEncoder().onMalformedInput( CodingErrorAction.REPLACE )
+            .onUnmappableCharacter( CodingErrorAction.REPLACE );
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect( BUFFER_SIZE );
+    private FileChannel channel;
+    // The size of the current file in bytes
+    private long size;
+
+    /**
+     * @param file     The audit file.
+     * @param maxSize  The maximum size of the file in bytes before it is rotated.
+     * @param maxCount The number of rotated files kept.
+     * @throws IOException If the file cannot be opened.
+     */
+    public FileAuditAppender( final File file, final long maxSize, final int maxCount )
+            throws IOException
+    {
+        if ( maxSize < 1 || maxCount < 1 ) {
+            throw new IllegalArgumentException( "maxSize and maxCount arguments must be positive" );
+        }
+        this.file = file;
+        this.maxSize = maxSize;
+        this.maxCount = maxCount;
+        open();
+    }
+
+    @Override
+    public boolean isEnabled()
+    {
+        return true;
+    }
+
+    @Override
+    public void append( final AuditEvent event )
+    {
+        line.setLength( 0 );
+        line.append( "{\"time\":" ).append( event.getTimestamp() );
+        line.append( ",\"realm\":" );
+        appendString( event.getRealm() );
+        line.append( ",\"user\":" );
+        appendString( event.getUsername() );
+        line.append( ",\"outcome\":\"" ).append( event.getOutcome() );
+        line.append( "\",\"latencyMicros\":" ).append( event.getLatency() / 1000 );
+        line.append( ",\"groups\":" ).append( event.getGroupCount() ).append( "}\n" );
+
+        try {
+            // a line is never split between two files
+            if ( size + buffer.position() > 0 && size + buffer.position() + utf8Length( line ) > maxSize ) {
+                write();
+                rotate();
+            }
+            final CharBuffer chars = CharBuffer.wrap( line );
+            encoder.reset();
+            while ( encoder.encode( chars, buffer, true ).isOverflow() ) {
+                write();
+            }
+            while ( encoder.flush( buffer ) == CoderResult.OVERFLOW ) {
+                write();
+            }
+        } catch ( IOException ex ) {
+            buffer.clear();
+            throw new IllegalStateException( "Audit file " + file + " cannot be written", ex );
+        }
+    }
+
+    @Override
+    public void flush()
+    {
+        try {
+            write();
+            channel.force( false );
+        } catch ( IOException ex ) {
+            buffer.clear();
+            throw new IllegalStateException( "Audit file " + file + " cannot be written", ex );
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        try {
+            flush();
+        } finally {
+            try {
+                channel.close();
+            } catch ( IOException ex ) {
+                // nothing more to write
+            }
+        }
+    }
+
+    /**
+     * @return The audit file.
+     */
+    public File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * Write the encoded lines.
+     * <p>
+     * @throws IOException If the file cannot be written.
+     */
+    private void write()
+            throws IOException
+    {
+        buffer.flip();
+        while ( buffer.hasRemaining() ) {
+            size += channel.write( buffer );
+        }
+        buffer.clear();
+    }
+
+    private void rotate()
+            throws IOException
+    {
+        channel.force( false );
+        channel.close();
+        for ( int i = maxCount - 1; i >= 1; i-- ) {
+            final File rotated = rotated( i );
+            if ( rotated.exists() ) {
+                Files.move( rotated.toPath(), rotated( i + 1 ).toPath(), StandardCopyOption.REPLACE_EXISTING );
+            }
+        }
+        Files.move( file.toPath(), rotated( 1 ).toPath(), StandardCopyOption.REPLACE_EXISTING );
+        open();
+    }
+
+    private File rotated( final int index )
+    {
+        return new File( file.getPath() + "." + index );
+    }
+
+    private void open()
+            throws IOException
+    {
+        channel = FileChannel.open( file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND );
+        size = channel.size();
+    }
+
+    private static int utf8Length( final CharSequence chars )
+    {
+        int length = 0;
+        for ( int i = 0; i < chars.length(); i++ ) {
+            final char c = chars.charAt( i );
+            if ( c < 0x80 ) {
+                length++;
+            } else if ( c < 0x800 ) {
+                length += 2;
+            } else if ( Character.isHighSurrogate( c ) ) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private void appendString( final String value )
+    {
+        if ( value == null ) {
+            line.append( "null" );
+            return;
+        }
+        line.append( '"' );
+        for ( int i = 0; i < value.length(); i++ ) {
+            final char c = value.charAt( i );
+            if ( c == '"' || c == '\\' ) {
+                line.append( '\\' ).append( c );
+            } else if ( c < 0x20 ) {
+                line.append( "\\u00" ).append( HEX[c >> 4] ).append( HEX[c & 0xF] );
+            } else {
+                line.append( c );
+            }
+        }
+        line.append( '"' );
+    }
+
+}
@@ -0,0 +1,40 @@
+package glassfish.security.auth.jdbc.util.audit;
+
+/**
+ * IAuditAppender interface writes the audit events drained by the {@link AuditLog} consumer thread.
+ * <p>
+ * The methods are called by a single thread, an appender doesn't need to be thread-safe.
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ */
+public interface IAuditAppender
+{
+
+    /**
+     * Whether the appender writes the events at all (a disabled log level for example),
+     * the login modules don't publish the events while it returns <code>false</code>.
+     * The value is sampled periodically by the consumer thread.
+     * <p>
+     * @return <code>true</code> if the events are written.
+     */
+    boolean isEnabled();
+
+    /**
+     * Write an event, the event is reused after the method returns.
+     * <p>
+     * @param event An audit event.
+     */
+    void append( AuditEvent event );
+
+    /**
+     * Flush the events of a batch.
+     */
+    void flush();
+
+    /**
+     * Release the appender resources.
+     */
+    void close();
+
+}
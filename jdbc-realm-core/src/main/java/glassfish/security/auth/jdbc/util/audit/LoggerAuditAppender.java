@@ -0,0 +1,63 @@
+package glassfish.security.auth.jdbc.util.audit;
+
+import glassfish.security.auth.jdbc.util.i18n.StringManager;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * LoggerAuditAppender class writes the audit events to a {@link Logger}, on the {@link AuditLog} consumer thread:
+ * the successful logins at <code>INFO</code> level and the failed ones at <code>FINE</code> level.
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ */
+public class LoggerAuditAppender
+        implements IAuditAppender
+{
+
+    private final Logger logger;
+
+    private final StringManager auditSm = StringManager.getStringManager( LoggerAuditAppender.class.getSimpleName(),
+            LoggerAuditAppender.class.getClassLoader() );
+
+    /**
+     * @param logger The logger of the events.
+     */
+    public LoggerAuditAppender( final Logger logger )
+    {
+        this.logger = logger;
+    }
+
+    @Override
+    public boolean isEnabled()
+    {
+        return logger.isLoggable( Level.INFO ) || logger.isLoggable( Level.FINE );
+    }
+
+    @Override
+    public void append( final AuditEvent event )
+    {
+        if ( event.getOutcome() == AuditEvent.OUTCOME.SUCCESS ) {
+            if ( logger.isLoggable( Level.INFO ) ) {
+                logger.info( auditSm.getString( "auditlog.login.success",
+                        event.getUsername(), Arrays.toString( event.getGroups() ), event.getRealm() ) );
+            }
+        } else if ( logger.isLoggable( Level.FINE ) ) {
+            logger.fine( auditSm.getString( "auditlog.login.failure", event.getUsername(), event.getRealm() ) );
+        }
+    }
+
+    @Override
+    public void flush()
+    {
+        // the handlers flush themselves
+    }
+
+    @Override
+    public void close()
+    {
+        // the logger is shared
+    }
+
+}
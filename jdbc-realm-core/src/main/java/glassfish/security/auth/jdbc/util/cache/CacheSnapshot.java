@@ -0,0 +1,266 @@
+package glassfish.security.auth.jdbc.util.cache;
+
+import glassfish.security.auth.jdbc.util.dao.GroupNameTable;
+import glassfish.security.auth.jdbc.util.dao.GroupSet;
+import glassfish.security.auth.jdbc.util.dao.UserCredentials;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.EnumSet;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * CacheSnapshot class writes the cached users to a local snapshot file and maps it back into a cache,
+ * so a restarted realm starts warm instead of querying the database for each user.
+ * <p>
+ * Binary format (big-endian), version {@value #VERSION}:
+ * <ul>
+ * <li> header: magic number {@value #MAGIC} (int), version (int), creation time (long).
+ * <li> users: for each user a marker byte 1, the user name, password, salt and password type
+ * (short length, -1 for <code>null</code>, then UTF-8 bytes), the load time (long), the group count (short)
+ * and the group ids (int) of the snapshot dictionary; then a marker byte 0.
+ * <li> dictionary: the group name count (int) and the group names ordered by id.
+ * <li> footer: the dictionary offset (long) and the CRC32 of all the previous bytes (long).
+ * </ul>
+ * The file is written to a temporary file then moved, so a crash never leaves a truncated snapshot. It holds the cached
+ * password hashes and salts, so it is created readable and writable by its owner only where the file system supports
+ * the POSIX permissions.
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ * @see ICredentialCache
+ */
+public final class CacheSnapshot
+{
+
+    /**
+     * The snapshot magic number (value: {@value }).
+     */
+    public final static int MAGIC = 0x4A524353;
+
+    /**
+     * The snapshot format version (value: {@value }).
+     */
+    public final static int VERSION = 1;
+
+    private final static Charset UTF_8 = Charset.forName( "UTF-8" );
+    private final static int HEADER_SIZE = 16;
+    private final static int FOOTER_SIZE = 16;
+    private final static int CHECKSUM_CHUNK = 8192;
+
+    private CacheSnapshot()
+    {
+    }
+
+    /**
+     * Write the cached users to a snapshot file.
+     * <p>
+     * @param file           The snapshot file.
+     * @param cache          The cache to persist.
+     * @param groupNameTable The group name dictionary of the cached group ids.
+     * @return The number of users written.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    public static int write( final File file, final ICredentialCache cache, final GroupNameTable groupNameTable )
+            throws IOException
+    {
+        final File temporary = new File( file.getPath() + ".tmp" );
+        final CRC32 crc = new CRC32();
+        final int[] count = new int[ 1 ];
+        try ( DataOutputStream output = new DataOutputStream( new BufferedOutputStream(
+                new CheckedOutputStream( openOwnerOnly( temporary.toPath() ), crc ) ) ) ) {
+            output.writeInt( MAGIC );
+            output.writeInt( VERSION );
+            output.writeLong( System.currentTimeMillis() );
+
+            final IOException[] failure = new IOException[ 1 ];
+            cache.visit( new ICredentialCache.Visitor()
+            {
+                @Override
+                public void visit( final String username, final CachedUser user )
+                {
+                    if ( failure[0] != null ) {
+                        return;
+                    }
+                    try {
+                        final UserCredentials credentials = user.getCredentials();
+                        final GroupSet groups = user.getGroups();
+                        output.writeByte( 1 );
+                        writeString( output, username );
+                        writeString( output, credentials.getPassword() );
+                        writeString( output, credentials.getSalt() );
+                        writeString( output, credentials.getPasswordType() );
+                        output.writeLong( user.getLoadedAt() );
+                        output.writeShort( groups.size() );
+                        for ( int i = 0; i < groups.size(); i++ ) {
+                            output.writeInt( groups.getId( i ) );
+                        }
+                        count[0]++;
+                    } catch ( IOException ex ) {
+                        failure[0] = ex;
+                    }
+                }
+            } );
+            if ( failure[0] != null ) {
+                throw failure[0];
+            }
+            output.writeByte( 0 );
+
+            // the dictionary is written last, it contains the groups of all the users visited
+            final long dictionaryOffset = output.size();
+            final int groupCount = groupNameTable.size();
+            output.writeInt( groupCount );
+            for ( int id = 0; id < groupCount; id++ ) {
+                writeString( output, groupNameTable.nameOf( id ) );
+            }
+            output.writeLong( dictionaryOffset );
+            output.flush();
+            output.writeLong( crc.getValue() );
+        }
+
+        try {
+            Files.move( temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+        } catch ( AtomicMoveNotSupportedException ex ) {
+            Files.move( temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+        }
+        return count[0];
+    }
+
+    /*
+     * Create a file readable and writable by its owner only, whatever the process umask, where the POSIX permissions
+     * are supported.
+     */
+    private static OutputStream openOwnerOnly( final Path path )
+            throws IOException
+    {
+        // a temporary file left by a crash may have other permissions
+        Files.deleteIfExists( path );
+        if ( !FileSystems.getDefault().supportedFileAttributeViews().contains( "posix" ) ) {
+            return Files.newOutputStream( path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE );
+        }
+        return Channels.newOutputStream( Files.newByteChannel( path,
+                EnumSet.of( StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE ),
+                PosixFilePermissions.asFileAttribute( PosixFilePermissions.fromString( "rw-------" ) ) ) );
+    }
+
+    /**
+     * Map a snapshot file and put its users into a cache, marked as restored.
+     * <p>
+     * @param file           The snapshot file.
+     * @param cache          The cache to fill.
+     * @param groupNameTable The group name dictionary of the cache.
+     * @param minLoadedAt    The users loaded before this time in milliseconds are skipped.
+     * @return The number of users restored.
+     * @throws IOException If the snapshot cannot be read, if its version isn't supported or if its checksum is wrong.
+     */
+    public static int read( final File file, final ICredentialCache cache, final GroupNameTable groupNameTable, final long minLoadedAt )
+            throws IOException
+    {
+        final MappedByteBuffer buffer;
+        try ( FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ ) ) {
+            final long size = channel.size();
+            if ( size < HEADER_SIZE + FOOTER_SIZE || size > Integer.MAX_VALUE ) {
+                throw new IOException( "Invalid snapshot size " + size );
+            }
+            buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, size );
+        }
+
+        final int checksumOffset = buffer.limit() - 8;
+        if ( checksum( buffer, checksumOffset ) != buffer.getLong( checksumOffset ) ) {
+            throw new IOException( "Invalid snapshot checksum" );
+        }
+        if ( buffer.getInt( 0 ) != MAGIC ) {
+            throw new IOException( "Invalid snapshot magic number" );
+        }
+        if ( buffer.getInt( 4 ) != VERSION ) {
+            throw new IOException( "Unsupported snapshot version " + buffer.getInt( 4 ) );
+        }
+
+        try {
+            // the snapshot group ids are mapped to the ids of the dictionary
+            buffer.position( ( int ) buffer.getLong( checksumOffset - 8 ) );
+            final int[] groupIds = new int[ buffer.getInt() ];
+            for ( int id = 0; id < groupIds.length; id++ ) {
+                groupIds[id] = groupNameTable.idOf( readString( buffer ) );
+            }
+
+            int count = 0;
+            buffer.position( HEADER_SIZE );
+            while ( buffer.get() == 1 ) {
+                final String username = readString( buffer );
+                final UserCredentials credentials = new UserCredentials( readString( buffer ), readString( buffer ), readString( buffer ) );
+                final long loadedAt = buffer.getLong();
+                final int[] ids = new int[ buffer.getShort() ];
+                for ( int i = 0; i < ids.length; i++ ) {
+                    ids[i] = groupIds[buffer.getInt()];
+                }
+                if ( loadedAt >= minLoadedAt ) {
+                    cache.put( username, new CachedUser( credentials, GroupSet.of( groupNameTable, ids, ids.length ), loadedAt, true ) );
+                    count++;
+                }
+            }
+            return count;
+        } catch ( BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException ex ) {
+            throw new IOException( "Invalid snapshot content", ex );
+        }
+    }
+
+    private static long checksum( final ByteBuffer buffer, final int length )
+    {
+        final CRC32 crc = new CRC32();
+        final ByteBuffer view = buffer.duplicate();
+        view.position( 0 );
+        final byte[] chunk = new byte[ CHECKSUM_CHUNK ];
+        int remaining = length;
+        while ( remaining > 0 ) {
+            final int read = Math.min( remaining, chunk.length );
+            view.get( chunk, 0, read );
+            crc.update( chunk, 0, read );
+            remaining -= read;
+        }
+        return crc.getValue();
+    }
+
+    private static void writeString( final DataOutputStream output, final String value )
+            throws IOException
+    {
+        if ( value == null ) {
+            output.writeShort( -1 );
+            return;
+        }
+        final byte[] bytes = value.getBytes( UTF_8 );
+        if ( bytes.length > Short.MAX_VALUE ) {
+            throw new IOException( "Value too long for a snapshot" );
+        }
+        output.writeShort( bytes.length );
+        output.write( bytes );
+    }
+
+    private static String readString( final ByteBuffer buffer )
+    {
+        final int length = buffer.getShort();
+        if ( length < 0 ) {
+            return null;
+        }
+        final byte[] bytes = new byte[ length ];
+        buffer.get( bytes );
+        return new String( bytes, UTF_8 );
+    }
+
+}
@@ -0,0 +1,92 @@
+package glassfish.security.auth.jdbc.util.cache;
+
+import glassfish.security.auth.jdbc.util.dao.GroupSet;
+import glassfish.security.auth.jdbc.util.dao.UserCredentials;
+
+/**
+ * CachedUser class holds the last-known credentials and direct groups of a user
+ * and the time they were loaded from the database.
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ * @see ICredentialCache
+ */
+public final class CachedUser
+{
+
+    // The credentials read from the user-table
+    private final UserCredentials credentials;
+    // The groups read from the group-table (without the nested groups)
+    private final GroupSet groups;
+    // The load time in milliseconds
+    private final long loadedAt;
+    // true if the user was restored from a snapshot and not yet reloaded from the database
+    private final boolean restored;
+
+    /**
+     * @param credentials The user credentials.
+     * @param groups      The groups which the user directly belongs to.
+     * @param loadedAt    The time the user was loaded from the database in milliseconds.
+     */
+    public CachedUser( final UserCredentials credentials, final GroupSet groups, final long loadedAt )
+    {
+        this( credentials, groups, loadedAt, false );
+    }
+
+    /**
+     * @param credentials The user credentials.
+     * @param groups      The groups which the user directly belongs to.
+     * @param loadedAt    The time the user was loaded from the database in milliseconds.
+     * @param restored    <code>true</code> if the user is restored from a snapshot.
+     */
+    public CachedUser( final UserCredentials credentials, final GroupSet groups, final long loadedAt, final boolean restored )
+    {
+        this.credentials = credentials;
+        this.groups = groups;
+        this.loadedAt = loadedAt;
+        this.restored = restored;
+    }
+
+    /**
+     * @return The user credentials.
+     */
+    public UserCredentials getCredentials()
+    {
+        return credentials;
+    }
+
+    /**
+     * @return The groups which the user directly belongs to.
+     */
+    public GroupSet getGroups()
+    {
+        return groups;
+    }
+
+    /**
+     * @return The time the user was loaded from the database in milliseconds.
+     */
+    public long getLoadedAt()
+    {
+        return loadedAt;
+    }
+
+    /**
+     * @return <code>true</code> if the user was restored from a snapshot and not yet reloaded from the database,
+     *         <code>false</code> otherwise.
+     */
+    public boolean isRestored()
+    {
+        return restored;
+    }
+
+    /**
+     * @param now The current time in milliseconds.
+     * @return The number of milliseconds since the user was loaded.
+     */
+    public long getAge( final long now )
+    {
+        return now - loadedAt;
+    }
+
+}
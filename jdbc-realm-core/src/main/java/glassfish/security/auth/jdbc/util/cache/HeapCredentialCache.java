@@ -0,0 +1,85 @@
+package glassfish.security.auth.jdbc.util.cache;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HeapCredentialCache class is a least recently used cache of users kept on the heap, a synchronized
+ * access-ordered {@link LinkedHashMap}. Every read locks the whole cache to update the access order,
+ * the realm uses the {@link StripedCredentialCache} instead, this one is the simple reference implementation.
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ */
+public class HeapCredentialCache
+        implements ICredentialCache
+{
+
+    private final Map<String, CachedUser> users;
+
+    /**
+     * @param maxSize The maximum number of cached users.
+     */
+    public HeapCredentialCache( final int maxSize )
+    {
+        if ( maxSize < 1 ) {
+            throw new IllegalArgumentException( "maxSize argument must be positive" );
+        }
+        // access order, the eldest entry is the least recently used one
+        this.users = new LinkedHashMap<String, CachedUser>( 16, 0.75f, true )
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry( final Map.Entry<String, CachedUser> eldest )
+            {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    @Override
+    public synchronized CachedUser get( final String username )
+    {
+        return users.get( username );
+    }
+
+    @Override
+    public synchronized void put( final String username, final CachedUser user )
+    {
+        users.put( username, user );
+    }
+
+    @Override
+    public synchronized void remove( final String username )
+    {
+        users.remove( username );
+    }
+
+    @Override
+    public synchronized void clear()
+    {
+        users.clear();
+    }
+
+    @Override
+    public synchronized int size()
+    {
+        return users.size();
+    }
+
+    @Override
+    public void visit( final Visitor visitor )
+    {
+        final List<Map.Entry<String, CachedUser>> entries;
+        synchronized ( this ) {
+            entries = new ArrayList<>( users.entrySet() );
+        }
+        for ( Map.Entry<String, CachedUser> entry : entries ) {
+            visitor.visit( entry.getKey(), entry.getValue() );
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+package glassfish.security.auth.jdbc.util.cache;
+
+/**
+ * ICredentialCache interface describes a cache of the last-known users, keyed by normalized user name.
+ * The implementations must be thread-safe and bounded.
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ * @see CachedUser
+ */
+public interface ICredentialCache
+{
+
+    /**
+     * A visitor of the cached users.
+     */
+    interface Visitor
+    {
+
+        /**
+         * @param username A normalized user name.
+         * @param user     The cached user.
+         */
+        void visit( String username, CachedUser user );
+
+    }
+
+    /**
+     * @param username A normalized user name.
+     * @return The cached user or <code>null</code> if the user isn't cached.
+     */
+    CachedUser get( String username );
+
+    /**
+     * Cache a user, evicting an other user if the cache is full.
+     * <p>
+     * @param username A normalized user name.
+     * @param user     The user loaded from the database.
+     */
+    void put( String username, CachedUser user );
+
+    /**
+     * @param username A normalized user name.
+     */
+    void remove( String username );
+
+    /**
+     * Remove all the cached users.
+     */
+    void clear();
+
+    /**
+     * @return The number of cached users.
+     */
+    int size();
+
+    /**
+     * Visit the cached users. The users put or removed while visiting may be visited or not.
+     * <p>
+     * @param visitor A visitor.
+     */
+    void visit( Visitor visitor );
+
+}
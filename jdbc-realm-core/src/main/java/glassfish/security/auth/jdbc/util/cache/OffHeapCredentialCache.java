@@ -0,0 +1,378 @@
+package glassfish.security.auth.jdbc.util.cache;
+
+import glassfish.security.auth.jdbc.util.dao.GroupNameTable;
+import glassfish.security.auth.jdbc.util.dao.GroupSet;
+import glassfish.security.auth.jdbc.util.dao.UserCredentials;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * OffHeapCredentialCache class is a cache of users kept out of the heap, in direct {@link ByteBuffer}s,
+ * so the heap usage and the garbage collection pauses don't grow with the number of cached users.
+ * <p>
+ * The buffers are an open-addressing hash table of fixed-size slots. A slot holds the serialized user:
+ * the user name, the password, the salt and the password type encoded in UTF-8, and the group ids of the
+ * group name dictionary shared by all the users (see {@link GroupNameTable}). A user is looked up in a
+ * window of {@value #PROBES} slots from its hash, and if the window is full the oldest loaded user is evicted.
+ * A user whose serialized form doesn't fit in a slot isn't cached.
+ * <p>
+ * Slot layout: state (byte, empty, used, deleted or restored from a snapshot), hash (int), load time (long),
+ * user name, password, salt and password type lengths (short, -1 for <code>null</code>), group count (short),
+ * then the bytes and the group ids (int).
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ */
+public class OffHeapCredentialCache
+        implements ICredentialCache
+{
+
+    /**
+     * The number of slots probed for a user (value: {@value }).
+     */
+    public final static int PROBES = 16;
+
+    /**
+     * The minimum slot size in bytes (value: {@value }).
+     */
+    public final static int MIN_SLOT_SIZE = 64;
+
+    private final static Charset UTF_8 = Charset.forName( "UTF-8" );
+    // A direct buffer holds at most 1 GiB
+    private final static int MAX_SEGMENT_SIZE = 1 << 30;
+
+    private final static byte EMPTY = 0;
+    private final static byte USED = 1;
+    private final static byte DELETED = 2;
+    private final static byte RESTORED = 3;
+
+    private final static int STATE = 0;
+    private final static int HASH = 1;
+    private final static int LOADED_AT = 5;
+    private final static int LENGTHS = 13;
+    private final static int HEADER_SIZE = LENGTHS + 5 * 2;
+
+    private final GroupNameTable groupNameTable;
+    private final ByteBuffer[] segments;
+    private final int slotSize;
+    private final int mask;
+    private final int segmentShift;
+    private final int segmentMask;
+    // absolute reads are safe for concurrent readers, writes are exclusive
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private int size;
+
+    /**
+     * @param groupNameTable The group name dictionary of the cached group ids.
+     * @param maxSize        The maximum number of cached users (rounded up to a power of two).
+     * @param slotSize       The size of a slot in bytes.
+     */
+    public OffHeapCredentialCache( final GroupNameTable groupNameTable, final int maxSize, final int slotSize )
+    {
+        if ( maxSize < 1 ) {
+            throw new IllegalArgumentException( "maxSize argument must be positive" );
+        }
+        if ( slotSize < MIN_SLOT_SIZE || slotSize > Short.MAX_VALUE ) {
+            throw new IllegalArgumentException( "slotSize argument must be between " + MIN_SLOT_SIZE + " and " + Short.MAX_VALUE );
+        }
+        this.groupNameTable = groupNameTable;
+        this.slotSize = slotSize;
+
+        final int capacity = Math.max( Integer.highestOneBit( Math.max( maxSize - 1, 1 ) ) << 1, PROBES );
+        this.mask = capacity - 1;
+        final int segmentSlots = Math.min( capacity, Integer.highestOneBit( MAX_SEGMENT_SIZE / slotSize ) );
+        this.segmentShift = Integer.numberOfTrailingZeros( segmentSlots );
+        this.segmentMask = segmentSlots - 1;
+        this.segments = new ByteBuffer[ capacity / segmentSlots ];
+        for ( int i = 0; i < segments.length; i++ ) {
+            segments[i] = ByteBuffer.allocateDirect( segmentSlots * slotSize );
+        }
+    }
+
+    @Override
+    public CachedUser get( final String username )
+    {
+        final byte[] key = username.getBytes( UTF_8 );
+        final int hash = hash( username );
+        lock.readLock().lock();
+        try {
+            for ( int i = 0; i < PROBES; i++ ) {
+                final int slot = ( hash + i ) & mask;
+                final ByteBuffer segment = segment( slot );
+                final int offset = offset( slot );
+                final byte state = segment.get( offset + STATE );
+                if ( state == EMPTY ) {
+                    return null;
+                }
+                if ( isUsed( state ) && matches( segment, offset, hash, key ) ) {
+                    return read( segment, offset, key.length, state == RESTORED );
+                }
+            }
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void put( final String username, final CachedUser user )
+    {
+        final byte[] key = username.getBytes( UTF_8 );
+        final UserCredentials credentials = user.getCredentials();
+        final byte[] password = bytes( credentials.getPassword() );
+        final byte[] salt = bytes( credentials.getSalt() );
+        final byte[] passwordType = bytes( credentials.getPasswordType() );
+        final GroupSet groups = user.getGroups();
+        final int recordSize = HEADER_SIZE + key.length + length( password ) + length( salt ) + length( passwordType ) + groups.size() * 4;
+        if ( recordSize > slotSize ) {
+            // doesn't fit, a previous version must not be served
+            remove( username );
+            return;
+        }
+
+        final int hash = hash( username );
+        lock.writeLock().lock();
+        try {
+            final int slot = findSlot( hash, key );
+            final ByteBuffer segment = segment( slot );
+            final int offset = offset( slot );
+            if ( !isUsed( segment.get( offset + STATE ) ) ) {
+                size++;
+            }
+            segment.put( offset + STATE, user.isRestored() ? RESTORED : USED );
+            segment.putInt( offset + HASH, hash );
+            segment.putLong( offset + LOADED_AT, user.getLoadedAt() );
+            int position = offset + LENGTHS;
+            segment.putShort( position, ( short ) key.length );
+            segment.putShort( position + 2, ( short ) ( password == null ? -1 : password.length ) );
+            segment.putShort( position + 4, ( short ) ( salt == null ? -1 : salt.length ) );
+            segment.putShort( position + 6, ( short ) ( passwordType == null ? -1 : passwordType.length ) );
+            segment.putShort( position + 8, ( short ) groups.size() );
+            position = offset + HEADER_SIZE;
+            position = write( segment, position, key );
+            position = write( segment, position, password );
+            position = write( segment, position, salt );
+            position = write( segment, position, passwordType );
+            for ( int i = 0; i < groups.size(); i++ ) {
+                segment.putInt( position, groups.getId( i ) );
+                position += 4;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove( final String username )
+    {
+        final byte[] key = username.getBytes( UTF_8 );
+        final int hash = hash( username );
+        lock.writeLock().lock();
+        try {
+            for ( int i = 0; i < PROBES; i++ ) {
+                final int slot = ( hash + i ) & mask;
+                final ByteBuffer segment = segment( slot );
+                final int offset = offset( slot );
+                final byte state = segment.get( offset + STATE );
+                if ( state == EMPTY ) {
+                    return;
+                }
+                if ( isUsed( state ) && matches( segment, offset, hash, key ) ) {
+                    segment.put( offset + STATE, DELETED );
+                    size--;
+                    return;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear()
+    {
+        lock.writeLock().lock();
+        try {
+            for ( int slot = 0; slot <= mask; slot++ ) {
+                segment( slot ).put( offset( slot ) + STATE, EMPTY );
+            }
+            size = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int size()
+    {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void visit( final Visitor visitor )
+    {
+        for ( int slot = 0; slot <= mask; slot++ ) {
+            final ByteBuffer segment = segment( slot );
+            final int offset = offset( slot );
+            String username = null;
+            CachedUser user = null;
+            // a slot at once, the writers aren't blocked while visiting
+            lock.readLock().lock();
+            try {
+                final byte state = segment.get( offset + STATE );
+                if ( isUsed( state ) ) {
+                    final int keyLength = segment.getShort( offset + LENGTHS );
+                    username = string( segment, offset + HEADER_SIZE, keyLength );
+                    user = read( segment, offset, keyLength, state == RESTORED );
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            if ( user != null ) {
+                visitor.visit( username, user );
+            }
+        }
+    }
+
+    /**
+     * @return The number of off-heap bytes allocated.
+     */
+    public long getCapacityBytes()
+    {
+        return ( long ) ( mask + 1 ) * slotSize;
+    }
+
+    /**
+     * Find the slot of a user: its current slot, else the first free slot of its window,
+     * else the slot of the oldest loaded user of its window.
+     * <p>
+     * @param hash The user name hash.
+     * @param key  The user name bytes.
+     * @return A slot index.
+     */
+    private int findSlot( final int hash, final byte[] key )
+    {
+        int free = -1;
+        int oldest = -1;
+        long oldestLoadedAt = Long.MAX_VALUE;
+        for ( int i = 0; i < PROBES; i++ ) {
+            final int slot = ( hash + i ) & mask;
+            final ByteBuffer segment = segment( slot );
+            final int offset = offset( slot );
+            final byte state = segment.get( offset + STATE );
+            if ( state == EMPTY ) {
+                return free != -1 ? free : slot;
+            }
+            if ( state == DELETED ) {
+                if ( free == -1 ) {
+                    free = slot;
+                }
+            } else if ( matches( segment, offset, hash, key ) ) {
+                return slot;
+            } else if ( segment.getLong( offset + LOADED_AT ) < oldestLoadedAt ) {
+                oldestLoadedAt = segment.getLong( offset + LOADED_AT );
+                oldest = slot;
+            }
+        }
+        return free != -1 ? free : oldest;
+    }
+
+    private boolean matches( final ByteBuffer segment, final int offset, final int hash, final byte[] key )
+    {
+        if ( segment.getInt( offset + HASH ) != hash || segment.getShort( offset + LENGTHS ) != key.length ) {
+            return false;
+        }
+        final int position = offset + HEADER_SIZE;
+        for ( int i = 0; i < key.length; i++ ) {
+            if ( segment.get( position + i ) != key[i] ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isUsed( final byte state )
+    {
+        return state == USED || state == RESTORED;
+    }
+
+    private CachedUser read( final ByteBuffer segment, final int offset, final int keyLength, final boolean restored )
+    {
+        final long loadedAt = segment.getLong( offset + LOADED_AT );
+        final int passwordLength = segment.getShort( offset + LENGTHS + 2 );
+        final int saltLength = segment.getShort( offset + LENGTHS + 4 );
+        final int passwordTypeLength = segment.getShort( offset + LENGTHS + 6 );
+        final int groupCount = segment.getShort( offset + LENGTHS + 8 );
+
+        int position = offset + HEADER_SIZE + keyLength;
+        final String password = string( segment, position, passwordLength );
+        position += Math.max( passwordLength, 0 );
+        final String salt = string( segment, position, saltLength );
+        position += Math.max( saltLength, 0 );
+        final String passwordType = string( segment, position, passwordTypeLength );
+        position += Math.max( passwordTypeLength, 0 );
+        final int[] ids = new int[ groupCount ];
+        for ( int i = 0; i < groupCount; i++ ) {
+            ids[i] = segment.getInt( position );
+            position += 4;
+        }
+        return new CachedUser( new UserCredentials( password, salt, passwordType ),
+                GroupSet.of( groupNameTable, ids, groupCount ), loadedAt, restored );
+    }
+
+    private static String string( final ByteBuffer segment, final int position, final int length )
+    {
+        if ( length < 0 ) {
+            return null;
+        }
+        final byte[] bytes = new byte[ length ];
+        for ( int i = 0; i < length; i++ ) {
+            bytes[i] = segment.get( position + i );
+        }
+        return new String( bytes, UTF_8 );
+    }
+
+    private static int write( final ByteBuffer segment, final int position, final byte[] bytes )
+    {
+        if ( bytes == null ) {
+            return position;
+        }
+        for ( int i = 0; i < bytes.length; i++ ) {
+            segment.put( position + i, bytes[i] );
+        }
+        return position + bytes.length;
+    }
+
+    private static byte[] bytes( final String value )
+    {
+        return value != null ? value.getBytes( UTF_8 ) : null;
+    }
+
+    private static int length( final byte[] bytes )
+    {
+        return bytes != null ? bytes.length : 0;
+    }
+
+    private static int hash( final String username )
+    {
+        final int hash = username.hashCode() * 0x9E3779B9;
+        return hash ^ ( hash >>> 16 );
+    }
+
+    private ByteBuffer segment( final int slot )
+    {
+        return segments[slot >>> segmentShift];
+    }
+
+    private int offset( final int slot )
+    {
+        return ( slot & segmentMask ) * slotSize;
+    }
+
+}
@@ -0,0 +1,273 @@
+package glassfish.security.auth.jdbc.util.cache;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * StripedCredentialCache class is a concurrent cache of users kept on the heap, built for the realm lookups
+ * (many concurrent reads of the same users, few writes).
+ * <p>
+ * The users are spread over segments. A read is lock-free: a {@link ConcurrentHashMap} lookup and a reference
+ * bit set only if it isn't already set, so the readers don't serialize on a lock nor write a shared access order.
+ * A write locks its segment only. A full segment evicts with the clock algorithm: the hand skips (and clears) the
+ * recently read users and evicts the first user not read since its previous pass, or an expired one.
+ * <p>
+ * A user expires expireAfter milliseconds after it was loaded; an expired user is removed lazily when it is read
+ * or when the clock hand reaches it. The reads check the expiry against a coarse time refreshed by the writes and
+ * by one read out of {@value #TIME_SAMPLING} (reading the system time costs more than the lookup itself),
+ * the callers needing an exact age use {@link CachedUser#getAge(long)}.
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ * @see HeapCredentialCache
+ */
+public class StripedCredentialCache
+        implements ICredentialCache
+{
+
+    /**
+     * A cached user and its clock reference bit.
+     */
+    private final static class Entry
+    {
+
+        private final String username;
+        private final CachedUser user;
+        private final long expiresAt;
+        // set by the readers, cleared by the clock hand
+        private volatile boolean referenced;
+        // the clock ring index, guarded by the segment lock
+        private int slot;
+
+        Entry( final String username, final CachedUser user, final long expiresAt )
+        {
+            this.username = username;
+            this.user = user;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired( final long now )
+        {
+            return now >= expiresAt;
+        }
+    }
+
+    /**
+     * A segment of the cache: a concurrent map for the reads and a clock ring for the evictions.
+     */
+    private final static class Segment
+    {
+
+        private final ConcurrentHashMap<String, Entry> entries;
+        private final Entry[] ring;
+        private final ReentrantLock lock = new ReentrantLock();
+        private int count;
+        private int hand;
+
+        Segment( final int capacity )
+        {
+            this.entries = new ConcurrentHashMap<>( capacity * 4 / 3 + 1 );
+            this.ring = new Entry[ capacity ];
+        }
+
+        void put( final Entry entry, final long now )
+        {
+            lock.lock();
+            try {
+                final Entry previous = entries.get( entry.username );
+                if ( previous != null ) {
+                    entry.slot = previous.slot;
+                } else if ( count < ring.length ) {
+                    entry.slot = count++;
+                } else {
+                    entry.slot = evict( now );
+                }
+                ring[entry.slot] = entry;
+                entries.put( entry.username, entry );
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return The slot of the evicted entry.
+         */
+        private int evict( final long now )
+        {
+            while ( true ) {
+                final Entry candidate = ring[hand];
+                final int slot = hand;
+                hand = ( hand + 1 ) % ring.length;
+                if ( candidate.referenced && !candidate.isExpired( now ) ) {
+                    // second chance
+                    candidate.referenced = false;
+                } else {
+                    entries.remove( candidate.username );
+                    return slot;
+                }
+            }
+        }
+
+        void remove( final String username, final Entry expected )
+        {
+            lock.lock();
+            try {
+                final Entry entry = entries.get( username );
+                if ( entry == null || expected != null && entry != expected ) {
+                    return;
+                }
+                entries.remove( username );
+                // the last entry fills the hole, the ring order doesn't matter to the clock
+                final Entry last = ring[--count];
+                ring[count] = null;
+                if ( last != entry ) {
+                    last.slot = entry.slot;
+                    ring[entry.slot] = last;
+                }
+                if ( hand >= count ) {
+                    hand = 0;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void clear()
+        {
+            lock.lock();
+            try {
+                entries.clear();
+                Arrays.fill( ring, null );
+                count = 0;
+                hand = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * One read out of this number refreshes the coarse time (value: {@value }).
+     */
+    public final static int TIME_SAMPLING = 64;
+
+    private final Segment[] segments;
+    private final int segmentMask;
+    private final long expireAfter;
+    // The coarse time in milliseconds
+    private volatile long time = System.currentTimeMillis();
+
+    /**
+     * @param maxSize     The maximum number of cached users.
+     * @param expireAfter The number of milliseconds a user is kept after it was loaded, 0 if the users don't expire.
+     */
+    public StripedCredentialCache( final int maxSize, final long expireAfter )
+    {
+        this( maxSize, expireAfter, Runtime.getRuntime().availableProcessors() * 4 );
+    }
+
+    /**
+     * @param maxSize     The maximum number of cached users.
+     * @param expireAfter The number of milliseconds a user is kept after it was loaded, 0 if the users don't expire.
+     * @param concurrency The expected number of concurrent writers (rounded up to a power of two segments).
+     */
+    public StripedCredentialCache( final int maxSize, final long expireAfter, final int concurrency )
+    {
+        if ( maxSize < 1 ) {
+            throw new IllegalArgumentException( "maxSize argument must be positive" );
+        }
+        int segmentCount = Integer.highestOneBit( Math.max( Math.min( concurrency, maxSize ), 1 ) );
+        if ( segmentCount < concurrency && segmentCount * 2 <= maxSize ) {
+            segmentCount *= 2;
+        }
+        this.segments = new Segment[ segmentCount ];
+        for ( int i = 0; i < segmentCount; i++ ) {
+            // the first segments hold the remainder
+            segments[i] = new Segment( maxSize / segmentCount + ( i < maxSize % segmentCount ? 1 : 0 ) );
+        }
+        this.segmentMask = segmentCount - 1;
+        this.expireAfter = expireAfter;
+    }
+
+    @Override
+    public CachedUser get( final String username )
+    {
+        final Segment segment = segment( username );
+        final Entry entry = segment.entries.get( username );
+        if ( entry == null ) {
+            return null;
+        }
+        if ( expireAfter > 0 && entry.isExpired( coarseTime() ) ) {
+            segment.remove( username, entry );
+            return null;
+        }
+        if ( !entry.referenced ) {
+            // a read only writes the bit once between two clock passes
+            entry.referenced = true;
+        }
+        return entry.user;
+    }
+
+    @Override
+    public void put( final String username, final CachedUser user )
+    {
+        final long expiresAt = expireAfter > 0 ? user.getLoadedAt() + expireAfter : Long.MAX_VALUE;
+        final long now = System.currentTimeMillis();
+        time = now;
+        segment( username ).put( new Entry( username, user, expiresAt ), now );
+    }
+
+    @Override
+    public void remove( final String username )
+    {
+        segment( username ).remove( username, null );
+    }
+
+    @Override
+    public void clear()
+    {
+        for ( Segment segment : segments ) {
+            segment.clear();
+        }
+    }
+
+    @Override
+    public int size()
+    {
+        int size = 0;
+        for ( Segment segment : segments ) {
+            size += segment.entries.size();
+        }
+        return size;
+    }
+
+    @Override
+    public void visit( final Visitor visitor )
+    {
+        final long now = System.currentTimeMillis();
+        for ( Segment segment : segments ) {
+            for ( Entry entry : segment.entries.values() ) {
+                if ( !entry.isExpired( now ) ) {
+                    visitor.visit( entry.username, entry.user );
+                }
+            }
+        }
+    }
+
+    private long coarseTime()
+    {
+        if ( ThreadLocalRandom.current().nextInt( TIME_SAMPLING ) == 0 ) {
+            time = System.currentTimeMillis();
+        }
+        return time;
+    }
+
+    private Segment segment( final String username )
+    {
+        final int hash = username.hashCode() * 0x9E3779B9;
+        return segments[( hash ^ ( hash >>> 16 ) ) & segmentMask];
+    }
+
+}
@@ -0,0 +1,130 @@
+package glassfish.security.auth.jdbc.util.dao;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CircuitBreaker class stops calling a failing resource after a number of consecutive failures.
+ * <p>
+ * <ul>
+ * <li> <b>closed</b>: the calls are allowed, the circuit opens after <code>threshold</code> consecutive failures.
+ * <li> <b>open</b>: the calls are refused (fail fast) during <code>delay</code> milliseconds.
+ * <li> <b>half-open</b>: after the delay, one trial call is allowed. The circuit closes if it succeeds
+ * and opens again if it fails.
+ * </ul>
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ * @see DataSourceRouter
+ */
+public class CircuitBreaker
+{
+
+    /**
+     * The circuit breaker states.
+     */
+    public static enum STATE
+    {
+
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int threshold;
+    private final long delay;
+    private final AtomicInteger failures = new AtomicInteger();
+    // The time in milliseconds the circuit was opened, 0 if the circuit is closed
+    private final AtomicLong openedAt = new AtomicLong();
+    // The time in milliseconds the half-open trial call started, 0 if there is no trial call
+    private final AtomicLong trialAt = new AtomicLong();
+
+    /**
+     * @param threshold The number of consecutive failures opening the circuit.
+     * @param delay     The number of milliseconds the circuit stays open before a trial call.
+     */
+    public CircuitBreaker( final int threshold, final long delay )
+    {
+        if ( threshold < 1 ) {
+            throw new IllegalArgumentException( "threshold argument must be positive" );
+        }
+        this.threshold = threshold;
+        this.delay = delay;
+    }
+
+    /**
+     * Check if a call is allowed. In the half-open state, only one thread is allowed to make the trial call.
+     * <p>
+     * @return <code>true</code> if the call is allowed, <code>false</code> if the call must fail fast.
+     */
+    public boolean allowRequest()
+    {
+        final long opened = openedAt.get();
+        if ( opened == 0 ) {
+            return true;
+        }
+
+        final long now = System.currentTimeMillis();
+        if ( now - opened < delay ) {
+            return false;
+        }
+        // one trial call by delay period
+        final long trial = trialAt.get();
+        return ( trial == 0 || now - trial >= delay ) && trialAt.compareAndSet( trial, now );
+    }
+
+    /**
+     * Check if a call would be allowed, without starting a trial call.
+     * <p>
+     * @return <code>true</code> if the circuit is closed or if a trial call is possible.
+     */
+    public boolean isAvailable()
+    {
+        final long opened = openedAt.get();
+        final long now = System.currentTimeMillis();
+        return opened == 0 || ( now - opened >= delay && now - trialAt.get() >= delay );
+    }
+
+    /**
+     * Record a successful call, the circuit closes.
+     */
+    public void recordSuccess()
+    {
+        failures.set( 0 );
+        if ( openedAt.get() != 0 ) {
+            openedAt.set( 0 );
+            trialAt.set( 0 );
+        }
+    }
+
+    /**
+     * Record a failed call, the circuit opens if the threshold is reached or if the trial call failed.
+     */
+    public void recordFailure()
+    {
+        final int count = failures.incrementAndGet();
+        if ( count >= threshold || openedAt.get() != 0 ) {
+            openedAt.set( System.currentTimeMillis() );
+            trialAt.set( 0 );
+        }
+    }
+
+    /**
+     * @return The current state.
+     */
+    public STATE getState()
+    {
+        final long opened = openedAt.get();
+        if ( opened == 0 ) {
+            return STATE.CLOSED;
+        }
+        return System.currentTimeMillis() - opened < delay ? STATE.OPEN : STATE.HALF_OPEN;
+    }
+
+    /**
+     * @return The number of consecutive failures.
+     */
+    public int getFailures()
+    {
+        return failures.get();
+    }
+
+}
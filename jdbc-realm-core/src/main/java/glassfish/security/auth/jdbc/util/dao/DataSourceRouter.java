@@ -0,0 +1,398 @@
+package glassfish.security.auth.jdbc.util.dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.naming.InitialContext;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+
+/**
+ * DataSourceRouter class routes the connection requests between several datasources
+ * (a primary and its read replicas, the authentication being read-only). The writes use the primary, the first
+ * datasource of the list, without failing over to a replica (see {@link #getPrimaryConnection()}).
+ * <p>
+ * Each datasource has its own {@link CircuitBreaker}: a datasource failing to give connections is skipped
+ * until its circuit breaker allows a trial call, and the connection request fails over to the next datasource.
+ * The datasources are looked up once and cached (looked up again after a failure).
+ * <p>
+ * If a connection acquire timeout is defined, at most maxPending threads wait for a connection at once
+ * (the other ones wait for their turn at most the acquire timeout, then fail), and a connection acquired slower than
+ * the acquire timeout counts as a failure of its datasource, so an exhausted pool opens its circuit breaker
+ * instead of blocking every login for the pool full wait time.
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ * @see SecurityStorage
+ * @see CircuitBreaker
+ */
+public class DataSourceRouter
+{
+
+    /**
+     * The routing policies.
+     */
+    public static enum ROUTING
+    {
+
+        /**
+         * The datasources are used in turn.
+         */
+        ROUND_ROBIN( "round-robin" ),
+        /**
+         * The datasource with the lowest average connection latency is used first.
+         */
+        LEAST_LATENCY( "least-latency" ),
+        /**
+         * The first datasource of the list is used while it is available.
+         */
+        FAILOVER( "failover" );
+
+        private String name;
+
+        ROUTING( String name )
+        {
+            this.name = name;
+        }
+
+        /**
+         * @param name A routing name (case insensitive).
+         *             May be <code>null</code>.
+         * @return The routing, {@link #ROUND_ROBIN} if the name argument is null or empty.
+         * @throws IllegalArgumentException If the name doesn't correspond to a routing.
+         */
+        public static ROUTING fromName( final String name )
+        {
+            if ( name == null || name.trim().isEmpty() ) {
+                return ROUND_ROBIN;
+            }
+            for ( ROUTING routing : values() ) {
+                if ( routing.name.equalsIgnoreCase( name.trim() ) ) {
+                    return routing;
+                }
+            }
+            throw new IllegalArgumentException( "Unknown datasource routing " + name );
+        }
+
+        @Override
+        public String toString()
+        {
+            return name;
+        }
+    }
+
+    /**
+     * A datasource and its health.
+     */
+    public static class Node
+    {
+
+        // weight of the last latency into the average latency
+        private final static double LATENCY_WEIGHT = 0.2;
+
+        private final String jndi;
+        private final CircuitBreaker circuitBreaker;
+        private volatile DataSource dataSource;
+        // exponentially weighted moving average of the connection latency in nanoseconds
+        private volatile double latency;
+
+        Node( final String jndi, final CircuitBreaker circuitBreaker )
+        {
+            this.jndi = jndi;
+            this.circuitBreaker = circuitBreaker;
+        }
+
+        /**
+         * @return The datasource jndi name.
+         */
+        public String getJndi()
+        {
+            return jndi;
+        }
+
+        /**
+         * @return The datasource circuit breaker.
+         */
+        public CircuitBreaker getCircuitBreaker()
+        {
+            return circuitBreaker;
+        }
+
+        /**
+         * @return The average connection latency in nanoseconds.
+         */
+        public double getLatency()
+        {
+            return latency;
+        }
+
+        private void recordLatency( final long nanos )
+        {
+            // racy update, an approximate average is enough to route
+            final double current = latency;
+            latency = current == 0 ? nanos : current + LATENCY_WEIGHT * ( nanos - current );
+        }
+
+        @Override
+        public String toString()
+        {
+            return jndi + "(" + circuitBreaker.getState() + ", " + ( long ) ( latency / 1000 ) + "us)";
+        }
+    }
+
+    private final Node[] nodes;
+    private final ROUTING routing;
+    private final String dbUser;
+    private final String dbPassword;
+    private final AtomicInteger next = new AtomicInteger();
+    // The number of milliseconds a connection acquisition may last, 0 if unbounded
+    private final long acquireTimeout;
+    // The threads allowed to wait for a connection at once, null if the acquisition is unbounded
+    private final Semaphore acquirePermits;
+
+    /**
+     * @param jndis                   A comma separated list of datasource jndi names.
+     * @param routing                 A routing policy.
+     * @param dbUser                  A datasource user name. May be <code>null</code>.
+     * @param dbPassword              A datasource password. May be <code>null</code>.
+     * @param circuitBreakerThreshold The number of consecutive failures making a datasource unavailable.
+     * @param circuitBreakerDelay     The number of milliseconds a datasource stays unavailable before a trial call.
+     */
+    public DataSourceRouter( final String jndis, final ROUTING routing, final String dbUser, final String dbPassword,
+            final int circuitBreakerThreshold, final long circuitBreakerDelay )
+    {
+        this( jndis, routing, dbUser, dbPassword, circuitBreakerThreshold, circuitBreakerDelay, 0, 0 );
+    }
+
+    /**
+     * @param jndis                   A comma separated list of datasource jndi names.
+     * @param routing                 A routing policy.
+     * @param dbUser                  A datasource user name. May be <code>null</code>.
+     * @param dbPassword              A datasource password. May be <code>null</code>.
+     * @param circuitBreakerThreshold The number of consecutive failures making a datasource unavailable.
+     * @param circuitBreakerDelay     The number of milliseconds a datasource stays unavailable before a trial call.
+     * @param acquireTimeout          The number of milliseconds a connection acquisition may last, 0 if unbounded.
+     * @param maxPending              The maximum number of threads waiting for a connection at once
+     *                                (ignored if the acquireTimeout argument is 0).
+     */
+    public DataSourceRouter( final String jndis, final ROUTING routing, final String dbUser, final String dbPassword,
+            final int circuitBreakerThreshold, final long circuitBreakerDelay, final long acquireTimeout, final int maxPending )
+    {
+        final List<Node> list = new ArrayList<>();
+        for ( String jndi : jndis.split( "," ) ) {
+            if ( !jndi.trim().isEmpty() ) {
+                list.add( new Node( jndi.trim(), new CircuitBreaker( circuitBreakerThreshold, circuitBreakerDelay ) ) );
+            }
+        }
+        this.nodes = list.toArray( new Node[ list.size() ] );
+        this.routing = routing;
+        this.dbUser = dbUser;
+        this.dbPassword = dbPassword;
+        this.acquireTimeout = acquireTimeout;
+        this.acquirePermits = acquireTimeout > 0 ? new Semaphore( Math.max( maxPending, 1 ) ) : null;
+    }
+
+    /**
+     * @return <code>true</code> if at least one datasource circuit breaker allows a call,
+     *         <code>false</code> if all the datasources are unavailable.
+     */
+    public boolean isAvailable()
+    {
+        for ( Node node : nodes ) {
+            if ( node.circuitBreaker.isAvailable() ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return a connection of the first available datasource according to the routing policy,
+     * failing over to the next datasources if a datasource fails.
+     * <p>
+     * @return A {@link Connection} resource.
+     * @throws NamingException If the last tried datasource jndi name doesn't exist.
+     * @throws SQLException    If the last tried datasource is unreachable or if all the datasources are unavailable,
+     *                         {@link SQLTimeoutException} if the connection acquire timeout expired.
+     */
+    public Connection getConnection()
+            throws NamingException, SQLException
+    {
+        if ( acquirePermits == null ) {
+            return acquireConnection( System.nanoTime() );
+        }
+
+        final long start = System.nanoTime();
+        try {
+            if ( !acquirePermits.tryAcquire( acquireTimeout, TimeUnit.MILLISECONDS ) ) {
+                throw new SQLTimeoutException( "Too many threads waiting for a connection for " + acquireTimeout + " ms" );
+            }
+        } catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+            throw new SQLTimeoutException( "Interrupted while waiting for a connection", ex );
+        }
+        try {
+            return acquireConnection( start );
+        } finally {
+            acquirePermits.release();
+        }
+    }
+
+    /**
+     * Return a connection of the primary datasource, the first of the list, to write: a write never fails over to a
+     * read replica. The connection request isn't bounded by the acquire timeout, the writes aren't logins.
+     * <p>
+     * @return A {@link Connection} resource.
+     * @throws NamingException If the primary datasource jndi name doesn't exist.
+     * @throws SQLException    If the primary datasource is unreachable or if its circuit breaker is open.
+     */
+    public Connection getPrimaryConnection()
+            throws NamingException, SQLException
+    {
+        if ( nodes.length == 0 ) {
+            throw new SQLException( "No datasource defined" );
+        }
+        final Node primary = nodes[0];
+        if ( !primary.circuitBreaker.allowRequest() ) {
+            throw new SQLException( "The primary datasource " + primary.jndi + " is unavailable (circuit breaker open)" );
+        }
+        try {
+            final Connection connection = getConnection( primary );
+            primary.circuitBreaker.recordSuccess();
+            return connection;
+        } catch ( NamingException | SQLException ex ) {
+            primary.dataSource = null;
+            primary.circuitBreaker.recordFailure();
+            throw ex;
+        }
+    }
+
+    /**
+     * @param start The time the connection request started in nanoseconds.
+     * @return A {@link Connection} resource.
+     * @throws NamingException If the last tried datasource jndi name doesn't exist.
+     * @throws SQLException    If the last tried datasource is unreachable or if all the datasources are unavailable.
+     */
+    private Connection acquireConnection( final long start )
+            throws NamingException, SQLException
+    {
+        NamingException namingException = null;
+        SQLException sqlException = null;
+        for ( Node node : route() ) {
+            if ( acquirePermits != null && TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start ) >= acquireTimeout ) {
+                // the acquire timeout is spent, don't fail over
+                break;
+            }
+            if ( !node.circuitBreaker.allowRequest() ) {
+                continue;
+            }
+
+            final long nodeStart = System.nanoTime();
+            try {
+                final Connection connection = getConnection( node );
+                final long latency = System.nanoTime() - nodeStart;
+                node.recordLatency( latency );
+                if ( acquirePermits != null && TimeUnit.NANOSECONDS.toMillis( latency ) > acquireTimeout ) {
+                    // the connection is used, but an exhausted pool must open the circuit breaker
+                    node.circuitBreaker.recordFailure();
+                } else {
+                    node.circuitBreaker.recordSuccess();
+                }
+                return connection;
+            } catch ( NamingException ex ) {
+                node.dataSource = null;
+                node.circuitBreaker.recordFailure();
+                namingException = ex;
+                sqlException = null;
+            } catch ( SQLException ex ) {
+                node.dataSource = null;
+                node.circuitBreaker.recordFailure();
+                sqlException = ex;
+                namingException = null;
+            }
+        }
+
+        if ( namingException != null ) {
+            throw namingException;
+        }
+        if ( sqlException != null ) {
+            throw sqlException;
+        }
+        if ( acquirePermits != null && TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start ) >= acquireTimeout ) {
+            throw new SQLTimeoutException( "No connection acquired in " + acquireTimeout + " ms" );
+        }
+        throw new SQLException( "All the datasources are unavailable (circuit breakers open)" );
+    }
+
+    /**
+     * @return The datasources and their health.
+     */
+    public List<Node> getNodes()
+    {
+        return Collections.unmodifiableList( Arrays.asList( nodes ) );
+    }
+
+    /**
+     * @return The datasources in the order they must be tried.
+     */
+    private Node[] route()
+    {
+        if ( nodes.length == 1 || routing == ROUTING.FAILOVER ) {
+            return nodes;
+        }
+
+        final Node[] routed = new Node[ nodes.length ];
+        if ( routing == ROUTING.LEAST_LATENCY ) {
+            System.arraycopy( nodes, 0, routed, 0, nodes.length );
+            Arrays.sort( routed, new Comparator<Node>()
+            {
+                @Override
+                public int compare( final Node node1, final Node node2 )
+                {
+                    return Double.compare( node1.latency, node2.latency );
+                }
+            } );
+        } else {
+            final int start = ( next.getAndIncrement() & Integer.MAX_VALUE ) % nodes.length;
+            for ( int i = 0; i < nodes.length; i++ ) {
+                routed[i] = nodes[( start + i ) % nodes.length];
+            }
+        }
+        return routed;
+    }
+
+    /**
+     * @param node A datasource.
+     * @return A connection of the datasource, looked up if it isn't cached.
+     * @throws NamingException If the datasource jndi name doesn't exist.
+     * @throws SQLException    If the datasource is unreachable.
+     */
+    private Connection getConnection( final Node node )
+            throws NamingException, SQLException
+    {
+        DataSource dataSource = node.dataSource;
+        if ( dataSource == null ) {
+            dataSource = ( DataSource ) new InitialContext().lookup( node.jndi );
+            if ( dataSource == null ) {
+                throw new NameNotFoundException( node.jndi );
+            }
+            node.dataSource = dataSource;
+        }
+
+        if ( dbUser != null && !dbUser.trim().isEmpty() && dbPassword != null && !dbPassword.trim().isEmpty() ) {
+            return dataSource.getConnection( dbUser, dbPassword );
+        } else {
+            return dataSource.getConnection();
+        }
+    }
+
+}
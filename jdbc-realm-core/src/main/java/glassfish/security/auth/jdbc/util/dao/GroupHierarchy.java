@@ -0,0 +1,193 @@
+package glassfish.security.auth.jdbc.util.dao;
+
+import java.util.Arrays;
+
+/**
+ * GroupHierarchy class is an immutable in-memory transitive closure of nested groups
+ * (groups containing groups) read from the group-parent-table.
+ * <p>
+ * The ancestors of every group are computed once when the hierarchy is created, so the expansion of the
+ * groups of a user is a pure in-memory walk without any query.
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ * @see SecurityStorage
+ * @see GroupSet
+ */
+public final class GroupHierarchy
+{
+
+    private final GroupNameTable table;
+    // ancestors[id] is the sorted array of the ancestor identifiers of the group id (null if none)
+    private final int[][] ancestors;
+    // The creation time in milliseconds
+    private final long loadedAt;
+
+    private GroupHierarchy( final GroupNameTable table, final int[][] ancestors )
+    {
+        this.table = table;
+        this.ancestors = ancestors;
+        this.loadedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Create a group hierarchy from the pairs of a transitive closure (already computed by the database).
+     * <p>
+     * @param table     A group name table.
+     * @param children  The child group name identifiers.
+     * @param ancestors The ancestor group name identifiers (ancestors[i] is an ancestor of children[i]).
+     * @param count     The number of pairs.
+     * @return A group hierarchy.
+     */
+    public static GroupHierarchy fromClosure( final GroupNameTable table, final int[] children, final int[] ancestors, final int count )
+    {
+        return new GroupHierarchy( table, group( children, ancestors, count ) );
+    }
+
+    /**
+     * Create a group hierarchy from the direct child-parent pairs, the transitive closure
+     * is computed iteratively (the cycles are ignored).
+     * <p>
+     * @param table    A group name table.
+     * @param children The child group name identifiers.
+     * @param parents  The parent group name identifiers (parents[i] is a parent of children[i]).
+     * @param count    The number of pairs.
+     * @return A group hierarchy.
+     */
+    public static GroupHierarchy fromEdges( final GroupNameTable table, final int[] children, final int[] parents, final int count )
+    {
+        final int[][] direct = group( children, parents, count );
+        final int[][] closure = new int[ direct.length ][];
+        final boolean[] visited = new boolean[ direct.length ];
+        int[] stack = new int[ 16 ];
+        int[] found = new int[ 16 ];
+
+        for ( int group = 0; group < direct.length; group++ ) {
+            if ( direct[group] == null ) {
+                continue;
+            }
+            // depth-first walk of the parents of the group
+            Arrays.fill( visited, false );
+            visited[group] = true;
+            int top = 0;
+            int size = 0;
+            stack[top++] = group;
+            while ( top > 0 ) {
+                final int current = stack[--top];
+                if ( direct[current] == null ) {
+                    continue;
+                }
+                for ( int parent : direct[current] ) {
+                    if ( visited[parent] ) {
+                        continue;
+                    }
+                    visited[parent] = true;
+                    if ( size == found.length ) {
+                        found = Arrays.copyOf( found, size * 2 );
+                    }
+                    found[size++] = parent;
+                    if ( top == stack.length ) {
+                        stack = Arrays.copyOf( stack, top * 2 );
+                    }
+                    stack[top++] = parent;
+                }
+            }
+            closure[group] = Arrays.copyOf( found, size );
+            Arrays.sort( closure[group] );
+        }
+        return new GroupHierarchy( table, closure );
+    }
+
+    /**
+     * Expand a set of groups with all their ancestors.
+     * <p>
+     * @param groups The groups which a user directly belongs to.
+     * @return The groups and their ancestors.
+     */
+    public GroupSet expand( final GroupSet groups )
+    {
+        int count = groups.size();
+        for ( int i = 0; i < groups.size(); i++ ) {
+            final int id = groups.getId( i );
+            if ( id < ancestors.length && ancestors[id] != null ) {
+                count += ancestors[id].length;
+            }
+        }
+        if ( count == groups.size() ) {
+            return groups;
+        }
+
+        final int[] ids = new int[ count ];
+        int index = 0;
+        for ( int i = 0; i < groups.size(); i++ ) {
+            final int id = groups.getId( i );
+            ids[index++] = id;
+            if ( id < ancestors.length && ancestors[id] != null ) {
+                System.arraycopy( ancestors[id], 0, ids, index, ancestors[id].length );
+                index += ancestors[id].length;
+            }
+        }
+        return GroupSet.of( table, ids, count );
+    }
+
+    /**
+     * @return The creation time in milliseconds.
+     */
+    public long getLoadedAt()
+    {
+        return loadedAt;
+    }
+
+    /**
+     * Group the second elements of pairs by their first element.
+     * <p>
+     * @param keys   The first elements.
+     * @param values The second elements.
+     * @param count  The number of pairs.
+     * @return An array indexed by the first elements containing the sorted distinct second elements.
+     */
+    private static int[][] group( final int[] keys, final int[] values, final int count )
+    {
+        int length = 0;
+        for ( int i = 0; i < count; i++ ) {
+            length = Math.max( length, Math.max( keys[i], values[i] ) + 1 );
+        }
+
+        final int[] sizes = new int[ length ];
+        for ( int i = 0; i < count; i++ ) {
+            sizes[keys[i]]++;
+        }
+        final int[][] grouped = new int[ length ][];
+        for ( int i = 0; i < count; i++ ) {
+            if ( grouped[keys[i]] == null ) {
+                grouped[keys[i]] = new int[ sizes[keys[i]] ];
+                sizes[keys[i]] = 0;
+            }
+            grouped[keys[i]][sizes[keys[i]]++] = values[i];
+        }
+        for ( int i = 0; i < length; i++ ) {
+            if ( grouped[i] != null ) {
+                grouped[i] = distinct( grouped[i], i );
+            }
+        }
+        return grouped;
+    }
+
+    /**
+     * @param ids     Group name identifiers.
+     * @param exclude A group name identifier to remove (a group isn't its own ancestor).
+     * @return The sorted distinct identifiers.
+     */
+    private static int[] distinct( final int[] ids, final int exclude )
+    {
+        Arrays.sort( ids );
+        int size = 0;
+        for ( int i = 0; i < ids.length; i++ ) {
+            if ( ids[i] != exclude && ( size == 0 || ids[size - 1] != ids[i] ) ) {
+                ids[size++] = ids[i];
+            }
+        }
+        return size == ids.length ? ids : Arrays.copyOf( ids, size );
+    }
+
+}
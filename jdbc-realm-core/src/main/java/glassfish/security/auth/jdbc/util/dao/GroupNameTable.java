@@ -0,0 +1,130 @@
+package glassfish.security.auth.jdbc.util.dao;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * GroupNameTable class is a dictionary of group names shared by all the users of a {@link SecurityStorage}.
+ * <p>
+ * Each distinct group name is encoded to a small integer identifier, so the group membership of a user
+ * is stored as a sorted <code>int</code> array ({@link GroupSet}) instead of an array of strings duplicating
+ * the same few hundred group names for thousands of users.
+ * <p>
+ * The identifiers are never reassigned: a group name keeps its identifier for the lifetime of the table.
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ * @see SecurityStorage
+ * @see GroupSet
+ */
+public class GroupNameTable
+{
+
+    // group name -> identifier
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+    // identifier -> group name, replaced (never modified) when it grows so it can be read without lock
+    private volatile String[] names = new String[ 64 ];
+    private int size = 0;
+
+    /**
+     * Return the canonical instance of a group name.
+     * <p>
+     * @param name A group name.
+     *             May be <code>null</code>.
+     * @return The canonical instance of the group name, <code>null</code> if the name argument is null.
+     */
+    public String canonicalize( final String name )
+    {
+        return name != null ? nameOf( idOf( name ) ) : null;
+    }
+
+    /**
+     * Return the identifier of a group name, a new identifier is assigned if the group name is unknown.
+     * <p>
+     * @param name A group name.
+     * @return The group name identifier.
+     */
+    public int idOf( final String name )
+    {
+        final Integer id = ids.get( name );
+        return id != null ? id : assign( name );
+    }
+
+    /**
+     * Return the identifier of a known group name.
+     * <p>
+     * @param name A group name.
+     * @return The group name identifier, <code>-1</code> if the group name is unknown.
+     */
+    public int find( final String name )
+    {
+        final Integer id = name != null ? ids.get( name ) : null;
+        return id != null ? id : -1;
+    }
+
+    /**
+     * @param id A group name identifier.
+     * @return The canonical group name corresponding to the identifier.
+     * @throws IndexOutOfBoundsException If the identifier wasn't assigned.
+     */
+    public String nameOf( final int id )
+    {
+        final String name = id >= 0 && id < names.length ? names[id] : null;
+        if ( name == null ) {
+            throw new IndexOutOfBoundsException( "Unknown group name identifier " + id );
+        }
+        return name;
+    }
+
+    /**
+     * Encode a set of group names.
+     * <p>
+     * @param groups A set of group names, the null names and the duplicates are ignored.
+     * @return A group set.
+     */
+    public GroupSet encode( final String... groups )
+    {
+        final int[] groupIds = new int[ groups.length ];
+        int count = 0;
+        for ( String group : groups ) {
+            if ( group != null ) {
+                groupIds[count++] = idOf( group );
+            }
+        }
+        return GroupSet.of( this, groupIds, count );
+    }
+
+    /**
+     * @return The number of distinct group names.
+     */
+    public int size()
+    {
+        return ids.size();
+    }
+
+    /**
+     * Assign a new identifier to a group name.
+     * <p>
+     * @param name A group name.
+     * @return The group name identifier.
+     */
+    private synchronized int assign( final String name )
+    {
+        final Integer id = ids.get( name );
+        if ( id != null ) {
+            return id;
+        }
+
+        String[] table = names;
+        if ( size == table.length ) {
+            table = Arrays.copyOf( table, size * 2 );
+        }
+        // the name is published into the array before its identifier
+        table[size] = name;
+        names = table;
+        ids.put( name, size );
+        return size++;
+    }
+
+}
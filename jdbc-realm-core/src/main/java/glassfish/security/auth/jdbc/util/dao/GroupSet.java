@@ -0,0 +1,129 @@
+package glassfish.security.auth.jdbc.util.dao;
+
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.NoSuchElementException;
+
+/**
+ * GroupSet class is an immutable set of groups which a user belongs to, encoded as a sorted array
+ * of group name identifiers of a {@link GroupNameTable}.
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ * @see GroupNameTable
+ */
+public final class GroupSet
+{
+
+    private final GroupNameTable table;
+    // sorted distinct group name identifiers
+    private final int[] ids;
+
+    private GroupSet( final GroupNameTable table, final int[] ids )
+    {
+        this.table = table;
+        this.ids = ids;
+    }
+
+    /**
+     * Create a group set from group name identifiers.
+     * <p>
+     * @param table A group name table.
+     * @param ids   Group name identifiers of the table, the duplicates are ignored.
+     *              The array is sorted and may be reused by the group set.
+     * @param count The number of identifiers to read in the ids argument.
+     * @return A group set.
+     */
+    public static GroupSet of( final GroupNameTable table, final int[] ids, final int count )
+    {
+        Arrays.sort( ids, 0, count );
+        int distinct = 0;
+        for ( int i = 0; i < count; i++ ) {
+            if ( distinct == 0 || ids[distinct - 1] != ids[i] ) {
+                ids[distinct++] = ids[i];
+            }
+        }
+        return new GroupSet( table, distinct == ids.length ? ids : Arrays.copyOf( ids, distinct ) );
+    }
+
+    /**
+     * @return The number of groups.
+     */
+    public int size()
+    {
+        return ids.length;
+    }
+
+    /**
+     * @param index A group index, between <code>0</code> and {@link #size()} excluded.
+     * @return The group name identifier at the index.
+     */
+    public int getId( final int index )
+    {
+        return ids[index];
+    }
+
+    /**
+     * @param index A group index, between <code>0</code> and {@link #size()} excluded.
+     * @return The group name at the index.
+     */
+    public String getName( final int index )
+    {
+        return table.nameOf( ids[index] );
+    }
+
+    /**
+     * @param group A group name.
+     * @return <code>true</code> if the set contains the group, <code>false</code> otherwise.
+     */
+    public boolean contains( final String group )
+    {
+        final int id = table.find( group );
+        return id >= 0 && Arrays.binarySearch( ids, id ) >= 0;
+    }
+
+    /**
+     * @return A string array of the group names.
+     */
+    public String[] toArray()
+    {
+        final String[] groups = new String[ ids.length ];
+        for ( int i = 0; i < ids.length; i++ ) {
+            groups[i] = table.nameOf( ids[i] );
+        }
+        return groups;
+    }
+
+    /**
+     * @return An enumeration of the group names decoding the identifiers on the fly.
+     */
+    public Enumeration<String> enumeration()
+    {
+        return new Enumeration<String>()
+        {
+            private int index = 0;
+
+            @Override
+            public boolean hasMoreElements()
+            {
+                return index < ids.length;
+            }
+
+            @Override
+            public String nextElement()
+            {
+                if ( index >= ids.length ) {
+                    throw new NoSuchElementException();
+                }
+                return table.nameOf( ids[index++] );
+            }
+        };
+    }
+
+    @Override
+    public String toString()
+    {
+        return Arrays.toString( toArray() );
+    }
+
+}
@@ -0,0 +1,128 @@
+package glassfish.security.auth.jdbc.util.dao;
+
+import glassfish.security.auth.jdbc.util.dao.exceptions.SecurityStorageException;
+import glassfish.security.auth.jdbc.util.metrics.SecurityMetrics;
+
+/**
+ * ISecurityStorage interface describes the users and groups storage of the realm, implemented by
+ * {@link SecurityStorage} and stacked with decorators (caching, metrics, coalescing, ...).
+ * The implementations must be thread-safe.
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ * @see SecurityStorage
+ */
+public interface ISecurityStorage
+{
+
+    /**
+     * The lookups of a login, bound to the current thread until it is closed.
+     */
+    interface Session
+            extends AutoCloseable
+    {
+
+        /**
+         * Release the resources of the login.
+         */
+        @Override
+        void close();
+
+    }
+
+    /**
+     * Normalize a user name, the caches should use the normalized user names as keys.
+     * <p>
+     * @param username A user name.
+     * @return The normalized user name.
+     */
+    String normalizeUsername( String username );
+
+    /**
+     * Find a user password.
+     * <p>
+     * @param username A user name.
+     * @return A user password or <code>null</code> if the user doesn't exist.
+     */
+    String findPassword( String username );
+
+    /**
+     * Find a user password, its per-user salt and its per-user password type.
+     * <p>
+     * @param username A user name.
+     * @return The user credentials or <code>null</code> if the user doesn't exist.
+     */
+    UserCredentials findCredentials( String username );
+
+    /**
+     * Find and return groups which a user name belongs to.
+     * <p>
+     * @param username A user name.
+     * @return A string array of groups belonging to a user name.
+     */
+    String[] findGroupNames( String username );
+
+    /**
+     * Find and return groups which a user name belongs to.
+     * <p>
+     * @param username A user name.
+     * @return The set of groups belonging to a user name.
+     */
+    GroupSet findGroupSet( String username );
+
+    /**
+     * Check the queries against the database.
+     * <p>
+     * @throws SecurityStorageException If the datasource is unreachable or if a query is invalid.
+     */
+    void validateQueries()
+            throws SecurityStorageException;
+
+    /**
+     * Open a session bound to the current thread: the lookups of the thread share its resources (a single connection
+     * for the credentials and the groups of a login) until it is closed. A session opened while an other one is bound
+     * to the thread joins it.
+     * <p>
+     * @return The session, to close once the login is over.
+     */
+    Session openSession();
+
+    /**
+     * Start the background services of the storage.
+     * <p>
+     * @param outermost The outermost storage of the decorators stack (the storage itself if it isn't decorated):
+     *                  the evictions received from the other instances of the cluster are applied to it with
+     *                  {@link #evict(String)}, so they reach the caches of all the decorators.
+     */
+    void start( ISecurityStorage outermost );
+
+    /**
+     * Stop the background services of the storage, once it isn't used anymore.
+     */
+    void close();
+
+    /**
+     * Evict a user from the caches, after its password or its groups changed.
+     * <p>
+     * @param username A user name.
+     */
+    void invalidate( String username );
+
+    /**
+     * Evict all the users from the caches.
+     */
+    void invalidateAll();
+
+    /**
+     * Evict a user from the caches of this instance only, after an other instance of the cluster invalidated it.
+     * <p>
+     * @param normalizedUsername A normalized user name, <code>null</code> to evict all the users.
+     */
+    void evict( String normalizedUsername );
+
+    /**
+     * @return The storage metrics.
+     */
+    SecurityMetrics getMetrics();
+
+}
@@ -0,0 +1,446 @@
+package glassfish.security.auth.jdbc.util.dao;
+
+import glassfish.security.auth.jdbc.util.dao.exceptions.SecurityStorageException;
+import glassfish.security.auth.jdbc.util.factory.PasswordTypeFactory;
+import glassfish.security.auth.jdbc.util.factory.exceptions.PasswordTypeException;
+import glassfish.security.auth.jdbc.util.factory.passwordtypes.IPasswordType;
+import glassfish.security.auth.jdbc.util.factory.passwordtypes.MessageDigestPassword;
+import glassfish.security.auth.jdbc.util.factory.passwordtypes.WrappedPassword;
+import glassfish.security.auth.jdbc.util.i18n.StringManager;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * PasswordRehasher class migrates the stored hashes of a legacy password type to a {@link WrappedPassword} type
+ * without the plaintext passwords, for example from <code>SHA-1</code> to <code>Bcrypt(SHA-1)</code>.
+ * <p>
+ * The users of the legacy password type (a <code>user-password-type-column</code> value, or no value for the realm
+ * password type) are streamed in user name order with a forward-only cursor. The legacy hashes of a chunk are wrapped
+ * in parallel by a {@link ForkJoinPool} while the next chunk is read, then written back with a JDBC batch statement,
+ * a transaction per chunk, along with the wrapped password type name. A hash changed since it was read is left as is.
+ * The users are read from and written to the primary datasource, the first of the datasource-jndi property.
+ * <p>
+ * The last user name of each committed chunk is written to a checkpoint file, so an interrupted migration resumes
+ * after it. The realm keeps authenticating both the migrated and the legacy users during the migration.
+ * <p>
+ * The tool runs standalone with a properties file containing the realm properties and the <code>rehash-*</code>
+ * properties, the <code>datasource-jndi</code> property being resolved by the JNDI provider of the classpath:
+ * <pre>
+ * mvn -Prehash exec:java -Drehash.properties=rehash.properties
+ * </pre>
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ * @see WrappedPassword
+ */
+public class PasswordRehasher
+{
+
+    /**
+     * PasswordRehasher properties enumeration, the other properties are the realm ones.
+     */
+    public static enum PROPERTY
+    {
+
+        LEGACY_PASSWORD_TYPE( "rehash-legacy-password-type" ),
+        WRAPPER_ALGORITHM( "rehash-wrapper-algorithm" ),
+        CHECKPOINT_FILE( "rehash-checkpoint-file" ),
+        BATCH_SIZE( "rehash-batch-size" ),
+        PARALLELISM( "rehash-parallelism" );
+
+        private String name;
+
+        PROPERTY( String name )
+        {
+            this.name = name;
+        }
+
+        @Override
+        public String toString()
+        {
+            return name;
+        }
+
+    }
+
+    /**
+     * Wrap the legacy hashes of a range of a chunk, split until the range is small enough.
+     */
+    private final class WrapTask
+            extends RecursiveAction
+    {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Chunk chunk;
+        private final int from;
+        private final int to;
+
+        WrapTask( final Chunk chunk, final int from, final int to )
+        {
+            this.chunk = chunk;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if ( to - from <= WRAP_THRESHOLD ) {
+                for ( int i = from; i < to; i++ ) {
+                    chunk.wrappedPasswords[i] = wrappedPassword.wrap( chunk.passwords.get( i ) );
+                }
+                return;
+            }
+            final int middle = ( from + to ) >>> 1;
+            invokeAll( new WrapTask( chunk, from, middle ), new WrapTask( chunk, middle, to ) );
+        }
+    }
+
+    /**
+     * The users read from the cursor and their wrapped hashes.
+     */
+    private static final class Chunk
+    {
+
+        private final List<String> usernames = new ArrayList<>();
+        private final List<String> passwords = new ArrayList<>();
+        private String[] wrappedPasswords;
+        private WrapTask task;
+    }
+
+    /**
+     * The default number of users updated per transaction (value: {@value }).
+     */
+    public final static int DEFAULT_BATCH_SIZE = 1000;
+
+    /**
+     * The number of hashes wrapped by a fork-join task without splitting it (value: {@value }).
+     */
+    public final static int WRAP_THRESHOLD = 8;
+
+    private final static Charset UTF_8 = Charset.forName( "UTF-8" );
+
+    private final SecurityStorage securityStorage;
+    private final WrappedPassword wrappedPassword;
+    // The user-password-type-column value of the migrated users
+    private final String wrappedPasswordType;
+    // The user-password-type-column value of the legacy users, null for the realm password type
+    private final String legacyPasswordType;
+    private final File checkpointFile;
+    private final int batchSize;
+    private final int parallelism;
+    private final String selectQuery;
+    private final String updateQuery;
+
+    private final StringManager rehashSm = StringManager.getStringManager( PasswordRehasher.class.getSimpleName(),
+            PasswordRehasher.class.getClassLoader() );
+
+    /**
+     * @param securityStorage     The security storage of the user-table, with a user-password-type-column.
+     * @param wrappedPassword     The password type wrapping the legacy hashes, it must be thread-safe.
+     * @param wrappedPasswordType The user-password-type-column value of the migrated users (for example
+     *                            <code>Bcrypt(SHA-1)</code>).
+     * @param legacyPasswordType  The user-password-type-column value of the legacy users.
+     *                            May be <code>null</code> (the users without password type).
+     * @param checkpointFile      The file keeping the last migrated user name.
+     *                            May be <code>null</code> (the migration cannot be resumed).
+     * @param batchSize           The number of users updated per transaction.
+     * @param parallelism         The number of threads wrapping the hashes.
+     * @throws IllegalArgumentException If the user-password-type-column property isn't defined.
+     */
+    public PasswordRehasher( final SecurityStorage securityStorage, final WrappedPassword wrappedPassword, final String wrappedPasswordType,
+            final String legacyPasswordType, final File checkpointFile, final int batchSize, final int parallelism )
+    {
+        if ( batchSize < 1 || parallelism < 1 ) {
+            throw new IllegalArgumentException( "batchSize and parallelism arguments must be positive" );
+        }
+        // the realm tells the migrated users from the legacy ones by their password type
+        if ( !securityStorage.hasProperty( SecurityStorage.PROPERTY.USER_PASSWORD_TYPE_COLUMN ) ) {
+            throw new IllegalArgumentException( "The " + SecurityStorage.PROPERTY.USER_PASSWORD_TYPE_COLUMN + " property must be defined" );
+        }
+        if ( wrappedPasswordType == null || wrappedPasswordType.trim().isEmpty() ) {
+            throw new IllegalArgumentException( "wrappedPasswordType argument cannot be null or empty" );
+        }
+        this.securityStorage = securityStorage;
+        this.wrappedPassword = wrappedPassword;
+        this.wrappedPasswordType = wrappedPasswordType.trim();
+        this.legacyPasswordType = legacyPasswordType != null && !legacyPasswordType.trim().isEmpty() ? legacyPasswordType.trim() : null;
+        this.checkpointFile = checkpointFile;
+        this.batchSize = batchSize;
+        this.parallelism = parallelism;
+
+        final String userTable = property( SecurityStorage.PROPERTY.USER_TABLE );
+        final String userNameColumn = property( SecurityStorage.PROPERTY.USER_NAME_COLUMN );
+        final String userPasswordColumn = property( SecurityStorage.PROPERTY.USER_PASSWORD_COLUMN );
+        final String userPasswordTypeColumn = property( SecurityStorage.PROPERTY.USER_PASSWORD_TYPE_COLUMN );
+        this.selectQuery = "SELECT " + userNameColumn + ", " + userPasswordColumn + " FROM " + userTable
+                + " WHERE " + userNameColumn + " > ? AND "
+                + ( this.legacyPasswordType != null ? userPasswordTypeColumn + " = ?"
+                : "(" + userPasswordTypeColumn + " IS NULL OR " + userPasswordTypeColumn + " = '')" )
+                + " ORDER BY " + userNameColumn;
+        this.updateQuery = "UPDATE " + userTable + " SET " + userPasswordColumn + " = ?, " + userPasswordTypeColumn + " = ?"
+                + " WHERE " + userNameColumn + " = ? AND " + userPasswordColumn + " = ?";
+    }
+
+    /**
+     * Wrap the legacy hashes, from the checkpoint if any.
+     * <p>
+     * @return The number of users migrated.
+     * @throws SecurityStorageException If a chunk cannot be read or updated (the previous chunks stay committed),
+     *                                  if a hash cannot be wrapped or if the checkpoint file cannot be read or written.
+     */
+    public int rehash()
+            throws SecurityStorageException
+    {
+        final long start = System.nanoTime();
+        final ForkJoinPool pool = new ForkJoinPool( parallelism );
+        int migrated = 0;
+        int skipped = 0;
+        String msg;
+        // the cursor and the updates both use the primary, a replica may lag or refuse the writes
+        try ( Connection readConnection = securityStorage.getPrimaryConnection();
+                Connection writeConnection = securityStorage.getPrimaryConnection() ) {
+            // some drivers only stream a forward-only cursor inside a transaction
+            readConnection.setAutoCommit( false );
+            writeConnection.setAutoCommit( false );
+            try ( PreparedStatement selectStmt = readConnection.prepareStatement( selectQuery, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY );
+                    PreparedStatement updateStmt = writeConnection.prepareStatement( updateQuery ) ) {
+                selectStmt.setFetchSize( batchSize );
+                selectStmt.setString( 1, readCheckpoint() );
+                if ( legacyPasswordType != null ) {
+                    selectStmt.setString( 2, legacyPasswordType );
+                }
+                try ( ResultSet rs = selectStmt.executeQuery() ) {
+                    Chunk current = wrap( pool, read( rs ) );
+                    while ( current != null ) {
+                        // the next chunk is read while this one is wrapped
+                        final Chunk next = read( rs );
+                        current.task.join();
+                        final int updated;
+                        try {
+                            updated = update( updateStmt, current );
+                            writeConnection.commit();
+                        } catch ( SQLException ex ) {
+                            writeConnection.rollback();
+                            throw ex;
+                        }
+                        migrated += updated;
+                        skipped += current.usernames.size() - updated;
+                        writeCheckpoint( current.usernames.get( current.usernames.size() - 1 ) );
+                        current = wrap( pool, next );
+                    }
+                }
+            } finally {
+                readConnection.rollback();
+            }
+        } catch ( SQLException ex ) {
+            msg = log( Level.SEVERE, "passwordrehasher.rehash.sql.exception",
+                    ex.getMessage(), migrated, PasswordRehasher.class.getName() + ".rehash" );
+            throw new SecurityStorageException( msg, ex );
+        } catch ( IOException ex ) {
+            msg = log( Level.SEVERE, "passwordrehasher.rehash.checkpoint.exception",
+                    checkpointFile, ex.getMessage(), migrated, PasswordRehasher.class.getName() + ".rehash" );
+            throw new SecurityStorageException( msg, ex );
+        } catch ( RuntimeException ex ) {
+            msg = log( Level.SEVERE, "passwordrehasher.rehash.wrap.exception",
+                    ex.getMessage(), migrated, PasswordRehasher.class.getName() + ".rehash" );
+            throw new SecurityStorageException( msg, ex );
+        } finally {
+            pool.shutdownNow();
+        }
+
+        log( Level.INFO, "passwordrehasher.rehash.info", migrated, skipped, wrappedPasswordType,
+                TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start ), PasswordRehasher.class.getName() + ".rehash" );
+        return migrated;
+    }
+
+    /**
+     * Read the next users from the cursor.
+     */
+    private Chunk read( final ResultSet rs )
+            throws SQLException
+    {
+        final Chunk chunk = new Chunk();
+        while ( chunk.usernames.size() < batchSize && rs.next() ) {
+            chunk.usernames.add( rs.getString( 1 ) );
+            chunk.passwords.add( rs.getString( 2 ) );
+        }
+        return chunk;
+    }
+
+    /**
+     * Submit the wrapping of a chunk.
+     * <p>
+     * @return The chunk, <code>null</code> if it's empty.
+     */
+    private Chunk wrap( final ForkJoinPool pool, final Chunk chunk )
+    {
+        if ( chunk.usernames.isEmpty() ) {
+            return null;
+        }
+        chunk.wrappedPasswords = new String[ chunk.usernames.size() ];
+        chunk.task = new WrapTask( chunk, 0, chunk.usernames.size() );
+        pool.execute( chunk.task );
+        return chunk;
+    }
+
+    /**
+     * Add the wrapped hashes of a chunk to the batch and execute it.
+     * <p>
+     * @return The number of users updated.
+     */
+    private int update( final PreparedStatement updateStmt, final Chunk chunk )
+            throws SQLException
+    {
+        for ( int i = 0; i < chunk.usernames.size(); i++ ) {
+            updateStmt.setString( 1, chunk.wrappedPasswords[i] );
+            updateStmt.setString( 2, wrappedPasswordType );
+            updateStmt.setString( 3, chunk.usernames.get( i ) );
+            // a password changed since it was read isn't a legacy hash anymore
+            updateStmt.setString( 4, chunk.passwords.get( i ) );
+            updateStmt.addBatch();
+        }
+        int updated = 0;
+        for ( int count : updateStmt.executeBatch() ) {
+            // SUCCESS_NO_INFO (-2) is a successful update of an unknown number of rows
+            updated += count == PreparedStatement.SUCCESS_NO_INFO ? 1 : count;
+        }
+        return updated;
+    }
+
+    /**
+     * @return The last migrated user name, an empty string if there isn't any checkpoint.
+     */
+    private String readCheckpoint()
+            throws IOException
+    {
+        if ( checkpointFile == null || !checkpointFile.exists() ) {
+            return "";
+        }
+        return new String( Files.readAllBytes( checkpointFile.toPath() ), UTF_8 );
+    }
+
+    /**
+     * Replace the checkpoint file with the last user name of a committed chunk.
+     */
+    private void writeCheckpoint( final String username )
+            throws IOException
+    {
+        if ( checkpointFile == null ) {
+            return;
+        }
+        final File tmp = new File( checkpointFile.getPath() + ".tmp" );
+        Files.write( tmp.toPath(), username.getBytes( UTF_8 ) );
+        Files.move( tmp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+    }
+
+    private String property( final SecurityStorage.PROPERTY property )
+    {
+        return securityStorage.properties.getProperty( property.toString() ).trim();
+    }
+
+    /**
+     * Returns a localized string.
+     * <p>
+     * @param level    A logging level.
+     * @param key      A name of a resource bundle to fetch.
+     * @param messVals A set of arguments to provide to the resource bundle.
+     * @return A formatted localized string.
+     */
+    private String log( final Level level, final String key, Object... messVals )
+    {
+        String message = rehashSm.getString( key, messVals );
+        if ( Logger.getLogger( PasswordRehasher.class.getName() ).isLoggable( level ) ) {
+            Logger.getLogger( PasswordRehasher.class.getName() ).log( level, message );
+        }
+        return message;
+    }
+
+    /**
+     * Migrate the legacy hashes of the users described by a properties file.
+     * <p>
+     * <b>Mandatory properties:</b> the mandatory realm properties, <code>user-password-type-column</code>
+     * and <code>rehash-wrapper-algorithm</code> (for example <code>Bcrypt</code>).
+     * <p>
+     * <b>Optional properties:</b> the other realm properties, <code>rehash-legacy-password-type</code> (by default the
+     * users without password type, encrypted with the <code>digest-algorithm</code>), <code>rehash-checkpoint-file</code>,
+     * <code>rehash-batch-size</code> and <code>rehash-parallelism</code> (by default the number of processors).
+     * <p>
+     * @param args The properties file path.
+     */
+    public static void main( final String[] args )
+    {
+        if ( args.length != 1 ) {
+            System.err.println( "Usage: java " + PasswordRehasher.class.getName() + " <properties file>" );
+            System.exit( 2 );
+        }
+
+        final Properties properties = new Properties();
+        try ( InputStream in = new FileInputStream( args[0] ) ) {
+            properties.load( in );
+        } catch ( IOException ex ) {
+            System.err.println( "The properties file " + args[0] + " cannot be read: " + ex.getMessage() );
+            System.exit( 1 );
+        }
+
+        SecurityStorage securityStorage = null;
+        int status = 0;
+        try {
+            final String wrapper = properties.getProperty( PROPERTY.WRAPPER_ALGORITHM.toString() );
+            if ( wrapper == null || wrapper.trim().isEmpty() ) {
+                throw new IllegalArgumentException( "The " + PROPERTY.WRAPPER_ALGORITHM + " property must be defined" );
+            }
+            final String legacyPasswordType = properties.getProperty( PROPERTY.LEGACY_PASSWORD_TYPE.toString() );
+            final String legacyAlgorithm = legacyPasswordType != null && !legacyPasswordType.trim().isEmpty() ? legacyPasswordType.trim()
+                    : properties.getProperty( PasswordTypeFactory.PROPERTY.DIGEST_ALGORITHM.toString(),
+                            properties.getProperty( PasswordTypeFactory.PROPERTY.DEFAULT_DIGEST_ALGORITHM.toString(), MessageDigestPassword.DEFAULT_DIGEST ) );
+            final String wrappedPasswordType = wrapper.trim() + "(" + legacyAlgorithm.trim() + ")";
+
+            // the realm creates the same password type from the user-password-type-column value
+            final Properties passwordTypeProperties = new Properties();
+            passwordTypeProperties.putAll( properties );
+            passwordTypeProperties.setProperty( PasswordTypeFactory.PROPERTY.DIGEST_ALGORITHM.toString(), wrappedPasswordType );
+            final IPasswordType passwordType = PasswordTypeFactory.getInstance().createPasswordType( passwordTypeProperties );
+
+            final String checkpoint = properties.getProperty( PROPERTY.CHECKPOINT_FILE.toString() );
+            final String batchSize = properties.getProperty( PROPERTY.BATCH_SIZE.toString() );
+            final String parallelism = properties.getProperty( PROPERTY.PARALLELISM.toString() );
+            securityStorage = new SecurityStorage( properties );
+            final PasswordRehasher rehasher = new PasswordRehasher( securityStorage, ( WrappedPassword ) passwordType,
+                    wrappedPasswordType, legacyPasswordType,
+                    checkpoint != null && !checkpoint.trim().isEmpty() ? new File( checkpoint.trim() ) : null,
+                    batchSize != null ? Integer.parseInt( batchSize.trim() ) : DEFAULT_BATCH_SIZE,
+                    parallelism != null ? Integer.parseInt( parallelism.trim() ) : Runtime.getRuntime().availableProcessors() );
+            System.out.println( rehasher.rehash() + " users migrated to " + wrappedPasswordType );
+        } catch ( SecurityStorageException | PasswordTypeException | IllegalArgumentException ex ) {
+            System.err.println( ex.getMessage() );
+            status = 1;
+        } finally {
+            if ( securityStorage != null ) {
+                securityStorage.close();
+            }
+        }
+        if ( status != 0 ) {
+            System.exit( status );
+        }
+    }
+
+}
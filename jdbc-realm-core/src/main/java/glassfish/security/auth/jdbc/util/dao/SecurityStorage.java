@@ -0,0 +1,1687 @@
+package glassfish.security.auth.jdbc.util.dao;
+
+import glassfish.security.auth.jdbc.util.cache.CacheSnapshot;
+import glassfish.security.auth.jdbc.util.cache.CachedUser;
+import glassfish.security.auth.jdbc.util.cache.ICredentialCache;
+import glassfish.security.auth.jdbc.util.cache.OffHeapCredentialCache;
+import glassfish.security.auth.jdbc.util.cache.StripedCredentialCache;
+import glassfish.security.auth.jdbc.util.dao.exceptions.SecurityStorageException;
+import glassfish.security.auth.jdbc.util.i18n.StringManager;
+import glassfish.security.auth.jdbc.util.invalidation.IInvalidationBus;
+import glassfish.security.auth.jdbc.util.invalidation.MulticastInvalidationBus;
+import glassfish.security.auth.jdbc.util.metrics.SecurityMetrics;
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.naming.NamingException;
+
+/**
+ * SecurityStorage class is a Database abstraction for a User and a Group Table used with Glassfish.
+ * <p>
+ * <b>Mandatory properties:</b>
+ * <ul>
+ * <li> <code>jaas-context</code>: JAAS context name used to access LoginModule for authentication (for example <i>jdbcRealmExtended</i>).
+ * <li> <code>datasource-jndi</code>: datasource jndi name, or a comma separated list of datasource jndi names
+ * (a primary and its read replicas) the connections are routed between.
+ * <li> <code>db-user</code>: datasource user name (if the datasource user name was define into the datasource jndi configuration then this
+ * property isn't mandatory).
+ * <li> <code>db-password</code>: datasource password (if the datasource password was define into the datasource jndi configuration then this
+ * property isn't mandatory).
+ * <li> <code>user-table</code>: table name containing user name and password.
+ * <li> <code>user-name-column</code>: column name corresponding to user name in user-table.
+ * <li> <code>password-column</code>: column name corresponding to password in user-table.
+ * <li> <code>group-table</code>: table name containing group name.
+ * <li> <code>group-name-column</code>: column name corresponding to group in group-table.
+ * <li><code>group-table-user-name-column</code>: column name corresponding to user name in group-table
+ * (this property isn't mandatory if the <code>group-table</code> property is equals to the <code>user-table</code> property).
+ * </ul>
+ * <p>
+ * <b>Optional properties:</b>
+ * <ul>
+ * <li> <code>user-salt-column</code>: column name corresponding to the plaintext per-user salt in user-table
+ * (read in the same row and query as the password).
+ * <li> <code>user-password-type-column</code>: column name corresponding to the per-user password type in user-table
+ * (a <code>digest-algorithm</code> value, read in the same row and query as the password).
+ * <li> <code>group-fetch-size</code>: number of group rows fetched per round trip by the user groups query
+ * (by default {@value #DEFAULT_GROUP_FETCH_SIZE}).
+ * <li> <code>username-normalization</code>: normalization applied to the user name before it is bound to the queries
+ * (values: <code>none</code>, <code>lowercase</code>, <code>nfkc</code> or <code>nfkc-lowercase</code>, by default <code>none</code>).
+ * <li> <code>user-name-normalized-column</code>: column name corresponding to the normalized user name in user-table, used
+ * instead of the user-name-column by the user password query, so the lookup stays a plain indexed equality. The user
+ * groups query joins the group-table to the user-table on the user-name-column to look the normalized user name up.
+ * <li> <code>user-password-query</code>: custom query to find the password according to a user name, replacing the query
+ * formated with the user-table properties (one parameter, the user name, and the password[, salt][, password type] columns,
+ * for example <code>SELECT PASSWORD FROM USERS WHERE LOWER(USERNAME) = LOWER(?)</code>).
+ * <li> <code>user-groups-query</code>: custom query to find the group names according to a user name, replacing the query
+ * formated with the group-table properties (one parameter, the user name, and the group name column).
+ * <li> <code>group-parent-table</code>: table name containing the nested groups (a row by child group and parent group).
+ * <li> <code>group-parent-column</code>: column name corresponding to the parent group in group-parent-table
+ * (mandatory if the <code>group-parent-table</code> property is defined).
+ * <li> <code>group-parent-child-column</code>: column name corresponding to the child group in group-parent-table
+ * (by default the <code>group-name-column</code> property).
+ * <li> <code>group-hierarchy-refresh</code>: number of seconds the nested groups are cached in memory before being reloaded
+ * (by default {@value #DEFAULT_GROUP_HIERARCHY_REFRESH}).
+ * <li> <code>datasource-routing</code>: routing of the connections between the datasources (values: <code>round-robin</code>,
+ * <code>least-latency</code> or <code>failover</code>, by default <code>round-robin</code>).
+ * <li> <code>circuit-breaker-threshold</code>: number of consecutive connection failures making a datasource unavailable
+ * (by default {@value #DEFAULT_CIRCUIT_BREAKER_THRESHOLD}).
+ * <li> <code>circuit-breaker-delay</code>: number of seconds a datasource stays unavailable before a trial connection
+ * (by default {@value #DEFAULT_CIRCUIT_BREAKER_DELAY}).
+ * <li> <code>cache-ttl</code>: number of seconds a user (credentials and groups) is served from the cache without querying
+ * the database (by default 0, the database is always queried).
+ * <li> <code>cache-max-staleness</code>: maximum age in seconds of a cached user served while the database is unreachable
+ * (degraded mode, by default 0, disabled). The stale users are refreshed in the background.
+ * <li> <code>cache-max-size</code>: maximum number of cached users (by default {@value #DEFAULT_CACHE_MAX_SIZE}).
+ * <li> <code>cache-type</code>: <code>heap</code> (by default, see {@link StripedCredentialCache}) or <code>off-heap</code>
+ * to keep the cached users in direct buffers (see {@link OffHeapCredentialCache}).
+ * <li> <code>cache-slot-size</code>: size in bytes of an off-heap cached user, a bigger user isn't cached
+ * (by default {@value #DEFAULT_CACHE_SLOT_SIZE}).
+ * <li> <code>cache-snapshot-file</code>: local file the cached users are periodically persisted to and restored from
+ * at the realm initialization (see {@link CacheSnapshot}). A restored user is served while it is younger than
+ * cache-max-staleness and reloaded from the database in the background. The file holds the cached password hashes
+ * and salts, it is created readable by its owner only.
+ * <li> <code>cache-snapshot-interval</code>: number of seconds between two snapshots (by default {@value #DEFAULT_CACHE_SNAPSHOT_INTERVAL}).
+ * <li> <code>cache-snapshot-reconcile-rate</code>: maximum number of restored users reloaded from the database per second
+ * (by default {@value #DEFAULT_CACHE_SNAPSHOT_RECONCILE_RATE}).
+ * <li> <code>invalidation-bus</code>: bus broadcasting the cache evictions to the other instances of the cluster,
+ * <code>multicast</code> (by default if the invalidation-multicast-group property is defined, see
+ * {@link MulticastInvalidationBus}) or the class name of an {@link IInvalidationBus} implementation.
+ * <li> <code>invalidation-multicast-group</code>, <code>invalidation-multicast-port</code> and
+ * <code>invalidation-multicast-ttl</code>: the multicast bus group address, port and datagrams time to live.
+ * <li> <code>connection-acquire-timeout</code>: number of milliseconds a login may wait for a connection (by default 0, unbounded).
+ * A connection acquired slower counts as a datasource failure for its circuit breaker.
+ * <li> <code>connection-max-pending</code>: maximum number of logins waiting for a connection at once, the other ones wait for
+ * their turn at most connection-acquire-timeout (by default {@value #DEFAULT_CONNECTION_MAX_PENDING}).
+ * <li> <code>login-read-only-transaction</code>: <code>true</code> to run the queries of a login session (see
+ * {@link #openSession()}) in a read-only transaction, so the credentials and the groups are read from a consistent
+ * snapshot (by default <code>false</code>).
+ * </ul>
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ * @see ISecurityStorage
+ */
+public class SecurityStorage
+        implements ISecurityStorage
+{
+
+    /**
+     * SecurityStorage properties enumeration
+     */
+    public static enum PROPERTY
+    {
+
+        DATASOURCE_JNDI( "datasource-jndi" ),
+        DATABASE_USER( "db-user" ),
+        DATABASE_PASSWORD( "db-password" ),
+        USER_TABLE( "user-table" ),
+        USER_NAME_COLUMN( "user-name-column" ),
+        USER_PASSWORD_COLUMN( "user-password-column" ),
+        USER_SALT_COLUMN( "user-salt-column" ),
+        USER_PASSWORD_TYPE_COLUMN( "user-password-type-column" ),
+        GROUP_TABLE( "group-table" ),
+        GROUP_NAME_COLUMN( "group-name-column" ),
+        GROUP_USER_NAME_COLUMN( "group-table-user-name-column" ),
+        GROUP_FETCH_SIZE( "group-fetch-size" ),
+        GROUP_PARENT_TABLE( "group-parent-table" ),
+        GROUP_PARENT_COLUMN( "group-parent-column" ),
+        GROUP_PARENT_CHILD_COLUMN( "group-parent-child-column" ),
+        GROUP_HIERARCHY_REFRESH( "group-hierarchy-refresh" ),
+        USERNAME_NORMALIZATION( "username-normalization" ),
+        USER_NAME_NORMALIZED_COLUMN( "user-name-normalized-column" ),
+        USER_PASSWORD_QUERY( SecurityStorage.USER_PASSWORD_QUERY_PROPERTY ),
+        USER_GROUPS_QUERY( SecurityStorage.USER_GROUPS_QUERY_PROPERTY ),
+        DATASOURCE_ROUTING( "datasource-routing" ),
+        CIRCUIT_BREAKER_THRESHOLD( "circuit-breaker-threshold" ),
+        CIRCUIT_BREAKER_DELAY( "circuit-breaker-delay" ),
+        CACHE_TTL( "cache-ttl" ),
+        CACHE_MAX_STALENESS( "cache-max-staleness" ),
+        CACHE_MAX_SIZE( "cache-max-size" ),
+        CONNECTION_ACQUIRE_TIMEOUT( "connection-acquire-timeout" ),
+        CONNECTION_MAX_PENDING( "connection-max-pending" ),
+        CACHE_TYPE( "cache-type" ),
+        CACHE_SLOT_SIZE( "cache-slot-size" ),
+        CACHE_SNAPSHOT_FILE( "cache-snapshot-file" ),
+        CACHE_SNAPSHOT_INTERVAL( "cache-snapshot-interval" ),
+        CACHE_SNAPSHOT_RECONCILE_RATE( "cache-snapshot-reconcile-rate" ),
+        INVALIDATION_BUS( "invalidation-bus" ),
+        INVALIDATION_MULTICAST_GROUP( "invalidation-multicast-group" ),
+        INVALIDATION_MULTICAST_PORT( "invalidation-multicast-port" ),
+        INVALIDATION_MULTICAST_TTL( "invalidation-multicast-ttl" ),
+        LOGIN_READ_ONLY_TRANSACTION( "login-read-only-transaction" );
+
+        private String name;
+
+        PROPERTY( String name )
+        {
+            this.name = name;
+        }
+
+        @Override
+        public String toString()
+        {
+            return name;
+        }
+
+    }
+
+    /**
+     * The property name corresponding to the formated query USER_PASSWORD_QUERY_FORMAT (value:{@value }).
+     * If the property is defined, the query isn't formated and the custom query is used instead
+     * (it must have one parameter, the user name, and return the password[, salt][, password type] columns).
+     */
+    final static String USER_PASSWORD_QUERY_PROPERTY = "user-password-query";
+    /**
+     * The property name corresponding to the formated query USER_GROUPS_QUERY_FORMAT (value:{@value }).
+     * If the property is defined, the query isn't formated and the custom query is used instead
+     * (it must have one parameter, the user name, and return the group name column).
+     */
+    final static String USER_GROUPS_QUERY_PROPERTY = "user-groups-query";
+    /**
+     * The formated query to find a password according to a username (ex: SELECT PASSWORD FROM USER WHERE USERNAME = 'SuperMario'
+     * or SELECT PASSWORD, SALT FROM USER WHERE USERNAME = 'SuperMario' if the user-salt-column property is defined).
+     */
+    final static String USER_PASSWORD_QUERY_FORMAT = "SELECT %1$s FROM %2$s WHERE %3$s = ?";
+    /**
+     * The formated query to find user groups according to a username (ex: SELECT GROUP_NAME FROM GROUP WHERE USERNAME = 'SuperMario').
+     */
+    final static String USER_GROUPS_QUERY_FORMAT = "SELECT %1$s FROM %2$s WHERE %3$s = ?";
+    /**
+     * The formated query to find user groups according to a normalized username, the group-table holding the user names
+     * of the user-table (ex: SELECT G.GROUP_NAME FROM GROUP G JOIN USER U ON G.USERNAME = U.USERNAME WHERE U.USERNAME_LOWER = 'supermario').
+     */
+    final static String USER_GROUPS_NORMALIZED_QUERY_FORMAT = "SELECT G.%1$s FROM %2$s G JOIN %4$s U ON G.%3$s = U.%5$s WHERE U.%6$s = ?";
+    /**
+     * The property name corresponding to the formated query GROUP_CLOSURE_QUERY_FORMAT (value:{@value }).
+     */
+    final static String GROUP_CLOSURE_QUERY_PROPERTY = "group-closure-query";
+    /**
+     * The property name corresponding to the formated query GROUP_PARENTS_QUERY_FORMAT (value:{@value }).
+     */
+    final static String GROUP_PARENTS_QUERY_PROPERTY = "group-parents-query";
+    /**
+     * The formated recursive query to find the transitive closure of the nested groups (pairs of a group and one of its ancestors).
+     */
+    final static String GROUP_CLOSURE_QUERY_FORMAT = "WITH RECURSIVE GROUP_CLOSURE( CHILD_NAME, ANCESTOR_NAME ) AS ("
+            + " SELECT %1$s, %2$s FROM %3$s"
+            + " UNION SELECT GROUP_CLOSURE.CHILD_NAME, PARENTS.%2$s FROM GROUP_CLOSURE JOIN %3$s PARENTS"
+            + " ON PARENTS.%1$s = GROUP_CLOSURE.ANCESTOR_NAME )"
+            + " SELECT CHILD_NAME, ANCESTOR_NAME FROM GROUP_CLOSURE";
+    /**
+     * The formated query to find the direct parents of the nested groups, used if the database
+     * doesn't support the recursive query (pairs of a group and one of its parents).
+     */
+    final static String GROUP_PARENTS_QUERY_FORMAT = "SELECT %1$s, %2$s FROM %3$s";
+
+    /**
+     * The default number of group rows fetched per round trip (value: {@value }).
+     */
+    public final static int DEFAULT_GROUP_FETCH_SIZE = 100;
+
+    /**
+     * The default number of seconds the nested groups are cached in memory (value: {@value }).
+     */
+    public final static int DEFAULT_GROUP_HIERARCHY_REFRESH = 300;
+
+    /**
+     * The default number of consecutive connection failures making a datasource unavailable (value: {@value }).
+     */
+    public final static int DEFAULT_CIRCUIT_BREAKER_THRESHOLD = 5;
+
+    /**
+     * The default number of seconds a datasource stays unavailable before a trial connection (value: {@value }).
+     */
+    public final static int DEFAULT_CIRCUIT_BREAKER_DELAY = 30;
+
+    /**
+     * The default maximum number of cached users (value: {@value }).
+     */
+    public final static int DEFAULT_CACHE_MAX_SIZE = 10000;
+
+    /**
+     * The default size in bytes of an off-heap cached user (value: {@value }).
+     */
+    public final static int DEFAULT_CACHE_SLOT_SIZE = 256;
+
+    /**
+     * The default number of seconds between two cache snapshots (value: {@value }).
+     */
+    public final static int DEFAULT_CACHE_SNAPSHOT_INTERVAL = 300;
+
+    /**
+     * The default maximum number of restored users reloaded per second (value: {@value }).
+     */
+    public final static int DEFAULT_CACHE_SNAPSHOT_RECONCILE_RATE = 50;
+
+    /**
+     * The invalidation-bus value of the multicast bus (value: {@value }).
+     */
+    public final static String INVALIDATION_BUS_MULTICAST = "multicast";
+
+    /**
+     * The cache-type value of the heap cache (value: {@value }).
+     */
+    public final static String CACHE_TYPE_HEAP = "heap";
+
+    /**
+     * The cache-type value of the off-heap cache (value: {@value }).
+     */
+    public final static String CACHE_TYPE_OFF_HEAP = "off-heap";
+
+    /**
+     * The default maximum number of logins waiting for a connection at once (value: {@value }).
+     */
+    public final static int DEFAULT_CONNECTION_MAX_PENDING = 8;
+
+    /**
+     * The maximum number of pending background refreshes (value: {@value }).
+     */
+    final static int MAX_PENDING_REFRESHES = 1024;
+
+    /**
+     * The maximum number of milliseconds the close waits for a running snapshot (value: {@value }).
+     */
+    final static long SHUTDOWN_TIMEOUT = 5000L;
+
+    private final StringManager secStorSm = StringManager.getStringManager( SecurityStorage.class.getSimpleName(), SecurityStorage.class.getClassLoader() );
+    protected Properties properties;
+    // The group name dictionary shared by all the users
+    private final GroupNameTable groupNameTable = new GroupNameTable();
+    // The number of group rows fetched per round trip
+    private int groupFetchSize;
+    // The number of milliseconds the nested groups are cached
+    private long groupHierarchyRefresh;
+    // The normalization applied to the user names
+    private UsernameNormalization usernameNormalization = UsernameNormalization.NONE;
+    // The nested groups cached in memory, null until the first load
+    private volatile GroupHierarchy groupHierarchy;
+    // Only one thread reloads the nested groups
+    private final ReentrantLock groupHierarchyLock = new ReentrantLock();
+    // The connections routing between the datasources
+    private DataSourceRouter dataSourceRouter;
+    // The number of milliseconds a cached user is fresh
+    private long cacheTtl;
+    // The maximum age in milliseconds of a cached user served while the database is unreachable
+    private long cacheMaxStaleness;
+    // The last-known users, null if the cache-ttl and cache-max-staleness properties aren't defined
+    private ICredentialCache credentialCache;
+    // The background refreshes of the stale users
+    private ExecutorService refreshExecutor;
+    // The users whose refresh is pending, a user is refreshed once at a time
+    private final Set<String> pendingRefreshes = Collections.newSetFromMap( new ConcurrentHashMap<String, Boolean>() );
+    private final SecurityMetrics metrics = new SecurityMetrics();
+    // The snapshot of the cached users, null if the cache-snapshot-file property isn't defined
+    private File snapshotFile;
+    // The number of milliseconds between two snapshots
+    private long snapshotInterval;
+    // The maximum number of restored users reloaded per second
+    private int snapshotReconcileRate;
+    // The periodic snapshots and the reconciliation of the restored users
+    private ScheduledExecutorService snapshotExecutor;
+    // The cache evictions broadcast, null if the invalidation-bus property isn't defined
+    private IInvalidationBus invalidationBus;
+    // The queries of a login session run in a read-only transaction
+    private boolean loginReadOnlyTransaction;
+    // The login session bound to the current thread, null outside a login
+    private final ThreadLocal<LoginSession> currentSession = new ThreadLocal<>();
+
+    /**
+     * The session returned to the lookups joining the session already bound to their thread.
+     */
+    private final static Session JOINED_SESSION = new Session()
+    {
+        @Override
+        public void close()
+        {
+            // closed by the session owner
+        }
+    };
+
+    /**
+     * The connection of a login, borrowed by its first query and returned when the session is closed.
+     */
+    private final class LoginSession
+            implements Session
+    {
+
+        // The connection borrowed by the first query, null until then
+        private Connection connection;
+
+        /**
+         * @return The connection of the session.
+         * @throws SecurityStorageException If no connection can be borrowed.
+         */
+        Connection getConnection()
+                throws SecurityStorageException
+        {
+            if ( connection == null ) {
+                connection = getConection();
+                if ( loginReadOnlyTransaction ) {
+                    try {
+                        connection.setReadOnly( true );
+                        connection.setAutoCommit( false );
+                    } catch ( SQLException ex ) {
+                        // the queries still share the connection
+                        log( Level.FINE, "securitystorage.session.transaction.unsupported",
+                                ex.getMessage(), SecurityStorage.class.getName() + ".getConnection" );
+                    }
+                }
+            }
+            return connection;
+        }
+
+        @Override
+        public void close()
+        {
+            currentSession.remove();
+            if ( connection == null ) {
+                return;
+            }
+            try {
+                if ( loginReadOnlyTransaction && !connection.getAutoCommit() ) {
+                    // nothing was written, ending the snapshot is enough
+                    connection.rollback();
+                    connection.setAutoCommit( true );
+                    connection.setReadOnly( false );
+                }
+            } catch ( SQLException ex ) {
+                log( Level.WARNING, "securitystorage.session.close.exception",
+                        ex.getMessage(), SecurityStorage.class.getName() + ".close" );
+            } finally {
+                SecurityStorage.this.close( connection );
+                connection = null;
+            }
+        }
+    }
+
+    /**
+     * @param properties A set of properties.
+     * @throws SecurityStorageException If Properties object is null,
+     *                                  if a mandatory property is missing or invalid.
+     */
+    public SecurityStorage( Properties properties )
+            throws SecurityStorageException
+    {
+        if ( properties == null ) {
+            throw new SecurityStorageException( "properties argument cannot be null" );
+
+        }
+        // the generated queries are kept into a copy, the caller properties are left untouched
+        this.properties = new Properties();
+        this.properties.putAll( properties );
+        checkMandatoryProperties();
+        checkOptionalProperties();
+        formatJDBCQueries();
+    }
+
+    /**
+     * Check the validity of mandatory properties.
+     * <p>
+     * @throws SecurityStorageException If a mandatory property is missing.
+     */
+    protected void checkMandatoryProperties()
+            throws SecurityStorageException
+    {
+        final String jndi = properties.getProperty( PROPERTY.DATASOURCE_JNDI.toString() );
+        final String userTable = properties.getProperty( PROPERTY.USER_TABLE.toString() );
+        final String userNameColumn = properties.getProperty( PROPERTY.USER_NAME_COLUMN.toString() );
+        final String userPasswordColumn = properties.getProperty( PROPERTY.USER_PASSWORD_COLUMN.toString() );
+        final String groupTable = properties.getProperty( PROPERTY.GROUP_TABLE.toString() );
+        final String groupNameColumn = properties.getProperty( PROPERTY.GROUP_NAME_COLUMN.toString() );
+        // the table and column names aren't used by a custom query
+        final boolean customPasswordQuery = hasProperty( PROPERTY.USER_PASSWORD_QUERY );
+        final boolean customGroupsQuery = hasProperty( PROPERTY.USER_GROUPS_QUERY );
+
+        String msg;
+        if ( jndi == null || jndi.trim().isEmpty() ) {
+            msg = log( Level.SEVERE, "securitystorage.missingprop.exception",
+                    PROPERTY.DATASOURCE_JNDI, SecurityStorage.class.getName() + ".checkMandatoryProperties" );
+            throw new SecurityStorageException( msg );
+        }
+
+        if ( !customPasswordQuery && ( userTable == null || userTable.trim().isEmpty() ) ) {
+            msg = log( Level.SEVERE, "securitystorage.missingprop.exception",
+                    PROPERTY.USER_TABLE, SecurityStorage.class.getName() + ".checkMandatoryProperties" );
+            throw new SecurityStorageException( msg );
+        }
+
+        if ( !customPasswordQuery && ( userNameColumn == null || userNameColumn.trim().isEmpty() ) ) {
+            msg = log( Level.SEVERE, "securitystorage.missingprop.exception",
+                    PROPERTY.USER_NAME_COLUMN, SecurityStorage.class.getName() + ".checkMandatoryProperties" );
+            throw new SecurityStorageException( msg );
+        }
+
+        if ( !customPasswordQuery && ( userPasswordColumn == null || userPasswordColumn.trim().isEmpty() ) ) {
+            msg = log( Level.SEVERE, "securitystorage.missingprop.exception",
+                    PROPERTY.USER_PASSWORD_COLUMN, SecurityStorage.class.getName() + ".checkMandatoryProperties" );
+            throw new SecurityStorageException( msg );
+        }
+
+        if ( !customGroupsQuery && ( groupTable == null || groupTable.trim().isEmpty() ) ) {
+            msg = log( Level.SEVERE, "securitystorage.missingprop.exception",
+                    PROPERTY.GROUP_TABLE, SecurityStorage.class.getName() + ".checkMandatoryProperties" );
+            throw new SecurityStorageException( msg );
+        }
+
+        if ( !customGroupsQuery && ( groupNameColumn == null || groupNameColumn.trim().isEmpty() ) ) {
+            msg = log( Level.SEVERE, "securitystorage.missingprop.exception",
+                    PROPERTY.GROUP_NAME_COLUMN, SecurityStorage.class.getName() + ".checkMandatoryProperties" );
+            throw new SecurityStorageException( msg );
+        }
+    }
+
+    /**
+     * Check the validity of optional properties.
+     * <p>
+     * @throws SecurityStorageException If an optional property is invalid.
+     */
+    protected void checkOptionalProperties()
+            throws SecurityStorageException
+    {
+        groupFetchSize = parsePositiveInt( PROPERTY.GROUP_FETCH_SIZE, DEFAULT_GROUP_FETCH_SIZE );
+        groupHierarchyRefresh = parsePositiveInt( PROPERTY.GROUP_HIERARCHY_REFRESH, DEFAULT_GROUP_HIERARCHY_REFRESH ) * 1000L;
+
+        final String normalization = properties.getProperty( PROPERTY.USERNAME_NORMALIZATION.toString() );
+        try {
+            usernameNormalization = UsernameNormalization.fromName( normalization );
+        } catch ( IllegalArgumentException ex ) {
+            final String msg = log( Level.SEVERE, "securitystorage.invalidprop.exception",
+                    PROPERTY.USERNAME_NORMALIZATION, normalization, SecurityStorage.class.getName() + ".checkOptionalProperties" );
+            throw new SecurityStorageException( msg );
+        }
+
+        final String routing = properties.getProperty( PROPERTY.DATASOURCE_ROUTING.toString() );
+        final DataSourceRouter.ROUTING dataSourceRouting;
+        try {
+            dataSourceRouting = DataSourceRouter.ROUTING.fromName( routing );
+        } catch ( IllegalArgumentException ex ) {
+            final String msg = log( Level.SEVERE, "securitystorage.invalidprop.exception",
+                    PROPERTY.DATASOURCE_ROUTING, routing, SecurityStorage.class.getName() + ".checkOptionalProperties" );
+            throw new SecurityStorageException( msg );
+        }
+        dataSourceRouter = new DataSourceRouter( properties.getProperty( PROPERTY.DATASOURCE_JNDI.toString() ), dataSourceRouting,
+                properties.getProperty( PROPERTY.DATABASE_USER.toString() ), properties.getProperty( PROPERTY.DATABASE_PASSWORD.toString() ),
+                parsePositiveInt( PROPERTY.CIRCUIT_BREAKER_THRESHOLD, DEFAULT_CIRCUIT_BREAKER_THRESHOLD ),
+                parsePositiveInt( PROPERTY.CIRCUIT_BREAKER_DELAY, DEFAULT_CIRCUIT_BREAKER_DELAY ) * 1000L,
+                parseInt( PROPERTY.CONNECTION_ACQUIRE_TIMEOUT, 0, 0 ),
+                parsePositiveInt( PROPERTY.CONNECTION_MAX_PENDING, DEFAULT_CONNECTION_MAX_PENDING ) );
+
+        cacheTtl = parseInt( PROPERTY.CACHE_TTL, 0, 0 ) * 1000L;
+        cacheMaxStaleness = parseInt( PROPERTY.CACHE_MAX_STALENESS, 0, 0 ) * 1000L;
+        final int cacheMaxSize = parsePositiveInt( PROPERTY.CACHE_MAX_SIZE, DEFAULT_CACHE_MAX_SIZE );
+        final int cacheSlotSize = parseInt( PROPERTY.CACHE_SLOT_SIZE, DEFAULT_CACHE_SLOT_SIZE, OffHeapCredentialCache.MIN_SLOT_SIZE );
+        final String cacheType = hasProperty( PROPERTY.CACHE_TYPE ) ? properties.getProperty( PROPERTY.CACHE_TYPE.toString() ).trim() : CACHE_TYPE_HEAP;
+        if ( !CACHE_TYPE_HEAP.equalsIgnoreCase( cacheType ) && !CACHE_TYPE_OFF_HEAP.equalsIgnoreCase( cacheType ) ) {
+            final String msg = log( Level.SEVERE, "securitystorage.invalidprop.exception",
+                    PROPERTY.CACHE_TYPE, cacheType, SecurityStorage.class.getName() + ".checkOptionalProperties" );
+            throw new SecurityStorageException( msg );
+        }
+        if ( cacheSlotSize > Short.MAX_VALUE ) {
+            final String msg = log( Level.SEVERE, "securitystorage.invalidprop.exception",
+                    PROPERTY.CACHE_SLOT_SIZE, cacheSlotSize, SecurityStorage.class.getName() + ".checkOptionalProperties" );
+            throw new SecurityStorageException( msg );
+        }
+        if ( cacheTtl > 0 || cacheMaxStaleness > 0 ) {
+            credentialCache = CACHE_TYPE_OFF_HEAP.equalsIgnoreCase( cacheType )
+                    ? new OffHeapCredentialCache( groupNameTable, cacheMaxSize, cacheSlotSize )
+                    : new StripedCredentialCache( cacheMaxSize, Math.max( cacheTtl, cacheMaxStaleness ) );
+            refreshExecutor = new ThreadPoolExecutor( 1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>( MAX_PENDING_REFRESHES ), new ThreadFactory()
+            {
+                @Override
+                public Thread newThread( final Runnable runnable )
+                {
+                    final Thread thread = new Thread( runnable, SecurityStorage.class.getSimpleName() + "-refresh" );
+                    thread.setDaemon( true );
+                    return thread;
+                }
+            } );
+        }
+
+        snapshotInterval = parsePositiveInt( PROPERTY.CACHE_SNAPSHOT_INTERVAL, DEFAULT_CACHE_SNAPSHOT_INTERVAL ) * 1000L;
+        snapshotReconcileRate = parsePositiveInt( PROPERTY.CACHE_SNAPSHOT_RECONCILE_RATE, DEFAULT_CACHE_SNAPSHOT_RECONCILE_RATE );
+        if ( credentialCache != null && hasProperty( PROPERTY.CACHE_SNAPSHOT_FILE ) ) {
+            snapshotFile = new File( properties.getProperty( PROPERTY.CACHE_SNAPSHOT_FILE.toString() ).trim() );
+        }
+
+        // a caching decorator may be stacked over the storage without the cache-ttl cache
+        invalidationBus = createInvalidationBus();
+
+        loginReadOnlyTransaction = Boolean.parseBoolean( properties.getProperty( PROPERTY.LOGIN_READ_ONLY_TRANSACTION.toString(), "false" ).trim() );
+
+        if ( hasProperty( PROPERTY.GROUP_PARENT_TABLE ) && !hasProperty( PROPERTY.GROUP_PARENT_COLUMN ) ) {
+            final String msg = log( Level.SEVERE, "securitystorage.missingprop.exception",
+                    PROPERTY.GROUP_PARENT_COLUMN, SecurityStorage.class.getName() + ".checkOptionalProperties" );
+            throw new SecurityStorageException( msg );
+        }
+
+        // the child column defaults to the group-name-column property, which a custom groups query doesn't need
+        if ( hasProperty( PROPERTY.GROUP_PARENT_TABLE ) && !hasProperty( PROPERTY.GROUP_PARENT_CHILD_COLUMN )
+                && !hasProperty( PROPERTY.GROUP_NAME_COLUMN ) ) {
+            final String msg = log( Level.SEVERE, "securitystorage.missingprop.exception",
+                    PROPERTY.GROUP_PARENT_CHILD_COLUMN, SecurityStorage.class.getName() + ".checkOptionalProperties" );
+            throw new SecurityStorageException( msg );
+        }
+    }
+
+    /**
+     * Create the invalidation bus of the invalidation-bus property.
+     * <p>
+     * @return The invalidation bus, <code>null</code> if the invalidation-bus and invalidation-multicast-group
+     *         properties aren't defined.
+     * @throws SecurityStorageException If the bus cannot be created.
+     */
+    private IInvalidationBus createInvalidationBus()
+            throws SecurityStorageException
+    {
+        String bus = properties.getProperty( PROPERTY.INVALIDATION_BUS.toString() );
+        if ( bus == null || bus.trim().isEmpty() ) {
+            if ( !hasProperty( PROPERTY.INVALIDATION_MULTICAST_GROUP ) ) {
+                return null;
+            }
+            bus = INVALIDATION_BUS_MULTICAST;
+        }
+
+        try {
+            if ( INVALIDATION_BUS_MULTICAST.equalsIgnoreCase( bus.trim() ) ) {
+                return new MulticastInvalidationBus( properties );
+            }
+            return Class.forName( bus.trim() ).asSubclass( IInvalidationBus.class )
+                    .getConstructor( Properties.class ).newInstance( properties );
+        } catch ( ReflectiveOperationException | ClassCastException | IllegalArgumentException | IOException ex ) {
+            final String msg = log( Level.SEVERE, "securitystorage.invalidprop.exception",
+                    PROPERTY.INVALIDATION_BUS, bus + " (" + ex + ")", SecurityStorage.class.getName() + ".createInvalidationBus" );
+            throw new SecurityStorageException( msg, ex );
+        }
+    }
+
+    /**
+     * Parse an optional positive integer property.
+     * <p>
+     * @param property     A SecurityStorage property.
+     * @param defaultValue The value returned if the property isn't defined.
+     * @return The property value.
+     * @throws SecurityStorageException If the property value isn't a positive integer.
+     */
+    protected int parsePositiveInt( final PROPERTY property, final int defaultValue )
+            throws SecurityStorageException
+    {
+        return parseInt( property, defaultValue, 1 );
+    }
+
+    /**
+     * Parse an optional integer property.
+     * <p>
+     * @param property     A SecurityStorage property.
+     * @param defaultValue The value returned if the property isn't defined.
+     * @param minValue     The minimum value of the property.
+     * @return The property value.
+     * @throws SecurityStorageException If the property value isn't an integer greater than or equal to minValue.
+     */
+    protected int parseInt( final PROPERTY property, final int defaultValue, final int minValue )
+            throws SecurityStorageException
+    {
+        final String value = properties.getProperty( property.toString() );
+        if ( value == null || value.trim().isEmpty() ) {
+            return defaultValue;
+        }
+
+        try {
+            final int intValue = Integer.parseInt( value.trim() );
+            if ( intValue >= minValue ) {
+                return intValue;
+            }
+        } catch ( NumberFormatException ex ) {
+            // logged below
+        }
+        final String msg = log( Level.SEVERE, "securitystorage.invalidprop.exception",
+                property, value, SecurityStorage.class.getName() + ".parseInt" );
+        throw new SecurityStorageException( msg );
+    }
+
+    /**
+     * Format the JDBC queries according to the user-table, user-name-column, user-name-normalized-column, user-password-column,
+     * user-salt-column, user-password-type-column, group-table, group-name-column, group-table-user-name-column,
+     * group-parent-table, group-parent-column and group-parent-child-column properties.
+     */
+    protected void formatJDBCQueries()
+    {
+        final String userSaltColumn = properties.getProperty( PROPERTY.USER_SALT_COLUMN.toString() );
+        final String userPasswordTypeColumn = properties.getProperty( PROPERTY.USER_PASSWORD_TYPE_COLUMN.toString() );
+        String userPasswordColumn = properties.getProperty( PROPERTY.USER_PASSWORD_COLUMN.toString() );
+        final String rawUserNameColumn = properties.getProperty( PROPERTY.USER_NAME_COLUMN.toString() );
+        // the normalized user name column replaces the user name column into the where clauses
+        final String userNameColumn = hasProperty( PROPERTY.USER_NAME_NORMALIZED_COLUMN )
+                ? properties.getProperty( PROPERTY.USER_NAME_NORMALIZED_COLUMN.toString() ) : rawUserNameColumn;
+        final String userTable = properties.getProperty( PROPERTY.USER_TABLE.toString() );
+        final String groupNameColumn = properties.getProperty( PROPERTY.GROUP_NAME_COLUMN.toString() );
+        final String groupUserNameColumn = properties.getProperty( PROPERTY.GROUP_USER_NAME_COLUMN.toString() );
+        final String groupTable = properties.getProperty( PROPERTY.GROUP_TABLE.toString() );
+
+        // the salt and the password type are read in the same row as the password to avoid an other round trip
+        if ( userSaltColumn != null && !userSaltColumn.trim().isEmpty() ) {
+            userPasswordColumn = userPasswordColumn + ", " + userSaltColumn;
+        }
+        if ( userPasswordTypeColumn != null && !userPasswordTypeColumn.trim().isEmpty() ) {
+            userPasswordColumn = userPasswordColumn + ", " + userPasswordTypeColumn;
+        }
+
+        // format the query to get the user password
+        if ( !hasProperty( PROPERTY.USER_PASSWORD_QUERY ) ) {
+            properties.setProperty( USER_PASSWORD_QUERY_PROPERTY, String.format( USER_PASSWORD_QUERY_FORMAT, userPasswordColumn, userTable, userNameColumn ) );
+        }
+
+        // format the query to get the user groups, the group-table holds the user names of the user-name-column
+        final String groupTableUserNameColumn = groupUserNameColumn != null && !groupUserNameColumn.trim().isEmpty()
+                ? groupUserNameColumn : rawUserNameColumn;
+        if ( hasProperty( PROPERTY.USER_GROUPS_QUERY ) ) {
+            // custom query
+        } else if ( hasProperty( PROPERTY.USER_NAME_NORMALIZED_COLUMN ) ) {
+            // the normalized user name is only known by the user-table
+            properties.setProperty( USER_GROUPS_QUERY_PROPERTY, String.format( USER_GROUPS_NORMALIZED_QUERY_FORMAT,
+                    groupNameColumn, groupTable, groupTableUserNameColumn, userTable, rawUserNameColumn, userNameColumn ) );
+        } else {
+            properties.setProperty( USER_GROUPS_QUERY_PROPERTY,
+                    String.format( USER_GROUPS_QUERY_FORMAT, groupNameColumn, groupTable, groupTableUserNameColumn ) );
+        }
+
+        // format the queries to get the nested groups
+        if ( hasProperty( PROPERTY.GROUP_PARENT_TABLE ) ) {
+            final String groupParentTable = properties.getProperty( PROPERTY.GROUP_PARENT_TABLE.toString() );
+            final String groupParentColumn = properties.getProperty( PROPERTY.GROUP_PARENT_COLUMN.toString() );
+            final String groupChildColumn = hasProperty( PROPERTY.GROUP_PARENT_CHILD_COLUMN )
+                    ? properties.getProperty( PROPERTY.GROUP_PARENT_CHILD_COLUMN.toString() ) : groupNameColumn;
+            properties.setProperty( GROUP_CLOSURE_QUERY_PROPERTY,
+                    String.format( GROUP_CLOSURE_QUERY_FORMAT, groupChildColumn, groupParentColumn, groupParentTable ) );
+            properties.setProperty( GROUP_PARENTS_QUERY_PROPERTY,
+                    String.format( GROUP_PARENTS_QUERY_FORMAT, groupChildColumn, groupParentColumn, groupParentTable ) );
+        }
+    }
+
+    /**
+     * Validate the user password and user groups queries: each query is prepared once and its parameter and
+     * column counts are checked with the statement metadata (if the driver supports it), so an invalid query
+     * fails at the realm initialization rather than at the first login.
+     * <p>
+     * @throws SecurityStorageException If the datasource is unreachable or if a query is invalid.
+     */
+    @Override
+    public void validateQueries()
+            throws SecurityStorageException
+    {
+        int passwordColumns = 1;
+        if ( hasProperty( PROPERTY.USER_SALT_COLUMN ) ) {
+            passwordColumns++;
+        }
+        if ( hasProperty( PROPERTY.USER_PASSWORD_TYPE_COLUMN ) ) {
+            passwordColumns++;
+        }
+
+        Connection connection = null;
+        try {
+            connection = this.getConection();
+            validateQuery( connection, properties.getProperty( USER_PASSWORD_QUERY_PROPERTY ), passwordColumns );
+            validateQuery( connection, properties.getProperty( USER_GROUPS_QUERY_PROPERTY ), 1 );
+        } finally {
+            close( connection );
+        }
+    }
+
+    /**
+     * Prepare a query and check its metadata.
+     * <p>
+     * @param connection A connection.
+     * @param query      A query with one parameter (the user name).
+     * @param columns    The minimum number of columns returned by the query.
+     * @throws SecurityStorageException If the query cannot be prepared or if its metadata don't match.
+     */
+    private void validateQuery( final Connection connection, final String query, final int columns )
+            throws SecurityStorageException
+    {
+        PreparedStatement stmt = null;
+        String msg;
+        try {
+            stmt = connection.prepareStatement( query );
+
+            // the metadata are optional for a JDBC driver
+            ParameterMetaData parameters = null;
+            ResultSetMetaData resultSetMetaData = null;
+            try {
+                parameters = stmt.getParameterMetaData();
+                resultSetMetaData = stmt.getMetaData();
+            } catch ( SQLFeatureNotSupportedException ex ) {
+                log( Level.FINE, "securitystorage.validatequery.metadata.unsupported",
+                        query, SecurityStorage.class.getName() + ".validateQuery" );
+            }
+
+            if ( parameters != null && parameters.getParameterCount() != 1 ) {
+                msg = log( Level.SEVERE, "securitystorage.validatequery.parameters.exception",
+                        query, parameters.getParameterCount(), SecurityStorage.class.getName() + ".validateQuery" );
+                throw new SecurityStorageException( msg );
+            }
+            if ( resultSetMetaData != null && resultSetMetaData.getColumnCount() < columns ) {
+                msg = log( Level.SEVERE, "securitystorage.validatequery.columns.exception",
+                        query, resultSetMetaData.getColumnCount(), columns, SecurityStorage.class.getName() + ".validateQuery" );
+                throw new SecurityStorageException( msg );
+            }
+        } catch ( SQLException ex ) {
+            msg = log( Level.SEVERE, "securitystorage.validatequery.sql.exception",
+                    query, ex.getMessage(), SecurityStorage.class.getName() + ".validateQuery" );
+            throw new SecurityStorageException( msg, ex );
+        } finally {
+            close( null, stmt );
+        }
+    }
+
+    /**
+     * Normalize a user name according to the username-normalization property.
+     * The user names are normalized before being bound to the queries,
+     * the realm caches should use the normalized user names as keys.
+     * <p>
+     * @param username A user name.
+     * @return The normalized user name.
+     */
+    @Override
+    public String normalizeUsername( final String username )
+    {
+        return usernameNormalization.normalize( username );
+    }
+
+    /**
+     * Find a user password.
+     * <p>
+     * @param username A user name.
+     * @return A user password.
+     */
+    @Override
+    public String findPassword( final String username )
+    {
+        final UserCredentials credentials = findCredentials( username );
+        return credentials != null ? credentials.getPassword() : null;
+    }
+
+    /**
+     * Find a user password, its per-user salt and its per-user password type with a single query.
+     * <p>
+     * If the cache is enabled, the user is served from the cache while fresh (cache-ttl), and while the database
+     * is unreachable the last-known user is served until it is older than cache-max-staleness.
+     * <p>
+     * @param username A user name.
+     * @return The user credentials or <code>null</code> if the user doesn't exist.
+     */
+    @Override
+    public UserCredentials findCredentials( final String username )
+    {
+        final String normalizedUsername = normalizeUsername( username );
+        if ( credentialCache != null ) {
+            final CachedUser user = findCachedUser( normalizedUsername );
+            return user != null ? user.getCredentials() : null;
+        }
+
+        try {
+            return loadCredentials( normalizedUsername );
+        } catch ( SecurityStorageException ex ) {
+            // already logged
+            return null;
+        }
+    }
+
+    /**
+     * Load a user password, its per-user salt and its per-user password type with a single query.
+     * <p>
+     * @param normalizedUsername A normalized user name.
+     * @return The user credentials or <code>null</code> if the user doesn't exist.
+     * @throws SecurityStorageException If the datasource is unreachable or if the query fails.
+     */
+    private UserCredentials loadCredentials( final String normalizedUsername )
+            throws SecurityStorageException
+    {
+        Connection connection = null;
+        PreparedStatement stmt = null;
+        ResultSet resultset = null;
+        UserCredentials credentials = null;
+
+        try {
+            connection = borrowConnection();
+            stmt = connection.prepareStatement( properties.getProperty( USER_PASSWORD_QUERY_PROPERTY ) );
+            stmt.setString( 1, normalizedUsername );
+            resultset = stmt.executeQuery();
+            if ( resultset.next() ) {
+                final boolean hasSalt = hasProperty( PROPERTY.USER_SALT_COLUMN );
+                credentials = new UserCredentials( resultset.getString( 1 ),
+                        hasSalt ? resultset.getString( 2 ) : null,
+                        hasProperty( PROPERTY.USER_PASSWORD_TYPE_COLUMN ) ? resultset.getString( hasSalt ? 3 : 2 ) : null );
+            }
+        } catch ( SQLException ex ) {
+            final String msg = log( Level.SEVERE, "securitystorage.getPassword.sql.exception",
+                    normalizedUsername, SecurityStorage.class.getName() + ".getPassword" );
+            throw new SecurityStorageException( msg, ex );
+        } finally {
+            close( null, stmt, resultset );
+            releaseConnection( connection );
+        }
+        return credentials;
+    }
+
+    /**
+     * Find and return groups which a user name belongs to.
+     * <p>
+     * @param username A user name.
+     * @return A string array of groups belonging to a user name.
+     */
+    @Override
+    public String[] findGroupNames( final String username )
+    {
+        return findGroupSet( username ).toArray();
+    }
+
+    /**
+     * Find and return groups which a user name belongs to, encoded with the group name dictionary
+     * shared by all the users (see {@link GroupNameTable}).
+     * <p>
+     * The group rows are streamed with a forward-only and read-only cursor fetching
+     * group-fetch-size rows per round trip. If the group-parent-table property is defined,
+     * the groups are expanded with their ancestors in memory (see {@link GroupHierarchy}).
+     * <p>
+     * @param username A user name.
+     * @return The set of groups belonging to a user name.
+     */
+    @Override
+    public GroupSet findGroupSet( final String username )
+    {
+        final GroupSet groups = findDirectGroupSet( username );
+        if ( !hasProperty( PROPERTY.GROUP_PARENT_TABLE ) || groups.size() == 0 ) {
+            return groups;
+        }
+
+        final GroupHierarchy hierarchy = getGroupHierarchy();
+        return hierarchy != null ? hierarchy.expand( groups ) : groups;
+    }
+
+    /**
+     * Find and return groups which a user name directly belongs to (read in the group-table).
+     * <p>
+     * @param username A user name.
+     * @return The set of groups directly belonging to a user name.
+     */
+    private GroupSet findDirectGroupSet( final String username )
+    {
+        final String normalizedUsername = normalizeUsername( username );
+        if ( credentialCache != null ) {
+            final CachedUser user = findCachedUser( normalizedUsername );
+            return user != null ? user.getGroups() : groupNameTable.encode();
+        }
+
+        try {
+            return loadDirectGroupSet( normalizedUsername );
+        } catch ( SecurityStorageException ex ) {
+            // already logged
+            return groupNameTable.encode();
+        }
+    }
+
+    /**
+     * Load the groups which a user name directly belongs to (read in the group-table).
+     * <p>
+     * @param normalizedUsername A normalized user name.
+     * @return The set of groups directly belonging to a user name.
+     * @throws SecurityStorageException If the datasource is unreachable or if the query fails.
+     */
+    private GroupSet loadDirectGroupSet( final String normalizedUsername )
+            throws SecurityStorageException
+    {
+        Connection connection = null;
+        PreparedStatement stmt = null;
+        ResultSet resultSet = null;
+
+        try {
+            connection = borrowConnection();
+            stmt = connection.prepareStatement( properties.getProperty( USER_GROUPS_QUERY_PROPERTY ),
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY );
+            stmt.setFetchSize( groupFetchSize );
+            stmt.setString( 1, normalizedUsername );
+            resultSet = stmt.executeQuery();
+            return readGroupSet( resultSet );
+        } catch ( SQLException ex ) {
+            final String msg = log( Level.SEVERE, "securitystorage.findgroupnames.sql.exception",
+                    normalizedUsername, SecurityStorage.class.getName() + ".findGroupNames" );
+            throw new SecurityStorageException( msg, ex );
+        } finally {
+            close( null, stmt, resultSet );
+            releaseConnection( connection );
+        }
+    }
+
+    /**
+     * Find a user in the cache (stale-while-revalidate).
+     * <p>
+     * A fresh user is served from the cache. Otherwise the user is loaded from the database; if the database
+     * is unreachable, the last-known user is served until it is older than cache-max-staleness
+     * and it is refreshed in the background. While the degraded mode lasts, the stale users are served
+     * without waiting for the database.
+     * <p>
+     * @param normalizedUsername A normalized user name.
+     * @return The user or <code>null</code> if the user doesn't exist or cannot be loaded.
+     */
+    private CachedUser findCachedUser( final String normalizedUsername )
+    {
+        final CachedUser cached = credentialCache.get( normalizedUsername );
+        final long now = System.currentTimeMillis();
+        if ( cached != null && cached.getAge( now ) < cacheTtl ) {
+            metrics.recordCacheHit();
+            return cached;
+        }
+        if ( cached != null && metrics.isDegraded() && cached.getAge( now ) <= cacheMaxStaleness ) {
+            return serveStale( normalizedUsername, cached, now );
+        }
+        if ( cached != null && cached.isRestored() && cached.getAge( now ) <= cacheMaxStaleness ) {
+            // warm start, the restored user is reloaded in the background
+            metrics.recordRestoredHit();
+            scheduleRefresh( normalizedUsername );
+            return cached;
+        }
+
+        metrics.recordCacheMiss();
+        try {
+            return loadCachedUser( normalizedUsername );
+        } catch ( SecurityStorageException ex ) {
+            if ( metrics.enterDegradedMode( now ) ) {
+                log( Level.WARNING, "securitystorage.degraded.enter",
+                        cacheMaxStaleness / 1000, SecurityStorage.class.getName() + ".findCachedUser" );
+            }
+            if ( cached != null && cached.getAge( now ) <= cacheMaxStaleness ) {
+                return serveStale( normalizedUsername, cached, now );
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Serve a stale user and refresh it in the background.
+     * <p>
+     * @param normalizedUsername A normalized user name.
+     * @param cached             The cached user.
+     * @param now                The current time in milliseconds.
+     * @return The cached user.
+     */
+    private CachedUser serveStale( final String normalizedUsername, final CachedUser cached, final long now )
+    {
+        metrics.recordStaleHit( cached.getAge( now ) );
+        log( Level.FINE, "securitystorage.degraded.stale", normalizedUsername, cached.getAge( now ),
+                SecurityStorage.class.getName() + ".serveStale" );
+        scheduleRefresh( normalizedUsername );
+        return cached;
+    }
+
+    /**
+     * Refresh a user in the background, unless its refresh is already pending.
+     * <p>
+     * @param normalizedUsername A normalized user name.
+     */
+    private void scheduleRefresh( final String normalizedUsername )
+    {
+        if ( !pendingRefreshes.add( normalizedUsername ) ) {
+            return;
+        }
+        try {
+            refreshExecutor.execute( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try {
+                        loadCachedUser( normalizedUsername );
+                        metrics.recordRefresh();
+                    } catch ( SecurityStorageException ex ) {
+                        metrics.recordRefreshFailure();
+                    } finally {
+                        pendingRefreshes.remove( normalizedUsername );
+                    }
+                }
+            } );
+        } catch ( RejectedExecutionException ex ) {
+            // too many pending refreshes, the user will be refreshed by a next login
+            pendingRefreshes.remove( normalizedUsername );
+        }
+    }
+
+    /**
+     * Load a user credentials and direct groups and cache them.
+     * <p>
+     * @param normalizedUsername A normalized user name.
+     * @return The user or <code>null</code> if the user doesn't exist.
+     * @throws SecurityStorageException If the datasource is unreachable or if a query fails.
+     */
+    private CachedUser loadCachedUser( final String normalizedUsername )
+            throws SecurityStorageException
+    {
+        final long loadedAt = System.currentTimeMillis();
+        final UserCredentials credentials = loadCredentials( normalizedUsername );
+        CachedUser user = null;
+        if ( credentials == null ) {
+            credentialCache.remove( normalizedUsername );
+        } else {
+            user = new CachedUser( credentials, loadDirectGroupSet( normalizedUsername ), loadedAt );
+            credentialCache.put( normalizedUsername, user );
+        }
+
+        final long degradedSince = metrics.exitDegradedMode();
+        if ( degradedSince != 0 ) {
+            log( Level.WARNING, "securitystorage.degraded.exit",
+                    System.currentTimeMillis() - degradedSince, SecurityStorage.class.getName() + ".loadCachedUser" );
+        }
+        return user;
+    }
+
+    /**
+     * Open a login session bound to the current thread: the credentials and groups queries of the thread share a single
+     * connection, borrowed by the first query and returned when the session is closed, in a read-only transaction if the
+     * login-read-only-transaction property is <code>true</code>. The background refreshes borrow their own connections.
+     * <p>
+     * @return The session, to close once the login is over.
+     */
+    @Override
+    public Session openSession()
+    {
+        if ( currentSession.get() != null ) {
+            return JOINED_SESSION;
+        }
+        final LoginSession session = new LoginSession();
+        currentSession.set( session );
+        return session;
+    }
+
+    /**
+     * Start the background services of the cache, see {@link #start(ISecurityStorage)}, the storage not being decorated.
+     */
+    public void start()
+    {
+        start( this );
+    }
+
+    /**
+     * Start the background services of the cache: restore the cache snapshot (see {@link #restoreCacheSnapshot()})
+     * and receive the evictions of the other instances of the cluster.
+     * <p>
+     * @param outermost The outermost storage of the decorators stack, evicting the users received from the other instances.
+     */
+    @Override
+    public void start( final ISecurityStorage outermost )
+    {
+        restoreCacheSnapshot();
+        if ( invalidationBus != null ) {
+            try {
+                invalidationBus.start( new IInvalidationBus.Listener()
+                {
+                    @Override
+                    public void invalidated( final String username )
+                    {
+                        metrics.recordInvalidationReceived();
+                        outermost.evict( username );
+                    }
+                } );
+            } catch ( IOException ex ) {
+                log( Level.WARNING, "securitystorage.invalidation.start.exception", ex.getMessage(),
+                        SecurityStorage.class.getName() + ".start" );
+            }
+        }
+    }
+
+    /**
+     * Stop the background services of the cache: leave the invalidation bus, stop the background refreshes and the
+     * periodic snapshots, then persist the cache snapshot a last time for the next warm start.
+     */
+    @Override
+    public void close()
+    {
+        if ( invalidationBus != null ) {
+            invalidationBus.close();
+        }
+        if ( refreshExecutor != null ) {
+            refreshExecutor.shutdownNow();
+        }
+        if ( snapshotExecutor != null ) {
+            snapshotExecutor.shutdownNow();
+            try {
+                // a periodic snapshot may be writing the file
+                snapshotExecutor.awaitTermination( SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS );
+            } catch ( InterruptedException ex ) {
+                Thread.currentThread().interrupt();
+            }
+            saveCacheSnapshot();
+        }
+    }
+
+    /**
+     * Evict a user from the cache of this instance and of the other instances of the cluster,
+     * after its password or its groups changed.
+     * <p>
+     * @param username A user name.
+     */
+    @Override
+    public void invalidate( final String username )
+    {
+        final String normalizedUsername = normalizeUsername( username );
+        if ( credentialCache != null ) {
+            credentialCache.remove( normalizedUsername );
+        }
+        if ( invalidationBus != null ) {
+            invalidationBus.publish( normalizedUsername );
+            metrics.recordInvalidationSent();
+        }
+    }
+
+    /**
+     * Evict all the users from the cache of this instance and of the other instances of the cluster.
+     */
+    @Override
+    public void invalidateAll()
+    {
+        if ( credentialCache != null ) {
+            credentialCache.clear();
+        }
+        if ( invalidationBus != null ) {
+            invalidationBus.publish( null );
+            metrics.recordInvalidationSent();
+        }
+    }
+
+    /**
+     * Evict a user from the cache of this instance only.
+     * <p>
+     * @param normalizedUsername A normalized user name, <code>null</code> to evict all the users.
+     */
+    @Override
+    public void evict( final String normalizedUsername )
+    {
+        if ( credentialCache == null ) {
+            return;
+        }
+        if ( normalizedUsername == null ) {
+            credentialCache.clear();
+        } else {
+            credentialCache.remove( normalizedUsername );
+        }
+    }
+
+    /**
+     * Restore the cached users from the cache-snapshot-file, then reconcile them against the database
+     * in the background and persist the cache every cache-snapshot-interval.
+     * Does nothing if the cache or the cache-snapshot-file property isn't defined.
+     * An invalid snapshot is ignored (the cache starts cold).
+     */
+    public void restoreCacheSnapshot()
+    {
+        if ( snapshotFile == null || snapshotExecutor != null ) {
+            return;
+        }
+
+        if ( snapshotFile.isFile() ) {
+            final long start = System.currentTimeMillis();
+            try {
+                final int count = CacheSnapshot.read( snapshotFile, credentialCache, groupNameTable,
+                        start - Math.max( cacheTtl, cacheMaxStaleness ) );
+                log( Level.INFO, "securitystorage.snapshot.restored", count, snapshotFile,
+                        System.currentTimeMillis() - start, SecurityStorage.class.getName() + ".restoreCacheSnapshot" );
+            } catch ( IOException ex ) {
+                credentialCache.clear();
+                log( Level.WARNING, "securitystorage.snapshot.invalid", snapshotFile, ex.getMessage(),
+                        SecurityStorage.class.getName() + ".restoreCacheSnapshot" );
+            }
+        }
+
+        snapshotExecutor = new ScheduledThreadPoolExecutor( 1, new ThreadFactory()
+        {
+            @Override
+            public Thread newThread( final Runnable runnable )
+            {
+                final Thread thread = new Thread( runnable, SecurityStorage.class.getSimpleName() + "-snapshot" );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
+        snapshotExecutor.execute( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                reconcileRestoredUsers();
+            }
+        } );
+        snapshotExecutor.scheduleWithFixedDelay( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                saveCacheSnapshot();
+            }
+        }, snapshotInterval, snapshotInterval, TimeUnit.MILLISECONDS );
+    }
+
+    /**
+     * Persist the cached users to the cache-snapshot-file.
+     * Does nothing if the cache or the cache-snapshot-file property isn't defined.
+     */
+    public void saveCacheSnapshot()
+    {
+        if ( snapshotFile == null ) {
+            return;
+        }
+        try {
+            final int count = CacheSnapshot.write( snapshotFile, credentialCache, groupNameTable );
+            log( Level.FINE, "securitystorage.snapshot.saved", count, snapshotFile, SecurityStorage.class.getName() + ".saveCacheSnapshot" );
+        } catch ( IOException ex ) {
+            log( Level.WARNING, "securitystorage.snapshot.write.exception", snapshotFile, ex.getMessage(),
+                    SecurityStorage.class.getName() + ".saveCacheSnapshot" );
+        }
+    }
+
+    /**
+     * Reload the restored users from the database, at most cache-snapshot-reconcile-rate users per second
+     * so the warm start doesn't spike the database load. Stops at the first database failure,
+     * the remaining restored users are reloaded at their next login.
+     */
+    private void reconcileRestoredUsers()
+    {
+        final long start = System.currentTimeMillis();
+        final long[] window = { start };
+        final int[] counts = { 0, 0 };
+        final boolean[] failed = { false };
+        credentialCache.visit( new ICredentialCache.Visitor()
+        {
+            @Override
+            public void visit( final String username, final CachedUser user )
+            {
+                if ( failed[0] || !user.isRestored() ) {
+                    return;
+                }
+                if ( counts[1]++ == snapshotReconcileRate ) {
+                    final long wait = window[0] + 1000 - System.currentTimeMillis();
+                    if ( wait > 0 ) {
+                        try {
+                            Thread.sleep( wait );
+                        } catch ( InterruptedException ex ) {
+                            Thread.currentThread().interrupt();
+                            failed[0] = true;
+                            return;
+                        }
+                    }
+                    window[0] = System.currentTimeMillis();
+                    counts[1] = 1;
+                }
+                try {
+                    final CachedUser current = credentialCache.get( username );
+                    if ( current != null && current.isRestored() ) {
+                        loadCachedUser( username );
+                        counts[0]++;
+                    }
+                } catch ( SecurityStorageException ex ) {
+                    failed[0] = true;
+                }
+            }
+        } );
+        log( Level.INFO, "securitystorage.snapshot.reconciled", counts[0], System.currentTimeMillis() - start,
+                SecurityStorage.class.getName() + ".reconcileRestoredUsers" );
+    }
+
+    /**
+     * @return The cache and degraded mode metrics.
+     */
+    @Override
+    public SecurityMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * @return The group name dictionary shared by all the users.
+     */
+    public GroupNameTable getGroupNameTable()
+    {
+        return groupNameTable;
+    }
+
+    /**
+     * Return the nested groups cached in memory, reloaded if they are older than group-hierarchy-refresh.
+     * While a thread reloads them, the other threads use the previous ones.
+     * <p>
+     * @return The nested groups, <code>null</code> if they have never been loaded.
+     */
+    private GroupHierarchy getGroupHierarchy()
+    {
+        final GroupHierarchy hierarchy = groupHierarchy;
+        if ( hierarchy != null && System.currentTimeMillis() - hierarchy.getLoadedAt() < groupHierarchyRefresh ) {
+            return hierarchy;
+        }
+
+        if ( hierarchy == null ) {
+            groupHierarchyLock.lock();
+        } else if ( !groupHierarchyLock.tryLock() ) {
+            return hierarchy;
+        }
+        try {
+            if ( groupHierarchy == hierarchy ) {
+                final GroupHierarchy loaded = loadGroupHierarchy();
+                if ( loaded != null ) {
+                    groupHierarchy = loaded;
+                }
+            }
+            return groupHierarchy;
+        } finally {
+            groupHierarchyLock.unlock();
+        }
+    }
+
+    /**
+     * Load the transitive closure of the nested groups with a single recursive query,
+     * or if the database doesn't support it, load the direct parents and compute the closure in memory.
+     * <p>
+     * @return The nested groups, <code>null</code> if they cannot be loaded.
+     */
+    private GroupHierarchy loadGroupHierarchy()
+    {
+        Connection connection = null;
+        try {
+            connection = this.getConection();
+            try {
+                return readGroupHierarchy( connection, properties.getProperty( GROUP_CLOSURE_QUERY_PROPERTY ), true );
+            } catch ( SQLException ex ) {
+                log( Level.FINE, "securitystorage.loadgrouphierarchy.recursive.unsupported",
+                        SecurityStorage.class.getName() + ".loadGroupHierarchy" );
+            }
+            // some databases abort the current transaction on the failed statement
+            if ( !connection.getAutoCommit() ) {
+                connection.rollback();
+            }
+            return readGroupHierarchy( connection, properties.getProperty( GROUP_PARENTS_QUERY_PROPERTY ), false );
+        } catch ( SQLException ex ) {
+            log( Level.SEVERE, "securitystorage.loadgrouphierarchy.sql.exception",
+                    ex.getMessage(), SecurityStorage.class.getName() + ".loadGroupHierarchy" );
+            return null;
+        } catch ( SecurityStorageException ex ) {
+            // already logged by getConection
+            return null;
+        } finally {
+            close( connection );
+        }
+    }
+
+    /**
+     * Read the pairs of nested groups returned by a query.
+     * <p>
+     * @param connection A connection.
+     * @param query      A query returning pairs of a group and one of its ancestors or parents.
+     * @param closure    <code>true</code> if the query returns the transitive closure,
+     *                   <code>false</code> if it returns the direct parents.
+     * @return The nested groups.
+     * @throws SQLException If the query fails.
+     */
+    private GroupHierarchy readGroupHierarchy( final Connection connection, final String query, final boolean closure )
+            throws SQLException
+    {
+        PreparedStatement stmt = null;
+        ResultSet resultSet = null;
+        try {
+            stmt = connection.prepareStatement( query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY );
+            stmt.setFetchSize( groupFetchSize );
+            resultSet = stmt.executeQuery();
+
+            int[] children = new int[ 64 ];
+            int[] ancestors = new int[ 64 ];
+            int count = 0;
+            while ( resultSet.next() ) {
+                final String child = resultSet.getString( 1 );
+                final String ancestor = resultSet.getString( 2 );
+                if ( child == null || ancestor == null ) {
+                    continue;
+                }
+                if ( count == children.length ) {
+                    children = Arrays.copyOf( children, count * 2 );
+                    ancestors = Arrays.copyOf( ancestors, count * 2 );
+                }
+                children[count] = groupNameTable.idOf( child );
+                ancestors[count++] = groupNameTable.idOf( ancestor );
+            }
+            return closure ? GroupHierarchy.fromClosure( groupNameTable, children, ancestors, count )
+                    : GroupHierarchy.fromEdges( groupNameTable, children, ancestors, count );
+        } finally {
+            close( null, stmt, resultSet );
+        }
+    }
+
+    /**
+     * Read and encode the group names of a result set.
+     * <p>
+     * @param resultSet A result set whose first column is a group name.
+     * @return The set of group names.
+     * @throws SQLException If the result set cannot be read.
+     */
+    private GroupSet readGroupSet( final ResultSet resultSet )
+            throws SQLException
+    {
+        int[] ids = new int[ Math.min( groupFetchSize, 16 ) ];
+        int count = 0;
+        while ( resultSet.next() ) {
+            final String group = resultSet.getString( 1 );
+            if ( group == null ) {
+                continue;
+            }
+            if ( count == ids.length ) {
+                ids = Arrays.copyOf( ids, count * 2 );
+            }
+            ids[count++] = groupNameTable.idOf( group );
+        }
+        return GroupSet.of( groupNameTable, ids, count );
+    }
+
+    /**
+     * @param property A SecurityStorage property.
+     * @return <code>true</code> if the property is defined and not empty,
+     *         <code>false</code> otherwise.
+     */
+    protected boolean hasProperty( final PROPERTY property )
+    {
+        final String value = properties.getProperty( property.toString() );
+        return value != null && !value.trim().isEmpty();
+    }
+
+    /**
+     * Return the datasource router (the datasources and their health).
+     * <p>
+     * @return The {@link DataSourceRouter} of the datasource-jndi property.
+     */
+    public DataSourceRouter getDataSourceRouter()
+    {
+        return dataSourceRouter;
+    }
+
+    /**
+     * Create and return a datasource resource, routed between the datasources of the datasource-jndi property.
+     * <p>
+     * @return A {@link Connection} resource.
+     * @throws SecurityStorageException If the datasource jndi name doesn't exists into the context,
+     *                                  If the datasource is unreachable because a datasource property isn't valid,
+     *                                  If the circuit breakers of all the datasources are open,
+     *                                  If the connection-acquire-timeout expired
+     */
+    Connection getConection()
+            throws SecurityStorageException
+    {
+        final String jndi = properties.getProperty( PROPERTY.DATASOURCE_JNDI.toString() );
+
+        String msg;
+        // fail fast without waiting for a datasource known to be down
+        if ( !dataSourceRouter.isAvailable() ) {
+            msg = log( Level.WARNING, "securitystorage.getconnection.circuitopen.exception",
+                    jndi, SecurityStorage.class.getName() + ".getConection" );
+            throw new SecurityStorageException( msg );
+        }
+
+        try {
+            final Connection connection = dataSourceRouter.getConnection();
+            metrics.recordConnectionCheckout();
+            return connection;
+        } catch ( NamingException ex ) {
+            msg = log( Level.SEVERE, "securitystorage.getconnection.naming.exception",
+                    jndi, SecurityStorage.class.getName() + ".getConection" );
+            throw new SecurityStorageException( msg );
+        } catch ( SQLTimeoutException ex ) {
+            msg = log( Level.WARNING, "securitystorage.getconnection.timeout.exception",
+                    jndi, properties.getProperty( PROPERTY.CONNECTION_ACQUIRE_TIMEOUT.toString() ), SecurityStorage.class.getName() + ".getConection" );
+            throw new SecurityStorageException( msg, ex );
+        } catch ( SQLException ex ) {
+            msg = log( Level.SEVERE, "securitystorage.getconnection.sql.exception",
+                    jndi, SecurityStorage.class.getName() + ".getConection" );
+            throw new SecurityStorageException( msg );
+        }
+    }
+
+    /**
+     * Create and return a connection of the primary datasource, the first of the datasource-jndi property,
+     * to write: the writes never go to a read replica.
+     * <p>
+     * @return A {@link Connection} resource.
+     * @throws SecurityStorageException If the primary datasource jndi name doesn't exists into the context,
+     *                                  If the primary datasource is unreachable or if its circuit breaker is open.
+     */
+    Connection getPrimaryConnection()
+            throws SecurityStorageException
+    {
+        final String jndi = properties.getProperty( PROPERTY.DATASOURCE_JNDI.toString() );
+
+        String msg;
+        try {
+            final Connection connection = dataSourceRouter.getPrimaryConnection();
+            metrics.recordConnectionCheckout();
+            return connection;
+        } catch ( NamingException ex ) {
+            msg = log( Level.SEVERE, "securitystorage.getconnection.naming.exception",
+                    jndi, SecurityStorage.class.getName() + ".getPrimaryConnection" );
+            throw new SecurityStorageException( msg );
+        } catch ( SQLException ex ) {
+            msg = log( Level.SEVERE, "securitystorage.getconnection.sql.exception",
+                    jndi, SecurityStorage.class.getName() + ".getPrimaryConnection" );
+            throw new SecurityStorageException( msg, ex );
+        }
+    }
+
+    /**
+     * Return the connection of the login session bound to the current thread, or borrow one.
+     * <p>
+     * @return A {@link Connection} resource, to release with {@link #releaseConnection(java.sql.Connection)}.
+     * @throws SecurityStorageException If no connection can be borrowed.
+     */
+    private Connection borrowConnection()
+            throws SecurityStorageException
+    {
+        final LoginSession session = currentSession.get();
+        return session != null ? session.getConnection() : getConection();
+    }
+
+    /**
+     * Close a connection, unless it belongs to the login session bound to the current thread.
+     * <p>
+     * @param connection A Connection resource.
+     *                   May be <code>null</code>.
+     */
+    private void releaseConnection( final Connection connection )
+    {
+        if ( currentSession.get() == null ) {
+            close( connection );
+        }
+    }
+
+    /**
+     * Closes a set of resources ({@link Connection}, {@link PreparedStatement} and {@link ResultSet}).
+     * <p>
+     * @param connection A Connection resource.
+     *                   May be <code>null</code>.
+     * @param stmt       A PreparedStatement resource.
+     *                   May be <code>null</code>.
+     * @param res        A ResultSet resource.
+     *                   May be <code>null</code>.
+     */
+    private void close( Connection connection, PreparedStatement stmt, ResultSet res )
+    {
+        String msg;
+        try {
+            if ( res != null && !res.isClosed() ) {
+                res.close();
+            }
+
+            if ( stmt != null && !stmt.isClosed() ) {
+                stmt.close();
+            }
+
+            if ( connection != null && !connection.isClosed() ) {
+                connection.close();
+            }
+        } catch ( SQLException ex ) {
+            log( Level.SEVERE, "securitystorage.close.sql.exception",
+                    SecurityStorage.class.getName() + ".close" );
+            ex.printStackTrace();
+        }
+
+    }
+
+    /**
+     * Closes a set of resources ({@link Connection} and {@link PreparedStatement}).
+     * <p>
+     * @param connection A Connection resource. May be null.
+     * @param stmt       A PreparedStatement resource. May be null.
+     */
+    private void close( Connection conection, PreparedStatement stmt )
+    {
+        this.close( conection, stmt, null );
+    }
+
+    /**
+     * Close a {@link Connection} resource.
+     * <p>
+     * @param connection A resource Connection. May be null.
+     */
+    private void close( Connection connnection )
+    {
+        this.close( connnection, null );
+    }
+
+    /**
+     * Returns a localized string.
+     * <p>
+     * @param level    A logging level.
+     * @param key      A name of a resource bundle to fetch.
+     * @param messVals A set of arguments to provide to the resource bundle.
+     * @return A formatted localized string.
+     */
+    private String log( final Level level, final String key, Object... messVals )
+    {
+        String message = secStorSm.getString( key, messVals );
+        if ( Logger.getLogger( SecurityStorage.class.getName() ).isLoggable( level ) ) {
+            Logger.getLogger( SecurityStorage.class.getName() ).log( level, message );
+        }
+        return message;
+    }
+}
@@ -0,0 +1,70 @@
+package glassfish.security.auth.jdbc.util.dao;
+
+/**
+ * UserCredentials class holds the credentials of a user read from the user-table
+ * (the encrypted password, the optional per-user salt and the optional per-user password type).
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ * @see SecurityStorage
+ */
+public class UserCredentials
+{
+
+    // The encrypted password read from the user-password-column
+    private final String password;
+    // The plaintext salt read from the user-salt-column
+    private final String salt;
+    // The password type (digest-algorithm value) read from the user-password-type-column
+    private final String passwordType;
+
+    /**
+     * @param password     An encrypted password.
+     * @param salt         A plaintext per-user salt.
+     *                     May be <code>null</code>.
+     * @param passwordType A per-user password type (a <code>digest-algorithm</code> value).
+     *                     May be <code>null</code>.
+     */
+    public UserCredentials( final String password, final String salt, final String passwordType )
+    {
+        this.password = password;
+        this.salt = salt;
+        this.passwordType = passwordType;
+    }
+
+    /**
+     * @param password An encrypted password.
+     * @param salt     A plaintext per-user salt.
+     *                 May be <code>null</code>.
+     */
+    public UserCredentials( final String password, final String salt )
+    {
+        this( password, salt, null );
+    }
+
+    /**
+     * @return The encrypted password.
+     */
+    public String getPassword()
+    {
+        return password;
+    }
+
+    /**
+     * @return The plaintext per-user salt, <code>null</code> if the user-salt-column property isn't defined.
+     */
+    public String getSalt()
+    {
+        return salt;
+    }
+
+    /**
+     * @return The per-user password type, <code>null</code> if the user-password-type-column property isn't defined
+     *         (the realm <code>digest-algorithm</code> is used).
+     */
+    public String getPasswordType()
+    {
+        return passwordType;
+    }
+
+}
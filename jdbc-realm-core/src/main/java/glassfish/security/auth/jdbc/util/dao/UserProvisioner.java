@@ -0,0 +1,350 @@
+package glassfish.security.auth.jdbc.util.dao;
+
+import glassfish.security.auth.jdbc.util.dao.exceptions.SecurityStorageException;
+import glassfish.security.auth.jdbc.util.factory.passwordtypes.IPasswordType;
+import glassfish.security.auth.jdbc.util.factory.passwordtypes.ISaltedPasswordType;
+import glassfish.security.auth.jdbc.util.factory.passwordtypes.SaltedPasswordAdapter;
+import glassfish.security.auth.jdbc.util.i18n.StringManager;
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * UserProvisioner class inserts users and their groups in bulk into the user-table and group-table of a
+ * {@link SecurityStorage}, with the passwords encrypted by an {@link IPasswordType}.
+ * <p>
+ * The users are provisioned by chunks of batchSize users, a transaction per chunk: the passwords of a chunk are
+ * encrypted in parallel by a {@link ForkJoinPool} (a slow password type like bcrypt dominates the import), while the
+ * previous chunk is inserted with JDBC batch statements. A per-user salt is generated if the user-salt-column property
+ * is defined. If the user-name-normalized-column property is defined, the user name is written to the user-name-column
+ * and to the group-table, and the normalized user name to the user-name-normalized-column. Otherwise the queries match
+ * the normalized user name, which is written to the user-name-column and to the group-table.
+ * <p>
+ * If a chunk fails, its transaction is rolled back and the previous chunks stay committed. The users are inserted into
+ * the primary datasource, the first of the datasource-jndi property, never into a read replica.
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ */
+public class UserProvisioner
+{
+
+    /**
+     * A user to provision.
+     */
+    public static class Account
+    {
+
+        private final String username;
+        private final String password;
+        private final String[] groups;
+
+        /**
+         * @param username The user name.
+         * @param password The plaintext password.
+         * @param groups   The group names.
+         *                 May be <code>null</code>.
+         */
+        public Account( final String username, final String password, final String... groups )
+        {
+            if ( username == null || username.trim().isEmpty() || password == null ) {
+                throw new IllegalArgumentException( "username and password arguments cannot be null or empty" );
+            }
+            this.username = username;
+            this.password = password;
+            this.groups = groups != null ? groups.clone() : new String[ 0 ];
+        }
+
+        /**
+         * @return The user name.
+         */
+        public String getUsername()
+        {
+            return username;
+        }
+
+        /**
+         * @return The group names.
+         */
+        public String[] getGroups()
+        {
+            return groups.clone();
+        }
+    }
+
+    /**
+     * Encrypt the passwords of a range of accounts, split until the range is small enough.
+     */
+    private final class HashTask
+            extends RecursiveAction
+    {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Account> accounts;
+        private final String[] hashes;
+        private final String[] salts;
+        private final int offset;
+        private final int from;
+        private final int to;
+
+        HashTask( final List<Account> accounts, final String[] hashes, final String[] salts, final int offset, final int from, final int to )
+        {
+            this.accounts = accounts;
+            this.hashes = hashes;
+            this.salts = salts;
+            this.offset = offset;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if ( to - from <= HASH_THRESHOLD ) {
+                for ( int i = from; i < to; i++ ) {
+                    final String password = accounts.get( i ).password;
+                    if ( salted ) {
+                        salts[i - offset] = createSalt();
+                        hashes[i - offset] = passwordType.encryptPassword( password, salts[i - offset] );
+                    } else {
+                        hashes[i - offset] = passwordType.encryptPassword( password );
+                    }
+                }
+                return;
+            }
+            final int middle = ( from + to ) >>> 1;
+            invokeAll( new HashTask( accounts, hashes, salts, offset, from, middle ),
+                    new HashTask( accounts, hashes, salts, offset, middle, to ) );
+        }
+    }
+
+    /**
+     * The default number of users inserted per transaction (value: {@value }).
+     */
+    public final static int DEFAULT_BATCH_SIZE = 1000;
+
+    /**
+     * The number of passwords encrypted by a fork-join task without splitting it (value: {@value }).
+     */
+    public final static int HASH_THRESHOLD = 8;
+
+    private final static int SALT_LENGTH = 16;
+    private final static char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final SecurityStorage securityStorage;
+    private final ISaltedPasswordType passwordType;
+    // The user-password-type-column value of the provisioned users, null for the realm password type
+    private final String passwordTypeName;
+    private final int batchSize;
+    private final int parallelism;
+    private final boolean salted;
+    // the user-name-normalized-column property is defined
+    private final boolean normalizedColumn;
+    private final String userInsert;
+    private final String groupInsert;
+    private final SecureRandom random = new SecureRandom();
+
+    private final StringManager provSm = StringManager.getStringManager( UserProvisioner.class.getSimpleName(),
+            UserProvisioner.class.getClassLoader() );
+
+    /**
+     * @param securityStorage The security storage of the user-table and group-table.
+     * @param passwordType    The password type encrypting the passwords, it must be thread-safe.
+     */
+    public UserProvisioner( final SecurityStorage securityStorage, final IPasswordType passwordType )
+    {
+        this( securityStorage, passwordType, null, DEFAULT_BATCH_SIZE, Runtime.getRuntime().availableProcessors() );
+    }
+
+    /**
+     * @param securityStorage  The security storage of the user-table and group-table.
+     * @param passwordType     The password type encrypting the passwords, it must be thread-safe.
+     * @param passwordTypeName The user-password-type-column value of the provisioned users.
+     *                         May be <code>null</code> (the realm password type).
+     * @param batchSize        The number of users inserted per transaction.
+     * @param parallelism      The number of threads encrypting the passwords.
+     */
+    public UserProvisioner( final SecurityStorage securityStorage, final IPasswordType passwordType, final String passwordTypeName,
+            final int batchSize, final int parallelism )
+    {
+        if ( batchSize < 1 || parallelism < 1 ) {
+            throw new IllegalArgumentException( "batchSize and parallelism arguments must be positive" );
+        }
+        this.securityStorage = securityStorage;
+        this.passwordType = SaltedPasswordAdapter.of( passwordType );
+        this.passwordTypeName = passwordTypeName;
+        this.batchSize = batchSize;
+        this.parallelism = parallelism;
+        this.salted = securityStorage.hasProperty( SecurityStorage.PROPERTY.USER_SALT_COLUMN );
+        this.normalizedColumn = securityStorage.hasProperty( SecurityStorage.PROPERTY.USER_NAME_NORMALIZED_COLUMN );
+
+        final StringBuilder columns = new StringBuilder( property( SecurityStorage.PROPERTY.USER_NAME_COLUMN ) )
+                .append( ", " ).append( property( SecurityStorage.PROPERTY.USER_PASSWORD_COLUMN ) );
+        final StringBuilder values = new StringBuilder( "?, ?" );
+        for ( SecurityStorage.PROPERTY optional : new SecurityStorage.PROPERTY[]{ SecurityStorage.PROPERTY.USER_SALT_COLUMN,
+            SecurityStorage.PROPERTY.USER_PASSWORD_TYPE_COLUMN, SecurityStorage.PROPERTY.USER_NAME_NORMALIZED_COLUMN } ) {
+            if ( securityStorage.hasProperty( optional ) ) {
+                columns.append( ", " ).append( property( optional ) );
+                values.append( ", ?" );
+            }
+        }
+        this.userInsert = "INSERT INTO " + property( SecurityStorage.PROPERTY.USER_TABLE ) + " (" + columns + ") VALUES (" + values + ")";
+
+        // the group-table holds the user-name-column value in the group-table-user-name-column,
+        // or in the column of the same name as the user-table one
+        final String groupUserNameColumn = securityStorage.hasProperty( SecurityStorage.PROPERTY.GROUP_USER_NAME_COLUMN )
+                ? property( SecurityStorage.PROPERTY.GROUP_USER_NAME_COLUMN ) : property( SecurityStorage.PROPERTY.USER_NAME_COLUMN );
+        this.groupInsert = "INSERT INTO " + property( SecurityStorage.PROPERTY.GROUP_TABLE ) + " ("
+                + property( SecurityStorage.PROPERTY.GROUP_NAME_COLUMN ) + ", " + groupUserNameColumn + ") VALUES (?, ?)";
+    }
+
+    /**
+     * Insert users and their groups.
+     * <p>
+     * @param accounts The users to provision.
+     * @return The number of users provisioned.
+     * @throws SecurityStorageException If a chunk cannot be inserted (the previous chunks stay committed)
+     *                                  or if a password cannot be encrypted.
+     */
+    public int provision( final List<Account> accounts )
+            throws SecurityStorageException
+    {
+        final long start = System.nanoTime();
+        final ForkJoinPool pool = new ForkJoinPool( parallelism );
+        int provisioned = 0;
+        String msg;
+        try ( Connection connection = securityStorage.getPrimaryConnection() ) {
+            final boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit( false );
+            try ( PreparedStatement userStmt = connection.prepareStatement( userInsert );
+                    PreparedStatement groupStmt = connection.prepareStatement( groupInsert ) ) {
+                HashTask next = hash( pool, accounts, 0 );
+                for ( int from = 0; from < accounts.size(); from += batchSize ) {
+                    final HashTask current = next;
+                    current.join();
+                    // the next chunk is encrypted while this one is inserted
+                    next = from + batchSize < accounts.size() ? hash( pool, accounts, from + batchSize ) : null;
+                    try {
+                        insert( userStmt, groupStmt, accounts, current );
+                        connection.commit();
+                    } catch ( SQLException ex ) {
+                        connection.rollback();
+                        throw ex;
+                    }
+                    provisioned += current.to - current.from;
+                }
+            } finally {
+                connection.setAutoCommit( autoCommit );
+            }
+        } catch ( SQLException ex ) {
+            msg = log( Level.SEVERE, "userprovisioner.provision.sql.exception",
+                    ex.getMessage(), provisioned, UserProvisioner.class.getName() + ".provision" );
+            throw new SecurityStorageException( msg, ex );
+        } catch ( RuntimeException ex ) {
+            msg = log( Level.SEVERE, "userprovisioner.provision.hash.exception",
+                    ex.getMessage(), provisioned, UserProvisioner.class.getName() + ".provision" );
+            throw new SecurityStorageException( msg, ex );
+        } finally {
+            pool.shutdownNow();
+        }
+
+        log( Level.INFO, "userprovisioner.provision.info", provisioned,
+                TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start ), UserProvisioner.class.getName() + ".provision" );
+        return provisioned;
+    }
+
+    /**
+     * Submit the encryption of the chunk starting at from.
+     */
+    private HashTask hash( final ForkJoinPool pool, final List<Account> accounts, final int from )
+    {
+        final int to = Math.min( from + batchSize, accounts.size() );
+        final HashTask task = new HashTask( accounts, new String[ to - from ], new String[ to - from ], from, from, to );
+        pool.execute( task );
+        return task;
+    }
+
+    /**
+     * Add the users and the groups of an encrypted chunk to the batches and execute them.
+     */
+    private void insert( final PreparedStatement userStmt, final PreparedStatement groupStmt, final List<Account> accounts,
+            final HashTask chunk )
+            throws SQLException
+    {
+        boolean hasGroups = false;
+        for ( int i = chunk.from; i < chunk.to; i++ ) {
+            final Account account = accounts.get( i );
+            final String normalizedUsername = securityStorage.normalizeUsername( account.username );
+            // without normalized column, the queries look the normalized user name up in the user-name-column
+            final String username = normalizedColumn ? account.username : normalizedUsername;
+            int index = 1;
+            userStmt.setString( index++, username );
+            userStmt.setString( index++, chunk.hashes[i - chunk.offset] );
+            if ( salted ) {
+                userStmt.setString( index++, chunk.salts[i - chunk.offset] );
+            }
+            if ( securityStorage.hasProperty( SecurityStorage.PROPERTY.USER_PASSWORD_TYPE_COLUMN ) ) {
+                userStmt.setString( index++, passwordTypeName );
+            }
+            if ( normalizedColumn ) {
+                userStmt.setString( index++, normalizedUsername );
+            }
+            userStmt.addBatch();
+
+            for ( String group : account.groups ) {
+                groupStmt.setString( 1, group );
+                groupStmt.setString( 2, username );
+                groupStmt.addBatch();
+                hasGroups = true;
+            }
+        }
+        userStmt.executeBatch();
+        if ( hasGroups ) {
+            groupStmt.executeBatch();
+        }
+    }
+
+    private String createSalt()
+    {
+        final byte[] bytes = new byte[ SALT_LENGTH ];
+        random.nextBytes( bytes );
+        final char[] salt = new char[ bytes.length * 2 ];
+        for ( int i = 0; i < bytes.length; i++ ) {
+            salt[i * 2] = HEX[( bytes[i] >> 4 ) & 0xF];
+            salt[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String( salt );
+    }
+
+    private String property( final SecurityStorage.PROPERTY property )
+    {
+        return securityStorage.properties.getProperty( property.toString() ).trim();
+    }
+
+    /**
+     * Returns a localized string.
+     * <p>
+     * @param level    A logging level.
+     * @param key      A name of a resource bundle to fetch.
+     * @param messVals A set of arguments to provide to the resource bundle.
+     * @return A formatted localized string.
+     */
+    private String log( final Level level, final String key, Object... messVals )
+    {
+        String message = provSm.getString( key, messVals );
+        if ( Logger.getLogger( UserProvisioner.class.getName() ).isLoggable( level ) ) {
+            Logger.getLogger( UserProvisioner.class.getName() ).log( level, message );
+        }
+        return message;
+    }
+
+}
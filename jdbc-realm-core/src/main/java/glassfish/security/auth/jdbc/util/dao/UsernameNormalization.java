@@ -0,0 +1,105 @@
+package glassfish.security.auth.jdbc.util.dao;
+
+import java.text.Normalizer;
+import java.util.Locale;
+
+/**
+ * UsernameNormalization enumeration lists the normalizations applied to a user name
+ * before it is bound to a query (the <code>username-normalization</code> property values).
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ * @see SecurityStorage
+ */
+public enum UsernameNormalization
+{
+
+    /**
+     * The user name is used as is.
+     */
+    NONE( "none" )
+    {
+        @Override
+        public String normalize( final String username )
+        {
+            return username;
+        }
+    },
+    /**
+     * The user name is converted to lower case (with the root locale).
+     */
+    LOWERCASE( "lowercase" )
+    {
+        @Override
+        public String normalize( final String username )
+        {
+            return username != null ? username.toLowerCase( Locale.ROOT ) : null;
+        }
+    },
+    /**
+     * The user name is normalized with the Unicode NFKC form (compatibility composition).
+     */
+    NFKC( "nfkc" )
+    {
+        @Override
+        public String normalize( final String username )
+        {
+            return username != null ? Normalizer.normalize( username, Normalizer.Form.NFKC ) : null;
+        }
+    },
+    /**
+     * The user name is normalized with the Unicode NFKC form then converted to lower case.
+     */
+    NFKC_LOWERCASE( "nfkc-lowercase" )
+    {
+        @Override
+        public String normalize( final String username )
+        {
+            return username != null ? Normalizer.normalize( username, Normalizer.Form.NFKC ).toLowerCase( Locale.ROOT ) : null;
+        }
+    };
+
+    private String name;
+
+    UsernameNormalization( String name )
+    {
+        this.name = name;
+    }
+
+    /**
+     * Normalize a user name.
+     * <p>
+     * @param username A user name.
+     *                 May be <code>null</code>.
+     * @return The normalized user name.
+     */
+    public abstract String normalize( final String username );
+
+    /**
+     * Return the normalization corresponding to a <code>username-normalization</code> property value.
+     * <p>
+     * @param name A normalization name (case insensitive).
+     *             May be <code>null</code>.
+     * @return The normalization, {@link #NONE} if the name argument is null or empty.
+     * @throws IllegalArgumentException If the name doesn't correspond to a normalization.
+     */
+    public static UsernameNormalization fromName( final String name )
+    {
+        if ( name == null || name.trim().isEmpty() ) {
+            return NONE;
+        }
+        for ( UsernameNormalization normalization : values() ) {
+            if ( normalization.name.equalsIgnoreCase( name.trim() ) ) {
+                return normalization;
+            }
+        }
+        throw new IllegalArgumentException( "Unknown user name normalization " + name );
+    }
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+
+}
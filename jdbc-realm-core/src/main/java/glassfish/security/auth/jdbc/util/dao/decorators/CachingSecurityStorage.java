@@ -0,0 +1,162 @@
+package glassfish.security.auth.jdbc.util.dao.decorators;
+
+import glassfish.security.auth.jdbc.util.cache.CachedUser;
+import glassfish.security.auth.jdbc.util.cache.ICredentialCache;
+import glassfish.security.auth.jdbc.util.cache.StripedCredentialCache;
+import glassfish.security.auth.jdbc.util.dao.GroupSet;
+import glassfish.security.auth.jdbc.util.dao.ISecurityStorage;
+import glassfish.security.auth.jdbc.util.dao.UserCredentials;
+import java.util.Properties;
+
+/**
+ * CachingSecurityStorage class serves the users of the decorated storage from an in-memory {@link ICredentialCache}
+ * while they are younger than the time to live. A user is cached with its credentials and its groups (a successful
+ * login reads both), an unknown user isn't cached. The evictions are forwarded to the decorated storage.
+ * <p>
+ * Unlike the <code>cache-ttl</code> cache of {@link glassfish.security.auth.jdbc.util.dao.SecurityStorage}, this cache
+ * has neither degraded mode nor snapshot, but it stacks over any {@link ISecurityStorage}. The evictions of the other
+ * instances of the cluster received by the decorated storage are applied to it (see {@link #evict(String)}).
+ * <p>
+ * <b>Optional properties:</b>
+ * <ul>
+ * <li> <code>storage-cache-ttl</code>: number of seconds a user is cached (by default {@value #DEFAULT_TTL}).
+ * <li> <code>storage-cache-max-size</code>: maximum number of cached users (by default {@value #DEFAULT_MAX_SIZE}).
+ * </ul>
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ */
+public class CachingSecurityStorage
+        extends SecurityStorageDecorator
+{
+
+    /**
+     * The property of the number of seconds a user is cached (value: {@value }).
+     */
+    public final static String TTL_PROPERTY = "storage-cache-ttl";
+
+    /**
+     * The property of the maximum number of cached users (value: {@value }).
+     */
+    public final static String MAX_SIZE_PROPERTY = "storage-cache-max-size";
+
+    /**
+     * The default number of seconds a user is cached (value: {@value }).
+     */
+    public final static int DEFAULT_TTL = 60;
+
+    /**
+     * The default maximum number of cached users (value: {@value }).
+     */
+    public final static int DEFAULT_MAX_SIZE = 10000;
+
+    // The number of milliseconds a user is cached
+    private final long ttl;
+    private final ICredentialCache cache;
+
+    /**
+     * @param delegate The decorated storage.
+     * @param ttl      The number of milliseconds a user is cached.
+     * @param maxSize  The maximum number of cached users.
+     */
+    public CachingSecurityStorage( final ISecurityStorage delegate, final long ttl, final int maxSize )
+    {
+        super( delegate );
+        if ( ttl < 1 || maxSize < 1 ) {
+            throw new IllegalArgumentException( "ttl and maxSize arguments must be positive" );
+        }
+        this.ttl = ttl;
+        this.cache = new StripedCredentialCache( maxSize, ttl );
+    }
+
+    /**
+     * @param delegate   The decorated storage.
+     * @param properties The realm properties.
+     * @throws IllegalArgumentException If the storage-cache-ttl or storage-cache-max-size property isn't a positive integer.
+     */
+    public CachingSecurityStorage( final ISecurityStorage delegate, final Properties properties )
+    {
+        this( delegate, parsePositiveInt( properties, TTL_PROPERTY, DEFAULT_TTL ) * 1000L,
+                parsePositiveInt( properties, MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE ) );
+    }
+
+    @Override
+    public UserCredentials findCredentials( final String username )
+    {
+        final CachedUser user = findUser( username );
+        return user != null ? user.getCredentials() : null;
+    }
+
+    @Override
+    public GroupSet findGroupSet( final String username )
+    {
+        final CachedUser user = findUser( username );
+        return user != null ? user.getGroups() : delegate.findGroupSet( username );
+    }
+
+    @Override
+    public void invalidate( final String username )
+    {
+        cache.remove( normalizeUsername( username ) );
+        delegate.invalidate( username );
+    }
+
+    @Override
+    public void invalidateAll()
+    {
+        cache.clear();
+        delegate.invalidateAll();
+    }
+
+    @Override
+    public void evict( final String normalizedUsername )
+    {
+        if ( normalizedUsername == null ) {
+            cache.clear();
+        } else {
+            cache.remove( normalizedUsername );
+        }
+        delegate.evict( normalizedUsername );
+    }
+
+    /**
+     * Find a user in the cache, or load and cache it.
+     * <p>
+     * @param username A user name.
+     * @return The user or <code>null</code> if the user doesn't exist.
+     */
+    private CachedUser findUser( final String username )
+    {
+        final String normalizedUsername = normalizeUsername( username );
+        final long now = System.currentTimeMillis();
+        CachedUser user = cache.get( normalizedUsername );
+        if ( user != null && user.getAge( now ) < ttl ) {
+            getMetrics().recordCacheHit();
+            return user;
+        }
+
+        getMetrics().recordCacheMiss();
+        final UserCredentials credentials = delegate.findCredentials( username );
+        if ( credentials == null ) {
+            cache.remove( normalizedUsername );
+            return null;
+        }
+        user = new CachedUser( credentials, delegate.findGroupSet( username ), now );
+        cache.put( normalizedUsername, user );
+        return user;
+    }
+
+    private static int parsePositiveInt( final Properties properties, final String property, final int defaultValue )
+    {
+        final String value = properties != null ? properties.getProperty( property ) : null;
+        if ( value == null || value.trim().isEmpty() ) {
+            return defaultValue;
+        }
+        final int intValue = Integer.parseInt( value.trim() );
+        if ( intValue < 1 ) {
+            throw new IllegalArgumentException( property + " property must be positive" );
+        }
+        return intValue;
+    }
+
+}
@@ -0,0 +1,124 @@
+package glassfish.security.auth.jdbc.util.dao.decorators;
+
+import glassfish.security.auth.jdbc.util.dao.GroupSet;
+import glassfish.security.auth.jdbc.util.dao.ISecurityStorage;
+import glassfish.security.auth.jdbc.util.dao.UserCredentials;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * CoalescingSecurityStorage class shares a lookup between the threads looking the same user up at once: the first
+ * thread queries the decorated storage, the other ones wait for its result instead of sending the same query
+ * (a burst of logins of a same account, a retry storm). The lookups aren't cached once completed.
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ */
+public class CoalescingSecurityStorage
+        extends SecurityStorageDecorator
+{
+
+    // The credentials lookups in progress, by normalized user name
+    private final ConcurrentMap<String, FutureTask<UserCredentials>> credentialsLookups = new ConcurrentHashMap<>();
+    // The groups lookups in progress, by normalized user name
+    private final ConcurrentMap<String, FutureTask<GroupSet>> groupsLookups = new ConcurrentHashMap<>();
+
+    /**
+     * @param delegate The decorated storage.
+     */
+    public CoalescingSecurityStorage( final ISecurityStorage delegate )
+    {
+        super( delegate );
+    }
+
+    /**
+     * @param delegate   The decorated storage.
+     * @param properties The realm properties (unused).
+     */
+    public CoalescingSecurityStorage( final ISecurityStorage delegate, final Properties properties )
+    {
+        this( delegate );
+    }
+
+    @Override
+    public UserCredentials findCredentials( final String username )
+    {
+        return coalesce( credentialsLookups, normalizeUsername( username ), new Callable<UserCredentials>()
+        {
+            @Override
+            public UserCredentials call()
+            {
+                return delegate.findCredentials( username );
+            }
+        } );
+    }
+
+    @Override
+    public GroupSet findGroupSet( final String username )
+    {
+        return coalesce( groupsLookups, normalizeUsername( username ), new Callable<GroupSet>()
+        {
+            @Override
+            public GroupSet call()
+            {
+                return delegate.findGroupSet( username );
+            }
+        } );
+    }
+
+    /**
+     * Run a lookup, or wait for the same lookup run by an other thread.
+     * <p>
+     * @param lookups            The lookups in progress.
+     * @param normalizedUsername A normalized user name.
+     * @param lookup             The lookup.
+     * @return The lookup result.
+     */
+    private <T> T coalesce( final ConcurrentMap<String, FutureTask<T>> lookups, final String normalizedUsername, final Callable<T> lookup )
+    {
+        final FutureTask<T> task = new FutureTask<>( lookup );
+        final FutureTask<T> running = lookups.putIfAbsent( normalizedUsername, task );
+        if ( running == null ) {
+            try {
+                task.run();
+            } finally {
+                lookups.remove( normalizedUsername, task );
+            }
+            return get( task );
+        }
+        getMetrics().recordCoalescedLookup();
+        return get( running );
+    }
+
+    private static <T> T get( final FutureTask<T> task )
+    {
+        boolean interrupted = false;
+        try {
+            while ( true ) {
+                try {
+                    return task.get();
+                } catch ( InterruptedException ex ) {
+                    // the login waits for the lookup anyway
+                    interrupted = true;
+                }
+            }
+        } catch ( ExecutionException ex ) {
+            if ( ex.getCause() instanceof RuntimeException ) {
+                throw ( RuntimeException ) ex.getCause();
+            }
+            if ( ex.getCause() instanceof Error ) {
+                throw ( Error ) ex.getCause();
+            }
+            throw new IllegalStateException( ex.getCause() );
+        } finally {
+            if ( interrupted ) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,59 @@
+package glassfish.security.auth.jdbc.util.dao.decorators;
+
+import glassfish.security.auth.jdbc.util.dao.GroupSet;
+import glassfish.security.auth.jdbc.util.dao.ISecurityStorage;
+import glassfish.security.auth.jdbc.util.dao.UserCredentials;
+import java.util.Properties;
+
+/**
+ * MetricsSecurityStorage class counts and times the credentials and groups lookups of the decorated storage
+ * into its {@link glassfish.security.auth.jdbc.util.metrics.SecurityMetrics}. Stacked over a caching decorator,
+ * it times the cached lookups; under it, the database ones.
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ */
+public class MetricsSecurityStorage
+        extends SecurityStorageDecorator
+{
+
+    /**
+     * @param delegate The decorated storage.
+     */
+    public MetricsSecurityStorage( final ISecurityStorage delegate )
+    {
+        super( delegate );
+    }
+
+    /**
+     * @param delegate   The decorated storage.
+     * @param properties The realm properties (unused).
+     */
+    public MetricsSecurityStorage( final ISecurityStorage delegate, final Properties properties )
+    {
+        this( delegate );
+    }
+
+    @Override
+    public UserCredentials findCredentials( final String username )
+    {
+        final long start = System.nanoTime();
+        try {
+            return delegate.findCredentials( username );
+        } finally {
+            getMetrics().recordCredentialsLookup( System.nanoTime() - start );
+        }
+    }
+
+    @Override
+    public GroupSet findGroupSet( final String username )
+    {
+        final long start = System.nanoTime();
+        try {
+            return delegate.findGroupSet( username );
+        } finally {
+            getMetrics().recordGroupsLookup( System.nanoTime() - start );
+        }
+    }
+
+}
@@ -0,0 +1,126 @@
+package glassfish.security.auth.jdbc.util.dao.decorators;
+
+import glassfish.security.auth.jdbc.util.dao.GroupSet;
+import glassfish.security.auth.jdbc.util.dao.ISecurityStorage;
+import glassfish.security.auth.jdbc.util.dao.UserCredentials;
+import glassfish.security.auth.jdbc.util.dao.exceptions.SecurityStorageException;
+import glassfish.security.auth.jdbc.util.metrics.SecurityMetrics;
+
+/**
+ * SecurityStorageDecorator class forwards every call to the decorated storage, the decorators override the lookups
+ * they add a behaviour to. A decorator created from the <code>storage-decorators</code> realm property must have a
+ * public constructor taking the decorated {@link ISecurityStorage} and the realm {@link java.util.Properties}.
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ * @see CachingSecurityStorage
+ * @see CoalescingSecurityStorage
+ * @see MetricsSecurityStorage
+ */
+public abstract class SecurityStorageDecorator
+        implements ISecurityStorage
+{
+
+    // The decorated storage
+    protected final ISecurityStorage delegate;
+
+    /**
+     * @param delegate The decorated storage.
+     */
+    protected SecurityStorageDecorator( final ISecurityStorage delegate )
+    {
+        if ( delegate == null ) {
+            throw new IllegalArgumentException( "delegate argument cannot be null" );
+        }
+        this.delegate = delegate;
+    }
+
+    @Override
+    public String normalizeUsername( final String username )
+    {
+        return delegate.normalizeUsername( username );
+    }
+
+    @Override
+    public String findPassword( final String username )
+    {
+        final UserCredentials credentials = findCredentials( username );
+        return credentials != null ? credentials.getPassword() : null;
+    }
+
+    @Override
+    public UserCredentials findCredentials( final String username )
+    {
+        return delegate.findCredentials( username );
+    }
+
+    @Override
+    public String[] findGroupNames( final String username )
+    {
+        return findGroupSet( username ).toArray();
+    }
+
+    @Override
+    public GroupSet findGroupSet( final String username )
+    {
+        return delegate.findGroupSet( username );
+    }
+
+    @Override
+    public void validateQueries()
+            throws SecurityStorageException
+    {
+        delegate.validateQueries();
+    }
+
+    @Override
+    public Session openSession()
+    {
+        return delegate.openSession();
+    }
+
+    @Override
+    public void start( final ISecurityStorage outermost )
+    {
+        delegate.start( outermost );
+    }
+
+    @Override
+    public void close()
+    {
+        delegate.close();
+    }
+
+    @Override
+    public void invalidate( final String username )
+    {
+        delegate.invalidate( username );
+    }
+
+    @Override
+    public void invalidateAll()
+    {
+        delegate.invalidateAll();
+    }
+
+    @Override
+    public void evict( final String normalizedUsername )
+    {
+        delegate.evict( normalizedUsername );
+    }
+
+    @Override
+    public SecurityMetrics getMetrics()
+    {
+        return delegate.getMetrics();
+    }
+
+    /**
+     * @return The decorated storage.
+     */
+    public ISecurityStorage getDelegate()
+    {
+        return delegate;
+    }
+
+}
@@ -2,23 +2,32 @@ package glassfish.security.auth.jdbc.util.factory;
 
 import glassfish.security.auth.jdbc.util.factory.exceptions.PasswordTypeException;
 import glassfish.security.auth.jdbc.util.factory.passwordtypes.BcryptPassword;
+import glassfish.security.auth.jdbc.util.factory.passwordtypes.HmacPassword;
 import glassfish.security.auth.jdbc.util.factory.passwordtypes.IPasswordType;
+import glassfish.security.auth.jdbc.util.factory.passwordtypes.ISaltedPasswordType;
 import glassfish.security.auth.jdbc.util.factory.passwordtypes.MessageDigestPassword;
 import glassfish.security.auth.jdbc.util.factory.passwordtypes.UnencryptedPassword;
+import glassfish.security.auth.jdbc.util.factory.passwordtypes.WrappedPassword;
 import java.nio.charset.Charset;
 import java.util.Properties;
 
 /**
  * PasswordTypeFactory class allows to create and return a {@link IPasswordType} implementation
- * ({@link BcryptPassword}, {@link MessageDigestPassword}, {@link UnencryptedPassword})
- * according to the specified properties.
+ * ({@link BcryptPassword}, {@link HmacPassword}, {@link MessageDigestPassword}, {@link UnencryptedPassword},
+ * {@link WrappedPassword}) according to the specified properties.
  * <p>
  * <b>Optional properties:</b>
  * <ul>
  * <li> <code>digest-algorithm</code>: algorithm used to encrypt user password(values: <code>None</code>, <code>Bcrypt</code>,
- * <code>SHA-256</code>, <code>SHA-1</code> or <code>MD5</code>).
+ * <code>Hmac</code>, <code>SHA-256</code>, <code>SHA-1</code> or <code>MD5</code>), or <code>outer(inner)</code> to wrap
+ * the legacy hashes of an algorithm into an other one (for example <code>Bcrypt(SHA-1)</code>).
  * <li> <code>password-salt</code>: plaintext password salt.
  * <li> <code>bcrypt-log-rounds</code>: {@link <a href="http://www.mindrot.org/projects/jBCrypt/">jBCrypt</a>} log rounds.
+ * <li> <code>hmac-algorithm</code>: {@link javax.crypto.Mac} algorithm (by default <code>HmacSHA256</code>).
+ * <li> <code>hmac-keystore</code>: keystore file containing the secret key (pepper) of the <code>Hmac</code> password type.
+ * <li> <code>hmac-keystore-type</code>: keystore type (by default <code>JCEKS</code>).
+ * <li> <code>hmac-keystore-password</code>: keystore password (also used as key password).
+ * <li> <code>hmac-key-alias</code>: alias of the secret key into the keystore.
  * <li> <code>encoding</code>: encoding type (values: <code>hex</code> or <code>base64</code>).
  * <li> <code>charset</code>: {@link Charset} name.
  * </ul>
@@ -33,8 +42,10 @@ import java.util.Properties;
  * @version 1.0.0
  * @see IPasswordType
  * @see BcryptPassword
+ * @see HmacPassword
  * @see MessageDigestPassword
  * @see UnencryptedPassword
+ * @see WrappedPassword
  */
 public class PasswordTypeFactory
 {
@@ -49,6 +60,11 @@ public class PasswordTypeFactory
         DIGEST_ALGORITHM( "digest-algorithm" ),
         PASSWORD_SALT( "password-salt" ),
         BCRYPT_LOG_ROUNDS( "bcrypt-log-rounds" ),
+        HMAC_ALGORITHM( "hmac-algorithm" ),
+        HMAC_KEYSTORE( "hmac-keystore" ),
+        HMAC_KEYSTORE_TYPE( "hmac-keystore-type" ),
+        HMAC_KEYSTORE_PASSWORD( "hmac-keystore-password" ),
+        HMAC_KEY_ALIAS( "hmac-key-alias" ),
         ENCODING( "encoding" ),
         CHARSET( "charset" );
 
@@ -72,6 +88,11 @@ public class PasswordTypeFactory
      */
     public final static String BCRYPT = "bcrypt";
 
+    /**
+     * value: {@value }.
+     */
+    public final static String HMAC = "hmac";
+
     /**
      * value: {@value }.
      */
@@ -87,33 +108,50 @@ public class PasswordTypeFactory
     }
 
     /**
-     * Create and return a {@link IPasswordType} implementation ({@link BcryptPassword},
-     * {@link MessageDigestPassword} or {@link UnencryptedPassword}) according to
+     * Create and return a {@link IPasswordType} implementation ({@link BcryptPassword}, {@link HmacPassword},
+     * {@link MessageDigestPassword}, {@link UnencryptedPassword} or {@link WrappedPassword}) according to
      * the specified arguments.
      * <p>
      * @param properties A set of properties.
-     * @return A IPasswordType implementation.
+     * @return A IPasswordType implementation supporting a per-user salt.
      * @throws PasswordTypeException If the {@link Properties} object is null,
      *                               if a property is missing or invalid.
      */
-    public IPasswordType createPasswordType( Properties properties )
+    public ISaltedPasswordType createPasswordType( Properties properties )
             throws PasswordTypeException
     {
         if ( properties == null ) {
             throw new IllegalArgumentException( "properties arguement cannot be null" );
         }
 
-        IPasswordType passwordType = null;
+        ISaltedPasswordType passwordType = null;
         final String algorithm = properties.getProperty( PROPERTY.DIGEST_ALGORITHM.toString(), properties.getProperty( PROPERTY.DEFAULT_DIGEST_ALGORITHM.toString() ) );
         final String salt = properties.getProperty( PROPERTY.PASSWORD_SALT.toString() );
         final String charset = properties.getProperty( PROPERTY.CHARSET.toString() );
         final String encoding = properties.getProperty( PROPERTY.ENCODING.toString() );
         final String bcryptLogRounds = properties.getProperty( PROPERTY.BCRYPT_LOG_ROUNDS.toString() );
 
-        if ( NONE.equalsIgnoreCase( algorithm ) ) {
+        final int wrapped = algorithm != null ? algorithm.indexOf( '(' ) : -1;
+        if ( wrapped > 0 && algorithm.endsWith( ")" ) ) {
+            // outer(inner): both password types share the other properties
+            final Properties outerProperties = new Properties();
+            outerProperties.putAll( properties );
+            outerProperties.setProperty( PROPERTY.DIGEST_ALGORITHM.toString(), algorithm.substring( 0, wrapped ).trim() );
+            final Properties innerProperties = new Properties();
+            innerProperties.putAll( properties );
+            innerProperties.setProperty( PROPERTY.DIGEST_ALGORITHM.toString(), algorithm.substring( wrapped + 1, algorithm.length() - 1 ).trim() );
+            passwordType = new WrappedPassword( createPasswordType( outerProperties ), createPasswordType( innerProperties ) );
+        } else if ( NONE.equalsIgnoreCase( algorithm ) ) {
             passwordType = new UnencryptedPassword( salt, charset, encoding );
         } else if ( BCRYPT.equalsIgnoreCase( algorithm ) ) {
             passwordType = new BcryptPassword( salt, bcryptLogRounds );
+        } else if ( HMAC.equalsIgnoreCase( algorithm ) ) {
+            passwordType = new HmacPassword( properties.getProperty( PROPERTY.HMAC_ALGORITHM.toString() ),
+                    HmacPassword.loadPepper( properties.getProperty( PROPERTY.HMAC_KEYSTORE.toString() ),
+                            properties.getProperty( PROPERTY.HMAC_KEYSTORE_TYPE.toString() ),
+                            properties.getProperty( PROPERTY.HMAC_KEYSTORE_PASSWORD.toString() ),
+                            properties.getProperty( PROPERTY.HMAC_KEY_ALIAS.toString() ) ),
+                    salt, charset, encoding );
         } else {
             passwordType = new MessageDigestPassword( algorithm, salt, charset, encoding );
         }
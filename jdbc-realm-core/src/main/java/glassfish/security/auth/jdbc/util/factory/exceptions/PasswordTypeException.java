@@ -1,6 +1,7 @@
 package glassfish.security.auth.jdbc.util.factory.exceptions;
 
 import glassfish.security.auth.jdbc.util.factory.passwordtypes.BcryptPassword;
+import glassfish.security.auth.jdbc.util.factory.passwordtypes.HmacPassword;
 import glassfish.security.auth.jdbc.util.factory.passwordtypes.MessageDigestPassword;
 import glassfish.security.auth.jdbc.util.factory.passwordtypes.UnencryptedPassword;
 
@@ -10,6 +11,7 @@ import glassfish.security.auth.jdbc.util.factory.passwordtypes.UnencryptedPasswo
  * @author RienderieN
  * @version 1.0.0
  * @see BcryptPassword
+ * @see HmacPassword
  * @see MessageDigestPassword
  * @see UnencryptedPassword
  */
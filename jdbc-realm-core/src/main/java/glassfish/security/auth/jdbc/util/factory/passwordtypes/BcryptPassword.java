@@ -1,6 +1,8 @@
 package glassfish.security.auth.jdbc.util.factory.passwordtypes;
 
 import glassfish.security.auth.jdbc.util.factory.exceptions.PasswordTypeException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
 import java.security.SecureRandom;
 import org.mindrot.jbcrypt.BCrypt;
 
@@ -14,7 +16,7 @@ import org.mindrot.jbcrypt.BCrypt;
  * @see MessageDigestPassword
  * @see UnencryptedPassword
  */
-public class BcryptPassword implements IPasswordType
+public class BcryptPassword implements ISaltedPasswordType
 {
 
     /**
@@ -33,6 +35,9 @@ public class BcryptPassword implements IPasswordType
      */
     public static final int DEFAULT_LOG_ROUNDS = 8;
 
+    // Bcrypt hashes only contain ASCII characters
+    private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
     // The salt generate by Bcrypt.gensalt method
     private final String bcryptSalt;
     // The salt to append to a plaintext password
@@ -114,13 +119,39 @@ public class BcryptPassword implements IPasswordType
     @Override
     public String encryptPassword( final String password )
     {
-        return BCrypt.hashpw( password.concat( salt ), bcryptSalt );
+        return encryptPassword( password, null );
+    }
+
+    @Override
+    public String encryptPassword( final String password, final String userSalt )
+    {
+        return BCrypt.hashpw( password.concat( userSalt != null ? userSalt : "" ).concat( salt ), bcryptSalt );
     }
 
     @Override
     public boolean checkPassword( final String plainPassword, final String hashedPassword )
     {
-        return BCrypt.checkpw( plainPassword.concat( salt ), hashedPassword );
+        return checkPassword( plainPassword, hashedPassword, null );
+    }
+
+    @Override
+    public boolean checkPassword( final String plainPassword, final String hashedPassword, final String userSalt )
+    {
+        if ( hashedPassword == null ) {
+            return false;
+        }
+
+        /*
+         * BCrypt.checkpw compares the hashes with String.compareTo which exits at
+         * the first different character, so the hashes are compared in constant time.
+         */
+        try {
+            final String hashedPlainPassword = BCrypt.hashpw( plainPassword.concat( userSalt != null ? userSalt : "" ).concat( salt ), hashedPassword );
+            return MessageDigest.isEqual( hashedPassword.getBytes( UTF8 ), hashedPlainPassword.getBytes( UTF8 ) );
+        } catch ( IllegalArgumentException ex ) {
+            // the hashed password isn't a valid Bcrypt hash
+            return false;
+        }
     }
 
 }
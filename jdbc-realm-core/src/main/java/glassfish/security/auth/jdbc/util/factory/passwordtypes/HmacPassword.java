@@ -0,0 +1,261 @@
+package glassfish.security.auth.jdbc.util.factory.passwordtypes;
+
+import glassfish.security.auth.jdbc.util.factory.exceptions.PasswordTypeException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import javax.crypto.Mac;
+import javax.xml.bind.DatatypeConverter;
+
+/**
+ * HmacPassword class allows to encrypt a plaintext password with a {@link Mac} keyed by a
+ * server-side secret (a pepper loaded from a keystore file) and checks that a plaintext password
+ * matches a previously encrypted one.
+ * <p>
+ * This password type is intended for accounts with high-entropy random secrets (machine-to-machine
+ * accounts) for which the cost of {@link BcryptPassword} is wasted.
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ * @see BcryptPassword
+ * @see MessageDigestPassword
+ * @see UnencryptedPassword
+ */
+public class HmacPassword implements ISaltedPasswordType
+{
+
+    /**
+     * value: {@value }.
+     */
+    public final static String HEX = "hex";
+    /**
+     * value: {@value }.
+     */
+    public final static String BASE64 = "base64";
+
+    /**
+     * The default {@link Mac} algorithm used if the macAlgorithm argument is null or empty.
+     */
+    public final static String DEFAULT_MAC = "HmacSHA256";
+
+    /**
+     * The default {@link KeyStore} type used if the keystoreType argument is null or empty.
+     */
+    public final static String DEFAULT_KEYSTORE_TYPE = "JCEKS";
+
+    private final String macAlgorithm;
+    // The secret key (pepper) used to initialize the Mac instances
+    private final Key pepper;
+    private final Charset charset;
+    // encoding to use (Hex or Base64).
+    private final String encoding;
+    // The plaintext salt to append to a plaintext password.
+    private final String salt;
+
+    /*
+     * A Mac instance isn't thread safe, the initialized instances are borrowed from a pool rather
+     * than kept by a ThreadLocal, which would pin this class loader into the server threads.
+     */
+    private final Queue<Mac> macs = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Creates a HmacPassword instance with the specified arguments.
+     * <p>
+     * @param macAlgorithm A {@link Mac} algorithm to use.
+     *                     May be <code>null</code>.
+     * @param pepper       The secret key used by the Mac algorithm.
+     * @param salt         A plaintext salt to append to a plaintext password (after the per-user salt).
+     *                     May be <code>null</code>.
+     * @param charset      A {@link Charset} name to use.
+     *                     May be <code>null</code>.
+     * @param encoding     An encoding type to use.
+     *                     May be <code>{@link #HEX hex}</code>,
+     *                     <code>{@link #BASE64 base64}</code> or
+     *                     <code>null</code>.
+     * @throws PasswordTypeException If the pepper argument is null,
+     *                               if the macAlgorithm argument value isn't corresponded to the standard
+     *                               {@link Mac#getInstance(java.lang.String) Mac} algorithms
+     *                               or if the pepper cannot initialize the Mac algorithm.
+     */
+    public HmacPassword( final String macAlgorithm, final Key pepper, final String salt, final String charset, final String encoding )
+            throws PasswordTypeException
+    {
+        if ( pepper == null ) {
+            throw new PasswordTypeException( "pepper argument cannot be null" );
+        }
+        this.pepper = pepper;
+
+        if ( macAlgorithm != null && !macAlgorithm.trim().isEmpty() ) {
+            this.macAlgorithm = macAlgorithm;
+        } else {
+            this.macAlgorithm = DEFAULT_MAC;
+        }
+
+        /*
+         * need to define the salt parameter to an empty String to avoid to
+         * throw a NullPointerException with the concat method.
+         */
+        if ( salt != null && !salt.trim().isEmpty() ) {
+            this.salt = salt;
+        } else {
+            this.salt = "";
+        }
+
+        Charset charsetType = null;
+        try {
+            charsetType = Charset.forName( charset );
+        } catch ( IllegalArgumentException ex ) {
+            charsetType = Charset.defaultCharset();
+        } finally {
+            this.charset = charsetType;
+        }
+
+        if ( encoding != null && !encoding.trim().isEmpty() ) {
+            this.encoding = encoding;
+        } else {
+            this.encoding = HEX;
+        }
+
+        // fail at creation rather than at the first login if the algorithm or the pepper is invalid
+        macs.offer( createMac() );
+    }
+
+    /**
+     * Load the secret key (pepper) from a keystore file.
+     * <p>
+     * @param keystore         A keystore file path.
+     * @param keystoreType     A {@link KeyStore} type.
+     *                         May be <code>null</code> (default {@value #DEFAULT_KEYSTORE_TYPE}).
+     * @param keystorePassword A keystore password, also used as key password.
+     *                         May be <code>null</code>.
+     * @param keyAlias         The alias of the secret key into the keystore.
+     * @return The secret key.
+     * @throws PasswordTypeException If the keystore or keyAlias argument is null or empty,
+     *                               if the keystore cannot be read
+     *                               or if the keyAlias doesn't exist into the keystore.
+     */
+    public static Key loadPepper( final String keystore, final String keystoreType, final String keystorePassword, final String keyAlias )
+            throws PasswordTypeException
+    {
+        if ( keystore == null || keystore.trim().isEmpty() ) {
+            throw new PasswordTypeException( "keystore argument cannot be null or empty" );
+        }
+        if ( keyAlias == null || keyAlias.trim().isEmpty() ) {
+            throw new PasswordTypeException( "keyAlias argument cannot be null or empty" );
+        }
+
+        final char[] password = keystorePassword != null ? keystorePassword.toCharArray() : null;
+        try ( InputStream in = new FileInputStream( keystore ) ) {
+            final KeyStore ks = KeyStore.getInstance( keystoreType != null && !keystoreType.trim().isEmpty() ? keystoreType : DEFAULT_KEYSTORE_TYPE );
+            ks.load( in, password );
+            final Key key = ks.getKey( keyAlias, password );
+            if ( key == null ) {
+                throw new PasswordTypeException( "The key alias " + keyAlias + " doesn't exist into the keystore " + keystore );
+            }
+            return key;
+        } catch ( IOException | GeneralSecurityException ex ) {
+            throw new PasswordTypeException( ex );
+        }
+    }
+
+    @Override
+    public String encryptPassword( final String password )
+    {
+        return encryptPassword( password, null );
+    }
+
+    @Override
+    public String encryptPassword( final String password, final String userSalt )
+    {
+        final byte[] hashedPasswd = mac( password, userSalt );
+
+        // by default encode the hashed password with hex
+        if ( BASE64.equalsIgnoreCase( encoding ) ) {
+            return DatatypeConverter.printBase64Binary( hashedPasswd );
+        } else {
+            return DatatypeConverter.printHexBinary( hashedPasswd );
+        }
+    }
+
+    @Override
+    public boolean checkPassword( final String plainPassword, final String hashedPassword )
+    {
+        return checkPassword( plainPassword, hashedPassword, null );
+    }
+
+    @Override
+    public boolean checkPassword( final String plainPassword, final String hashedPassword, final String userSalt )
+    {
+        if ( hashedPassword == null ) {
+            return false;
+        }
+
+        byte[] expected;
+        try {
+            if ( BASE64.equalsIgnoreCase( encoding ) ) {
+                expected = DatatypeConverter.parseBase64Binary( hashedPassword );
+            } else {
+                expected = DatatypeConverter.parseHexBinary( hashedPassword );
+            }
+        } catch ( IllegalArgumentException ex ) {
+            return false;
+        }
+
+        // MessageDigest.isEqual compares the byte arrays in constant time
+        return MessageDigest.isEqual( expected, mac( plainPassword, userSalt ) );
+    }
+
+    /**
+     * Compute the Mac of a plaintext password with a Mac instance borrowed from the pool.
+     * <p>
+     * @param password A plaintext password.
+     * @param userSalt A plaintext per-user salt. May be <code>null</code>.
+     * @return The Mac of the salted password.
+     */
+    private byte[] mac( final String password, final String userSalt )
+    {
+        Mac instance = macs.poll();
+        if ( instance == null ) {
+            try {
+                instance = createMac();
+            } catch ( PasswordTypeException ex ) {
+                // the algorithm and the pepper were checked by the constructor
+                throw new IllegalStateException( ex );
+            }
+        }
+        try {
+            instance.reset();
+            return instance.doFinal( password.concat( userSalt != null ? userSalt : "" ).concat( salt ).getBytes( charset ) );
+        } finally {
+            macs.offer( instance );
+        }
+    }
+
+    /**
+     * Create a {@link Mac} instance initialized with the pepper.
+     * <p>
+     * @return A Mac instance.
+     * @throws PasswordTypeException If the Mac algorithm doesn't exist or if the pepper is invalid.
+     */
+    private Mac createMac()
+            throws PasswordTypeException
+    {
+        try {
+            final Mac instance = Mac.getInstance( macAlgorithm );
+            instance.init( pepper );
+            return instance;
+        } catch ( NoSuchAlgorithmException | InvalidKeyException ex ) {
+            throw new PasswordTypeException( ex );
+        }
+    }
+
+}
@@ -0,0 +1,38 @@
+package glassfish.security.auth.jdbc.util.factory.passwordtypes;
+
+import glassfish.security.auth.jdbc.util.factory.PasswordTypeFactory;
+
+/**
+ * ISaltedPasswordType interface corresponding to a password encryption type supporting a per-user salt, implemented
+ * by the password types returned by {@link PasswordTypeFactory}. An {@link IPasswordType} which doesn't implement it
+ * is adapted by {@link SaltedPasswordAdapter}.
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ */
+public interface ISaltedPasswordType
+        extends IPasswordType
+{
+
+    /**
+     * Encrypt a plaintext password salted with a per-user salt and return it.
+     * <p>
+     * @param password A plaintext password to encrypt
+     * @param userSalt A plaintext per-user salt to append to the password.
+     *                 May be <code>null</code>.
+     * @return A encrypted password
+     */
+    String encryptPassword( final String password, final String userSalt );
+
+    /**
+     * Check that a plaintext password salted with a per-user salt matches a previously encrypted one.
+     * <p>
+     * @param plainPassword  A plaintext password to check.
+     * @param hashedPassword A previously encrypted password.
+     * @param userSalt       A plaintext per-user salt to append to the password.
+     *                       May be <code>null</code>.
+     * @return <code>true</code> if the the passwords match,
+     *         <code>false</code> otherwise.
+     */
+    boolean checkPassword( final String plainPassword, final String hashedPassword, final String userSalt );
+}
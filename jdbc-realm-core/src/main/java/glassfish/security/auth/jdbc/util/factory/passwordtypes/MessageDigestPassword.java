@@ -16,7 +16,7 @@ import javax.xml.bind.DatatypeConverter;
  * @see BcryptPassword
  * @see UnencryptedPassword
  */
-public class MessageDigestPassword implements IPasswordType
+public class MessageDigestPassword implements ISaltedPasswordType
 {
 
     /**
@@ -33,18 +33,32 @@ public class MessageDigestPassword implements IPasswordType
      */
     public final static String DEFAULT_DIGEST = "SHA-256";
 
-    private final MessageDigest md;
+    private final String digestAlgorithm;
     private final Charset charset;
     // encoding to use (Hex or Base64).
     private final String encoding;
     // The plaintext salt to append to a plaintext password.
     private final String salt;
 
+    // A MessageDigest instance isn't thread safe, each thread keeps its own instance.
+    private final ThreadLocal<MessageDigest> md = new ThreadLocal<MessageDigest>()
+    {
+        @Override
+        protected MessageDigest initialValue()
+        {
+            try {
+                return MessageDigest.getInstance( digestAlgorithm );
+            } catch ( NoSuchAlgorithmException ex ) {
+                throw new IllegalStateException( ex );
+            }
+        }
+    };
+
     /**
      * Creates a MessageDigestPassword instance with the specified arguments.
      * <p>
      * @param digestAlgorithm A {@link MessageDigest} algorithm to use.
-     * @param salt            A plaintext salt to append to a plaintext password.
+     * @param salt            A plaintext salt to append to a plaintext password (after the per-user salt).
      *                        May be <code>null</code>.
      * @param charset         A {@link Charset} name to use.
      *                        May be <code>null</code>.
@@ -62,7 +76,8 @@ public class MessageDigestPassword implements IPasswordType
             if ( digestAlgorithm == null || digestAlgorithm.trim().isEmpty() ) {
                 digestAlgorithm = DEFAULT_DIGEST;
             }
-            md = MessageDigest.getInstance( digestAlgorithm );
+            md.set( MessageDigest.getInstance( digestAlgorithm ) );
+            this.digestAlgorithm = digestAlgorithm;
         } catch ( NoSuchAlgorithmException ex ) {
             throw new PasswordTypeException( ex );
         }
@@ -123,12 +138,19 @@ public class MessageDigestPassword implements IPasswordType
 
     @Override
     public String encryptPassword( final String password )
+    {
+        return encryptPassword( password, null );
+    }
+
+    @Override
+    public String encryptPassword( final String password, final String userSalt )
     {
         byte[] hashedPasswd = null;
 
-        hashedPasswd = password.concat( salt ).getBytes( charset );
-        md.reset();
-        hashedPasswd = md.digest( hashedPasswd );
+        hashedPasswd = password.concat( userSalt != null ? userSalt : "" ).concat( salt ).getBytes( charset );
+        final MessageDigest digest = md.get();
+        digest.reset();
+        hashedPasswd = digest.digest( hashedPasswd );
 
         // by default encode the hashed password with hex
         if ( BASE64.equalsIgnoreCase( encoding ) ) {
@@ -141,8 +163,18 @@ public class MessageDigestPassword implements IPasswordType
     @Override
     public boolean checkPassword( final String plainPassword, final String hashedPassword )
     {
-        String hashedPlainPassword = this.encryptPassword( plainPassword );
-        return hashedPassword.equals( hashedPlainPassword );
+        return checkPassword( plainPassword, hashedPassword, null );
+    }
+
+    @Override
+    public boolean checkPassword( final String plainPassword, final String hashedPassword, final String userSalt )
+    {
+        if ( hashedPassword == null ) {
+            return false;
+        }
+        String hashedPlainPassword = this.encryptPassword( plainPassword, userSalt );
+        // MessageDigest.isEqual doesn't exit at the first different byte (constant-time comparison)
+        return MessageDigest.isEqual( hashedPassword.getBytes( charset ), hashedPlainPassword.getBytes( charset ) );
     }
 
     /**
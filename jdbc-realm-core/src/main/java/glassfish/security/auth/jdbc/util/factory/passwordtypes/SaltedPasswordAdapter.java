@@ -0,0 +1,76 @@
+package glassfish.security.auth.jdbc.util.factory.passwordtypes;
+
+/**
+ * SaltedPasswordAdapter class adapts an {@link IPasswordType} without per-user salt support to
+ * {@link ISaltedPasswordType}: the per-user salt is appended to the plaintext password before it is encrypted.
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ */
+public class SaltedPasswordAdapter
+        implements ISaltedPasswordType
+{
+
+    // The adapted password type
+    private final IPasswordType passwordType;
+
+    /**
+     * @param passwordType The adapted password type.
+     */
+    public SaltedPasswordAdapter( final IPasswordType passwordType )
+    {
+        if ( passwordType == null ) {
+            throw new IllegalArgumentException( "passwordType argument cannot be null" );
+        }
+        this.passwordType = passwordType;
+    }
+
+    /**
+     * Return a password type supporting a per-user salt.
+     * <p>
+     * @param passwordType A password type.
+     *                     May be <code>null</code>.
+     * @return The password type if it supports a per-user salt, an adapter otherwise,
+     *         <code>null</code> if the passwordType argument is <code>null</code>.
+     */
+    public static ISaltedPasswordType of( final IPasswordType passwordType )
+    {
+        if ( passwordType == null || passwordType instanceof ISaltedPasswordType ) {
+            return ( ISaltedPasswordType ) passwordType;
+        }
+        return new SaltedPasswordAdapter( passwordType );
+    }
+
+    @Override
+    public String encryptPassword( final String password )
+    {
+        return passwordType.encryptPassword( password );
+    }
+
+    @Override
+    public String encryptPassword( final String password, final String userSalt )
+    {
+        return passwordType.encryptPassword( userSalt != null ? password.concat( userSalt ) : password );
+    }
+
+    @Override
+    public boolean checkPassword( final String plainPassword, final String hashedPassword )
+    {
+        return passwordType.checkPassword( plainPassword, hashedPassword );
+    }
+
+    @Override
+    public boolean checkPassword( final String plainPassword, final String hashedPassword, final String userSalt )
+    {
+        return passwordType.checkPassword( userSalt != null ? plainPassword.concat( userSalt ) : plainPassword, hashedPassword );
+    }
+
+    /**
+     * @return The adapted password type.
+     */
+    public IPasswordType getPasswordType()
+    {
+        return passwordType;
+    }
+
+}
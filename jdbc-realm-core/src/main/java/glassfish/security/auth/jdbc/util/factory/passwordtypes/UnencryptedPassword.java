@@ -2,6 +2,7 @@ package glassfish.security.auth.jdbc.util.factory.passwordtypes;
 
 import glassfish.security.auth.jdbc.util.factory.exceptions.PasswordTypeException;
 import java.nio.charset.Charset;
+import java.security.MessageDigest;
 import javax.xml.bind.DatatypeConverter;
 
 /**
@@ -12,7 +13,7 @@ import javax.xml.bind.DatatypeConverter;
  * @see MessageDigestPassword
  * @see BcryptPassword
  */
-public class UnencryptedPassword implements IPasswordType
+public class UnencryptedPassword implements ISaltedPasswordType
 {
 
     /**
@@ -74,10 +75,16 @@ public class UnencryptedPassword implements IPasswordType
 
     @Override
     public String encryptPassword( final String password )
+    {
+        return encryptPassword( password, null );
+    }
+
+    @Override
+    public String encryptPassword( final String password, final String userSalt )
     {
         byte[] hashedPasswd = null;
 
-        hashedPasswd = password.concat( salt ).getBytes( charset );
+        hashedPasswd = password.concat( userSalt != null ? userSalt : "" ).concat( salt ).getBytes( charset );
 
         if ( BASE64.equalsIgnoreCase( encoding ) ) {
             return base64Encode( hashedPasswd );
@@ -91,7 +98,17 @@ public class UnencryptedPassword implements IPasswordType
     @Override
     public boolean checkPassword( final String plainPassword, final String hashedPassword )
     {
-        return hashedPassword.equals( encryptPassword( plainPassword ) );
+        return checkPassword( plainPassword, hashedPassword, null );
+    }
+
+    @Override
+    public boolean checkPassword( final String plainPassword, final String hashedPassword, final String userSalt )
+    {
+        if ( hashedPassword == null ) {
+            return false;
+        }
+        // MessageDigest.isEqual doesn't exit at the first different byte (constant-time comparison)
+        return MessageDigest.isEqual( hashedPassword.getBytes( charset ), encryptPassword( plainPassword, userSalt ).getBytes( charset ) );
     }
 
     /**
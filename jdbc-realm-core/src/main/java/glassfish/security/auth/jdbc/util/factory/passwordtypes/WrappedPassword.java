@@ -0,0 +1,91 @@
+package glassfish.security.auth.jdbc.util.factory.passwordtypes;
+
+import glassfish.security.auth.jdbc.util.factory.PasswordTypeFactory;
+
+/**
+ * WrappedPassword class allows to encrypt a plaintext password with a legacy (inner) password type, then to encrypt
+ * the legacy hash with a stronger (outer) password type, for example <code>Bcrypt(SHA-1)</code>.
+ * <p>
+ * A stored legacy hash is migrated without its plaintext password by {@link #wrap(java.lang.String)}: the per-user
+ * salt only belongs to the inner password type, so the wrapped hash is checked with the same per-user salt as before.
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ * @see PasswordTypeFactory
+ */
+public class WrappedPassword implements ISaltedPasswordType
+{
+
+    // The stronger password type encrypting the legacy hashes
+    private final IPasswordType outer;
+    // The legacy password type
+    private final ISaltedPasswordType inner;
+
+    /**
+     * @param outer The password type encrypting the legacy hashes.
+     * @param inner The legacy password type.
+     */
+    public WrappedPassword( final IPasswordType outer, final IPasswordType inner )
+    {
+        if ( outer == null || inner == null ) {
+            throw new IllegalArgumentException( "outer and inner arguments cannot be null" );
+        }
+        this.outer = outer;
+        this.inner = SaltedPasswordAdapter.of( inner );
+    }
+
+    /**
+     * Encrypt a previously encrypted legacy password with the outer password type.
+     * <p>
+     * @param legacyPassword A password encrypted by the inner password type.
+     * @return The wrapped password.
+     */
+    public String wrap( final String legacyPassword )
+    {
+        return outer.encryptPassword( legacyPassword );
+    }
+
+    @Override
+    public String encryptPassword( final String password )
+    {
+        return encryptPassword( password, null );
+    }
+
+    @Override
+    public String encryptPassword( final String password, final String userSalt )
+    {
+        return wrap( inner.encryptPassword( password, userSalt ) );
+    }
+
+    @Override
+    public boolean checkPassword( final String plainPassword, final String hashedPassword )
+    {
+        return checkPassword( plainPassword, hashedPassword, null );
+    }
+
+    @Override
+    public boolean checkPassword( final String plainPassword, final String hashedPassword, final String userSalt )
+    {
+        if ( hashedPassword == null ) {
+            return false;
+        }
+        return outer.checkPassword( inner.encryptPassword( plainPassword, userSalt ), hashedPassword );
+    }
+
+    /**
+     * @return The password type encrypting the legacy hashes.
+     */
+    public IPasswordType getOuter()
+    {
+        return outer;
+    }
+
+    /**
+     * @return The legacy password type.
+     */
+    public ISaltedPasswordType getInner()
+    {
+        return inner;
+    }
+
+}
@@ -0,0 +1,75 @@
+package glassfish.security.auth.jdbc.util.i18n;
+
+import java.text.MessageFormat;
+import java.util.Locale;
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * StringManager class formats the localized messages of a resource bundle, the way the GlassFish
+ * <code>StringManagerBase</code> does, so the authentication core runs without GlassFish.
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ */
+public final class StringManager
+{
+
+    // The string managers already created, by resource bundle name
+    private final static ConcurrentMap<String, StringManager> MANAGERS = new ConcurrentHashMap<>();
+
+    // The resource bundle, null if it doesn't exist
+    private final ResourceBundle bundle;
+
+    private StringManager( final ResourceBundle bundle )
+    {
+        this.bundle = bundle;
+    }
+
+    /**
+     * Return the string manager of a resource bundle.
+     * <p>
+     * @param bundleName  A resource bundle name.
+     * @param classLoader The class loader of the resource bundle.
+     * @return The string manager of the resource bundle.
+     */
+    public static StringManager getStringManager( final String bundleName, final ClassLoader classLoader )
+    {
+        StringManager manager = MANAGERS.get( bundleName );
+        if ( manager == null ) {
+            ResourceBundle bundle;
+            try {
+                bundle = ResourceBundle.getBundle( bundleName, Locale.getDefault(), classLoader );
+            } catch ( MissingResourceException ex ) {
+                // the keys are returned
+                bundle = null;
+            }
+            final StringManager previous = MANAGERS.putIfAbsent( bundleName, manager = new StringManager( bundle ) );
+            if ( previous != null ) {
+                manager = previous;
+            }
+        }
+        return manager;
+    }
+
+    /**
+     * Returns a localized string.
+     * <p>
+     * @param key      A name of a resource bundle to fetch.
+     * @param messVals A set of arguments to provide to the resource bundle.
+     * @return A formatted localized string, the key if the resource bundle doesn't contain it.
+     */
+    public String getString( final String key, final Object... messVals )
+    {
+        final String pattern;
+        try {
+            pattern = bundle != null ? bundle.getString( key ) : key;
+        } catch ( MissingResourceException ex ) {
+            return key;
+        }
+        return MessageFormat.format( pattern, messVals );
+    }
+
+}
@@ -0,0 +1,53 @@
+package glassfish.security.auth.jdbc.util.invalidation;
+
+import java.io.IOException;
+
+/**
+ * IInvalidationBus interface describes a bus broadcasting the user-level cache evictions between the realm instances
+ * of a cluster, so the caches stay coherent with long TTLs.
+ * <p>
+ * An implementation is created with the realm properties (a public constructor with a {@link java.util.Properties}
+ * argument) and never delivers its own evictions to its listener.
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ */
+public interface IInvalidationBus
+{
+
+    /**
+     * A receiver of the evictions published by the other instances.
+     */
+    interface Listener
+    {
+
+        /**
+         * @param username A normalized user name evicted by an other instance,
+         *                 <code>null</code> if all the users are evicted.
+         */
+        void invalidated( String username );
+
+    }
+
+    /**
+     * Start receiving the evictions of the other instances.
+     * <p>
+     * @param listener The receiver of the evictions.
+     * @throws IOException If the bus cannot be started.
+     */
+    void start( Listener listener )
+            throws IOException;
+
+    /**
+     * Broadcast an eviction to the other instances (best effort, an eviction may be lost).
+     * <p>
+     * @param username A normalized user name, <code>null</code> to evict all the users.
+     */
+    void publish( String username );
+
+    /**
+     * Stop the bus.
+     */
+    void close();
+
+}
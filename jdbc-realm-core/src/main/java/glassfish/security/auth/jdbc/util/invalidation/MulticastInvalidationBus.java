@@ -0,0 +1,221 @@
+package glassfish.security.auth.jdbc.util.invalidation;
+
+import glassfish.security.auth.jdbc.util.dao.SecurityStorage;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.SecureRandom;
+import java.util.Properties;
+
+/**
+ * MulticastInvalidationBus class broadcasts the cache evictions with UDP multicast datagrams,
+ * without any broker: every instance joins the same multicast group and port.
+ * <p>
+ * Datagram format: magic number {@value #MAGIC} (int), version (byte), type (byte, 1 for a user, 2 for all the users),
+ * sender node id (long), user name length (short) and UTF-8 bytes. The datagrams of the instance itself are ignored
+ * thanks to its random node id. The datagrams are best effort: a lost eviction is caught up by the cache TTL.
+ * <p>
+ * <b>Properties:</b>
+ * <ul>
+ * <li> <code>invalidation-multicast-group</code>: multicast group address (mandatory, for example <code>239.255.27.1</code>).
+ * <li> <code>invalidation-multicast-port</code>: multicast port (by default {@value #DEFAULT_PORT}).
+ * <li> <code>invalidation-multicast-ttl</code>: time to live of the datagrams, the number of routers crossed
+ * (by default {@value #DEFAULT_TIME_TO_LIVE}, the local network).
+ * </ul>
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ */
+public class MulticastInvalidationBus
+        implements IInvalidationBus
+{
+
+    /**
+     * The datagram magic number (value: {@value }).
+     */
+    public final static int MAGIC = 0x4A524949;
+
+    /**
+     * The datagram format version (value: {@value }).
+     */
+    public final static byte VERSION = 1;
+
+    /**
+     * The default multicast port (value: {@value }).
+     */
+    public final static int DEFAULT_PORT = 45588;
+
+    /**
+     * The default time to live of the datagrams (value: {@value }).
+     */
+    public final static int DEFAULT_TIME_TO_LIVE = 1;
+
+    private final static Charset UTF_8 = Charset.forName( "UTF-8" );
+    private final static byte USER = 1;
+    private final static byte ALL = 2;
+    private final static int HEADER_SIZE = 4 + 1 + 1 + 8 + 2;
+    private final static int MAX_DATAGRAM_SIZE = 1024;
+
+    private final InetAddress group;
+    private final int port;
+    private final int timeToLive;
+    private final long nodeId = new SecureRandom().nextLong();
+    private volatile MulticastSocket socket;
+    private Thread receiver;
+
+    /**
+     * @param properties The realm properties.
+     * @throws IllegalArgumentException If the invalidation-multicast-group property isn't a multicast address
+     *                                  or if the port or time to live property isn't valid.
+     * @throws IOException              If the group address cannot be resolved.
+     */
+    public MulticastInvalidationBus( final Properties properties )
+            throws IOException
+    {
+        final String groupAddress = properties.getProperty( SecurityStorage.PROPERTY.INVALIDATION_MULTICAST_GROUP.toString() );
+        if ( groupAddress == null || groupAddress.trim().isEmpty() ) {
+            throw new IllegalArgumentException( "Missing multicast group" );
+        }
+        this.group = InetAddress.getByName( groupAddress.trim() );
+        if ( !group.isMulticastAddress() ) {
+            throw new IllegalArgumentException( groupAddress + " isn't a multicast address" );
+        }
+        this.port = intProperty( properties, SecurityStorage.PROPERTY.INVALIDATION_MULTICAST_PORT, DEFAULT_PORT, 1, 65535 );
+        this.timeToLive = intProperty( properties, SecurityStorage.PROPERTY.INVALIDATION_MULTICAST_TTL, DEFAULT_TIME_TO_LIVE, 0, 255 );
+    }
+
+    @Override
+    public synchronized void start( final Listener listener )
+            throws IOException
+    {
+        if ( socket != null ) {
+            return;
+        }
+        final MulticastSocket multicastSocket = new MulticastSocket( port );
+        try {
+            multicastSocket.setTimeToLive( timeToLive );
+            // the instances of the same host receive the datagrams too
+            multicastSocket.setLoopbackMode( false );
+            multicastSocket.joinGroup( group );
+        } catch ( IOException ex ) {
+            multicastSocket.close();
+            throw ex;
+        }
+        socket = multicastSocket;
+
+        receiver = new Thread( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                receive( multicastSocket, listener );
+            }
+        }, MulticastInvalidationBus.class.getSimpleName() + "-" + group.getHostAddress() + ":" + port );
+        receiver.setDaemon( true );
+        receiver.start();
+    }
+
+    @Override
+    public void publish( final String username )
+    {
+        final MulticastSocket multicastSocket = socket;
+        if ( multicastSocket == null ) {
+            return;
+        }
+        final byte[] name = username != null ? username.getBytes( UTF_8 ) : new byte[ 0 ];
+        if ( HEADER_SIZE + name.length > MAX_DATAGRAM_SIZE ) {
+            return;
+        }
+        final ByteBuffer datagram = ByteBuffer.allocate( HEADER_SIZE + name.length );
+        datagram.putInt( MAGIC ).put( VERSION ).put( username != null ? USER : ALL ).putLong( nodeId )
+                .putShort( ( short ) name.length ).put( name );
+        try {
+            multicastSocket.send( new DatagramPacket( datagram.array(), datagram.position(), group, port ) );
+        } catch ( IOException ex ) {
+            // best effort, the cache TTL catches up
+        }
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        final MulticastSocket multicastSocket = socket;
+        socket = null;
+        if ( multicastSocket != null ) {
+            try {
+                multicastSocket.leaveGroup( group );
+            } catch ( IOException ex ) {
+                // closed below
+            }
+            multicastSocket.close();
+        }
+    }
+
+    /**
+     * Receive the datagrams until the socket is closed.
+     * <p>
+     * @param multicastSocket The joined socket.
+     * @param listener        The receiver of the evictions.
+     */
+    private void receive( final MulticastSocket multicastSocket, final Listener listener )
+    {
+        final byte[] buffer = new byte[ MAX_DATAGRAM_SIZE ];
+        final DatagramPacket packet = new DatagramPacket( buffer, buffer.length );
+        while ( !multicastSocket.isClosed() ) {
+            try {
+                packet.setLength( buffer.length );
+                multicastSocket.receive( packet );
+            } catch ( IOException ex ) {
+                if ( multicastSocket.isClosed() ) {
+                    return;
+                }
+                try {
+                    // don't spin on a persistent network error
+                    Thread.sleep( 100 );
+                } catch ( InterruptedException iex ) {
+                    return;
+                }
+                continue;
+            }
+
+            final ByteBuffer datagram = ByteBuffer.wrap( buffer, 0, packet.getLength() );
+            if ( datagram.remaining() < HEADER_SIZE || datagram.getInt() != MAGIC || datagram.get() != VERSION ) {
+                continue;
+            }
+            final byte type = datagram.get();
+            if ( datagram.getLong() == nodeId ) {
+                continue;
+            }
+            final int length = datagram.getShort();
+            if ( type == ALL ) {
+                listener.invalidated( null );
+            } else if ( type == USER && length >= 0 && length <= datagram.remaining() ) {
+                final byte[] name = new byte[ length ];
+                datagram.get( name );
+                listener.invalidated( new String( name, UTF_8 ) );
+            }
+        }
+    }
+
+    private static int intProperty( final Properties properties, final SecurityStorage.PROPERTY property,
+            final int defaultValue, final int minValue, final int maxValue )
+    {
+        final String value = properties.getProperty( property.toString() );
+        if ( value == null || value.trim().isEmpty() ) {
+            return defaultValue;
+        }
+        try {
+            final int intValue = Integer.parseInt( value.trim() );
+            if ( intValue >= minValue && intValue <= maxValue ) {
+                return intValue;
+            }
+        } catch ( NumberFormatException ex ) {
+            // thrown below
+        }
+        throw new IllegalArgumentException( property + " value " + value + " is invalid" );
+    }
+
+}
@@ -0,0 +1,366 @@
+package glassfish.security.auth.jdbc.util.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SecurityMetrics class counts the cache hits and misses, the stale users served while the database is unreachable
+ * (degraded mode), their staleness, the users restored from a snapshot served, the background refreshes,
+ * the evictions exchanged with the other instances, the malformed logins rejected, and the storage lookups timed
+ * or coalesced by the storage decorators and the connections borrowed.
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ */
+public class SecurityMetrics
+{
+
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong restoredHits = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong refreshFailures = new AtomicLong();
+    private final AtomicLong invalidationsSent = new AtomicLong();
+    private final AtomicLong invalidationsReceived = new AtomicLong();
+    private final AtomicLong rejectedUsernames = new AtomicLong();
+    private final AtomicLong rejectedPasswords = new AtomicLong();
+    private final AtomicLong maxStaleness = new AtomicLong();
+    private final AtomicLong credentialsLookups = new AtomicLong();
+    // The total time of the credentials lookups in nanoseconds
+    private final AtomicLong credentialsLookupTime = new AtomicLong();
+    private final AtomicLong groupsLookups = new AtomicLong();
+    // The total time of the groups lookups in nanoseconds
+    private final AtomicLong groupsLookupTime = new AtomicLong();
+    // The lookups which waited for the same lookup of an other thread
+    private final AtomicLong coalescedLookups = new AtomicLong();
+    // The connections borrowed from the datasources
+    private final AtomicLong connectionCheckouts = new AtomicLong();
+    // The staleness of the last stale user served in milliseconds
+    private volatile long lastStaleness;
+    // The time the degraded mode started in milliseconds, 0 if the database is reachable
+    private final AtomicLong degradedSince = new AtomicLong();
+
+    /**
+     * A user was served from the cache while fresh.
+     */
+    public void recordCacheHit()
+    {
+        cacheHits.incrementAndGet();
+    }
+
+    /**
+     * A user was loaded from the database.
+     */
+    public void recordCacheMiss()
+    {
+        cacheMisses.incrementAndGet();
+    }
+
+    /**
+     * A stale user was served while the database is unreachable.
+     * <p>
+     * @param staleness The age of the served user in milliseconds.
+     */
+    public void recordStaleHit( final long staleness )
+    {
+        staleHits.incrementAndGet();
+        lastStaleness = staleness;
+        long max = maxStaleness.get();
+        while ( staleness > max && !maxStaleness.compareAndSet( max, staleness ) ) {
+            max = maxStaleness.get();
+        }
+    }
+
+    /**
+     * A user restored from a snapshot was served before being reloaded from the database.
+     */
+    public void recordRestoredHit()
+    {
+        restoredHits.incrementAndGet();
+    }
+
+    /**
+     * A user was refreshed in the background.
+     */
+    public void recordRefresh()
+    {
+        refreshes.incrementAndGet();
+    }
+
+    /**
+     * A background refresh failed.
+     */
+    public void recordRefreshFailure()
+    {
+        refreshFailures.incrementAndGet();
+    }
+
+    /**
+     * An eviction was broadcast to the other instances.
+     */
+    public void recordInvalidationSent()
+    {
+        invalidationsSent.incrementAndGet();
+    }
+
+    /**
+     * An eviction was received from an other instance.
+     */
+    public void recordInvalidationReceived()
+    {
+        invalidationsReceived.incrementAndGet();
+    }
+
+    /**
+     * A login was rejected before any query because of its user name.
+     */
+    public void recordRejectedUsername()
+    {
+        rejectedUsernames.incrementAndGet();
+    }
+
+    /**
+     * A login was rejected before any query because of its password.
+     */
+    public void recordRejectedPassword()
+    {
+        rejectedPasswords.incrementAndGet();
+    }
+
+    /**
+     * The database became unreachable.
+     * <p>
+     * @param now The current time in milliseconds.
+     * @return <code>true</code> if the degraded mode starts,
+     *         <code>false</code> if it was already started.
+     */
+    public boolean enterDegradedMode( final long now )
+    {
+        return degradedSince.compareAndSet( 0, now );
+    }
+
+    /**
+     * The database is reachable again.
+     * <p>
+     * @return The time the degraded mode started in milliseconds, 0 if it wasn't started.
+     */
+    public long exitDegradedMode()
+    {
+        return degradedSince.getAndSet( 0 );
+    }
+
+    /**
+     * @return <code>true</code> if the database is unreachable and the stale users are served,
+     *         <code>false</code> otherwise.
+     */
+    public boolean isDegraded()
+    {
+        return degradedSince.get() != 0;
+    }
+
+    /**
+     * @return The time the degraded mode started in milliseconds, 0 if the database is reachable.
+     */
+    public long getDegradedSince()
+    {
+        return degradedSince.get();
+    }
+
+    /**
+     * @return The number of users served from the cache while fresh.
+     */
+    public long getCacheHits()
+    {
+        return cacheHits.get();
+    }
+
+    /**
+     * @return The number of users loaded from the database.
+     */
+    public long getCacheMisses()
+    {
+        return cacheMisses.get();
+    }
+
+    /**
+     * @return The number of stale users served while the database was unreachable.
+     */
+    public long getStaleHits()
+    {
+        return staleHits.get();
+    }
+
+    /**
+     * @return The number of users restored from a snapshot served before being reloaded from the database.
+     */
+    public long getRestoredHits()
+    {
+        return restoredHits.get();
+    }
+
+    /**
+     * @return The staleness of the last stale user served in milliseconds.
+     */
+    public long getLastStaleness()
+    {
+        return lastStaleness;
+    }
+
+    /**
+     * @return The maximum staleness of the stale users served in milliseconds.
+     */
+    public long getMaxStaleness()
+    {
+        return maxStaleness.get();
+    }
+
+    /**
+     * @return The number of users refreshed in the background.
+     */
+    public long getRefreshes()
+    {
+        return refreshes.get();
+    }
+
+    /**
+     * @return The number of failed background refreshes.
+     */
+    public long getRefreshFailures()
+    {
+        return refreshFailures.get();
+    }
+
+    /**
+     * @return The number of evictions broadcast to the other instances.
+     */
+    public long getInvalidationsSent()
+    {
+        return invalidationsSent.get();
+    }
+
+    /**
+     * @return The number of evictions received from the other instances.
+     */
+    public long getInvalidationsReceived()
+    {
+        return invalidationsReceived.get();
+    }
+
+    /**
+     * @return The number of logins rejected because of a malformed user name.
+     */
+    public long getRejectedUsernames()
+    {
+        return rejectedUsernames.get();
+    }
+
+    /**
+     * @return The number of logins rejected because of a malformed password.
+     */
+    public long getRejectedPasswords()
+    {
+        return rejectedPasswords.get();
+    }
+
+    /**
+     * A user credentials were looked up.
+     * <p>
+     * @param time The lookup time in nanoseconds.
+     */
+    public void recordCredentialsLookup( final long time )
+    {
+        credentialsLookups.incrementAndGet();
+        credentialsLookupTime.addAndGet( time );
+    }
+
+    /**
+     * A user groups were looked up.
+     * <p>
+     * @param time The lookup time in nanoseconds.
+     */
+    public void recordGroupsLookup( final long time )
+    {
+        groupsLookups.incrementAndGet();
+        groupsLookupTime.addAndGet( time );
+    }
+
+    /**
+     * A lookup was served by the same lookup of an other thread.
+     */
+    public void recordCoalescedLookup()
+    {
+        coalescedLookups.incrementAndGet();
+    }
+
+    /**
+     * A connection was borrowed from a datasource.
+     */
+    public void recordConnectionCheckout()
+    {
+        connectionCheckouts.incrementAndGet();
+    }
+
+    /**
+     * @return The number of credentials lookups.
+     */
+    public long getCredentialsLookups()
+    {
+        return credentialsLookups.get();
+    }
+
+    /**
+     * @return The total time of the credentials lookups in nanoseconds.
+     */
+    public long getCredentialsLookupTime()
+    {
+        return credentialsLookupTime.get();
+    }
+
+    /**
+     * @return The number of groups lookups.
+     */
+    public long getGroupsLookups()
+    {
+        return groupsLookups.get();
+    }
+
+    /**
+     * @return The total time of the groups lookups in nanoseconds.
+     */
+    public long getGroupsLookupTime()
+    {
+        return groupsLookupTime.get();
+    }
+
+    /**
+     * @return The number of lookups served by the same lookup of an other thread.
+     */
+    public long getCoalescedLookups()
+    {
+        return coalescedLookups.get();
+    }
+
+    /**
+     * @return The number of connections borrowed from the datasources.
+     */
+    public long getConnectionCheckouts()
+    {
+        return connectionCheckouts.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SecurityMetrics{cacheHits=" + getCacheHits() + ", cacheMisses=" + getCacheMisses()
+                + ", staleHits=" + getStaleHits() + ", restoredHits=" + getRestoredHits() + ", lastStaleness=" + getLastStaleness() + "ms"
+                + ", maxStaleness=" + getMaxStaleness() + "ms, refreshes=" + getRefreshes()
+                + ", refreshFailures=" + getRefreshFailures() + ", invalidationsSent=" + getInvalidationsSent()
+                + ", invalidationsReceived=" + getInvalidationsReceived() + ", rejectedUsernames=" + getRejectedUsernames()
+                + ", rejectedPasswords=" + getRejectedPasswords() + ", credentialsLookups=" + getCredentialsLookups()
+                + ", credentialsLookupTime=" + getCredentialsLookupTime() + "ns, groupsLookups=" + getGroupsLookups()
+                + ", groupsLookupTime=" + getGroupsLookupTime() + "ns, coalescedLookups=" + getCoalescedLookups()
+                + ", connectionCheckouts=" + getConnectionCheckouts()
+                + ", degradedSince=" + getDegradedSince() + "}";
+    }
+
+}
@@ -0,0 +1,117 @@
+package glassfish.security.auth.jdbc.util.validation;
+
+import glassfish.security.auth.jdbc.util.metrics.SecurityMetrics;
+import java.util.regex.Pattern;
+
+/**
+ * CredentialsValidator class rejects the malformed credentials of a login before any database query
+ * or password hashing: a user name too long or containing a character not allowed, a password too long.
+ * <p>
+ * The allowed characters are a regular expression matching a single character (for example
+ * <code>[\p{L}\p{N}._@-]</code>). The expression is evaluated once per ASCII character at the creation,
+ * so an ASCII user name is checked with a table lookup per character; the other characters are matched
+ * against the expression.
+ * <p>
+ * @author RienderieN
+ * @version 1.0.0
+ */
+public class CredentialsValidator
+{
+
+    /**
+     * The default maximum length of a user name (value: {@value }).
+     */
+    public final static int DEFAULT_USERNAME_MAX_LENGTH = 255;
+
+    /**
+     * The default maximum length of a password (value: {@value }).
+     */
+    public final static int DEFAULT_PASSWORD_MAX_LENGTH = 1024;
+
+    private final int usernameMaxLength;
+    private final int passwordMaxLength;
+    // The allowed characters of a user name, null if all the characters are allowed
+    private final Pattern allowedCharacter;
+    // The allowed ASCII characters of a user name
+    private final boolean[] allowedAscii = new boolean[ 128 ];
+    private final SecurityMetrics metrics;
+
+    /**
+     * @param usernameMaxLength The maximum length of a user name.
+     * @param allowedCharacters A regular expression matching an allowed character of a user name.
+     *                          May be <code>null</code> (all the characters are allowed).
+     * @param passwordMaxLength The maximum length of a password.
+     * @param metrics           The metrics counting the rejections.
+     * @throws IllegalArgumentException If a length isn't positive or if the allowedCharacters argument
+     *                                  isn't a valid regular expression.
+     */
+    public CredentialsValidator( final int usernameMaxLength, final String allowedCharacters, final int passwordMaxLength,
+            final SecurityMetrics metrics )
+    {
+        if ( usernameMaxLength < 1 || passwordMaxLength < 1 ) {
+            throw new IllegalArgumentException( "usernameMaxLength and passwordMaxLength arguments must be positive" );
+        }
+        this.usernameMaxLength = usernameMaxLength;
+        this.passwordMaxLength = passwordMaxLength;
+        this.allowedCharacter = allowedCharacters != null && !allowedCharacters.trim().isEmpty()
+                ? Pattern.compile( allowedCharacters.trim() ) : null;
+        for ( char c = 0; c < allowedAscii.length; c++ ) {
+            allowedAscii[c] = allowedCharacter == null || allowedCharacter.matcher( String.valueOf( c ) ).matches();
+        }
+        this.metrics = metrics;
+    }
+
+    /**
+     * Check the credentials of a login, a rejection is counted in the metrics.
+     * <p>
+     * @param username A user name.
+     *                 May be <code>null</code>.
+     * @param password A plaintext password.
+     *                 May be <code>null</code>.
+     * @return <code>true</code> if the credentials may be checked against the database.
+     */
+    public boolean validate( final String username, final String password )
+    {
+        if ( !isValidUsername( username ) ) {
+            metrics.recordRejectedUsername();
+            return false;
+        }
+        if ( !isValidPassword( password ) ) {
+            metrics.recordRejectedPassword();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param username A user name.
+     *                 May be <code>null</code>.
+     * @return <code>true</code> if the user name isn't empty, isn't too long and contains allowed characters only.
+     */
+    public boolean isValidUsername( final String username )
+    {
+        if ( username == null || username.isEmpty() || username.length() > usernameMaxLength ) {
+            return false;
+        }
+        for ( int i = 0; i < username.length(); ) {
+            final int c = username.codePointAt( i );
+            if ( c < allowedAscii.length ? !allowedAscii[c]
+                    : allowedCharacter != null && !allowedCharacter.matcher( new String( Character.toChars( c ) ) ).matches() ) {
+                return false;
+            }
+            i += Character.charCount( c );
+        }
+        return true;
+    }
+
+    /**
+     * @param password A plaintext password.
+     *                 May be <code>null</code>.
+     * @return <code>true</code> if the password isn't null and isn't too long.
+     */
+    public boolean isValidPassword( final String password )
+    {
+        return password != null && password.length() <= passwordMaxLength;
+    }
+
+}
@@ -0,0 +1,96 @@
+package glassfish.security.auth.jdbc.benchmark;
+
+import glassfish.security.auth.jdbc.util.cache.CachedUser;
+import glassfish.security.auth.jdbc.util.cache.HeapCredentialCache;
+import glassfish.security.auth.jdbc.util.cache.ICredentialCache;
+import glassfish.security.auth.jdbc.util.cache.StripedCredentialCache;
+import glassfish.security.auth.jdbc.util.dao.GroupNameTable;
+import glassfish.security.auth.jdbc.util.dao.UserCredentials;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Throughput of the realm credential cache lookups with all the cores reading (and 1% of writes for the mixed case),
+ * the StripedCredentialCache against the synchronized LinkedHashMap baseline (HeapCredentialCache).
+ * The striped cache throughput should grow with the number of threads, the synchronized one shouldn't.
+ *
+ * Run with: java -cp target/test-classes:<test classpath> org.openjdk.jmh.Main CredentialCacheBenchmark -t 1,2,4,8
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 10, time = 1 )
+@Threads( Threads.MAX )
+@Fork( 1 )
+public class CredentialCacheBenchmark
+{
+
+    public static final int USERS = 10000;
+
+    @Param( { "synchronized", "striped" } )
+    public String cacheType;
+
+    private ICredentialCache cache;
+    private String[] usernames;
+    private CachedUser user;
+
+    /*
+     * The user read by each thread, the threads walk the user names from different starts.
+     */
+    @State( Scope.Thread )
+    public static class Cursor
+    {
+
+        private int index = ( int ) ( Thread.currentThread().getId() * 7919 ) % USERS;
+
+        int next()
+        {
+            index = ( index + 1 ) % USERS;
+            return index;
+        }
+    }
+
+    @Setup
+    public void setUp()
+    {
+        cache = "striped".equals( cacheType ) ? new StripedCredentialCache( USERS, TimeUnit.HOURS.toMillis( 1 ) )
+                : new HeapCredentialCache( USERS );
+        final GroupNameTable table = new GroupNameTable();
+        user = new CachedUser( new UserCredentials( "5f4dcc3b5aa765d61d8327deb882cf99", "salt" ),
+                table.encode( "GOOD_GUY", "HERO" ), System.currentTimeMillis() );
+        usernames = new String[ USERS ];
+        for ( int i = 0; i < USERS; i++ ) {
+            usernames[i] = "user" + i;
+            cache.put( usernames[i], user );
+        }
+    }
+
+    @Benchmark
+    public CachedUser read( final Cursor cursor )
+    {
+        return cache.get( usernames[cursor.next()] );
+    }
+
+    @Benchmark
+    public CachedUser readMostly( final Cursor cursor )
+    {
+        final int index = cursor.next();
+        if ( index % 100 == 0 ) {
+            cache.put( usernames[index], user );
+            return user;
+        }
+        return cache.get( usernames[index] );
+    }
+}
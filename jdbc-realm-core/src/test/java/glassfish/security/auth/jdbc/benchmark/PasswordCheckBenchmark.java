@@ -0,0 +1,100 @@
+package glassfish.security.auth.jdbc.benchmark;
+
+import glassfish.security.auth.jdbc.core.JDBCAuthenticator;
+import glassfish.security.auth.jdbc.util.dao.SecurityStorage;
+import glassfish.security.auth.jdbc.util.dao.UserCredentials;
+import glassfish.security.auth.jdbc.util.dao.exceptions.SecurityStorageException;
+import glassfish.security.auth.jdbc.util.factory.PasswordTypeFactory;
+import glassfish.security.auth.jdbc.util.factory.exceptions.PasswordTypeException;
+import glassfish.security.auth.jdbc.util.factory.passwordtypes.IPasswordType;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Timing distribution of JDBCAuthenticator.authenticate for an existing user with a bad password,
+ * an existing user with the right password and an unknown user (dummy password path).
+ * The three distributions should overlap, the unknown user mustn't be faster.
+ *
+ * Run with: java -cp target/test-classes:<test classpath> org.openjdk.jmh.Main PasswordCheckBenchmark
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.SampleTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 10, time = 1 )
+@Fork( 1 )
+public class PasswordCheckBenchmark
+{
+
+    public static final String USERNAME = "SuperMario";
+    public static final String PASSWORD = "SuperMarioPass";
+
+    @Param( { "SHA-256", "bcrypt" } )
+    public String digestAlgorithm;
+
+    private JDBCAuthenticator authenticator;
+
+    @Setup
+    public void setUp()
+            throws PasswordTypeException, SecurityStorageException
+    {
+        Properties props = new Properties();
+        props.setProperty( PasswordTypeFactory.PROPERTY.DIGEST_ALGORITHM.toString(), digestAlgorithm );
+        props.setProperty( SecurityStorage.PROPERTY.DATASOURCE_JNDI.toString(), "jdbc/benchmark" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_TABLE.toString(), "USERS" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_NAME_COLUMN.toString(), "USERNAME" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_PASSWORD_COLUMN.toString(), "PASSWORD" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_TABLE.toString(), "GROUPS" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_NAME_COLUMN.toString(), "NAME" );
+
+        final IPasswordType passwordType = PasswordTypeFactory.getInstance().createPasswordType( props );
+        final UserCredentials credentials = new UserCredentials( passwordType.encryptPassword( PASSWORD ), null );
+        final String[] groups = { "GOOD_GUY" };
+
+        // in-memory storage, the benchmark only measures the password check
+        final SecurityStorage storage = new SecurityStorage( props )
+        {
+            @Override
+            public UserCredentials findCredentials( final String username )
+            {
+                return USERNAME.equals( username ) ? credentials : null;
+            }
+
+            @Override
+            public String[] findGroupNames( final String username )
+            {
+                return groups;
+            }
+        };
+        authenticator = new JDBCAuthenticator( null, passwordType, storage, null );
+    }
+
+    @Benchmark
+    public String[] existingUserRightPassword()
+    {
+        return authenticator.authenticate( USERNAME, PASSWORD );
+    }
+
+    @Benchmark
+    public String[] existingUserWrongPassword()
+    {
+        return authenticator.authenticate( USERNAME, "BowserPass" );
+    }
+
+    @Benchmark
+    public String[] unknownUser()
+    {
+        return authenticator.authenticate( "Nobody", PASSWORD );
+    }
+}
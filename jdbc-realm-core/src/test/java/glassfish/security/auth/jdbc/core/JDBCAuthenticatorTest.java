@@ -0,0 +1,257 @@
+package glassfish.security.auth.jdbc.core;
+
+import glassfish.security.auth.jdbc.core.exceptions.AuthenticatorException;
+import glassfish.security.auth.jdbc.util.audit.AuditEvent;
+import glassfish.security.auth.jdbc.util.dao.GroupNameTable;
+import glassfish.security.auth.jdbc.util.dao.ISecurityStorage;
+import glassfish.security.auth.jdbc.util.dao.SecurityStorage;
+import glassfish.security.auth.jdbc.util.dao.UserCredentials;
+import glassfish.security.auth.jdbc.util.dao.exceptions.SecurityStorageException;
+import glassfish.security.auth.jdbc.util.factory.PasswordTypeFactory;
+import glassfish.security.auth.jdbc.util.factory.passwordtypes.ISaltedPasswordType;
+import glassfish.security.auth.jdbc.util.metrics.SecurityMetrics;
+import glassfish.security.auth.jdbc.util.validation.CredentialsValidator;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author RienderieN
+ */
+public class JDBCAuthenticatorTest
+{
+
+    // A session without resources
+    private static final ISecurityStorage.Session NO_SESSION = new ISecurityStorage.Session()
+    {
+        @Override
+        public void close()
+        {
+        }
+    };
+
+    private ISaltedPasswordType passwordTypeMocked;
+    private SecurityStorage securityStorageMocked;
+
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        passwordTypeMocked = EasyMock.createMock( ISaltedPasswordType.class );
+        securityStorageMocked = EasyMock.createMock( SecurityStorage.class );
+    }
+
+    /*
+     * The realm properties of an unreachable datasource, without custom query.
+     */
+    private static Properties unreachableProperties()
+    {
+        Properties props = new Properties();
+        props.setProperty( PasswordTypeFactory.PROPERTY.DIGEST_ALGORITHM.toString(), "sha-256" );
+        props.setProperty( SecurityStorage.PROPERTY.DATASOURCE_JNDI.toString(), "java:/comp/env/jdbc/unreachableDatasource" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_TABLE.toString(), "USERS" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_NAME_COLUMN.toString(), "USERNAME" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_PASSWORD_COLUMN.toString(), "PASSWORD" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_TABLE.toString(), "GROUPS" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_NAME_COLUMN.toString(), "NAME" );
+        return props;
+    }
+
+    @Test
+    public void should_init_datasource_unreachable_without_custom_queries()
+            throws AuthenticatorException
+    {
+        Properties props = unreachableProperties();
+
+        JDBCAuthenticator authenticator = new JDBCAuthenticator( "jdbcRealm", props );
+
+        Assert.assertNull( "Shouldn't write the generated password query into the realm properties",
+                props.getProperty( SecurityStorage.PROPERTY.USER_PASSWORD_QUERY.toString() ) );
+        Assert.assertNull( "Shouldn't write the generated groups query into the realm properties",
+                props.getProperty( SecurityStorage.PROPERTY.USER_GROUPS_QUERY.toString() ) );
+        Assert.assertNull( "Shouldn't authenticate while the datasource is unreachable",
+                authenticator.authenticate( "SuperMan", "SuperManPasse" ) );
+        authenticator.close();
+    }
+
+    @Test( expected = AuthenticatorException.class )
+    public void should_throw_AuthenticatorException_datasource_unreachable_custom_query()
+            throws AuthenticatorException
+    {
+        Properties props = unreachableProperties();
+        props.setProperty( SecurityStorage.PROPERTY.USER_PASSWORD_QUERY.toString(), "SELECT PASSWORD FROM USERS WHERE USERNAME = ?" );
+
+        new JDBCAuthenticator( "jdbcRealm", props );
+    }
+
+    @Test
+    public void should_close_audit_log()
+            throws AuthenticatorException, IOException
+    {
+        File audit = File.createTempFile( "jdbcrealm", ".audit" );
+        audit.deleteOnExit();
+        Properties props = unreachableProperties();
+        props.setProperty( JDBCAuthenticator.AUDIT_FILE_PARAM, audit.getPath() );
+
+        JDBCAuthenticator authenticator = new JDBCAuthenticator( "jdbcRealm", props );
+        Assert.assertTrue( "Should queue the login outcomes",
+                authenticator.getAuditLog().publish( AuditEvent.OUTCOME.FAILURE, "jdbcRealm", "SuperMan", null, 0 ) );
+        authenticator.close();
+
+        Assert.assertFalse( "Shouldn't queue the login outcomes once closed",
+                authenticator.getAuditLog().publish( AuditEvent.OUTCOME.FAILURE, "jdbcRealm", "SuperMan", null, 0 ) );
+        Assert.assertTrue( "Should append the queued login outcomes", new String( Files.readAllBytes( audit.toPath() ), "UTF-8" ).contains( "SuperMan" ) );
+    }
+
+    @Test
+    public void should_authenticate_user()
+    {
+        final String[] user = { "ME", "mepasse" };
+        final String[] userGroups = { "ME_GROUP", "AN_OTHER_GROUP" };
+
+        EasyMock.expect( securityStorageMocked.openSession() ).andReturn( NO_SESSION );
+        EasyMock.expect( securityStorageMocked.findCredentials( user[0] ) ).andReturn( new UserCredentials( user[1] + "encrypted", "salt" ) );
+        EasyMock.expect( securityStorageMocked.findGroupNames( user[0] ) ).andReturn( userGroups );
+        EasyMock.expect( passwordTypeMocked.checkPassword( user[1], user[1] + "encrypted", "salt" ) ).andReturn( Boolean.TRUE );
+        EasyMock.replay( securityStorageMocked );
+        EasyMock.replay( passwordTypeMocked );
+
+        JDBCAuthenticator authenticator = new JDBCAuthenticator( null, passwordTypeMocked, securityStorageMocked, null );
+        List<String> groupsFound = Arrays.asList( authenticator.authenticate( user[0], user[1] ) );
+        Assert.assertTrue( "Should authenticate the user ME and return the groups to which it belongs", groupsFound.containsAll( Arrays.asList( userGroups ) ) );
+        EasyMock.verify( securityStorageMocked );
+    }
+
+    @Test
+    public void should_reject_bad_password()
+    {
+        final String[] user = { "ME", "mepasse" };
+
+        EasyMock.expect( securityStorageMocked.openSession() ).andReturn( NO_SESSION );
+        EasyMock.expect( securityStorageMocked.findCredentials( user[0] ) ).andReturn( new UserCredentials( user[1] + "encrypted", "salt" ) );
+        EasyMock.expect( passwordTypeMocked.checkPassword( "badpasse", user[1] + "encrypted", "salt" ) ).andReturn( Boolean.FALSE );
+        EasyMock.replay( securityStorageMocked );
+        EasyMock.replay( passwordTypeMocked );
+
+        JDBCAuthenticator authenticator = new JDBCAuthenticator( null, passwordTypeMocked, securityStorageMocked, null );
+        Assert.assertNull( "Shouldn't authenticate a bad password", authenticator.authenticate( user[0], "badpasse" ) );
+        // the groups aren't queried
+        EasyMock.verify( securityStorageMocked );
+        EasyMock.verify( passwordTypeMocked );
+    }
+
+    @Test
+    public void should_check_dummy_password_for_unknown_user()
+    {
+        final String[] user = { "NOBODY", "nobodypasse" };
+
+        EasyMock.expect( securityStorageMocked.openSession() ).andReturn( NO_SESSION );
+        EasyMock.expect( securityStorageMocked.findCredentials( user[0] ) ).andReturn( null );
+        EasyMock.expect( passwordTypeMocked.encryptPassword( EasyMock.anyObject( String.class ) ) ).andReturn( "dummyencrypted" );
+        EasyMock.expect( passwordTypeMocked.checkPassword( user[1], "dummyencrypted" ) ).andReturn( Boolean.FALSE );
+        EasyMock.replay( securityStorageMocked );
+        EasyMock.replay( passwordTypeMocked );
+
+        JDBCAuthenticator authenticator = new JDBCAuthenticator( null, passwordTypeMocked, securityStorageMocked, null );
+        Assert.assertNull( "Shouldn't authenticate an unknown user", authenticator.authenticate( user[0], user[1] ) );
+        EasyMock.verify( passwordTypeMocked );
+    }
+
+    @Test
+    public void should_find_group_set()
+    {
+        final String username = "ME";
+        final String[] groups = { "ME_GROUP", "THEM_GROUP" };
+
+        EasyMock.expect( securityStorageMocked.findGroupSet( username ) ).andReturn( new GroupNameTable().encode( groups ) );
+        EasyMock.replay( securityStorageMocked );
+
+        JDBCAuthenticator authenticator = new JDBCAuthenticator( null, passwordTypeMocked, securityStorageMocked, null );
+        Assert.assertArrayEquals( "Should find ME's groups", groups, authenticator.findGroupSet( username ).toArray() );
+    }
+
+    @Test
+    public void should_reject_malformed_credentials_before_storage()
+    {
+        final SecurityMetrics metrics = new SecurityMetrics();
+        final CredentialsValidator validator = new CredentialsValidator( 16, "[A-Za-z0-9._@-]", 64, metrics );
+
+        EasyMock.replay( securityStorageMocked );
+        EasyMock.replay( passwordTypeMocked );
+
+        JDBCAuthenticator authenticator = new JDBCAuthenticator( null, passwordTypeMocked, securityStorageMocked, validator );
+        Assert.assertNull( "Should reject a too long user name", authenticator.authenticate( "ME_WITH_A_VERY_LONG_NAME", "mepasse" ) );
+        Assert.assertNull( "Should reject a forbidden character", authenticator.authenticate( "ME' OR '1'='1", "mepasse" ) );
+        Assert.assertNull( "Should reject a too long password", authenticator.authenticate( "ME", new String( new char[ 65 ] ) ) );
+        Assert.assertEquals( "Should count the rejected user names", 2, metrics.getRejectedUsernames() );
+        Assert.assertEquals( "Should count the rejected passwords", 1, metrics.getRejectedPasswords() );
+        // neither the database nor the hasher is reached
+        EasyMock.verify( securityStorageMocked );
+        EasyMock.verify( passwordTypeMocked );
+    }
+
+    @Test
+    public void should_warm_up_queries_and_password_checks()
+            throws AuthenticatorException, SecurityStorageException
+    {
+        securityStorageMocked.validateQueries();
+        EasyMock.expectLastCall();
+        EasyMock.expect( passwordTypeMocked.encryptPassword( EasyMock.anyObject( String.class ) ) ).andReturn( "selfcheckencrypted" );
+        EasyMock.expect( passwordTypeMocked.checkPassword( EasyMock.anyObject( String.class ), EasyMock.eq( "selfcheckencrypted" ) ) )
+                .andReturn( Boolean.TRUE ).times( 1 + 10 );
+        // the unknown user check reuses the self-check encrypted password
+        EasyMock.expect( securityStorageMocked.openSession() ).andReturn( NO_SESSION );
+        EasyMock.expect( securityStorageMocked.findCredentials( "NOBODY" ) ).andReturn( null );
+        EasyMock.expect( passwordTypeMocked.checkPassword( "nobodypasse", "selfcheckencrypted" ) ).andReturn( Boolean.FALSE );
+        EasyMock.replay( securityStorageMocked );
+        EasyMock.replay( passwordTypeMocked );
+
+        JDBCAuthenticator authenticator = new JDBCAuthenticator( null, passwordTypeMocked, securityStorageMocked, null );
+        authenticator.warmUp( 10 );
+        Assert.assertNull( "Shouldn't authenticate an unknown user", authenticator.authenticate( "NOBODY", "nobodypasse" ) );
+        EasyMock.verify( securityStorageMocked );
+        EasyMock.verify( passwordTypeMocked );
+    }
+
+    @Test( expected = AuthenticatorException.class )
+    public void should_throw_AuthenticatorException_password_type_self_check()
+            throws AuthenticatorException, SecurityStorageException
+    {
+        securityStorageMocked.validateQueries();
+        EasyMock.expectLastCall();
+        EasyMock.expect( passwordTypeMocked.encryptPassword( EasyMock.anyObject( String.class ) ) ).andReturn( "selfcheckencrypted" );
+        EasyMock.expect( passwordTypeMocked.checkPassword( EasyMock.anyObject( String.class ), EasyMock.eq( "selfcheckencrypted" ) ) )
+                .andReturn( Boolean.FALSE );
+        EasyMock.replay( securityStorageMocked );
+        EasyMock.replay( passwordTypeMocked );
+
+        new JDBCAuthenticator( null, passwordTypeMocked, securityStorageMocked, null ).warmUp( 10 );
+    }
+
+    @Test
+    public void should_audit_login_outcome()
+            throws AuthenticatorException, IOException
+    {
+        File audit = File.createTempFile( "jdbcrealm", ".audit" );
+        audit.deleteOnExit();
+        Properties props = unreachableProperties();
+        props.setProperty( JDBCAuthenticator.AUDIT_FILE_PARAM, audit.getPath() );
+
+        JDBCAuthenticator authenticator = new JDBCAuthenticator( "jdbcRealm", props );
+        Assert.assertNull( "Shouldn't authenticate while the datasource is unreachable",
+                authenticator.authenticate( "SuperMan", "SuperManPasse" ) );
+        authenticator.close();
+
+        final String lines = new String( Files.readAllBytes( audit.toPath() ), "UTF-8" );
+        Assert.assertTrue( "Should audit the failed login", lines.contains( "\"realm\":\"jdbcRealm\",\"user\":\"SuperMan\",\"outcome\":\"FAILURE\"" ) );
+    }
+
+}
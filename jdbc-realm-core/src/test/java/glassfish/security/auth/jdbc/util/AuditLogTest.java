@@ -0,0 +1,236 @@
+package glassfish.security.auth.jdbc.util;
+
+import glassfish.security.auth.jdbc.util.audit.AuditEvent;
+import glassfish.security.auth.jdbc.util.audit.AuditLog;
+import glassfish.security.auth.jdbc.util.audit.FileAuditAppender;
+import glassfish.security.auth.jdbc.util.audit.IAuditAppender;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * AuditLog class test with an appender recording the user names appended,
+ * and FileAuditAppender class test with temporary audit files.
+ */
+public class AuditLogTest
+{
+
+    /*
+     * An appender recording the user names, optionally blocked until released.
+     */
+    private static class RecordingAppender
+            implements IAuditAppender
+    {
+
+        private final List<String> usernames = new ArrayList<>();
+        private final CountDownLatch released;
+        private final boolean enabled;
+        private volatile int flushes;
+        private volatile boolean closed;
+
+        RecordingAppender( final boolean enabled, final CountDownLatch released )
+        {
+            this.enabled = enabled;
+            this.released = released;
+        }
+
+        @Override
+        public boolean isEnabled()
+        {
+            return enabled;
+        }
+
+        @Override
+        public void append( final AuditEvent event )
+        {
+            try {
+                released.await( 5, TimeUnit.SECONDS );
+            } catch ( InterruptedException ex ) {
+                Thread.currentThread().interrupt();
+            }
+            usernames.add( event.getOutcome() + ":" + event.getUsername() );
+        }
+
+        @Override
+        public void flush()
+        {
+            flushes++;
+        }
+
+        @Override
+        public void close()
+        {
+            closed = true;
+        }
+    }
+
+    @Test
+    public void should_append_events_in_order()
+    {
+        RecordingAppender appender = new RecordingAppender( true, new CountDownLatch( 0 ) );
+        AuditLog auditLog = new AuditLog( appender, 1000 );
+        for ( int i = 0; i < 500; i++ ) {
+            Assert.assertTrue( "Should queue the event", auditLog.publish( i % 2 == 0 ? AuditEvent.OUTCOME.SUCCESS : AuditEvent.OUTCOME.FAILURE,
+                    "jdbcRealm", "user" + i, null, 0 ) );
+        }
+        auditLog.close();
+
+        Assert.assertEquals( "Should append all the events", 500, appender.usernames.size() );
+        for ( int i = 0; i < 500; i++ ) {
+            Assert.assertEquals( "Should append the events in order", ( i % 2 == 0 ? "SUCCESS" : "FAILURE" ) + ":user" + i, appender.usernames.get( i ) );
+        }
+        Assert.assertTrue( "Should flush once per batch", appender.flushes >= 500 / AuditLog.MAX_BATCH_SIZE && appender.flushes <= 500 );
+        Assert.assertTrue( "Should close the appender", appender.closed );
+    }
+
+    @Test
+    public void should_drop_events_buffer_full()
+    {
+        CountDownLatch released = new CountDownLatch( 1 );
+        RecordingAppender appender = new RecordingAppender( true, released );
+        AuditLog auditLog = new AuditLog( appender, 3 );
+        int queued = 0;
+        for ( int i = 0; i < 10; i++ ) {
+            if ( auditLog.publish( AuditEvent.OUTCOME.SUCCESS, "jdbcRealm", "user" + i, null, 0 ) ) {
+                queued++;
+            }
+        }
+        Assert.assertEquals( "Should queue a power of two events", 4, queued );
+        Assert.assertEquals( "Should count the dropped events", 6, auditLog.getDropped() );
+
+        released.countDown();
+        auditLog.close();
+        Assert.assertEquals( "Should append the queued events", 4, appender.usernames.size() );
+    }
+
+    @Test
+    public void should_not_publish_appender_disabled()
+    {
+        RecordingAppender appender = new RecordingAppender( false, new CountDownLatch( 0 ) );
+        AuditLog auditLog = new AuditLog( appender, 16 );
+        Assert.assertFalse( "Should be disabled", auditLog.isEnabled() );
+        Assert.assertFalse( "Should not queue the event", auditLog.publish( AuditEvent.OUTCOME.SUCCESS, "jdbcRealm", "user", null, 0 ) );
+        auditLog.close();
+        Assert.assertTrue( "Should append nothing", appender.usernames.isEmpty() );
+        Assert.assertEquals( "Should not count a disabled event as dropped", 0, auditLog.getDropped() );
+    }
+
+    @Test
+    public void should_block_buffer_full()
+            throws InterruptedException
+    {
+        final CountDownLatch released = new CountDownLatch( 1 );
+        RecordingAppender appender = new RecordingAppender( true, released );
+        final AuditLog auditLog = new AuditLog( appender, 2, AuditLog.DROP_POLICY.BLOCK );
+        Thread releaser = new Thread( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try {
+                    Thread.sleep( 200 );
+                } catch ( InterruptedException ex ) {
+                    Thread.currentThread().interrupt();
+                }
+                released.countDown();
+            }
+        } );
+        releaser.start();
+        for ( int i = 0; i < 10; i++ ) {
+            Assert.assertTrue( "Should wait for a free slot", auditLog.publish( AuditEvent.OUTCOME.SUCCESS, "jdbcRealm", "user" + i, null, 0 ) );
+        }
+        releaser.join();
+        auditLog.close();
+        Assert.assertEquals( "Should append all the events", 10, appender.usernames.size() );
+        Assert.assertEquals( "Should drop nothing", 0, auditLog.getDropped() );
+    }
+
+    @Test
+    public void should_wake_idle_consumer_on_publish()
+            throws InterruptedException
+    {
+        final Semaphore appended = new Semaphore( 0 );
+        AuditLog auditLog = new AuditLog( new IAuditAppender()
+        {
+            @Override
+            public boolean isEnabled()
+            {
+                return true;
+            }
+
+            @Override
+            public void append( final AuditEvent event )
+            {
+                appended.release();
+            }
+
+            @Override
+            public void flush()
+            {
+            }
+
+            @Override
+            public void close()
+            {
+            }
+        }, 16 );
+        for ( int i = 0; i < 3; i++ ) {
+            // let the consumer park on the empty ring buffer
+            Thread.sleep( 50 );
+            auditLog.publish( AuditEvent.OUTCOME.SUCCESS, "jdbcRealm", "user" + i, null, 0 );
+            Assert.assertTrue( "Should wake the idle consumer up", appended.tryAcquire( 500, TimeUnit.MILLISECONDS ) );
+        }
+        auditLog.close();
+    }
+
+    @Test
+    public void should_write_json_lines_audit_file()
+            throws IOException
+    {
+        File file = File.createTempFile( "jdbcrealm", ".audit" );
+        file.deleteOnExit();
+        AuditLog auditLog = new AuditLog( new FileAuditAppender( file, FileAuditAppender.DEFAULT_MAX_SIZE, 1 ), 16 );
+        auditLog.publish( AuditEvent.OUTCOME.SUCCESS, "jdbcRealm", "Bowser", new String[]{ "BAD_GUY", "GOOD_GUY" }, 1250000 );
+        auditLog.publish( AuditEvent.OUTCOME.FAILURE, "jdbcRealm", "Lu\"tor", null, 2000 );
+        auditLog.close();
+
+        List<String> lines = Files.readAllLines( file.toPath(), Charset.forName( "UTF-8" ) );
+        Assert.assertEquals( "Should write a line per event", 2, lines.size() );
+        Assert.assertTrue( "Should write the success", lines.get( 0 ).matches(
+                "\\{\"time\":\\d+,\"realm\":\"jdbcRealm\",\"user\":\"Bowser\",\"outcome\":\"SUCCESS\",\"latencyMicros\":1250,\"groups\":2\\}" ) );
+        Assert.assertTrue( "Should escape the user name", lines.get( 1 ).contains( "\"user\":\"Lu\\\"tor\",\"outcome\":\"FAILURE\"" ) );
+    }
+
+    @Test
+    public void should_rotate_audit_file()
+            throws IOException
+    {
+        File file = File.createTempFile( "jdbcrealm", ".audit" );
+        File rotated1 = new File( file.getPath() + ".1" );
+        File rotated2 = new File( file.getPath() + ".2" );
+        File rotated3 = new File( file.getPath() + ".3" );
+        file.deleteOnExit();
+        rotated1.deleteOnExit();
+        rotated2.deleteOnExit();
+        rotated3.deleteOnExit();
+        FileAuditAppender appender = new FileAuditAppender( file, 150, 2 );
+        AuditLog auditLog = new AuditLog( appender, 16 );
+        for ( int i = 0; i < 10; i++ ) {
+            auditLog.publish( AuditEvent.OUTCOME.SUCCESS, "jdbcRealm", "user" + i, null, 0 );
+        }
+        auditLog.close();
+
+        Assert.assertTrue( "Should rotate the file", rotated1.exists() && rotated2.exists() );
+        Assert.assertFalse( "Should keep maxCount rotated files", rotated3.exists() );
+        Assert.assertTrue( "Should bound the file size", file.length() <= 150 );
+        Assert.assertTrue( "Should write the last event", new String( Files.readAllBytes( file.toPath() ), "UTF-8" ).contains( "user9" ) );
+    }
+}
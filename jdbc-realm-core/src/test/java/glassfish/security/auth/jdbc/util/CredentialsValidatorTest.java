@@ -0,0 +1,43 @@
+package glassfish.security.auth.jdbc.util;
+
+import glassfish.security.auth.jdbc.util.metrics.SecurityMetrics;
+import glassfish.security.auth.jdbc.util.validation.CredentialsValidator;
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * CredentialsValidator class test.
+ */
+public class CredentialsValidatorTest
+{
+
+    @Test
+    public void should_accept_all_characters_by_default()
+    {
+        CredentialsValidator validator = new CredentialsValidator( CredentialsValidator.DEFAULT_USERNAME_MAX_LENGTH, null,
+                CredentialsValidator.DEFAULT_PASSWORD_MAX_LENGTH, new SecurityMetrics() );
+        Assert.assertTrue( "Should accept any character", validator.validate( "Zoë O'Brien 𝐀", "pass" ) );
+        Assert.assertFalse( "Should reject an empty user name", validator.isValidUsername( "" ) );
+        Assert.assertFalse( "Should reject a null password", validator.isValidPassword( null ) );
+    }
+
+    @Test
+    public void should_reject_characters_not_allowed()
+    {
+        SecurityMetrics metrics = new SecurityMetrics();
+        CredentialsValidator validator = new CredentialsValidator( 32, "[\\p{L}\\p{N}._@-]", 8, metrics );
+        Assert.assertTrue( "Should accept the letters of any script", validator.validate( "zoë.müller@example", "pass" ) );
+        Assert.assertTrue( "Should accept a supplementary letter", validator.isValidUsername( "𝐀" ) );
+        Assert.assertFalse( "Should reject a space", validator.validate( "zoë müller", "pass" ) );
+        Assert.assertFalse( "Should reject a control character", validator.validate( "zoe\u0000", "pass" ) );
+        Assert.assertFalse( "Should reject a too long password", validator.validate( "zoe", "password1" ) );
+        Assert.assertEquals( "Should count the rejected user names", 2, metrics.getRejectedUsernames() );
+        Assert.assertEquals( "Should count the rejected passwords", 1, metrics.getRejectedPasswords() );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void should_throw_IllegalArgumentException_invalid_expression()
+    {
+        new CredentialsValidator( 32, "[a-z", 8, new SecurityMetrics() );
+    }
+}
@@ -0,0 +1,226 @@
+package glassfish.security.auth.jdbc.util;
+
+import glassfish.security.auth.jdbc.util.factory.PasswordTypeFactory;
+import glassfish.security.auth.jdbc.util.factory.exceptions.PasswordTypeException;
+import glassfish.security.auth.jdbc.util.factory.passwordtypes.BcryptPassword;
+import glassfish.security.auth.jdbc.util.factory.passwordtypes.HmacPassword;
+import glassfish.security.auth.jdbc.util.factory.passwordtypes.IPasswordType;
+import glassfish.security.auth.jdbc.util.factory.passwordtypes.ISaltedPasswordType;
+import glassfish.security.auth.jdbc.util.factory.passwordtypes.MessageDigestPassword;
+import glassfish.security.auth.jdbc.util.factory.passwordtypes.SaltedPasswordAdapter;
+import glassfish.security.auth.jdbc.util.factory.passwordtypes.UnencryptedPassword;
+import glassfish.security.auth.jdbc.util.factory.passwordtypes.WrappedPassword;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.security.KeyStore;
+import java.util.Properties;
+import javax.crypto.spec.SecretKeySpec;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author pluxz
+ */
+public class PasswordTypeFactoryTest
+{
+
+    @Test( expected = IllegalArgumentException.class )
+    public void should_throw_illegalArgumentException()
+            throws IllegalArgumentException, PasswordTypeException
+    {
+        Properties props = null;
+        PasswordTypeFactory ptf = PasswordTypeFactory.getInstance();
+        ptf.createPasswordType( props );
+    }
+
+    @Test
+    public void should_return_UnencryptedPassword()
+            throws Exception
+    {
+        Properties props = new Properties();
+        props.setProperty( PasswordTypeFactory.PROPERTY.DIGEST_ALGORITHM.toString(), "none" );
+        PasswordTypeFactory ptf = PasswordTypeFactory.getInstance();
+        Assert.assertTrue( "Should return an unencrypted password instance", ( ptf.createPasswordType( props ) instanceof UnencryptedPassword ) );
+
+    }
+
+    @Test
+    public void should_return_MessageDigestPassword_SHA256_byDefault()
+            throws Exception
+    {
+        Properties props = new Properties();
+        PasswordTypeFactory ptf = PasswordTypeFactory.getInstance();
+        Assert.assertTrue( "Should return a MessageDigestPassword instance", ( ptf.createPasswordType( props ) instanceof MessageDigestPassword ) );
+    }
+
+    @Test
+    public void should_return_MessageDigestPassword_SHA256()
+            throws Exception
+    {
+        Properties props = new Properties();
+        props.setProperty( PasswordTypeFactory.PROPERTY.DIGEST_ALGORITHM.toString(), "sha-256" );
+        PasswordTypeFactory ptf = PasswordTypeFactory.getInstance();
+        Assert.assertTrue( "Should return a MessageDigestPassword instance", ( ptf.createPasswordType( props ) instanceof MessageDigestPassword ) );
+    }
+
+    @Test
+    public void should_return_BCryptPassword()
+            throws Exception
+    {
+        Properties props = new Properties();
+        props.setProperty( PasswordTypeFactory.PROPERTY.DEFAULT_DIGEST_ALGORITHM.toString(), "bcrypt" );
+        PasswordTypeFactory ptf = PasswordTypeFactory.getInstance();
+        Assert.assertTrue( "Should return a BcryptPassword instance", ( ptf.createPasswordType( props ) instanceof BcryptPassword ) );
+    }
+
+    @Test( expected = PasswordTypeException.class )
+    public void should_throw_PasswordTypeException_invalid_digest()
+            throws PasswordTypeException
+    {
+        Properties props = new Properties();
+        props.setProperty( PasswordTypeFactory.PROPERTY.DEFAULT_DIGEST_ALGORITHM.toString(), "sha-257" );
+        PasswordTypeFactory ptf = PasswordTypeFactory.getInstance();
+        ptf.createPasswordType( props );
+    }
+
+    @Test( expected = PasswordTypeException.class )
+    public void should_throw_PasswordTypeException_invalid_logRound_range()
+            throws PasswordTypeException
+    {
+        Properties props = new Properties();
+        props.setProperty( PasswordTypeFactory.PROPERTY.DEFAULT_DIGEST_ALGORITHM.toString(), "bcrypt" );
+        props.setProperty( PasswordTypeFactory.PROPERTY.BCRYPT_LOG_ROUNDS.toString(), "100" );
+        PasswordTypeFactory ptf = PasswordTypeFactory.getInstance();
+        ptf.createPasswordType( props );
+    }
+
+    @Test( expected = PasswordTypeException.class )
+    public void should_throw_PasswordTypeException_invalid_logRound_parse()
+            throws PasswordTypeException
+    {
+        Properties props = new Properties();
+        props.setProperty( PasswordTypeFactory.PROPERTY.DEFAULT_DIGEST_ALGORITHM.toString(), "bcrypt" );
+        props.setProperty( PasswordTypeFactory.PROPERTY.BCRYPT_LOG_ROUNDS.toString(), "abc" );
+        PasswordTypeFactory ptf = PasswordTypeFactory.getInstance();
+        ptf.createPasswordType( props );
+    }
+
+    @Test( expected = PasswordTypeException.class )
+    public void should_throw_PasswordTypeException_invalid_charset()
+            throws PasswordTypeException
+    {
+        Properties props = new Properties();
+        props.setProperty( PasswordTypeFactory.PROPERTY.DEFAULT_DIGEST_ALGORITHM.toString(), "sha-257" );
+        props.setProperty( PasswordTypeFactory.PROPERTY.CHARSET.toString(), "UTF-9" );
+        PasswordTypeFactory ptf = PasswordTypeFactory.getInstance();
+        ptf.createPasswordType( props );
+    }
+
+    @Test
+    public void should_check_MessageDigestPassword_with_user_salt()
+            throws PasswordTypeException
+    {
+        Properties props = new Properties();
+        props.setProperty( PasswordTypeFactory.PROPERTY.DIGEST_ALGORITHM.toString(), "sha-256" );
+        props.setProperty( PasswordTypeFactory.PROPERTY.PASSWORD_SALT.toString(), "realmSalt" );
+        ISaltedPasswordType passwordType = PasswordTypeFactory.getInstance().createPasswordType( props );
+        String hashedPassword = passwordType.encryptPassword( "SuperMarioPass", "SuperMarioSalt" );
+
+        Assert.assertTrue( "Should match the password salted with the user salt",
+                passwordType.checkPassword( "SuperMarioPass", hashedPassword, "SuperMarioSalt" ) );
+        Assert.assertFalse( "Shouldn't match the password salted with an other user salt",
+                passwordType.checkPassword( "SuperMarioPass", hashedPassword, "BowserSalt" ) );
+        Assert.assertFalse( "Shouldn't match the password without the user salt",
+                passwordType.checkPassword( "SuperMarioPass", hashedPassword ) );
+    }
+
+    @Test
+    public void should_return_HmacPassword()
+            throws Exception
+    {
+        File keystore = File.createTempFile( "pepper", ".jceks" );
+        keystore.deleteOnExit();
+        KeyStore ks = KeyStore.getInstance( HmacPassword.DEFAULT_KEYSTORE_TYPE );
+        ks.load( null, null );
+        ks.setEntry( "pepper", new KeyStore.SecretKeyEntry( new SecretKeySpec( "a secret pepper".getBytes( "UTF-8" ), "HmacSHA256" ) ),
+                new KeyStore.PasswordProtection( "changeit".toCharArray() ) );
+        try ( OutputStream out = new FileOutputStream( keystore ) ) {
+            ks.store( out, "changeit".toCharArray() );
+        }
+
+        Properties props = new Properties();
+        props.setProperty( PasswordTypeFactory.PROPERTY.DIGEST_ALGORITHM.toString(), "hmac" );
+        props.setProperty( PasswordTypeFactory.PROPERTY.HMAC_KEYSTORE.toString(), keystore.getAbsolutePath() );
+        props.setProperty( PasswordTypeFactory.PROPERTY.HMAC_KEYSTORE_PASSWORD.toString(), "changeit" );
+        props.setProperty( PasswordTypeFactory.PROPERTY.HMAC_KEY_ALIAS.toString(), "pepper" );
+        ISaltedPasswordType passwordType = PasswordTypeFactory.getInstance().createPasswordType( props );
+        Assert.assertTrue( "Should return a HmacPassword instance", passwordType instanceof HmacPassword );
+
+        String hashedPassword = passwordType.encryptPassword( "aRandomServiceSecret" );
+        Assert.assertTrue( "Should match the service secret", passwordType.checkPassword( "aRandomServiceSecret", hashedPassword ) );
+        Assert.assertFalse( "Shouldn't match an other secret", passwordType.checkPassword( "anOtherSecret", hashedPassword ) );
+    }
+
+    @Test( expected = PasswordTypeException.class )
+    public void should_throw_PasswordTypeException_missing_hmac_keystore()
+            throws PasswordTypeException
+    {
+        Properties props = new Properties();
+        props.setProperty( PasswordTypeFactory.PROPERTY.DIGEST_ALGORITHM.toString(), "hmac" );
+        PasswordTypeFactory.getInstance().createPasswordType( props );
+    }
+
+    @Test
+    public void should_return_WrappedPassword()
+            throws PasswordTypeException
+    {
+        Properties props = new Properties();
+        props.setProperty( PasswordTypeFactory.PROPERTY.DIGEST_ALGORITHM.toString(), "sha-1" );
+        props.setProperty( PasswordTypeFactory.PROPERTY.BCRYPT_LOG_ROUNDS.toString(), "4" );
+        ISaltedPasswordType legacyType = PasswordTypeFactory.getInstance().createPasswordType( props );
+        String legacyPassword = legacyType.encryptPassword( "SuperMarioPass", "SuperMarioSalt" );
+
+        props.setProperty( PasswordTypeFactory.PROPERTY.DIGEST_ALGORITHM.toString(), "Bcrypt(SHA-1)" );
+        ISaltedPasswordType passwordType = PasswordTypeFactory.getInstance().createPasswordType( props );
+        Assert.assertTrue( "Should return a WrappedPassword instance", passwordType instanceof WrappedPassword );
+        Assert.assertTrue( "Should wrap with Bcrypt", ( ( WrappedPassword ) passwordType ).getOuter() instanceof BcryptPassword );
+
+        String wrappedPassword = ( ( WrappedPassword ) passwordType ).wrap( legacyPassword );
+        Assert.assertTrue( "Should match the wrapped legacy password",
+                passwordType.checkPassword( "SuperMarioPass", wrappedPassword, "SuperMarioSalt" ) );
+        Assert.assertFalse( "Shouldn't match an other password", passwordType.checkPassword( "BowserPass", wrappedPassword, "SuperMarioSalt" ) );
+        Assert.assertTrue( "Should match a password encrypted by the wrapped type",
+                passwordType.checkPassword( "BowserPass", passwordType.encryptPassword( "BowserPass" ) ) );
+    }
+
+    @Test
+    public void should_salt_an_external_password_type()
+    {
+        IPasswordType external = new IPasswordType()
+        {
+            @Override
+            public String encryptPassword( String password )
+            {
+                return new StringBuilder( password ).reverse().toString();
+            }
+
+            @Override
+            public boolean checkPassword( String plainPassword, String hashedPassword )
+            {
+                return encryptPassword( plainPassword ).equals( hashedPassword );
+            }
+        };
+        ISaltedPasswordType passwordType = SaltedPasswordAdapter.of( external );
+        Assert.assertTrue( "Should adapt the external password type", passwordType instanceof SaltedPasswordAdapter );
+        Assert.assertSame( "Shouldn't adapt a salted password type", passwordType, SaltedPasswordAdapter.of( passwordType ) );
+
+        String hashedPassword = passwordType.encryptPassword( "SuperMarioPass", "SuperMarioSalt" );
+        Assert.assertEquals( "Should append the user salt", external.encryptPassword( "SuperMarioPassSuperMarioSalt" ), hashedPassword );
+        Assert.assertTrue( "Should match the password salted with the user salt",
+                passwordType.checkPassword( "SuperMarioPass", hashedPassword, "SuperMarioSalt" ) );
+        Assert.assertFalse( "Shouldn't match the password salted with an other user salt",
+                passwordType.checkPassword( "SuperMarioPass", hashedPassword, "BowserSalt" ) );
+    }
+}
@@ -0,0 +1,214 @@
+package glassfish.security.auth.jdbc.util;
+
+import glassfish.security.auth.jdbc.util.dao.GroupNameTable;
+import glassfish.security.auth.jdbc.util.dao.GroupSet;
+import glassfish.security.auth.jdbc.util.dao.ISecurityStorage;
+import glassfish.security.auth.jdbc.util.dao.UserCredentials;
+import glassfish.security.auth.jdbc.util.dao.decorators.CachingSecurityStorage;
+import glassfish.security.auth.jdbc.util.dao.decorators.CoalescingSecurityStorage;
+import glassfish.security.auth.jdbc.util.dao.decorators.MetricsSecurityStorage;
+import glassfish.security.auth.jdbc.util.metrics.SecurityMetrics;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * SecurityStorageDecorator classes test with an in-memory storage counting its lookups.
+ */
+public class SecurityStorageDecoratorTest
+{
+
+    /*
+     * A storage of a single user, optionally blocked until released.
+     */
+    private static class CountingStorage
+            implements ISecurityStorage
+    {
+
+        private final GroupNameTable groupNameTable = new GroupNameTable();
+        private final SecurityMetrics metrics = new SecurityMetrics();
+        private final AtomicInteger credentialsLookups = new AtomicInteger();
+        private final AtomicInteger groupsLookups = new AtomicInteger();
+        private final AtomicInteger invalidations = new AtomicInteger();
+        private final CountDownLatch started = new CountDownLatch( 1 );
+        private final CountDownLatch released;
+
+        CountingStorage( final CountDownLatch released )
+        {
+            this.released = released;
+        }
+
+        @Override
+        public String normalizeUsername( final String username )
+        {
+            return username.toLowerCase();
+        }
+
+        @Override
+        public String findPassword( final String username )
+        {
+            final UserCredentials credentials = findCredentials( username );
+            return credentials != null ? credentials.getPassword() : null;
+        }
+
+        @Override
+        public UserCredentials findCredentials( final String username )
+        {
+            credentialsLookups.incrementAndGet();
+            started.countDown();
+            try {
+                released.await( 5, TimeUnit.SECONDS );
+            } catch ( InterruptedException ex ) {
+                Thread.currentThread().interrupt();
+            }
+            return "bowser".equals( normalizeUsername( username ) ) ? new UserCredentials( "BowserPass", null ) : null;
+        }
+
+        @Override
+        public String[] findGroupNames( final String username )
+        {
+            return findGroupSet( username ).toArray();
+        }
+
+        @Override
+        public GroupSet findGroupSet( final String username )
+        {
+            groupsLookups.incrementAndGet();
+            return "bowser".equals( normalizeUsername( username ) ) ? groupNameTable.encode( "BAD_GUY" ) : groupNameTable.encode();
+        }
+
+        @Override
+        public void validateQueries()
+        {
+        }
+
+        @Override
+        public Session openSession()
+        {
+            return new Session()
+            {
+                @Override
+                public void close()
+                {
+                }
+            };
+        }
+
+        @Override
+        public void start( final ISecurityStorage outermost )
+        {
+        }
+
+        @Override
+        public void close()
+        {
+        }
+
+        @Override
+        public void evict( final String normalizedUsername )
+        {
+        }
+
+        @Override
+        public void invalidate( final String username )
+        {
+            invalidations.incrementAndGet();
+        }
+
+        @Override
+        public void invalidateAll()
+        {
+            invalidations.incrementAndGet();
+        }
+
+        @Override
+        public SecurityMetrics getMetrics()
+        {
+            return metrics;
+        }
+    }
+
+    @Test
+    public void should_cache_users_until_invalidated()
+    {
+        CountingStorage storage = new CountingStorage( new CountDownLatch( 0 ) );
+        CachingSecurityStorage caching = new CachingSecurityStorage( storage, 60000, 100 );
+
+        Assert.assertEquals( "Should find the credentials", "BowserPass", caching.findPassword( "Bowser" ) );
+        Assert.assertEquals( "Should cache the credentials by normalized user name", "BowserPass", caching.findPassword( "BOWSER" ) );
+        Assert.assertArrayEquals( "Should cache the groups", new String[]{ "BAD_GUY" }, caching.findGroupNames( "bowser" ) );
+        Assert.assertEquals( "Should look the credentials up once", 1, storage.credentialsLookups.get() );
+        Assert.assertEquals( "Should look the groups up once", 1, storage.groupsLookups.get() );
+        Assert.assertEquals( "Should count the cache hits", 2, storage.metrics.getCacheHits() );
+
+        Assert.assertNull( "Should not find an unknown user", caching.findCredentials( "Lutor" ) );
+        Assert.assertNull( "Should not cache an unknown user", caching.findCredentials( "Lutor" ) );
+        Assert.assertEquals( "Should look the unknown user up twice", 3, storage.credentialsLookups.get() );
+
+        caching.invalidate( "Bowser" );
+        Assert.assertEquals( "Should forward the eviction", 1, storage.invalidations.get() );
+        caching.findCredentials( "Bowser" );
+        Assert.assertEquals( "Should reload an evicted user", 4, storage.credentialsLookups.get() );
+    }
+
+    @Test
+    public void should_coalesce_concurrent_lookups()
+            throws InterruptedException
+    {
+        CountDownLatch released = new CountDownLatch( 1 );
+        CountingStorage storage = new CountingStorage( released );
+        final CoalescingSecurityStorage coalescing = new CoalescingSecurityStorage( storage );
+        final String[] passwords = new String[ 4 ];
+        Thread[] threads = new Thread[ passwords.length ];
+        for ( int i = 0; i < threads.length; i++ ) {
+            final int index = i;
+            threads[i] = new Thread( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    passwords[index] = coalescing.findPassword( index % 2 == 0 ? "Bowser" : "BOWSER" );
+                }
+            } );
+            threads[i].start();
+            if ( i == 0 ) {
+                Assert.assertTrue( "Should start the first lookup", storage.started.await( 5, TimeUnit.SECONDS ) );
+            }
+        }
+        // the other threads wait for the first lookup
+        while ( storage.metrics.getCoalescedLookups() < threads.length - 1 ) {
+            Thread.sleep( 1 );
+        }
+        released.countDown();
+        for ( Thread thread : threads ) {
+            thread.join();
+        }
+
+        Assert.assertEquals( "Should look the user up once", 1, storage.credentialsLookups.get() );
+        for ( String password : passwords ) {
+            Assert.assertEquals( "Should share the lookup result", "BowserPass", password );
+        }
+        coalescing.findPassword( "Bowser" );
+        Assert.assertEquals( "Should not cache a completed lookup", 2, storage.credentialsLookups.get() );
+    }
+
+    @Test
+    public void should_time_lookups_through_decorators()
+    {
+        CountingStorage storage = new CountingStorage( new CountDownLatch( 0 ) );
+        // the metrics decorator times the cache, the cache is stacked over the storage
+        MetricsSecurityStorage metrics = new MetricsSecurityStorage( new CachingSecurityStorage( storage, 60000, 100 ) );
+        for ( int i = 0; i < 5; i++ ) {
+            metrics.findCredentials( "Bowser" );
+        }
+        metrics.findGroupNames( "Bowser" );
+
+        Assert.assertSame( "Should share the storage metrics", storage.metrics, metrics.getMetrics() );
+        Assert.assertEquals( "Should count the credentials lookups", 5, storage.metrics.getCredentialsLookups() );
+        Assert.assertEquals( "Should count the groups lookups", 1, storage.metrics.getGroupsLookups() );
+        Assert.assertTrue( "Should time the lookups", storage.metrics.getCredentialsLookupTime() > 0 );
+        Assert.assertEquals( "Should query the storage once", 1, storage.credentialsLookups.get() );
+    }
+}
@@ -0,0 +1,1251 @@
+package glassfish.security.auth.jdbc.util;
+
+import glassfish.security.auth.jdbc.util.cache.CacheSnapshot;
+import glassfish.security.auth.jdbc.util.cache.CachedUser;
+import glassfish.security.auth.jdbc.util.cache.HeapCredentialCache;
+import glassfish.security.auth.jdbc.util.cache.OffHeapCredentialCache;
+import glassfish.security.auth.jdbc.util.cache.StripedCredentialCache;
+import glassfish.security.auth.jdbc.util.dao.CircuitBreaker;
+import glassfish.security.auth.jdbc.util.dao.DataSourceRouter;
+import glassfish.security.auth.jdbc.util.dao.GroupHierarchy;
+import glassfish.security.auth.jdbc.util.dao.GroupNameTable;
+import glassfish.security.auth.jdbc.util.dao.GroupSet;
+import glassfish.security.auth.jdbc.util.dao.ISecurityStorage;
+import glassfish.security.auth.jdbc.util.dao.PasswordRehasher;
+import glassfish.security.auth.jdbc.util.dao.SecurityStorage;
+import glassfish.security.auth.jdbc.util.dao.UserCredentials;
+import glassfish.security.auth.jdbc.util.dao.UserProvisioner;
+import glassfish.security.auth.jdbc.util.dao.UsernameNormalization;
+import glassfish.security.auth.jdbc.util.dao.decorators.CachingSecurityStorage;
+import glassfish.security.auth.jdbc.util.dao.exceptions.SecurityStorageException;
+import glassfish.security.auth.jdbc.util.factory.passwordtypes.BcryptPassword;
+import glassfish.security.auth.jdbc.util.factory.passwordtypes.MessageDigestPassword;
+import glassfish.security.auth.jdbc.util.factory.passwordtypes.WrappedPassword;
+import glassfish.security.auth.jdbc.util.invalidation.IInvalidationBus;
+import glassfish.security.auth.jdbc.util.metrics.SecurityMetrics;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.osjava.sj.memory.MemoryContextFactory;
+
+/*
+ * SecurityStorage class test with a datasource composed by 2 tables,
+ * one called USERS (ID, USERNAME, USERNAME_LOWER, PASSWORD, SALT) and an other GROUPS(ID,NAME,USERNAME).
+ * GROUPS USERNAME column describes a user name which already exists into
+ * USERS table. (Basic case glassfish).
+ * The GROUP_PARENTS(NAME, PARENT) table describes the nested groups.
+ */
+public class SecurityStorageTest
+{
+
+    public static final String[][] USERS = {
+        { "SuperMan", "SuperManPass" },
+        { "SuperMario", "SuperMarioPass" },
+        { "Lutor", "LutorPass" },
+        { "Bowser", "BowserPass" }
+    };
+    public static final String[] GROUPS = {
+        "GOOD_GUY", "BAD_GUY"
+    };
+    public static final String[][] GROUP_PARENTS = {
+        { "GOOD_GUY", "HERO" },
+        { "HERO", "CHARACTER" },
+        { "BAD_GUY", "CHARACTER" }
+    };
+
+    public static final String DATASOURCE_JNDI = "java:/comp/env/jdbc/datasourceTest";
+
+    @BeforeClass
+    public static void init()
+    {
+        createContext();
+        createDataSource();
+        insertData();
+    }
+
+    public static void createContext()
+    {
+        try {
+            System.setProperty( Context.INITIAL_CONTEXT_FACTORY, MemoryContextFactory.class.getName() );
+            System.setProperty( "org.osjava.sj.jndi.shared", "true" );
+            InitialContext ic = new InitialContext();
+            ic.createSubcontext( "java:/comp/env/jdbc" );
+
+            JDBCDataSource ds = new JDBCDataSource();
+            ds.setDatabase( "jdbc:hsqldb:mem:test" );
+            ds.setUser( "SA" );
+            ds.setPassword( "" );
+            ic.bind( DATASOURCE_JNDI, ds );
+        } catch ( NamingException ex ) {
+            Logger.getLogger( SecurityStorageTest.class.getName() ).severe( "Oups !!! There is an error into the createContext function" );
+            ex.printStackTrace();
+        }
+    }
+
+    public static void createDataSource()
+    {
+        Connection conn = null;
+        try {
+            InitialContext ctx = new InitialContext();
+            DataSource ds = ( DataSource ) ctx.lookup( DATASOURCE_JNDI );
+            conn = ds.getConnection();
+            conn.prepareStatement( "CREATE TABLE USERS( "
+                    + "ID INT GENERATED BY DEFAULT AS IDENTITY(START WITH 1) PRIMARY KEY,"
+                    + " USERNAME VARCHAR(50) NOT NULL,"
+                    + " USERNAME_LOWER VARCHAR(50) NOT NULL,"
+                    + " PASSWORD VARCHAR(128) NOT NULL,"
+                    + " SALT VARCHAR(64)"
+                    + ")" ).executeUpdate();
+            conn.prepareStatement( "CREATE TABLE GROUPS( "
+                    + "ID INT GENERATED BY DEFAULT AS IDENTITY(START WITH 1) PRIMARY KEY,"
+                    + " NAME VARCHAR(20) NOT NULL,"
+                    + " USERNAME VARCHAR(50) NOT NULL"
+                    + ")" ).executeUpdate();
+            conn.prepareStatement( "CREATE TABLE GROUP_PARENTS( "
+                    + " NAME VARCHAR(20) NOT NULL,"
+                    + " PARENT VARCHAR(20) NOT NULL"
+                    + ")" ).executeUpdate();
+        } catch ( SQLException | NamingException ex ) {
+            Logger.getLogger( SecurityStorageTest.class.getName() ).log( Level.SEVERE,
+                    "Oups !! There is an error into the createDataSource function", ex );
+            ex.printStackTrace();
+        } finally {
+            close( conn, null, null );
+        }
+    }
+
+    public static void insertData()
+    {
+        Connection conn = null;
+        PreparedStatement stmt = null;
+
+        try {
+            InitialContext ctx = new InitialContext();
+            DataSource ds = ( DataSource ) ctx.lookup( DATASOURCE_JNDI );
+            conn = ds.getConnection();
+            // INSERT USERS
+            stmt = conn.prepareStatement( "INSERT INTO USERS(USERNAME,USERNAME_LOWER,PASSWORD,SALT) VALUES(?,?,?,?)" );
+            for ( String[] user : USERS ) {
+                stmt.setString( 1, user[0] );
+                stmt.setString( 2, user[0].toLowerCase() );
+                stmt.setString( 3, user[1] );
+                stmt.setString( 4, user[0] + "Salt" );
+                stmt.executeUpdate();
+            }
+
+            // INSERT GROUPS GOOD GUY
+            stmt = conn.prepareStatement( "INSERT INTO GROUPS(NAME, USERNAME) VALUES(?,?)" );
+            stmt.setString( 1, GROUPS[0] );
+            stmt.setString( 2, USERS[0][0] );
+            stmt.executeUpdate();
+            stmt.clearParameters();
+            stmt.setString( 1, GROUPS[0] );
+            stmt.setString( 2, USERS[1][0] );
+            stmt.executeUpdate();
+
+            // INSERT GROUPS BAD GUY
+            stmt.clearParameters();
+            stmt.setString( 1, GROUPS[1] );
+            stmt.setString( 2, USERS[2][0] );
+            stmt.executeUpdate();
+            stmt.clearParameters();
+            stmt.setString( 1, GROUPS[1] );
+            stmt.setString( 2, USERS[3][0] );
+            stmt.executeUpdate();
+
+            // ADD Bowser user into GOOD GUY group
+            stmt.clearParameters();
+            stmt.setString( 1, GROUPS[0] );
+            stmt.setString( 2, USERS[3][0] );
+            stmt.executeUpdate();
+
+            // INSERT NESTED GROUPS
+            stmt = conn.prepareStatement( "INSERT INTO GROUP_PARENTS(NAME, PARENT) VALUES(?,?)" );
+            for ( String[] groupParent : GROUP_PARENTS ) {
+                stmt.setString( 1, groupParent[0] );
+                stmt.setString( 2, groupParent[1] );
+                stmt.executeUpdate();
+            }
+
+        } catch ( NamingException | SQLException ex ) {
+            Logger.getLogger( SecurityStorageTest.class.getName() ).log( Level.SEVERE, "Oups !! There is an error into the insertData function", ex );
+        } finally {
+            close( conn, stmt, null );
+        }
+    }
+
+    public static void close( Connection conn, PreparedStatement stmt, ResultSet res )
+    {
+        try {
+            if ( res != null && !res.isClosed() ) {
+                res.close();
+            }
+        } catch ( SQLException ex ) {
+            Logger.getLogger( SecurityStorageTest.class.getName() ).log( Level.SEVERE, "Cannot close ResultSet", ex );
+        }
+
+        try {
+            if ( stmt != null && !stmt.isClosed() ) {
+                stmt.close();
+            }
+        } catch ( SQLException ex ) {
+            Logger.getLogger( SecurityStorageTest.class.getName() ).log( Level.SEVERE, "Cannot close PreparedStatement", ex );
+        }
+
+        try {
+            if ( conn != null && conn.isClosed() ) {
+                conn.close();
+            }
+        } catch ( SQLException ex ) {
+            Logger.getLogger( SecurityStorageTest.class.getName() ).log( Level.SEVERE, "Cannot close Connection", ex );
+        }
+    }
+
+    /*
+     * Should throw a SecurityStorageException because the Properties Object
+     * gave as argument to the SecurityStorage constructor cannot be null.
+     *
+     */
+    @Test( expected = SecurityStorageException.class )
+    public void should_throw_SecurityStorageException_properties_null()
+            throws SecurityStorageException
+    {
+        Properties props = null;
+        SecurityStorage secs = new SecurityStorage( props );
+    }
+
+    /*
+     * Should throw a SecurityStorageException because a mandatory property is missing,
+     * in this case, it's the group table name.
+     */
+    @Test( expected = SecurityStorageException.class )
+    public void should_throw_SecurityStorageException_mandatory_property_groupTable_name()
+            throws SecurityStorageException
+    {
+        Properties props = new Properties();
+        props.setProperty( SecurityStorage.PROPERTY.DATASOURCE_JNDI.toString(), DATASOURCE_JNDI );
+        props.setProperty( SecurityStorage.PROPERTY.USER_TABLE.toString(), "USERS" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_NAME_COLUMN.toString(), "USERNAME" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_PASSWORD_COLUMN.toString(), "PASSWORD" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_NAME_COLUMN.toString(), "NAME" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_USER_NAME_COLUMN.toString(), "USERNAME" );
+
+        SecurityStorage secs = new SecurityStorage( props );
+
+    }
+
+    @Test
+    public void should_create_SecurityStorage_instance()
+            throws SecurityStorageException
+    {
+        Properties props = new Properties();
+        props.setProperty( SecurityStorage.PROPERTY.DATASOURCE_JNDI.toString(), DATASOURCE_JNDI );
+        props.setProperty( SecurityStorage.PROPERTY.USER_TABLE.toString(), "USERS" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_NAME_COLUMN.toString(), "USERNAME" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_PASSWORD_COLUMN.toString(), "PASSWORD" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_TABLE.toString(), "GROUPS" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_NAME_COLUMN.toString(), "NAME" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_USER_NAME_COLUMN.toString(), "USERNAME" );
+        SecurityStorage secs = new SecurityStorage( props );
+        Assert.assertNotNull( "Should create a SecurityStorage instance", secs );
+    }
+
+    @Test
+    public void should_findPassword_user()
+            throws SecurityStorageException
+    {
+        String[] superMan = USERS[0];
+        Properties props = new Properties();
+        props.setProperty( SecurityStorage.PROPERTY.DATASOURCE_JNDI.toString(), DATASOURCE_JNDI );
+        props.setProperty( SecurityStorage.PROPERTY.USER_TABLE.toString(), "USERS" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_NAME_COLUMN.toString(), "USERNAME" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_PASSWORD_COLUMN.toString(), "PASSWORD" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_TABLE.toString(), "GROUPS" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_NAME_COLUMN.toString(), "NAME" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_USER_NAME_COLUMN.toString(), "USERNAME" );
+        SecurityStorage secs = new SecurityStorage( props );
+        Assert.assertEquals( "Should find the superMan user password", superMan[1], secs.findPassword( superMan[0] ) );
+    }
+
+    @Test
+    public void should_findGroupNames_user()
+            throws SecurityStorageException
+    {
+        String[] bowser = USERS[3];
+        List<String> groupsToFind = Arrays.asList( GROUPS );
+        List<String> groups;
+        Properties props = new Properties();
+        props.setProperty( SecurityStorage.PROPERTY.DATASOURCE_JNDI.toString(), DATASOURCE_JNDI );
+        props.setProperty( SecurityStorage.PROPERTY.USER_TABLE.toString(), "USERS" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_NAME_COLUMN.toString(), "USERNAME" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_PASSWORD_COLUMN.toString(), "PASSWORD" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_TABLE.toString(), "GROUPS" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_NAME_COLUMN.toString(), "NAME" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_USER_NAME_COLUMN.toString(), "USERNAME" );
+
+        SecurityStorage secs = new SecurityStorage( props );
+        groups = Arrays.asList( secs.findGroupNames( bowser[0] ) );
+
+        Assert.assertTrue( "Should find the Bowser user group names list", groupsToFind.containsAll( groups ) );
+    }
+
+    @Test
+    public void should_findCredentials_user_with_salt()
+            throws SecurityStorageException
+    {
+        String[] superMario = USERS[1];
+        Properties props = new Properties();
+        props.setProperty( SecurityStorage.PROPERTY.DATASOURCE_JNDI.toString(), DATASOURCE_JNDI );
+        props.setProperty( SecurityStorage.PROPERTY.USER_TABLE.toString(), "USERS" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_NAME_COLUMN.toString(), "USERNAME" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_PASSWORD_COLUMN.toString(), "PASSWORD" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_SALT_COLUMN.toString(), "SALT" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_TABLE.toString(), "GROUPS" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_NAME_COLUMN.toString(), "NAME" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_USER_NAME_COLUMN.toString(), "USERNAME" );
+        SecurityStorage secs = new SecurityStorage( props );
+        UserCredentials credentials = secs.findCredentials( superMario[0] );
+
+        Assert.assertEquals( "Should find the superMario user password", superMario[1], credentials.getPassword() );
+        Assert.assertEquals( "Should find the superMario user salt", superMario[0] + "Salt", credentials.getSalt() );
+    }
+
+    @Test
+    public void should_findGroupNames_canonical_with_fetchSize()
+            throws SecurityStorageException
+    {
+        Properties props = new Properties();
+        props.setProperty( SecurityStorage.PROPERTY.DATASOURCE_JNDI.toString(), DATASOURCE_JNDI );
+        props.setProperty( SecurityStorage.PROPERTY.USER_TABLE.toString(), "USERS" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_NAME_COLUMN.toString(), "USERNAME" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_PASSWORD_COLUMN.toString(), "PASSWORD" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_TABLE.toString(), "GROUPS" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_NAME_COLUMN.toString(), "NAME" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_USER_NAME_COLUMN.toString(), "USERNAME" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_FETCH_SIZE.toString(), "1" );
+
+        SecurityStorage secs = new SecurityStorage( props );
+        String[] bowserGroups = secs.findGroupNames( USERS[3][0] );
+        String[] superManGroups = secs.findGroupNames( USERS[0][0] );
+
+        Assert.assertEquals( "Should find the 2 Bowser user group names", 2, bowserGroups.length );
+        Assert.assertTrue( "Should find the Bowser user group names list", Arrays.asList( bowserGroups ).containsAll( Arrays.asList( GROUPS ) ) );
+        Assert.assertSame( "Should share the canonical group name", superManGroups[0], bowserGroups[Arrays.asList( bowserGroups ).indexOf( GROUPS[0] )] );
+    }
+
+    @Test
+    public void should_findGroupSet_user()
+            throws SecurityStorageException
+    {
+        Properties props = new Properties();
+        props.setProperty( SecurityStorage.PROPERTY.DATASOURCE_JNDI.toString(), DATASOURCE_JNDI );
+        props.setProperty( SecurityStorage.PROPERTY.USER_TABLE.toString(), "USERS" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_NAME_COLUMN.toString(), "USERNAME" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_PASSWORD_COLUMN.toString(), "PASSWORD" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_TABLE.toString(), "GROUPS" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_NAME_COLUMN.toString(), "NAME" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_USER_NAME_COLUMN.toString(), "USERNAME" );
+
+        SecurityStorage secs = new SecurityStorage( props );
+        GroupSet superMarioGroups = secs.findGroupSet( USERS[1][0] );
+        GroupSet bowserGroups = secs.findGroupSet( USERS[3][0] );
+
+        Assert.assertEquals( "Should find the SuperMario user group", 1, superMarioGroups.size() );
+        Assert.assertTrue( "SuperMario should be a good guy", superMarioGroups.contains( GROUPS[0] ) );
+        Assert.assertFalse( "SuperMario shouldn't be a bad guy", superMarioGroups.contains( GROUPS[1] ) );
+        Assert.assertEquals( "Should share the group name identifier", superMarioGroups.getId( 0 ),
+                secs.getGroupNameTable().find( GROUPS[0] ) );
+        Assert.assertTrue( "Bowser should be a good and a bad guy", bowserGroups.contains( GROUPS[0] ) && bowserGroups.contains( GROUPS[1] ) );
+        Assert.assertEquals( "Should encode 2 distinct group names", 2, secs.getGroupNameTable().size() );
+    }
+
+    @Test( expected = SecurityStorageException.class )
+    public void should_throw_SecurityStorageException_invalid_fetchSize()
+            throws SecurityStorageException
+    {
+        Properties props = new Properties();
+        props.setProperty( SecurityStorage.PROPERTY.DATASOURCE_JNDI.toString(), DATASOURCE_JNDI );
+        props.setProperty( SecurityStorage.PROPERTY.USER_TABLE.toString(), "USERS" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_NAME_COLUMN.toString(), "USERNAME" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_PASSWORD_COLUMN.toString(), "PASSWORD" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_TABLE.toString(), "GROUPS" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_NAME_COLUMN.toString(), "NAME" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_FETCH_SIZE.toString(), "-5" );
+
+        SecurityStorage secs = new SecurityStorage( props );
+    }
+
+    @Test
+    public void should_findGroupSet_user_with_nested_groups()
+            throws SecurityStorageException
+    {
+        Properties props = new Properties();
+        props.setProperty( SecurityStorage.PROPERTY.DATASOURCE_JNDI.toString(), DATASOURCE_JNDI );
+        props.setProperty( SecurityStorage.PROPERTY.USER_TABLE.toString(), "USERS" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_NAME_COLUMN.toString(), "USERNAME" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_PASSWORD_COLUMN.toString(), "PASSWORD" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_TABLE.toString(), "GROUPS" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_NAME_COLUMN.toString(), "NAME" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_USER_NAME_COLUMN.toString(), "USERNAME" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_PARENT_TABLE.toString(), "GROUP_PARENTS" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_PARENT_COLUMN.toString(), "PARENT" );
+
+        SecurityStorage secs = new SecurityStorage( props );
+        List<String> superManGroups = Arrays.asList( secs.findGroupNames( USERS[0][0] ) );
+        List<String> lutorGroups = Arrays.asList( secs.findGroupNames( USERS[2][0] ) );
+
+        Assert.assertEquals( "Should find the SuperMan user groups and their ancestors", 3, superManGroups.size() );
+        Assert.assertTrue( "Should find the SuperMan user groups and their ancestors",
+                superManGroups.containsAll( Arrays.asList( "GOOD_GUY", "HERO", "CHARACTER" ) ) );
+        Assert.assertEquals( "Should find the Lutor user groups and their ancestors", 2, lutorGroups.size() );
+        Assert.assertTrue( "Should find the Lutor user groups and their ancestors",
+                lutorGroups.containsAll( Arrays.asList( "BAD_GUY", "CHARACTER" ) ) );
+    }
+
+    @Test( expected = SecurityStorageException.class )
+    public void should_throw_SecurityStorageException_nested_groups_custom_query_without_child_column()
+            throws SecurityStorageException
+    {
+        Properties props = new Properties();
+        props.setProperty( SecurityStorage.PROPERTY.DATASOURCE_JNDI.toString(), DATASOURCE_JNDI );
+        props.setProperty( SecurityStorage.PROPERTY.USER_TABLE.toString(), "USERS" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_NAME_COLUMN.toString(), "USERNAME" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_PASSWORD_COLUMN.toString(), "PASSWORD" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_GROUPS_QUERY.toString(), "SELECT NAME FROM GROUPS WHERE USERNAME = ?" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_PARENT_TABLE.toString(), "GROUP_PARENTS" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_PARENT_COLUMN.toString(), "PARENT" );
+
+        SecurityStorage secs = new SecurityStorage( props );
+    }
+
+    @Test
+    public void should_findGroupSet_nested_groups_custom_query()
+            throws SecurityStorageException
+    {
+        Properties props = new Properties();
+        props.setProperty( SecurityStorage.PROPERTY.DATASOURCE_JNDI.toString(), DATASOURCE_JNDI );
+        props.setProperty( SecurityStorage.PROPERTY.USER_TABLE.toString(), "USERS" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_NAME_COLUMN.toString(), "USERNAME" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_PASSWORD_COLUMN.toString(), "PASSWORD" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_GROUPS_QUERY.toString(), "SELECT NAME FROM GROUPS WHERE USERNAME = ?" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_PARENT_TABLE.toString(), "GROUP_PARENTS" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_PARENT_COLUMN.toString(), "PARENT" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_PARENT_CHILD_COLUMN.toString(), "NAME" );
+
+        SecurityStorage secs = new SecurityStorage( props );
+        List<String> lutorGroups = Arrays.asList( secs.findGroupNames( USERS[2][0] ) );
+
+        Assert.assertEquals( "Should find the Lutor user groups and their ancestors", 2, lutorGroups.size() );
+        Assert.assertTrue( "Should find the Lutor user groups and their ancestors",
+                lutorGroups.containsAll( Arrays.asList( "BAD_GUY", "CHARACTER" ) ) );
+    }
+
+    @Test
+    public void should_compute_GroupHierarchy_closure_from_edges()
+    {
+        GroupNameTable table = new GroupNameTable();
+        // A -> B -> C -> A (cycle) and C -> D
+        int[] children = { table.idOf( "A" ), table.idOf( "B" ), table.idOf( "C" ), table.idOf( "C" ) };
+        int[] parents = { table.idOf( "B" ), table.idOf( "C" ), table.idOf( "A" ), table.idOf( "D" ) };
+
+        GroupHierarchy hierarchy = GroupHierarchy.fromEdges( table, children, parents, children.length );
+        List<String> groups = Arrays.asList( hierarchy.expand( table.encode( "B" ) ).toArray() );
+
+        Assert.assertEquals( "Should expand B with all its ancestors", 4, groups.size() );
+        Assert.assertTrue( "Should expand B with all its ancestors", groups.containsAll( Arrays.asList( "A", "B", "C", "D" ) ) );
+        Assert.assertEquals( "Shouldn't expand D without ancestor", 1, hierarchy.expand( table.encode( "D" ) ).size() );
+    }
+
+    @Test
+    public void should_findPassword_user_with_custom_query()
+            throws SecurityStorageException
+    {
+        String[] lutor = USERS[2];
+        Properties props = new Properties();
+        props.setProperty( SecurityStorage.PROPERTY.DATASOURCE_JNDI.toString(), DATASOURCE_JNDI );
+        props.setProperty( SecurityStorage.PROPERTY.USER_PASSWORD_QUERY.toString(), "SELECT PASSWORD FROM USERS WHERE LOWER(USERNAME) = LOWER(?)" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_GROUPS_QUERY.toString(), "SELECT NAME FROM GROUPS WHERE LOWER(USERNAME) = LOWER(?)" );
+
+        SecurityStorage secs = new SecurityStorage( props );
+        secs.validateQueries();
+
+        Assert.assertEquals( "Should find the Lutor user password", lutor[1], secs.findPassword( lutor[0].toUpperCase() ) );
+        Assert.assertArrayEquals( "Should find the Lutor user groups", new String[]{ GROUPS[1] }, secs.findGroupNames( lutor[0].toUpperCase() ) );
+    }
+
+    @Test( expected = SecurityStorageException.class )
+    public void should_throw_SecurityStorageException_invalid_custom_query()
+            throws SecurityStorageException
+    {
+        Properties props = new Properties();
+        props.setProperty( SecurityStorage.PROPERTY.DATASOURCE_JNDI.toString(), DATASOURCE_JNDI );
+        props.setProperty( SecurityStorage.PROPERTY.USER_PASSWORD_QUERY.toString(), "SELECT PASSWORD FROM UNKNOWN_USERS WHERE USERNAME = ?" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_GROUPS_QUERY.toString(), "SELECT NAME FROM GROUPS WHERE USERNAME = ?" );
+
+        SecurityStorage secs = new SecurityStorage( props );
+        secs.validateQueries();
+    }
+
+    @Test( expected = SecurityStorageException.class )
+    public void should_throw_SecurityStorageException_custom_query_parameters()
+            throws SecurityStorageException
+    {
+        Properties props = new Properties();
+        props.setProperty( SecurityStorage.PROPERTY.DATASOURCE_JNDI.toString(), DATASOURCE_JNDI );
+        props.setProperty( SecurityStorage.PROPERTY.USER_PASSWORD_QUERY.toString(), "SELECT PASSWORD FROM USERS WHERE USERNAME = ? AND ID > ?" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_GROUPS_QUERY.toString(), "SELECT NAME FROM GROUPS WHERE USERNAME = ?" );
+
+        SecurityStorage secs = new SecurityStorage( props );
+        secs.validateQueries();
+    }
+
+    @Test
+    public void should_findPassword_user_with_normalized_column()
+            throws SecurityStorageException
+    {
+        String[] bowser = USERS[3];
+        Properties props = new Properties();
+        props.setProperty( SecurityStorage.PROPERTY.DATASOURCE_JNDI.toString(), DATASOURCE_JNDI );
+        props.setProperty( SecurityStorage.PROPERTY.USER_TABLE.toString(), "USERS" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_NAME_COLUMN.toString(), "USERNAME" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_NAME_NORMALIZED_COLUMN.toString(), "USERNAME_LOWER" );
+        props.setProperty( SecurityStorage.PROPERTY.USERNAME_NORMALIZATION.toString(), "lowercase" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_PASSWORD_COLUMN.toString(), "PASSWORD" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_TABLE.toString(), "GROUPS" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_NAME_COLUMN.toString(), "NAME" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_USER_NAME_COLUMN.toString(), "USERNAME" );
+
+        SecurityStorage secs = new SecurityStorage( props );
+        Assert.assertEquals( "Should normalize the user name", "bowser", secs.normalizeUsername( "BoWsEr" ) );
+        Assert.assertEquals( "Should find the Bowser user password whatever the case", bowser[1], secs.findPassword( "BOWSER" ) );
+        List<String> bowserGroups = Arrays.asList( secs.findGroupNames( "BOWSER" ) );
+        Assert.assertEquals( "Should find the Bowser user groups whatever the case", 2, bowserGroups.size() );
+        Assert.assertTrue( "Should find the Bowser user groups whatever the case", bowserGroups.containsAll( Arrays.asList( GROUPS ) ) );
+    }
+
+    @Test
+    public void should_normalize_username_nfkc()
+    {
+        // full width latin letters
+        String fullWidth = "\uFF33\uFF55\uFF50\uFF45\uFF52\uFF2D\uFF41\uFF4E";
+        Assert.assertEquals( "Should normalize with NFKC", "SuperMan", UsernameNormalization.fromName( "nfkc" ).normalize( fullWidth ) );
+        Assert.assertEquals( "Should normalize with NFKC and lower case", "superman",
+                UsernameNormalization.fromName( "NFKC-lowercase" ).normalize( fullWidth ) );
+    }
+
+    @Test( expected = SecurityStorageException.class )
+    public void should_throw_SecurityStorageException_invalid_normalization()
+            throws SecurityStorageException
+    {
+        Properties props = new Properties();
+        props.setProperty( SecurityStorage.PROPERTY.DATASOURCE_JNDI.toString(), DATASOURCE_JNDI );
+        props.setProperty( SecurityStorage.PROPERTY.USER_TABLE.toString(), "USERS" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_NAME_COLUMN.toString(), "USERNAME" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_PASSWORD_COLUMN.toString(), "PASSWORD" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_TABLE.toString(), "GROUPS" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_NAME_COLUMN.toString(), "NAME" );
+        props.setProperty( SecurityStorage.PROPERTY.USERNAME_NORMALIZATION.toString(), "uppercase" );
+
+        SecurityStorage secs = new SecurityStorage( props );
+    }
+
+    @Test
+    public void should_findPassword_user_failover_datasource()
+            throws SecurityStorageException
+    {
+        String[] superMan = USERS[0];
+        Properties props = new Properties();
+        props.setProperty( SecurityStorage.PROPERTY.DATASOURCE_JNDI.toString(), "java:/comp/env/jdbc/unknownDatasource, " + DATASOURCE_JNDI );
+        props.setProperty( SecurityStorage.PROPERTY.DATASOURCE_ROUTING.toString(), "failover" );
+        props.setProperty( SecurityStorage.PROPERTY.CIRCUIT_BREAKER_THRESHOLD.toString(), "1" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_TABLE.toString(), "USERS" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_NAME_COLUMN.toString(), "USERNAME" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_PASSWORD_COLUMN.toString(), "PASSWORD" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_TABLE.toString(), "GROUPS" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_NAME_COLUMN.toString(), "NAME" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_USER_NAME_COLUMN.toString(), "USERNAME" );
+
+        SecurityStorage secs = new SecurityStorage( props );
+        Assert.assertEquals( "Should fail over to the second datasource", superMan[1], secs.findPassword( superMan[0] ) );
+
+        List<DataSourceRouter.Node> nodes = secs.getDataSourceRouter().getNodes();
+        Assert.assertEquals( "Should open the unknown datasource circuit breaker", CircuitBreaker.STATE.OPEN, nodes.get( 0 ).getCircuitBreaker().getState() );
+        Assert.assertEquals( "Should keep the datasource circuit breaker closed", CircuitBreaker.STATE.CLOSED, nodes.get( 1 ).getCircuitBreaker().getState() );
+        Assert.assertEquals( "Should skip the unavailable datasource", superMan[1], secs.findPassword( superMan[0] ) );
+    }
+
+    @Test
+    public void should_fail_fast_all_circuit_breakers_open()
+            throws SecurityStorageException
+    {
+        Properties props = new Properties();
+        props.setProperty( SecurityStorage.PROPERTY.DATASOURCE_JNDI.toString(), "java:/comp/env/jdbc/unknownDatasource" );
+        props.setProperty( SecurityStorage.PROPERTY.CIRCUIT_BREAKER_THRESHOLD.toString(), "2" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_TABLE.toString(), "USERS" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_NAME_COLUMN.toString(), "USERNAME" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_PASSWORD_COLUMN.toString(), "PASSWORD" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_TABLE.toString(), "GROUPS" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_NAME_COLUMN.toString(), "NAME" );
+
+        SecurityStorage secs = new SecurityStorage( props );
+        CircuitBreaker circuitBreaker = secs.getDataSourceRouter().getNodes().get( 0 ).getCircuitBreaker();
+        for ( int i = 0; i < 3; i++ ) {
+            Assert.assertNull( "Shouldn't find a password", secs.findPassword( USERS[0][0] ) );
+        }
+        Assert.assertEquals( "Should open the circuit breaker", CircuitBreaker.STATE.OPEN, circuitBreaker.getState() );
+        Assert.assertEquals( "Shouldn't try the datasource once the circuit breaker is open", 2, circuitBreaker.getFailures() );
+        Assert.assertFalse( "Should be unavailable", secs.getDataSourceRouter().isAvailable() );
+    }
+
+    @Test
+    public void should_allow_one_trial_after_circuit_breaker_delay()
+            throws InterruptedException
+    {
+        CircuitBreaker circuitBreaker = new CircuitBreaker( 1, 50 );
+        circuitBreaker.recordFailure();
+        Assert.assertFalse( "Should refuse the calls while open", circuitBreaker.allowRequest() );
+
+        Thread.sleep( 60 );
+        Assert.assertTrue( "Should allow a trial call after the delay", circuitBreaker.allowRequest() );
+        Assert.assertFalse( "Should allow only one trial call", circuitBreaker.allowRequest() );
+        circuitBreaker.recordSuccess();
+        Assert.assertEquals( "Should close after a successful trial", CircuitBreaker.STATE.CLOSED, circuitBreaker.getState() );
+        Assert.assertTrue( "Should allow the calls once closed", circuitBreaker.allowRequest() );
+    }
+
+    @Test
+    public void should_serve_stale_credentials_database_unreachable()
+            throws SecurityStorageException, NamingException, InterruptedException
+    {
+        String[] superMario = USERS[1];
+        JDBCDataSource flaky = new JDBCDataSource();
+        flaky.setDatabase( "jdbc:hsqldb:mem:test" );
+        flaky.setUser( "SA" );
+        flaky.setPassword( "" );
+        new InitialContext().bind( "java:/comp/env/jdbc/datasourceFlaky", flaky );
+
+        Properties props = new Properties();
+        props.setProperty( SecurityStorage.PROPERTY.DATASOURCE_JNDI.toString(), "java:/comp/env/jdbc/datasourceFlaky" );
+        props.setProperty( SecurityStorage.PROPERTY.CACHE_MAX_STALENESS.toString(), "60" );
+        props.setProperty( SecurityStorage.PROPERTY.CIRCUIT_BREAKER_THRESHOLD.toString(), "100" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_TABLE.toString(), "USERS" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_NAME_COLUMN.toString(), "USERNAME" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_PASSWORD_COLUMN.toString(), "PASSWORD" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_TABLE.toString(), "GROUPS" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_NAME_COLUMN.toString(), "NAME" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_USER_NAME_COLUMN.toString(), "USERNAME" );
+
+        SecurityStorage secs = new SecurityStorage( props );
+        SecurityMetrics metrics = secs.getMetrics();
+        Assert.assertEquals( "Should find the SuperMario user password", superMario[1], secs.findPassword( superMario[0] ) );
+        Assert.assertFalse( "Shouldn't be degraded", metrics.isDegraded() );
+
+        // the database becomes unreachable
+        flaky.setDatabase( "jdbc:hsqldb:mem:unreachable;ifexists=true" );
+        Assert.assertEquals( "Should serve the last-known password", superMario[1], secs.findPassword( superMario[0] ) );
+        Assert.assertArrayEquals( "Should serve the last-known groups", new String[]{ GROUPS[0] }, secs.findGroupNames( superMario[0] ) );
+        Assert.assertTrue( "Should be degraded", metrics.isDegraded() );
+        Assert.assertTrue( "Should count the stale users served", metrics.getStaleHits() >= 2 );
+        Assert.assertNull( "Shouldn't find an uncached user", secs.findPassword( USERS[2][0] ) );
+
+        // the database is reachable again, the stale users served are refreshed in the background
+        flaky.setDatabase( "jdbc:hsqldb:mem:test" );
+        for ( int i = 0; i < 100 && metrics.isDegraded(); i++ ) {
+            Assert.assertEquals( "Should serve the last-known password", superMario[1], secs.findPassword( superMario[0] ) );
+            Thread.sleep( 20 );
+        }
+        Assert.assertFalse( "Should leave the degraded mode after a background refresh", metrics.isDegraded() );
+        Assert.assertTrue( "Should count the background refreshes", metrics.getRefreshes() >= 1 );
+    }
+
+    @Test
+    public void should_open_circuit_breaker_slow_connection_acquisition()
+            throws SQLException, NamingException
+    {
+        final DataSource exhausted = EasyMock.createMock( DataSource.class );
+        EasyMock.expect( exhausted.getConnection() ).andAnswer( new IAnswer<Connection>()
+        {
+            @Override
+            public Connection answer()
+                    throws Throwable
+            {
+                // an exhausted pool blocks the login for its wait time
+                Thread.sleep( 30 );
+                return ( ( DataSource ) new InitialContext().lookup( DATASOURCE_JNDI ) ).getConnection();
+            }
+        } ).times( 2 );
+        EasyMock.replay( exhausted );
+        new InitialContext().bind( "java:/comp/env/jdbc/datasourceExhausted", exhausted );
+
+        DataSourceRouter router = new DataSourceRouter( "java:/comp/env/jdbc/datasourceExhausted", DataSourceRouter.ROUTING.ROUND_ROBIN,
+                null, null, 2, 60000, 10, 4 );
+        for ( int i = 0; i < 2; i++ ) {
+            close( router.getConnection(), null, null );
+        }
+        Assert.assertEquals( "Should open the circuit breaker of the slow datasource", CircuitBreaker.STATE.OPEN,
+                router.getNodes().get( 0 ).getCircuitBreaker().getState() );
+        try {
+            router.getConnection();
+            Assert.fail( "Should fail fast while the circuit breaker is open" );
+        } catch ( SQLException ex ) {
+            EasyMock.verify( exhausted );
+        }
+    }
+
+    @Test
+    public void should_store_users_off_heap()
+    {
+        GroupNameTable table = new GroupNameTable();
+        OffHeapCredentialCache cache = new OffHeapCredentialCache( table, 4, 128 );
+        cache.put( "superman", new CachedUser( new UserCredentials( "SuperManPass", null, "SHA-256" ), table.encode( "HERO", "GOOD_GUY" ), 42 ) );
+        cache.put( "lutor", new CachedUser( new UserCredentials( "LutorPass", "LutorSalt" ), table.encode( "BAD_GUY" ), 43 ) );
+
+        CachedUser superMan = cache.get( "superman" );
+        Assert.assertEquals( "Should read the password", "SuperManPass", superMan.getCredentials().getPassword() );
+        Assert.assertNull( "Should read a null salt", superMan.getCredentials().getSalt() );
+        Assert.assertEquals( "Should read the password type", "SHA-256", superMan.getCredentials().getPasswordType() );
+        Assert.assertArrayEquals( "Should read the groups", table.encode( "HERO", "GOOD_GUY" ).toArray(), superMan.getGroups().toArray() );
+        Assert.assertEquals( "Should read the load time", 42, superMan.getLoadedAt() );
+        Assert.assertEquals( "Should read the salt", "LutorSalt", cache.get( "lutor" ).getCredentials().getSalt() );
+        Assert.assertNull( "Shouldn't find an uncached user", cache.get( "bowser" ) );
+
+        cache.put( "lutor", new CachedUser( new UserCredentials( "NewPass", null ), table.encode(), 44 ) );
+        Assert.assertEquals( "Should overwrite a user", "NewPass", cache.get( "lutor" ).getCredentials().getPassword() );
+        Assert.assertEquals( "Should count the users", 2, cache.size() );
+        cache.remove( "superman" );
+        Assert.assertNull( "Should remove a user", cache.get( "superman" ) );
+        Assert.assertEquals( "Should find a user after a removed one", "NewPass", cache.get( "lutor" ).getCredentials().getPassword() );
+
+        char[] longPassword = new char[ 200 ];
+        Arrays.fill( longPassword, 'x' );
+        cache.put( "lutor", new CachedUser( new UserCredentials( new String( longPassword ), null ), table.encode(), 45 ) );
+        Assert.assertNull( "Shouldn't cache a user bigger than a slot", cache.get( "lutor" ) );
+    }
+
+    @Test
+    public void should_evict_oldest_users_off_heap()
+    {
+        GroupNameTable table = new GroupNameTable();
+        OffHeapCredentialCache cache = new OffHeapCredentialCache( table, 16, 64 );
+        for ( int i = 0; i < 1000; i++ ) {
+            cache.put( "user" + i, new CachedUser( new UserCredentials( "pass" + i, null ), table.encode(), i ) );
+        }
+        Assert.assertTrue( "Should bound the number of users", cache.size() <= 16 );
+        Assert.assertEquals( "Should keep the last loaded user", "pass999", cache.get( "user999" ).getCredentials().getPassword() );
+    }
+
+    @Test
+    public void should_findCredentials_from_off_heap_cache()
+            throws SecurityStorageException
+    {
+        String[] bowser = USERS[3];
+        Properties props = new Properties();
+        props.setProperty( SecurityStorage.PROPERTY.DATASOURCE_JNDI.toString(), DATASOURCE_JNDI );
+        props.setProperty( SecurityStorage.PROPERTY.CACHE_TYPE.toString(), "off-heap" );
+        props.setProperty( SecurityStorage.PROPERTY.CACHE_TTL.toString(), "60" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_TABLE.toString(), "USERS" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_NAME_COLUMN.toString(), "USERNAME" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_PASSWORD_COLUMN.toString(), "PASSWORD" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_SALT_COLUMN.toString(), "SALT" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_TABLE.toString(), "GROUPS" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_NAME_COLUMN.toString(), "NAME" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_USER_NAME_COLUMN.toString(), "USERNAME" );
+
+        SecurityStorage secs = new SecurityStorage( props );
+        Assert.assertEquals( "Should find the Bowser user salt", bowser[0] + "Salt", secs.findCredentials( bowser[0] ).getSalt() );
+        Assert.assertEquals( "Should find the Bowser user groups", 2, secs.findGroupNames( bowser[0] ).length );
+        Assert.assertEquals( "Should load the user once", 1, secs.getMetrics().getCacheMisses() );
+        Assert.assertEquals( "Should serve the user from the cache", 1, secs.getMetrics().getCacheHits() );
+    }
+
+    @Test
+    public void should_restore_cache_snapshot()
+            throws SecurityStorageException, IOException
+    {
+        String[] lutor = USERS[2];
+        File snapshot = File.createTempFile( "jdbcrealm", ".snapshot" );
+        snapshot.deleteOnExit();
+        Properties props = new Properties();
+        props.setProperty( SecurityStorage.PROPERTY.DATASOURCE_JNDI.toString(), DATASOURCE_JNDI );
+        props.setProperty( SecurityStorage.PROPERTY.CACHE_MAX_STALENESS.toString(), "60" );
+        props.setProperty( SecurityStorage.PROPERTY.CACHE_SNAPSHOT_FILE.toString(), snapshot.getPath() );
+        props.setProperty( SecurityStorage.PROPERTY.USER_TABLE.toString(), "USERS" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_NAME_COLUMN.toString(), "USERNAME" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_PASSWORD_COLUMN.toString(), "PASSWORD" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_SALT_COLUMN.toString(), "SALT" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_TABLE.toString(), "GROUPS" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_NAME_COLUMN.toString(), "NAME" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_USER_NAME_COLUMN.toString(), "USERNAME" );
+
+        SecurityStorage secs = new SecurityStorage( props );
+        Assert.assertEquals( "Should find the Lutor user password", lutor[1], secs.findPassword( lutor[0] ) );
+        secs.saveCacheSnapshot();
+
+        // a restarted realm
+        SecurityStorage restarted = new SecurityStorage( props );
+        restarted.restoreCacheSnapshot();
+        UserCredentials credentials = restarted.findCredentials( lutor[0] );
+        Assert.assertEquals( "Should restore the Lutor user password", lutor[1], credentials.getPassword() );
+        Assert.assertEquals( "Should restore the Lutor user salt", lutor[0] + "Salt", credentials.getSalt() );
+        Assert.assertArrayEquals( "Should restore the Lutor user groups", new String[]{ GROUPS[1] }, restarted.findGroupNames( lutor[0] ) );
+        Assert.assertTrue( "Should serve the restored user", restarted.getMetrics().getRestoredHits() >= 1 );
+        restarted.close();
+    }
+
+    @Test
+    public void should_save_cache_snapshot_on_close()
+            throws SecurityStorageException, IOException
+    {
+        String[] superMario = USERS[1];
+        File snapshot = File.createTempFile( "jdbcrealm", ".snapshot" );
+        snapshot.deleteOnExit();
+        Assert.assertTrue( "Should start without snapshot", snapshot.delete() );
+        Properties props = new Properties();
+        props.setProperty( SecurityStorage.PROPERTY.DATASOURCE_JNDI.toString(), DATASOURCE_JNDI );
+        props.setProperty( SecurityStorage.PROPERTY.CACHE_TTL.toString(), "60" );
+        props.setProperty( SecurityStorage.PROPERTY.CACHE_SNAPSHOT_FILE.toString(), snapshot.getPath() );
+        props.setProperty( SecurityStorage.PROPERTY.USER_TABLE.toString(), "USERS" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_NAME_COLUMN.toString(), "USERNAME" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_PASSWORD_COLUMN.toString(), "PASSWORD" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_TABLE.toString(), "GROUPS" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_NAME_COLUMN.toString(), "NAME" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_USER_NAME_COLUMN.toString(), "USERNAME" );
+
+        SecurityStorage secs = new SecurityStorage( props );
+        secs.start();
+        Assert.assertEquals( "Should find the SuperMario user password", superMario[1], secs.findPassword( superMario[0] ) );
+        secs.close();
+
+        Assert.assertTrue( "Should persist the cache snapshot on close", snapshot.isFile() );
+        if ( FileSystems.getDefault().supportedFileAttributeViews().contains( "posix" ) ) {
+            Assert.assertEquals( "Should restrict the snapshot to its owner", PosixFilePermissions.fromString( "rw-------" ),
+                    Files.getPosixFilePermissions( snapshot.toPath() ) );
+        }
+        Assert.assertEquals( "Should persist the cached user", 1, CacheSnapshot.read( snapshot, new HeapCredentialCache( 10 ), new GroupNameTable(), 0 ) );
+    }
+
+    @Test( expected = IOException.class )
+    public void should_throw_IOException_corrupted_snapshot()
+            throws IOException
+    {
+        GroupNameTable table = new GroupNameTable();
+        HeapCredentialCache cache = new HeapCredentialCache( 10 );
+        cache.put( "superman", new CachedUser( new UserCredentials( "SuperManPass", null ), table.encode( "HERO" ), System.currentTimeMillis() ) );
+        File snapshot = File.createTempFile( "jdbcrealm", ".snapshot" );
+        snapshot.deleteOnExit();
+        Assert.assertEquals( "Should write one user", 1, CacheSnapshot.write( snapshot, cache, table ) );
+        Assert.assertEquals( "Should read one user", 1, CacheSnapshot.read( snapshot, new HeapCredentialCache( 10 ), table, 0 ) );
+
+        try ( RandomAccessFile file = new RandomAccessFile( snapshot, "rw" ) ) {
+            file.seek( 20 );
+            file.write( file.read() ^ 0xFF );
+        }
+        CacheSnapshot.read( snapshot, new HeapCredentialCache( 10 ), table, 0 );
+    }
+
+    @Test
+    public void should_evict_unreferenced_users_striped()
+    {
+        GroupNameTable table = new GroupNameTable();
+        StripedCredentialCache cache = new StripedCredentialCache( 4, 0, 1 );
+        for ( int i = 0; i < 4; i++ ) {
+            cache.put( "user" + i, new CachedUser( new UserCredentials( "pass" + i, null ), table.encode(), i ) );
+        }
+        // user0 is read, the clock gives it a second chance
+        Assert.assertNotNull( "Should find a cached user", cache.get( "user0" ) );
+        cache.put( "user4", new CachedUser( new UserCredentials( "pass4", null ), table.encode(), 4 ) );
+
+        Assert.assertEquals( "Should bound the number of users", 4, cache.size() );
+        Assert.assertNotNull( "Should keep the referenced user", cache.get( "user0" ) );
+        Assert.assertNull( "Should evict the first unreferenced user", cache.get( "user1" ) );
+        Assert.assertNotNull( "Should find the last user", cache.get( "user4" ) );
+
+        cache.remove( "user0" );
+        Assert.assertNull( "Should remove a user", cache.get( "user0" ) );
+        Assert.assertEquals( "Should count the users", 3, cache.size() );
+    }
+
+    @Test
+    public void should_expire_users_lazily_striped()
+    {
+        GroupNameTable table = new GroupNameTable();
+        StripedCredentialCache cache = new StripedCredentialCache( 100, 1000 );
+        long now = System.currentTimeMillis();
+        cache.put( "fresh", new CachedUser( new UserCredentials( "pass", null ), table.encode(), now ) );
+        cache.put( "expired", new CachedUser( new UserCredentials( "pass", null ), table.encode(), now - 2000 ) );
+
+        Assert.assertNotNull( "Should find a fresh user", cache.get( "fresh" ) );
+        Assert.assertEquals( "Should keep the expired user until it is read", 2, cache.size() );
+        Assert.assertNull( "Shouldn't find an expired user", cache.get( "expired" ) );
+        Assert.assertEquals( "Should remove the expired user when it is read", 1, cache.size() );
+    }
+
+    @Test
+    public void should_stay_bounded_concurrent_striped()
+            throws InterruptedException
+    {
+        final GroupNameTable table = new GroupNameTable();
+        final StripedCredentialCache cache = new StripedCredentialCache( 64, 0, 8 );
+        Thread[] threads = new Thread[ 8 ];
+        for ( int t = 0; t < threads.length; t++ ) {
+            final int offset = t;
+            threads[t] = new Thread( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    for ( int i = 0; i < 10000; i++ ) {
+                        String username = "user" + ( ( i * 31 + offset ) % 500 );
+                        if ( cache.get( username ) == null ) {
+                            cache.put( username, new CachedUser( new UserCredentials( username, null ), table.encode(), i ) );
+                        }
+                        if ( i % 97 == 0 ) {
+                            cache.remove( username );
+                        }
+                    }
+                }
+            } );
+            threads[t].start();
+        }
+        for ( Thread thread : threads ) {
+            thread.join();
+        }
+        Assert.assertTrue( "Should bound the number of users", cache.size() <= 64 );
+    }
+
+
+    /*
+     * An invalidation bus delivering the evictions to the other buses of the JVM.
+     */
+    public static class LoopbackInvalidationBus
+            implements IInvalidationBus
+    {
+
+        private static final List<LoopbackInvalidationBus> BUSES = new CopyOnWriteArrayList<>();
+        private Listener listener;
+
+        public LoopbackInvalidationBus( final Properties properties )
+        {
+        }
+
+        @Override
+        public void start( final Listener listener )
+        {
+            this.listener = listener;
+            BUSES.add( this );
+        }
+
+        @Override
+        public void publish( final String username )
+        {
+            for ( LoopbackInvalidationBus bus : BUSES ) {
+                if ( bus != this ) {
+                    bus.listener.invalidated( username );
+                }
+            }
+        }
+
+        @Override
+        public void close()
+        {
+            BUSES.remove( this );
+        }
+    }
+
+    @Test
+    public void should_invalidate_user_cluster_wide()
+            throws SecurityStorageException
+    {
+        String[] lutor = USERS[2];
+        Properties props = new Properties();
+        props.setProperty( SecurityStorage.PROPERTY.DATASOURCE_JNDI.toString(), DATASOURCE_JNDI );
+        props.setProperty( SecurityStorage.PROPERTY.CACHE_TTL.toString(), "60" );
+        props.setProperty( SecurityStorage.PROPERTY.INVALIDATION_BUS.toString(), LoopbackInvalidationBus.class.getName() );
+        props.setProperty( SecurityStorage.PROPERTY.USER_TABLE.toString(), "USERS" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_NAME_COLUMN.toString(), "USERNAME" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_PASSWORD_COLUMN.toString(), "PASSWORD" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_TABLE.toString(), "GROUPS" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_NAME_COLUMN.toString(), "NAME" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_USER_NAME_COLUMN.toString(), "USERNAME" );
+
+        // two instances of the cluster
+        SecurityStorage node1 = new SecurityStorage( props );
+        SecurityStorage node2 = new SecurityStorage( props );
+        node1.start();
+        node2.start();
+        Assert.assertEquals( "Should find the Lutor user password", lutor[1], node1.findPassword( lutor[0] ) );
+        Assert.assertEquals( "Should find the Lutor user password", lutor[1], node2.findPassword( lutor[0] ) );
+        Assert.assertEquals( "Should find the Lutor user password", lutor[1], node2.findPassword( lutor[0] ) );
+        Assert.assertEquals( "Should serve the user from the cache", 1, node2.getMetrics().getCacheHits() );
+
+        node1.invalidate( lutor[0] );
+        Assert.assertEquals( "Should broadcast the eviction", 1, node1.getMetrics().getInvalidationsSent() );
+        Assert.assertEquals( "Should receive the eviction", 1, node2.getMetrics().getInvalidationsReceived() );
+        Assert.assertEquals( "Should find the Lutor user password", lutor[1], node2.findPassword( lutor[0] ) );
+        Assert.assertEquals( "Should reload the evicted user", 2, node2.getMetrics().getCacheMisses() );
+        Assert.assertEquals( "Should reload the evicted user", lutor[1], node1.findPassword( lutor[0] ) );
+        Assert.assertEquals( "Should reload the evicted user", 2, node1.getMetrics().getCacheMisses() );
+
+        node2.close();
+        node1.invalidate( lutor[0] );
+        Assert.assertEquals( "Shouldn't receive the evictions once closed", 1, node2.getMetrics().getInvalidationsReceived() );
+        node1.close();
+    }
+
+    @Test
+    public void should_evict_remote_invalidation_from_decorators()
+            throws SecurityStorageException
+    {
+        String[] lutor = USERS[2];
+        Properties props = new Properties();
+        props.setProperty( SecurityStorage.PROPERTY.DATASOURCE_JNDI.toString(), DATASOURCE_JNDI );
+        props.setProperty( SecurityStorage.PROPERTY.INVALIDATION_BUS.toString(), LoopbackInvalidationBus.class.getName() );
+        props.setProperty( SecurityStorage.PROPERTY.USER_TABLE.toString(), "USERS" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_NAME_COLUMN.toString(), "USERNAME" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_PASSWORD_COLUMN.toString(), "PASSWORD" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_TABLE.toString(), "GROUPS" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_NAME_COLUMN.toString(), "NAME" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_USER_NAME_COLUMN.toString(), "USERNAME" );
+
+        // two instances of the cluster, the second one caching with a decorator
+        SecurityStorage node1 = new SecurityStorage( props );
+        ISecurityStorage node2 = new CachingSecurityStorage( new SecurityStorage( props ), 60000L, 100 );
+        node1.start();
+        node2.start( node2 );
+        Assert.assertEquals( "Should find the Lutor user password", lutor[1], node2.findPassword( lutor[0] ) );
+        Assert.assertEquals( "Should find the Lutor user password", lutor[1], node2.findPassword( lutor[0] ) );
+        Assert.assertEquals( "Should serve the user from the decorator cache", 1, node2.getMetrics().getCacheHits() );
+
+        node1.invalidate( lutor[0] );
+        Assert.assertEquals( "Should receive the eviction", 1, node2.getMetrics().getInvalidationsReceived() );
+        Assert.assertEquals( "Should find the Lutor user password", lutor[1], node2.findPassword( lutor[0] ) );
+        Assert.assertEquals( "Should reload the user evicted from the decorator cache", 2, node2.getMetrics().getCacheMisses() );
+
+        node1.invalidateAll();
+        Assert.assertEquals( "Should find the Lutor user password", lutor[1], node2.findPassword( lutor[0] ) );
+        Assert.assertEquals( "Should reload the users evicted from the decorator cache", 3, node2.getMetrics().getCacheMisses() );
+        node1.close();
+        node2.close();
+    }
+
+    @Test( expected = SecurityStorageException.class )
+    public void should_throw_SecurityStorageException_invalid_multicast_group()
+            throws SecurityStorageException
+    {
+        Properties props = new Properties();
+        props.setProperty( SecurityStorage.PROPERTY.DATASOURCE_JNDI.toString(), DATASOURCE_JNDI );
+        props.setProperty( SecurityStorage.PROPERTY.CACHE_TTL.toString(), "60" );
+        props.setProperty( SecurityStorage.PROPERTY.INVALIDATION_MULTICAST_GROUP.toString(), "127.0.0.1" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_TABLE.toString(), "USERS" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_NAME_COLUMN.toString(), "USERNAME" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_PASSWORD_COLUMN.toString(), "PASSWORD" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_TABLE.toString(), "GROUPS" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_NAME_COLUMN.toString(), "NAME" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_USER_NAME_COLUMN.toString(), "USERNAME" );
+
+        new SecurityStorage( props );
+    }
+
+    private Properties provisioningProperties()
+    {
+        Properties props = new Properties();
+        props.setProperty( SecurityStorage.PROPERTY.DATASOURCE_JNDI.toString(), DATASOURCE_JNDI );
+        props.setProperty( SecurityStorage.PROPERTY.USERNAME_NORMALIZATION.toString(), "lowercase" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_TABLE.toString(), "USERS" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_NAME_COLUMN.toString(), "USERNAME" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_NAME_NORMALIZED_COLUMN.toString(), "USERNAME_LOWER" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_PASSWORD_COLUMN.toString(), "PASSWORD" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_SALT_COLUMN.toString(), "SALT" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_TABLE.toString(), "GROUPS" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_NAME_COLUMN.toString(), "NAME" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_USER_NAME_COLUMN.toString(), "USERNAME" );
+        return props;
+    }
+
+    @Test
+    public void should_provision_users_in_chunks()
+            throws Exception
+    {
+        MessageDigestPassword passwordType = new MessageDigestPassword( "SHA-256" );
+        SecurityStorage secs = new SecurityStorage( provisioningProperties() );
+        List<UserProvisioner.Account> accounts = new ArrayList<>();
+        for ( int i = 0; i < 50; i++ ) {
+            accounts.add( new UserProvisioner.Account( "Provisioned" + i, "ProvisionedPass" + i, GROUPS[i % 2] ) );
+        }
+
+        UserProvisioner provisioner = new UserProvisioner( secs, passwordType, null, 8, 2 );
+        Assert.assertEquals( "Should provision all the users", 50, provisioner.provision( accounts ) );
+
+        for ( int i : new int[]{ 0, 7, 8, 49 } ) {
+            UserCredentials credentials = secs.findCredentials( "provisioned" + i );
+            Assert.assertNotNull( "Should find the provisioned user by its normalized name", credentials );
+            Assert.assertNotNull( "Should generate a per-user salt", credentials.getSalt() );
+            Assert.assertTrue( "Should encrypt the password with the salt",
+                    passwordType.checkPassword( "ProvisionedPass" + i, credentials.getPassword(), credentials.getSalt() ) );
+            Assert.assertArrayEquals( "Should insert the user groups", new String[]{ GROUPS[i % 2] }, secs.findGroupNames( "Provisioned" + i ) );
+        }
+    }
+
+    @Test
+    public void should_keep_committed_chunks_provisioning_failure()
+            throws Exception
+    {
+        SecurityStorage secs = new SecurityStorage( provisioningProperties() );
+        List<UserProvisioner.Account> accounts = new ArrayList<>();
+        for ( int i = 0; i < 20; i++ ) {
+            // the group name column is 20 characters long
+            accounts.add( new UserProvisioner.Account( "Partial" + i, "PartialPass" + i, i == 10 ? "A_GROUP_NAME_TOO_LONG_FOR_ITS_COLUMN" : GROUPS[0] ) );
+        }
+
+        UserProvisioner provisioner = new UserProvisioner( secs, new MessageDigestPassword( "SHA-256" ), null, 8, 2 );
+        try {
+            provisioner.provision( accounts );
+            Assert.fail( "Should fail to insert the second chunk" );
+        } catch ( SecurityStorageException ex ) {
+            // expected
+        }
+        Assert.assertNotNull( "Should keep the first chunk", secs.findCredentials( "partial7" ) );
+        Assert.assertNull( "Should roll the failed chunk back", secs.findCredentials( "partial8" ) );
+        Assert.assertNull( "Should stop at the failed chunk", secs.findCredentials( "partial19" ) );
+    }
+
+    @Test
+    public void should_provision_users_into_primary_datasource_only()
+            throws Exception
+    {
+        Properties props = provisioningProperties();
+        // the primary is down, the second datasource is a read replica
+        props.setProperty( SecurityStorage.PROPERTY.DATASOURCE_JNDI.toString(), "java:/comp/env/jdbc/unknownDatasource, " + DATASOURCE_JNDI );
+        SecurityStorage secs = new SecurityStorage( props );
+        List<UserProvisioner.Account> accounts = new ArrayList<>();
+        accounts.add( new UserProvisioner.Account( "Replicated", "ReplicatedPass", GROUPS[0] ) );
+
+        UserProvisioner provisioner = new UserProvisioner( secs, new MessageDigestPassword( "SHA-256" ), null, 8, 2 );
+        try {
+            provisioner.provision( accounts );
+            Assert.fail( "Should fail while the primary datasource is unreachable" );
+        } catch ( SecurityStorageException ex ) {
+            // expected
+        }
+        Assert.assertNull( "Shouldn't insert into a read replica", secs.findCredentials( "replicated" ) );
+    }
+
+    @Test
+    public void should_rehash_legacy_passwords_from_checkpoint()
+            throws Exception
+    {
+        MessageDigestPassword legacyType = new MessageDigestPassword( "SHA-1" );
+        InitialContext ctx = new InitialContext();
+        DataSource ds = ( DataSource ) ctx.lookup( DATASOURCE_JNDI );
+        try ( Connection conn = ds.getConnection() ) {
+            conn.prepareStatement( "CREATE TABLE LEGACY_USERS( USERNAME VARCHAR(50) NOT NULL PRIMARY KEY,"
+                    + " PASSWORD VARCHAR(128) NOT NULL, SALT VARCHAR(64), PASSWORD_TYPE VARCHAR(32) )" ).executeUpdate();
+            PreparedStatement stmt = conn.prepareStatement( "INSERT INTO LEGACY_USERS VALUES (?, ?, ?, ?)" );
+            for ( int i = 0; i < 30; i++ ) {
+                String username = String.format( "Legacy%02d", i );
+                stmt.setString( 1, username );
+                stmt.setString( 2, legacyType.encryptPassword( username + "Pass", username + "Salt" ) );
+                stmt.setString( 3, username + "Salt" );
+                // an other password type isn't migrated
+                stmt.setString( 4, i == 20 ? "md5" : null );
+                stmt.executeUpdate();
+            }
+        }
+
+        Properties props = new Properties();
+        props.setProperty( SecurityStorage.PROPERTY.DATASOURCE_JNDI.toString(), DATASOURCE_JNDI );
+        props.setProperty( SecurityStorage.PROPERTY.USER_TABLE.toString(), "LEGACY_USERS" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_NAME_COLUMN.toString(), "USERNAME" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_PASSWORD_COLUMN.toString(), "PASSWORD" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_SALT_COLUMN.toString(), "SALT" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_PASSWORD_TYPE_COLUMN.toString(), "PASSWORD_TYPE" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_TABLE.toString(), "GROUPS" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_NAME_COLUMN.toString(), "NAME" );
+        SecurityStorage secs = new SecurityStorage( props );
+        WrappedPassword wrappedType = new WrappedPassword( new BcryptPassword( null, "4" ), legacyType );
+
+        // a previous run stopped after Legacy09
+        File checkpoint = File.createTempFile( "jdbcrealm", ".checkpoint" );
+        checkpoint.deleteOnExit();
+        Files.write( checkpoint.toPath(), "Legacy09".getBytes( Charset.forName( "UTF-8" ) ) );
+        Assert.assertEquals( "Should resume after the checkpoint", 19,
+                new PasswordRehasher( secs, wrappedType, "Bcrypt(SHA-1)", null, checkpoint, 4, 2 ).rehash() );
+        Assert.assertEquals( "Should write the last migrated user name", "Legacy29",
+                new String( Files.readAllBytes( checkpoint.toPath() ), Charset.forName( "UTF-8" ) ) );
+        Assert.assertNull( "Should not migrate the users before the checkpoint", secs.findCredentials( "Legacy09" ).getPasswordType() );
+
+        Assert.assertEquals( "Should only migrate the legacy users left", 10,
+                new PasswordRehasher( secs, wrappedType, "Bcrypt(SHA-1)", null, null, 4, 2 ).rehash() );
+        for ( int i : new int[]{ 0, 9, 10, 29 } ) {
+            String username = String.format( "Legacy%02d", i );
+            UserCredentials credentials = secs.findCredentials( username );
+            Assert.assertEquals( "Should update the password type", "Bcrypt(SHA-1)", credentials.getPasswordType() );
+            Assert.assertTrue( "Should check the plaintext password against the wrapped hash",
+                    wrappedType.checkPassword( username + "Pass", credentials.getPassword(), credentials.getSalt() ) );
+        }
+        Assert.assertEquals( "Should leave the other password types", "md5", secs.findCredentials( "Legacy20" ).getPasswordType() );
+    }
+
+    @Test
+    public void should_share_connection_within_login_session()
+            throws SecurityStorageException
+    {
+        String[] bowser = USERS[3];
+        Properties props = new Properties();
+        props.setProperty( SecurityStorage.PROPERTY.DATASOURCE_JNDI.toString(), DATASOURCE_JNDI );
+        props.setProperty( SecurityStorage.PROPERTY.USER_TABLE.toString(), "USERS" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_NAME_COLUMN.toString(), "USERNAME" );
+        props.setProperty( SecurityStorage.PROPERTY.USER_PASSWORD_COLUMN.toString(), "PASSWORD" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_TABLE.toString(), "GROUPS" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_NAME_COLUMN.toString(), "NAME" );
+        props.setProperty( SecurityStorage.PROPERTY.GROUP_USER_NAME_COLUMN.toString(), "USERNAME" );
+        props.setProperty( SecurityStorage.PROPERTY.LOGIN_READ_ONLY_TRANSACTION.toString(), "true" );
+        SecurityStorage secs = new SecurityStorage( props );
+
+        secs.findCredentials( bowser[0] );
+        secs.findGroupNames( bowser[0] );
+        Assert.assertEquals( "Should borrow a connection per query outside a session", 2, secs.getMetrics().getConnectionCheckouts() );
+
+        ISecurityStorage.Session session = secs.openSession();
+        try {
+            ISecurityStorage.Session joined = secs.openSession();
+            try {
+                Assert.assertEquals( "Should find the Bowser user password", bowser[1], secs.findPassword( bowser[0] ) );
+            } finally {
+                joined.close();
+            }
+            Assert.assertTrue( "Should find the Bowser user groups", secs.findGroupNames( bowser[0] ).length > 0 );
+        } finally {
+            session.close();
+        }
+        Assert.assertEquals( "Should borrow a single connection within a session", 3, secs.getMetrics().getConnectionCheckouts() );
+
+        secs.findPassword( bowser[0] );
+        Assert.assertEquals( "Should unbind the closed session", 4, secs.getMetrics().getConnectionCheckouts() );
+    }
+}